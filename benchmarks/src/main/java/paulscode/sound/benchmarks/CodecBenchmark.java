@@ -0,0 +1,199 @@
+package paulscode.sound.benchmarks;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import paulscode.sound.ICodec;
+import paulscode.sound.SoundBuffer;
+
+/**
+ * The CodecBenchmark class measures how fast each codec decodes a whole file,
+ * either one stream buffer at a time with read(), or all at once with
+ * readAll().  One operation decodes the file from start to finish.  Besides
+ * operations per second, JMH reports the secondary "bytes" and "frames"
+ * counters as rates: bytes per second of PCM produced (divide by 1,000,000 for
+ * MB/s), and frames per second (1,000,000,000 divided by this is nanoseconds
+ * per frame).  Run with "-prof gc" to see the bytes allocated per operation
+ * (gc.alloc.rate.norm).
+ *
+ * The files come from {@link paulscode.sound.benchmarks.Corpus Corpus}.  The
+ * Vorbis codecs are not in the default parameters, because their input can not
+ * be generated; to include them, run with
+ * -p codec=CodecJOrbis,CodecJOgg -jvmArgsAppend -Dpaulscode.benchmarks.ogg=FILE
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class CodecBenchmark
+{
+/**
+ * Simple class name of the codec to benchmark.
+ */
+    @Param( { "CodecWav", "CodecJSpeex", "CodecIBXM" } )
+    public String codec;
+
+/**
+ * Codec class being benchmarked.
+ */
+    private Class<?> codecClass;
+
+/**
+ * File to decode.
+ */
+    private URL url;
+
+/**
+ * Looks up the codec and generates (or finds) the file it will decode.
+ */
+    @Setup
+    public void setup() throws Exception
+    {
+        codecClass = Class.forName( "paulscode.sound.codecs." + codec );
+        url = Corpus.file( codec ).toURI().toURL();
+    }
+
+/**
+ * Decodes the whole file one stream buffer at a time.
+ * @param decoded Counts the PCM produced.
+ * @param blackhole Keeps the decoded data from being optimized away.
+ */
+    @Benchmark
+    public void read( Decoded decoded, Blackhole blackhole ) throws Exception
+    {
+        ICodec c = newCodec();
+        SoundBuffer buffer;
+        while( !c.endOfStream() )
+        {
+            buffer = c.read();
+            if( buffer == null )
+                break;
+            decoded.count( buffer );
+            blackhole.consume( buffer );
+        }
+        c.cleanup();
+    }
+
+/**
+ * Decodes the whole file at once.
+ * @param decoded Counts the PCM produced.
+ * @param blackhole Keeps the decoded data from being optimized away.
+ */
+    @Benchmark
+    public void readAll( Decoded decoded, Blackhole blackhole )
+        throws Exception
+    {
+        ICodec c = newCodec();
+        SoundBuffer buffer = c.readAll();
+        if( buffer != null )
+        {
+            decoded.count( buffer );
+            blackhole.consume( buffer );
+        }
+        c.cleanup();
+    }
+
+/**
+ * Creates an instance of the codec, and opens the file with it.
+ * @return Initialized codec.
+ */
+    private ICodec newCodec() throws Exception
+    {
+        ICodec c = (ICodec) codecClass.newInstance();
+        if( !c.initialize( url ) )
+            throw new IllegalStateException( codec + " was unable to open '"
+                                             + url + "'" );
+        return c;
+    }
+
+/**
+ * The Decoded class counts the PCM produced during each iteration.  JMH
+ * reports its public fields as rates alongside the benchmark's score.
+ */
+    @State( Scope.Thread )
+    @AuxCounters( AuxCounters.Type.OPERATIONS )
+    public static class Decoded
+    {
+        /**
+         * Bytes of PCM produced.
+         */
+        public long bytes;
+
+        /**
+         * Frames of PCM produced.
+         */
+        public long frames;
+
+        /**
+         * Starts counting from zero at every iteration.
+         */
+        @Setup( Level.Iteration )
+        public void reset()
+        {
+            bytes = 0;
+            frames = 0;
+        }
+
+        /**
+         * Adds the contents of a decoded buffer to the counters.
+         * @param buffer Decoded PCM.
+         */
+        public void count( SoundBuffer buffer )
+        {
+            int size = buffer.size();
+            bytes += size;
+            if( buffer.audioFormat != null
+                && buffer.audioFormat.getFrameSize() > 0 )
+                frames += size / buffer.audioFormat.getFrameSize();
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package paulscode.sound.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.sampled.AudioFormat;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import paulscode.sound.CommandObject;
+import paulscode.sound.CommandRing;
+import paulscode.sound.Library;
+import paulscode.sound.SoundSystem;
+import paulscode.sound.SoundSystemConfig;
+
+/**
+ * The CommandQueueBenchmark class measures how fast commands get from the
+ * threads calling SoundSystem methods to the command thread.  The "ring" group
+ * has three threads adding commands to a
+ * {@link paulscode.sound.CommandRing CommandRing} while one thread takes them
+ * off, which is the queue SoundSystem.CommandQueue() is built on; the
+ * secondary "offered" and "full" counters show how many offers succeeded and
+ * how many found the ring full, and "taken" and "empty" do the same for the
+ * consumer.  The setPosition benchmark has four threads calling
+ * SoundSystem.setPosition() on a running sound system, so it covers the whole
+ * path: taking a command from the pool, queueing it, waking the command
+ * thread, and the command thread coalescing and executing the commands while
+ * holding SoundSystemConfig.THREAD_SYNC.  Once the ring fills up, callers wait
+ * for the command thread, so the score is the rate at which the system keeps
+ * up with its callers.  The sound system runs the silent base
+ * {@link paulscode.sound.Library Library}, with one raw data stream source for
+ * each calling thread, so no time is spent on a sound device.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class CommandQueueBenchmark
+{
+/**
+ * Number of threads calling setPosition().
+ */
+    private static final int CALLERS = 4;
+
+/**
+ * Adds a command to the ring.
+ * @param ring Ring shared with the consumer.
+ * @param counts Counts the results.
+ * @return True if the command was added.
+ */
+    @Benchmark
+    @Group( "ring" )
+    @GroupThreads( 3 )
+    public boolean offer( Ring ring, ProducerCounts counts )
+    {
+        if( ring.ring.offer( ring.command ) )
+        {
+            counts.offered++;
+            return true;
+        }
+        counts.full++;
+        return false;
+    }
+
+/**
+ * Takes a command off of the ring.
+ * @param ring Ring shared with the producers.
+ * @param counts Counts the results.
+ * @return The command, or null if the ring was empty.
+ */
+    @Benchmark
+    @Group( "ring" )
+    @GroupThreads( 1 )
+    public CommandObject poll( Ring ring, ConsumerCounts counts )
+    {
+        CommandObject command = ring.ring.poll();
+        if( command != null )
+            counts.taken++;
+        else
+            counts.empty++;
+        return command;
+    }
+
+/**
+ * Moves a source through the sound system.
+ * @param sound The running sound system.
+ * @param caller The calling thread's source and position.
+ */
+    @Benchmark
+    @Threads( CALLERS )
+    public void setPosition( Sound sound, Caller caller )
+    {
+        caller.x += 0.01f;
+        sound.soundSystem.setPosition( caller.sourcename, caller.x, 0, 0 );
+    }
+
+/**
+ * The Ring class holds the ring shared by one group of producer and consumer
+ * threads.
+ */
+    @State( Scope.Group )
+    public static class Ring
+    {
+        /**
+         * Ring being benchmarked.
+         */
+        public CommandRing ring;
+
+        /**
+         * Command which is queued over and over.
+         */
+        public CommandObject command;
+
+        /**
+         * Creates a ring the same size as the sound system's.
+         */
+        @Setup
+        public void setup()
+        {
+            ring = new CommandRing(
+                                SoundSystemConfig.getCommandQueueCapacity() );
+            command = new CommandObject( CommandObject.SET_POSITION,
+                                         "ring", 1.0f, 2.0f, 3.0f );
+        }
+    }
+
+/**
+ * The ProducerCounts class counts what happened to each offer.
+ */
+    @State( Scope.Thread )
+    @AuxCounters( AuxCounters.Type.OPERATIONS )
+    public static class ProducerCounts
+    {
+        /**
+         * Commands added to the ring.
+         */
+        public long offered;
+
+        /**
+         * Offers which found the ring full.
+         */
+        public long full;
+
+        /**
+         * Starts counting from zero at every iteration.
+         */
+        @Setup( Level.Iteration )
+        public void reset()
+        {
+            offered = 0;
+            full = 0;
+        }
+    }
+
+/**
+ * The ConsumerCounts class counts what happened to each poll.
+ */
+    @State( Scope.Thread )
+    @AuxCounters( AuxCounters.Type.OPERATIONS )
+    public static class ConsumerCounts
+    {
+        /**
+         * Commands taken off of the ring.
+         */
+        public long taken;
+
+        /**
+         * Polls which found the ring empty.
+         */
+        public long empty;
+
+        /**
+         * Starts counting from zero at every iteration.
+         */
+        @Setup( Level.Iteration )
+        public void reset()
+        {
+            taken = 0;
+            empty = 0;
+        }
+    }
+
+/**
+ * The Sound class holds the sound system shared by all of the calling threads.
+ */
+    @State( Scope.Benchmark )
+    public static class Sound
+    {
+        /**
+         * The running sound system.
+         */
+        public SoundSystem soundSystem;
+
+        /**
+         * Starts the sound system, and creates a source for each calling
+         * thread to move.
+         */
+        @Setup
+        public void setup() throws Exception
+        {
+            soundSystem = new SoundSystem( Library.class );
+            AudioFormat format = new AudioFormat( 44100, 16, 1, true, false );
+            for( int i = 0; i < CALLERS; i++ )
+            {
+                soundSystem.rawDataStream( format, false, "caller" + i,
+                                           0, 0, 0,
+                                           SoundSystemConfig.ATTENUATION_NONE,
+                                           0 );
+            }
+        }
+
+        /**
+         * Shuts the sound system down.
+         */
+        @TearDown
+        public void tearDown()
+        {
+            soundSystem.cleanup();
+        }
+    }
+
+/**
+ * The Caller class holds one calling thread's source name and position.
+ */
+    @State( Scope.Thread )
+    public static class Caller
+    {
+        /**
+         * Used to give each calling thread a different source.
+         */
+        private static final AtomicInteger callers = new AtomicInteger();
+
+        /**
+         * Source this thread moves around.
+         */
+        public String sourcename;
+
+        /**
+         * X coordinate the source is being moved to.
+         */
+        public float x;
+
+        /**
+         * Picks a source for this thread.
+         */
+        @Setup
+        public void setup()
+        {
+            sourcename = "caller" + ( callers.getAndIncrement() % CALLERS );
+            x = 0;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package paulscode.sound.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+import org.xiph.speex.OggSpeexWriter;
+import org.xiph.speex.SpeexEncoder;
+
+/**
+ * The Corpus class generates the sound files the benchmarks decode, so that no
+ * recordings need to be shipped with the source code.  Files are written to a
+ * temporary directory the first time they are asked for, and deleted when the
+ * JVM exits.  The content is synthesized (tones, with a little noise so the
+ * encoders have something to work on), and the same every time.
+ *
+ * Ogg Vorbis cannot be generated, because neither JOrbis nor J-Ogg includes an
+ * encoder.  To benchmark the Vorbis codecs, point the system property
+ * "paulscode.benchmarks.ogg" at an Ogg Vorbis file.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class Corpus
+{
+/**
+ * System property naming the Ogg Vorbis file to decode.
+ */
+    public static final String OGG_PROPERTY = "paulscode.benchmarks.ogg";
+
+/**
+ * Length of the generated sounds, in seconds.
+ */
+    public static final int SECONDS = 10;
+
+/**
+ * Directory the generated files are written to.
+ */
+    private static File directory = null;
+
+/**
+ * Returns the file a codec should decode, generating it if necessary.
+ * @param codec Simple class name of the codec (such as "CodecWav").
+ * @return File in a format the codec can decode.
+ */
+    public static synchronized File file( String codec ) throws IOException
+    {
+        if( codec.equals( "CodecJOrbis" ) || codec.equals( "CodecJOgg" ) )
+        {
+            String ogg = System.getProperty( OGG_PROPERTY );
+            if( ogg == null )
+                throw new IllegalStateException( "Ogg Vorbis files can not be "
+                               + "generated, set -D" + OGG_PROPERTY
+                               + "=<file> to benchmark " + codec );
+            return new File( ogg );
+        }
+
+        File file;
+        if( codec.equals( "CodecWav" ) )
+        {
+            file = new File( directory(), "tone.wav" );
+            if( !file.exists() )
+                writeWav( file );
+        }
+        else if( codec.equals( "CodecJSpeex" ) )
+        {
+            file = new File( directory(), "tone-speex.ogg" );
+            if( !file.exists() )
+                writeSpeex( file );
+        }
+        else if( codec.equals( "CodecIBXM" ) )
+        {
+            file = new File( directory(), "tone.mod" );
+            if( !file.exists() )
+                writeMod( file );
+        }
+        else
+        {
+            throw new IllegalArgumentException( "No corpus for codec '"
+                                                + codec + "'" );
+        }
+        return file;
+    }
+
+/**
+ * Returns the directory to write generated files to, creating it if
+ * necessary.
+ * @return Temporary directory.
+ */
+    private static File directory() throws IOException
+    {
+        if( directory == null )
+        {
+            directory = File.createTempFile( "soundsystem-corpus", "" );
+            if( !directory.delete() || !directory.mkdir() )
+                throw new IOException( "Unable to create directory '"
+                                       + directory + "'" );
+            directory.deleteOnExit();
+        }
+        return directory;
+    }
+
+/**
+ * Generates 16-bit samples: a chord of three tones, with a little noise.
+ * @param sampleRate Samples per second.
+ * @param channels Number of interleaved channels.
+ * @return Interleaved samples, SECONDS long.
+ */
+    private static short[] tones( int sampleRate, int channels )
+    {
+        int frames = sampleRate * SECONDS;
+        short[] samples = new short[frames * channels];
+        // fixed seed, so every run decodes the same thing:
+        Random random = new Random( 42 );
+        double t;
+        double value;
+        for( int i = 0; i < frames; i++ )
+        {
+            t = (double) i / sampleRate;
+            for( int c = 0; c < channels; c++ )
+            {
+                value = Math.sin( 2 * Math.PI * ( 220 + c * 2 ) * t )
+                        + 0.5 * Math.sin( 2 * Math.PI * 277.2 * t )
+                        + 0.25 * Math.sin( 2 * Math.PI * 329.6 * t )
+                        + 0.05 * random.nextGaussian();
+                samples[i * channels + c] = (short) ( value * 6000 );
+            }
+        }
+        return samples;
+    }
+
+/**
+ * Writes a 44.1 kHz 16-bit stereo WAV file.
+ * @param file File to write.
+ */
+    private static void writeWav( File file ) throws IOException
+    {
+        int sampleRate = 44100;
+        short[] samples = tones( sampleRate, 2 );
+        byte[] data = new byte[samples.length * 2];
+        for( int i = 0; i < samples.length; i++ )
+        {
+            data[2 * i] = (byte) samples[i];
+            data[2 * i + 1] = (byte) ( samples[i] >> 8 );
+        }
+        AudioFormat format = new AudioFormat( sampleRate, 16, 2, true, false );
+        AudioInputStream stream = new AudioInputStream(
+                                           new ByteArrayInputStream( data ),
+                                           format, samples.length / 2 );
+        AudioSystem.write( stream, AudioFileFormat.Type.WAVE, file );
+        file.deleteOnExit();
+    }
+
+/**
+ * Writes a 16 kHz mono wideband Speex file.
+ * @param file File to write.
+ */
+    private static void writeSpeex( File file ) throws IOException
+    {
+        int mode = 1;  // wideband
+        int sampleRate = 16000;
+        SpeexEncoder encoder = new SpeexEncoder();
+        encoder.init( mode, 8, sampleRate, 1 );
+        int frameSize = encoder.getFrameSize();
+
+        OggSpeexWriter writer = new OggSpeexWriter( mode, sampleRate, 1, 1,
+                                                    false );
+        writer.open( file );
+        writer.writeHeader( "Encoded with: " + SpeexEncoder.VERSION );
+        short[] samples = tones( sampleRate, 1 );
+        byte[] packet = new byte[2048];
+        int length;
+        for( int i = 0; i + frameSize <= samples.length; i += frameSize )
+        {
+            encoder.processData( samples, i, frameSize );
+            length = encoder.getProcessedData( packet, 0 );
+            writer.writePacket( packet, 0, length );
+        }
+        writer.close();
+        file.deleteOnExit();
+    }
+
+/**
+ * Writes a four-channel ProTracker module, one pattern long, which plays a
+ * looped sine wave instrument at several pitches on every channel.
+ * @param file File to write.
+ */
+    private static void writeMod( File file ) throws IOException
+    {
+        byte[] header = new byte[1084];
+        putString( header, 0, "SoundSystem corpus" );
+
+        // instrument 1: a looped, 64-sample sine wave:
+        int sampleLength = 64;
+        putString( header, 20, "sine" );
+        putShort( header, 42, sampleLength / 2 );  // length in words
+        header[44] = 0;                             // finetune
+        header[45] = 64;                            // volume
+        putShort( header, 46, 0 );                  // loop start
+        putShort( header, 48, sampleLength / 2 );   // loop length
+        // instruments 2 - 31 are empty, but need a loop length of one word:
+        for( int i = 1; i < 31; i++ )
+        {
+            putShort( header, 20 + i * 30 + 28, 1 );
+        }
+
+        header[950] = 1;    // sequence length
+        header[951] = 127;  // restart position
+        // the sequence (bytes 952 - 1079) only plays pattern 0
+        putString( header, 1080, "M.K." );
+
+        // one pattern: 64 rows of 4 channels, a new note every 4 rows:
+        int[] periods = { 428, 381, 339, 320, 285, 254, 226, 214 };
+        byte[] pattern = new byte[64 * 4 * 4];
+        int period;
+        int offset;
+        for( int row = 0; row < 64; row += 4 )
+        {
+            for( int channel = 0; channel < 4; channel++ )
+            {
+                period = periods[( row / 4 + channel * 2 ) % periods.length];
+                offset = ( row * 4 + channel ) * 4;
+                pattern[offset] = (byte) ( ( period >> 8 ) & 0x0F );
+                pattern[offset + 1] = (byte) period;
+                pattern[offset + 2] = (byte) ( 1 << 4 );  // instrument 1
+            }
+        }
+
+        byte[] sample = new byte[sampleLength];
+        for( int i = 0; i < sampleLength; i++ )
+        {
+            sample[i] = (byte) ( 100 * Math.sin( 2 * Math.PI * i
+                                                 / sampleLength ) );
+        }
+
+        OutputStream out = new FileOutputStream( file );
+        try
+        {
+            out.write( header );
+            out.write( pattern );
+            out.write( sample );
+        }
+        finally
+        {
+            out.close();
+        }
+        file.deleteOnExit();
+    }
+
+/**
+ * Copies the characters of a String into a byte array.
+ * @param b Array to copy into.
+ * @param offset Where to start.
+ * @param s Characters to copy (ASCII).
+ */
+    private static void putString( byte[] b, int offset, String s )
+    {
+        for( int i = 0; i < s.length(); i++ )
+        {
+            b[offset + i] = (byte) s.charAt( i );
+        }
+    }
+
+/**
+ * Stores a 16-bit value in a byte array, most significant byte first.
+ * @param b Array to store into.
+ * @param offset Where to store it.
+ * @param value Value to store.
+ */
+    private static void putShort( byte[] b, int offset, int value )
+    {
+        b[offset] = (byte) ( value >> 8 );
+        b[offset + 1] = (byte) value;
+    }
+}
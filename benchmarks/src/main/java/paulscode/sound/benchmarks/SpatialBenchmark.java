@@ -0,0 +1,283 @@
+package paulscode.sound.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import paulscode.sound.ListenerData;
+import paulscode.sound.SoundSystemConfig;
+import paulscode.sound.libraries.ChannelJavaSound;
+import paulscode.sound.libraries.SourceJavaSound;
+
+/**
+ * The SpatialBenchmark class measures the per-source math which runs every
+ * time a source or the listener moves: SourceJavaSound's calculateGain(),
+ * calculatePan() and calculatePitch(), and positionChanged() which calls all
+ * three.  Each is measured with every attenuation model, and with the Doppler
+ * effect switched off (where calculatePitch() takes its shortcut) and on.  The
+ * source circles the listener while moving, so every call sees a different
+ * position.  The results go to a channel which only records them, so the
+ * numbers are for the math alone, not for any sound device.  Scores are in
+ * nanoseconds per call; run with "-prof gc" to see the garbage each call
+ * leaves behind (calculatePan() and calculatePitch() create temporary
+ * vectors).
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class SpatialBenchmark
+{
+/**
+ * Number of points around the circle the source travels.
+ */
+    private static final int POSITIONS = 1024;
+
+/**
+ * Attenuation model to use (see
+ * {@link paulscode.sound.SoundSystemConfig SoundSystemConfig}).
+ */
+    @Param( { "0", "1", "2" } )
+    public int attModel;
+
+/**
+ * Whether or not the Doppler effect is switched on.
+ */
+    @Param( { "false", "true" } )
+    public boolean doppler;
+
+/**
+ * Doppler factor which was in use before the benchmark started.
+ */
+    private float oldDopplerFactor;
+
+/**
+ * Source being moved around.
+ */
+    private SourceJavaSound source;
+
+/**
+ * Channel the source is playing on.
+ */
+    private Recorder channel;
+
+/**
+ * X, Y, and Z coordinates of each point around the circle.
+ */
+    private float[] positions;
+
+/**
+ * Index of the next point in the positions array.
+ */
+    private int next = 0;
+
+/**
+ * Creates a moving listener and a moving source, and starts the source playing
+ * on a channel which records what it is told.
+ */
+    @Setup
+    public void setup()
+    {
+        oldDopplerFactor = SoundSystemConfig.getDopplerFactor();
+        SoundSystemConfig.setDopplerFactor( doppler ? 1.0f : 0.0f );
+
+        ListenerData listener = new ListenerData();
+        listener.velocity.x = 2.0f;
+
+        float distOrRoll = attModel == SoundSystemConfig.ATTENUATION_LINEAR
+                           ? 100.0f : SoundSystemConfig.getDefaultRolloff();
+        source = new SourceJavaSound( listener, false, true, false, "spatial",
+                                      null, null, 10.0f, 0.0f, 0.0f, attModel,
+                                      distOrRoll, false );
+        source.setVelocity( 0.0f, 0.0f, 15.0f );
+        channel = new Recorder();
+        // attach the way the library does before playing:
+        channel.attachedSource = source;
+        source.play( channel );
+
+        positions = new float[POSITIONS * 3];
+        double angle;
+        for( int i = 0; i < POSITIONS; i++ )
+        {
+            angle = 2 * Math.PI * i / POSITIONS;
+            positions[i * 3] = (float) ( 50 * Math.cos( angle ) );
+            positions[i * 3 + 1] = (float) ( 5 * Math.sin( 3 * angle ) );
+            positions[i * 3 + 2] = (float) ( 50 * Math.sin( angle ) );
+        }
+    }
+
+/**
+ * Puts the Doppler factor back the way it was.
+ */
+    @TearDown
+    public void tearDown()
+    {
+        SoundSystemConfig.setDopplerFactor( oldDopplerFactor );
+    }
+
+/**
+ * Moves the source and calculates its gain.
+ * @return The gain handed to the channel.
+ */
+    @Benchmark
+    public float calculateGain()
+    {
+        move();
+        source.calculateGain();
+        return channel.gain;
+    }
+
+/**
+ * Moves the source and calculates its pan.
+ * @return The pan handed to the channel.
+ */
+    @Benchmark
+    public float calculatePan()
+    {
+        move();
+        source.calculatePan();
+        return channel.pan;
+    }
+
+/**
+ * Moves the source and calculates its pitch.
+ * @return The pitch handed to the channel.
+ */
+    @Benchmark
+    public float calculatePitch()
+    {
+        move();
+        source.calculatePitch();
+        return channel.pitch;
+    }
+
+/**
+ * Moves the source and recalculates its gain, pan, and pitch.
+ * @return Sum of the values handed to the channel.
+ */
+    @Benchmark
+    public float positionChanged()
+    {
+        move();
+        source.positionChanged();
+        return channel.gain + channel.pan + channel.pitch;
+    }
+
+/**
+ * Moves the source to the next point around the circle, without
+ * recalculating anything.
+ */
+    private void move()
+    {
+        int i = next * 3;
+        next = ( next + 1 ) & ( POSITIONS - 1 );
+        source.position.x = positions[i];
+        source.position.y = positions[i + 1];
+        source.position.z = positions[i + 2];
+    }
+
+/**
+ * The Recorder class is a channel with no sound line behind it, which just
+ * remembers the last gain, pan, and pitch it was given.
+ */
+    private static class Recorder extends ChannelJavaSound
+    {
+        /**
+         * Last gain this channel was given.
+         */
+        public float gain;
+
+        /**
+         * Last pan this channel was given.
+         */
+        public float pan;
+
+        /**
+         * Last pitch this channel was given.
+         */
+        public float pitch;
+
+        /**
+         * Constructor: Creates a streaming channel with no mixer.
+         */
+        public Recorder()
+        {
+            super( SoundSystemConfig.TYPE_STREAMING, null );
+        }
+
+        /**
+         * Remembers the gain.
+         * @param g Gain value to use.
+         */
+        @Override
+        public void setGain( float g )
+        {
+            gain = g;
+        }
+
+        /**
+         * Remembers the pan.
+         * @param p Pan value to use.
+         */
+        @Override
+        public void setPan( float p )
+        {
+            pan = p;
+        }
+
+        /**
+         * Remembers the pitch.
+         * @param p Pitch value to use.
+         */
+        @Override
+        public void setPitch( float p )
+        {
+            pitch = p;
+        }
+    }
+}
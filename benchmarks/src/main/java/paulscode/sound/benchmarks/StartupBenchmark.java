@@ -0,0 +1,184 @@
+package paulscode.sound.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import paulscode.sound.Library;
+import paulscode.sound.SoundSystem;
+import paulscode.sound.libraries.LibraryOffline;
+
+/**
+ * The StartupBenchmark class measures how long it takes to start a sound system
+ * up and to shut it down again, which is time an application spends waiting
+ * when it launches, switches libraries, or exits.  The startup benchmark times
+ * the SoundSystem constructor (creating the command thread, loader threads,
+ * and library, and waiting for the command thread to initialize it), and the
+ * shutdown benchmark times SoundSystem.cleanup() (stopping the threads and
+ * releasing the library).  The lifecycle benchmark does both, one after the
+ * other, as a program which starts and stops the sound system would.  The
+ * silent base {@link paulscode.sound.Library Library} shows the cost of the
+ * sound system itself, and {@link paulscode.sound.libraries.LibraryOffline
+ * LibraryOffline} adds a mixer and stream threads without needing a sound
+ * device.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class StartupBenchmark
+{
+/**
+ * Simple name of the library to start, from the paulscode.sound or
+ * paulscode.sound.libraries package.
+ */
+    @Param( { "Library", "LibraryOffline" } )
+    public String library;
+
+/**
+ * Library class to start.
+ */
+    private Class libraryClass;
+
+/**
+ * File LibraryOffline renders to.
+ */
+    private File outputFile;
+
+/**
+ * Sound system started for the shutdown benchmark, or by the startup
+ * benchmark.
+ */
+    private SoundSystem soundSystem;
+
+/**
+ * Looks up the library class, and points LibraryOffline at a temporary file.
+ */
+    @Setup
+    public void setup() throws Exception
+    {
+        if( library.equals( "Library" ) )
+        {
+            libraryClass = Library.class;
+        }
+        else
+        {
+            libraryClass = Class.forName( "paulscode.sound.libraries."
+                                          + library );
+        }
+        outputFile = File.createTempFile( "startup", ".wav" );
+        LibraryOffline.setOutputFile( outputFile );
+        LibraryOffline.setRealTime( false );
+    }
+
+/**
+ * Deletes the temporary file.
+ */
+    @TearDown
+    public void tearDown()
+    {
+        outputFile.delete();
+    }
+
+/**
+ * Starts a sound system for the shutdown benchmark to shut down.
+ * @param params Which benchmark is running.
+ */
+    @Setup( Level.Invocation )
+    public void startForShutdown( BenchmarkParams params ) throws Exception
+    {
+        if( params.getBenchmark().endsWith( ".shutdown" ) )
+            soundSystem = new SoundSystem( libraryClass );
+    }
+
+/**
+ * Shuts down the sound system left behind by the startup benchmark.
+ */
+    @TearDown( Level.Invocation )
+    public void shutDownAfterStartup()
+    {
+        if( soundSystem != null )
+        {
+            soundSystem.cleanup();
+            soundSystem = null;
+        }
+    }
+
+/**
+ * Starts a sound system.
+ * @return The sound system.
+ */
+    @Benchmark
+    public SoundSystem startup() throws Exception
+    {
+        soundSystem = new SoundSystem( libraryClass );
+        return soundSystem;
+    }
+
+/**
+ * Shuts a sound system down.
+ */
+    @Benchmark
+    public void shutdown()
+    {
+        soundSystem.cleanup();
+        soundSystem = null;
+    }
+
+/**
+ * Starts a sound system and shuts it down again.
+ */
+    @Benchmark
+    public void lifecycle() throws Exception
+    {
+        new SoundSystem( libraryClass ).cleanup();
+    }
+}
@@ -132,6 +132,50 @@ public class Channel
     {
         return 0;
     }
+
+/**
+ * Returns the number of queued byte[] buffers that have not finished playing
+ * yet.  This method is run from the seperate
+ * {@link paulscode.sound.StreamThread StreamThread}.
+ * @return Number of buffers queued, or -1 if unknown.
+ */
+    public int buffersQueued()
+    {
+        return -1;
+    }
+
+/**
+ * Returns how much of the queued audio has not finished playing yet, so the
+ * {@link paulscode.sound.StreamThread StreamThread} can tell when the stream
+ * will need more data.
+ * @return Milliseconds of audio left, or -1 if unknown.
+ */
+    public float millisecondsQueued()
+    {
+        return -1;
+    }
+
+/**
+ * Estimates how long until a streaming channel will be ready for another
+ * stream-buffer, from how much queued audio it has left.  Returns zero if a
+ * buffer has already finished playing.  Otherwise the next buffer should
+ * finish after about an equal share of the audio left, but the estimate is
+ * never more than half of it, in case only one long buffer is left.  This
+ * method is run from the {@link paulscode.sound.StreamThread StreamThread}.
+ * @return Milliseconds, or -1 if unknown.
+ */
+    public float millisecondsUntilRefill()
+    {
+        if( buffersProcessed() > 0 )
+            return 0;
+
+        int queued = buffersQueued();
+        float millis = millisecondsQueued();
+        if( queued <= 0 || millis < 0 )
+            return -1;
+
+        return Math.min( millis / queued, millis / 2 );
+    }
     
 /**
  * Calculates the number of milliseconds since the channel began playing.
@@ -247,6 +291,10 @@ public class Channel
  */
     protected boolean errorCheck( boolean error, String message )
     {
+        // Only look up the class name when there is something to print, since
+        // streaming channels check for errors on every buffer:
+        if( !error )
+            return false;
         return logger.errorCheck( error, getClassName(), message, 0 );
     }
     
@@ -202,6 +202,21 @@ public class CommandObject
  * Global identifier for the command to create a new library.
  */
     public static final int NEW_LIBRARY                 = 40;
+/**
+ * Global identifier for a group of commands queued together between calls to
+ * SoundSystem.beginUpdate() and SoundSystem.commitUpdate().
+ */
+    public static final int BATCH                       = 41;
+/**
+ * Global identifier for the command to install a sound file which was decoded
+ * by the {@link paulscode.sound.SoundLoader SoundLoader}.
+ */
+    public static final int INSTALL_SOUND               = 42;
+/**
+ * Global identifier for the command to start loading a set of sound files
+ * with the {@link paulscode.sound.SoundLoader SoundLoader}.
+ */
+    public static final int START_LOAD                  = 43;
     
 /**
  * Any buffer required for a command.
@@ -243,6 +258,27 @@ public class CommandObject
  */
     public int Command;
 
+/**
+ * True if this command came from a {@link paulscode.sound.CommandPool
+ * CommandPool} and may be recycled after it has been executed.
+ */
+    boolean recyclable = false;
+
+/**
+ * Constructor used by {@link paulscode.sound.CommandPool CommandPool} to
+ * create a recyclable command.  The argument arrays are allocated once, large
+ * enough for any of the set() methods, and reused every time the command is
+ * recycled.
+ */
+    CommandObject()
+    {
+        recyclable = true;
+        intArgs = new int[1];
+        floatArgs = new float[6];
+        boolArgs = new boolean[1];
+        stringArgs = new String[1];
+    }
+
 /**
  * Constructor used to create a command which doesn't require any arguments.
  * @param cmd Which command to execute.
@@ -600,4 +636,185 @@ public class CommandObject
         stringArgs[0] = s;
         objectArgs[0] = o;
     }
+/**
+ * Reuses a recyclable command for a command which doesn't require any
+ * arguments.
+ * @param cmd Which command to execute.
+ * @return This command.
+ */
+    public CommandObject set( int cmd )
+    {
+        Command = cmd;
+        return this;
+    }
+/**
+ * Reuses a recyclable command for a command which requires one float
+ * argument.
+ * @param cmd Which command to execute.
+ * @param f The float argument needed to execute this command.
+ * @return This command.
+ */
+    public CommandObject set( int cmd, float f )
+    {
+        Command = cmd;
+        floatArgs[0] = f;
+        return this;
+    }
+/**
+ * Reuses a recyclable command for a command which requires one String
+ * argument.
+ * @param cmd Which command to execute.
+ * @param s The String argument needed to execute this command.
+ * @return This command.
+ */
+    public CommandObject set( int cmd, String s )
+    {
+        Command = cmd;
+        stringArgs[0] = s;
+        return this;
+    }
+/**
+ * Reuses a recyclable command for a command which requires a String and an
+ * int as arguments.
+ * @param cmd Which command to execute.
+ * @param s The String argument needed to execute this command.
+ * @param i The integer argument needed to execute this command.
+ * @return This command.
+ */
+    public CommandObject set( int cmd, String s, int i )
+    {
+        Command = cmd;
+        stringArgs[0] = s;
+        intArgs[0] = i;
+        return this;
+    }
+/**
+ * Reuses a recyclable command for a command which requires a String and a
+ * float as arguments.
+ * @param cmd Which command to execute.
+ * @param s The String argument needed to execute this command.
+ * @param f The float argument needed to execute this command.
+ * @return This command.
+ */
+    public CommandObject set( int cmd, String s, float f )
+    {
+        Command = cmd;
+        stringArgs[0] = s;
+        floatArgs[0] = f;
+        return this;
+    }
+/**
+ * Reuses a recyclable command for a command which requires a String and a
+ * boolean as arguments.
+ * @param cmd Which command to execute.
+ * @param s The String argument needed to execute this command.
+ * @param b The boolean argument needed to execute this command.
+ * @return This command.
+ */
+    public CommandObject set( int cmd, String s, boolean b )
+    {
+        Command = cmd;
+        stringArgs[0] = s;
+        boolArgs[0] = b;
+        return this;
+    }
+/**
+ * Reuses a recyclable command for a command which requires three float
+ * arguments.
+ * @param cmd Which command to execute.
+ * @param f1 The first float argument needed to execute this command.
+ * @param f2 The second float argument needed to execute this command.
+ * @param f3 The third float argument needed to execute this command.
+ * @return This command.
+ */
+    public CommandObject set( int cmd, float f1, float f2, float f3 )
+    {
+        Command = cmd;
+        floatArgs[0] = f1;
+        floatArgs[1] = f2;
+        floatArgs[2] = f3;
+        return this;
+    }
+/**
+ * Reuses a recyclable command for a command which requires a String and three
+ * float arguments.
+ * @param cmd Which command to execute.
+ * @param s The String argument needed to execute this command.
+ * @param f1 The first float argument needed to execute this command.
+ * @param f2 The second float argument needed to execute this command.
+ * @param f3 The third float argument needed to execute this command.
+ * @return This command.
+ */
+    public CommandObject set( int cmd, String s, float f1, float f2, float f3 )
+    {
+        Command = cmd;
+        stringArgs[0] = s;
+        floatArgs[0] = f1;
+        floatArgs[1] = f2;
+        floatArgs[2] = f3;
+        return this;
+    }
+/**
+ * Reuses a recyclable command for a command which requires six float
+ * arguments.
+ * @param cmd Which command to execute.
+ * @param f1 The first float argument needed to execute this command.
+ * @param f2 The second float argument needed to execute this command.
+ * @param f3 The third float argument needed to execute this command.
+ * @param f4 The fourth float argument needed to execute this command.
+ * @param f5 The fifth float argument needed to execute this command.
+ * @param f6 The sixth float argument needed to execute this command.
+ * @return This command.
+ */
+    public CommandObject set( int cmd, float f1, float f2, float f3, float f4,
+                              float f5, float f6 )
+    {
+        Command = cmd;
+        floatArgs[0] = f1;
+        floatArgs[1] = f2;
+        floatArgs[2] = f3;
+        floatArgs[3] = f4;
+        floatArgs[4] = f5;
+        floatArgs[5] = f6;
+        return this;
+    }
+
+/**
+ * Removes handles to any objects referenced by this command, so a recycled
+ * command does not keep them from being garbage collected, and clears any
+ * source handle it was given.
+ */
+    public void clear()
+    {
+        Command = 0;
+        buffer = null;
+        if( intArgs != null )
+        {
+            for( int i = 0; i < intArgs.length; i++ )
+            {
+                intArgs[i] = 0;
+            }
+        }
+        if( stringArgs != null )
+        {
+            for( int i = 0; i < stringArgs.length; i++ )
+            {
+                stringArgs[i] = null;
+            }
+        }
+        if( objectArgs != null )
+        {
+            for( int i = 0; i < objectArgs.length; i++ )
+            {
+                objectArgs[i] = null;
+            }
+        }
+        if( classArgs != null )
+        {
+            for( int i = 0; i < classArgs.length; i++ )
+            {
+                classArgs[i] = null;
+            }
+        }
+    }
 }
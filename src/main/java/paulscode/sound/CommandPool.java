@@ -0,0 +1,171 @@
+package paulscode.sound;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The CommandPool class recycles {@link paulscode.sound.CommandObject
+ * CommandObjects} so that frequently queued commands (such as source position
+ * and volume updates) do not allocate a new object for every call.  Commands
+ * are acquired from any thread, filled in with one of the CommandObject.set()
+ * methods, and released by the {@link paulscode.sound.CommandThread
+ * CommandThread} once they have been executed.  If the pool is empty a new
+ * command is created, and if the pool is full a released command is simply
+ * left for the garbage collector, so the pool never blocks.
+ *
+ * NOTE: The command pool is created automatically by the sound system, so it
+ * is unlikely that the user would ever need to use this class.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class CommandPool
+{
+/**
+ * Number of slots minus one, used to wrap sequence numbers into the slot array.
+ */
+    private final int mask;
+
+/**
+ * Slots holding the idle commands.
+ */
+    private final CommandObject[] slots;
+
+/**
+ * Sequence number of each slot (see {@link paulscode.sound.CommandRing
+ * CommandRing}).
+ */
+    private final AtomicLongArray sequences;
+
+/**
+ * Next position to be filled by release().
+ */
+    private final AtomicLong tail = new AtomicLong( 0 );
+
+/**
+ * Next position to be taken by acquire().
+ */
+    private final AtomicLong head = new AtomicLong( 0 );
+
+/**
+ * Constructor: Creates a pool able to hold at least the specified number of
+ * idle commands.
+ * @param capacity Minimum number of idle commands to keep.
+ */
+    public CommandPool( int capacity )
+    {
+        int size = 2;
+        while( size < capacity && size < (1 << 30) )
+        {
+            size <<= 1;
+        }
+        mask = size - 1;
+        slots = new CommandObject[size];
+        sequences = new AtomicLongArray( size );
+        for( int i = 0; i < size; i++ )
+        {
+            sequences.set( i, i );
+        }
+    }
+
+/**
+ * Returns an idle command, or a new one if none are left in the pool.  This
+ * method may be called from any thread.
+ * @return A recyclable command, ready to be set().
+ */
+    public CommandObject acquire()
+    {
+        long pos;
+        int index;
+        long diff;
+
+        while( true )
+        {
+            pos = head.get();
+            index = (int) pos & mask;
+            diff = sequences.get( index ) - (pos + 1);
+            if( diff == 0 )
+            {
+                if( head.compareAndSet( pos, pos + 1 ) )
+                    break;
+            }
+            else if( diff < 0 )
+            {
+                // pool is empty:
+                return new CommandObject();
+            }
+        }
+
+        CommandObject command = slots[index];
+        slots[index] = null;
+        sequences.lazySet( index, pos + mask + 1 );
+        return command;
+    }
+
+/**
+ * Returns a command to the pool after it has been executed.  Commands which
+ * were not acquired from a pool are ignored.
+ * @param command Command to recycle.
+ */
+    public void release( CommandObject command )
+    {
+        if( command == null || !command.recyclable )
+            return;
+
+        // don't hold on to sourcenames, buffers, etc:
+        command.clear();
+
+        long pos;
+        int index;
+        long diff;
+
+        while( true )
+        {
+            pos = tail.get();
+            index = (int) pos & mask;
+            diff = sequences.get( index ) - pos;
+            if( diff == 0 )
+            {
+                if( tail.compareAndSet( pos, pos + 1 ) )
+                    break;
+            }
+            else if( diff < 0 )
+            {
+                // pool is full, let the garbage collector have it:
+                return;
+            }
+        }
+
+        slots[index] = command;
+        sequences.lazySet( index, pos + 1 );
+    }
+}
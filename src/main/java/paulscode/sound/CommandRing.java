@@ -0,0 +1,201 @@
+package paulscode.sound;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The CommandRing class is a bounded, lock-free queue used to pass
+ * {@link paulscode.sound.CommandObject CommandObjects} from any number of
+ * calling threads to the {@link paulscode.sound.CommandThread CommandThread}.
+ * Producers claim a slot with a single compare-and-set and never wait on the
+ * command thread while it is executing commands.  Only one thread (the command
+ * thread) may remove commands.  The capacity is always rounded up to a power
+ * of two.
+ *
+ * NOTE: The command ring is created automatically by the sound system, so it
+ * is unlikely that the user would ever need to use this class.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class CommandRing
+{
+/**
+ * Number of slots minus one, used to wrap sequence numbers into the slot array.
+ */
+    private final int mask;
+
+/**
+ * Slots holding the queued commands.
+ */
+    private final CommandObject[] slots;
+
+/**
+ * Sequence number of each slot.  A slot is free for the producer claiming
+ * position p when its sequence is p, and holds a command for the consumer at
+ * position p when its sequence is p + 1.
+ */
+    private final AtomicLongArray sequences;
+
+/**
+ * Next position to be claimed by a producer.
+ */
+    private final AtomicLong tail = new AtomicLong( 0 );
+
+/**
+ * Next position to be read by the consumer.  Only touched by the consumer
+ * thread, but volatile so size() can be called from anywhere.
+ */
+    private volatile long head = 0;
+
+/**
+ * Constructor: Creates a ring able to hold at least the specified number of
+ * commands.
+ * @param capacity Minimum number of commands the ring can hold.
+ */
+    public CommandRing( int capacity )
+    {
+        int size = 2;
+        while( size < capacity && size < (1 << 30) )
+        {
+            size <<= 1;
+        }
+        mask = size - 1;
+        slots = new CommandObject[size];
+        sequences = new AtomicLongArray( size );
+        for( int i = 0; i < size; i++ )
+        {
+            sequences.set( i, i );
+        }
+    }
+
+/**
+ * Adds a command to the end of the ring.  This method may be called from any
+ * thread, and it never blocks.
+ * @param command Command to queue.
+ * @return False if the ring is full.
+ */
+    public boolean offer( CommandObject command )
+    {
+        long pos;
+        int index;
+        long diff;
+
+        while( true )
+        {
+            pos = tail.get();
+            index = (int) pos & mask;
+            diff = sequences.get( index ) - pos;
+            if( diff == 0 )
+            {
+                // slot is free, try to claim it:
+                if( tail.compareAndSet( pos, pos + 1 ) )
+                    break;
+            }
+            else if( diff < 0 )
+            {
+                // the consumer has not freed this slot yet:
+                return false;
+            }
+            // another producer claimed the slot first, try again.
+        }
+
+        slots[index] = command;
+        // publish the command to the consumer:
+        sequences.lazySet( index, pos + 1 );
+        return true;
+    }
+
+/**
+ * Removes the oldest command from the ring.  This method may only be called
+ * from the consumer thread.
+ * @return The oldest command, or null if the ring is empty.
+ */
+    public CommandObject poll()
+    {
+        long pos = head;
+        int index = (int) pos & mask;
+
+        if( sequences.get( index ) != pos + 1 )
+            return null;  // nothing published here yet
+
+        CommandObject command = slots[index];
+        slots[index] = null;
+        head = pos + 1;
+        // hand the slot back to the producers for the next lap:
+        sequences.lazySet( index, pos + mask + 1 );
+        return command;
+    }
+
+/**
+ * Returns true if there are no commands waiting in the ring.  The result is
+ * only a snapshot when producers are active.
+ * @return True if the ring is empty.
+ */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+/**
+ * Returns the approximate number of commands waiting in the ring.
+ * @return Number of queued commands.
+ */
+    public int size()
+    {
+        long size = tail.get() - head;
+        if( size < 0 )
+            return 0;
+        if( size > slots.length )
+            return slots.length;
+        return (int) size;
+    }
+
+/**
+ * Returns the number of commands the ring is able to hold.
+ * @return Capacity of the ring.
+ */
+    public int capacity()
+    {
+        return slots.length;
+    }
+
+/**
+ * Discards all queued commands.  This method may only be called from the
+ * consumer thread, or after the consumer thread has ended.
+ */
+    public void clear()
+    {
+        while( poll() != null )
+        {}
+    }
+}
@@ -7,8 +7,7 @@ package paulscode.sound;
  * arguements for each command are stored in a
  * {@link paulscode.sound.CommandObject CommandObject}.  The Command Queue is
  * located in the {@link paulscode.sound.SoundSystem SoundSystem} class.
- * Calling kill() stops the thread, and this should be immediatly followed
- * by a call to interrupt() to wake up the thread so it may end.  This class
+ * Calling kill() stops the thread, and wakes it up so it may end.  This class
  * also checks for temporary sources that are finished playing, and removes
  * them.
  *
@@ -94,7 +93,9 @@ public class CommandThread extends SimpleThread
 /**
  * The main loop for processing commands.  The Command Thread starts out 
  * asleep, and it sleeps again after it finishes processing commands, so it 
- * must be interrupted when commands are queued for processing.
+ * must be woken up with wake() when commands are queued for processing.
+ * While sources are playing, it also wakes up on its own to publish state
+ * snapshots (see SoundSystemConfig.setStateSnapshotInterval()).
  */
     @Override
     public void run()
@@ -110,15 +111,19 @@ public class CommandThread extends SimpleThread
         }
         
         // Start out asleep:
-        snooze( 3600000 );
+        boolean woken = waitForWake( 3600000 );
+        boolean playing;
         
         while( !dying() )
         {
-            // Perform user-specific source management:
-            soundSystem.ManageSources();
+            if( woken )
+            {
+                // Perform user-specific source management:
+                soundSystem.ManageSources();
 
-            // Process all queued commands:
-            soundSystem.CommandQueue( null );
+                // Process all queued commands:
+                soundSystem.CommandQueue( null );
+            }
             
             // Remove temporary sources every ten seconds:
             currentTime = System.currentTimeMillis();
@@ -127,15 +132,34 @@ public class CommandThread extends SimpleThread
                 previousTime = currentTime;
                 soundSystem.removeTemporarySources();
             }
+
+            // Let the query methods know what is going on:
+            playing = false;
+            if( !dying() )
+                playing = soundSystem.publishState();
             
-            // Wait for more commands:
+            // Wait for more commands, but check on playing sources again
+            // after the snapshot interval:
             if( !dying() )
-                snooze( 3600000 );
+                woken = waitForWake( playing ? snapshotInterval() : 3600000 );
         }
         
         cleanup();   // Important!
     }
     
+/**
+ * Returns how long to wait for commands before publishing a new state
+ * snapshot anyway.
+ * @return Milliseconds.
+ */
+    private long snapshotInterval()
+    {
+        int interval = SoundSystemConfig.getStateSnapshotInterval();
+        if( interval <= 0 )
+            return 3600000;
+        return interval;
+    }
+
 /**
  * Prints a message.
  * @param message Message to print.
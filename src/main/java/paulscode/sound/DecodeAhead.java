@@ -0,0 +1,337 @@
+package paulscode.sound;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The DecodeAhead class keeps a few stream-buffers decoded ahead of playback
+ * for one streaming source.  The buffers are decoded by the worker threads of a
+ * {@link paulscode.sound.StreamDecoder StreamDecoder}, and taken by the
+ * {@link paulscode.sound.StreamThread StreamThread} as the source's channel
+ * needs them.  While decoding ahead, the workers own the source's codec, so
+ * anything else which uses the codec must call halt() first.
+ *
+ * NOTE: Decode-aheads are created automatically by the stream thread, so it is
+ * unlikely that the user would ever need to use this class.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class DecodeAhead implements Runnable
+{
+/**
+ * Processes status messages, warnings, and error messages.
+ */
+    private SoundSystemLogger logger;
+
+/**
+ * Worker threads to decode with.
+ */
+    private final StreamDecoder decoder;
+
+/**
+ * Source the stream-buffers are decoded for.
+ */
+    private final Source source;
+
+/**
+ * Most stream-buffers to keep ready.
+ */
+    private final int capacity;
+
+/**
+ * Used to synchronize access to everything below.
+ */
+    private final Object lock = new Object();
+
+/**
+ * Stream-buffers which are ready to be queued, oldest first.
+ */
+    private final LinkedList<SoundBuffer> ready = new LinkedList<SoundBuffer>();
+
+/**
+ * Codec being decoded, or null when not decoding ahead.
+ */
+    private ICodec codec = null;
+
+/**
+ * Changed each time decoding is halted, so a worker can tell that the
+ * stream-buffer it just read is no longer wanted.
+ */
+    private int generation = 0;
+
+/**
+ * True while this decode-ahead is waiting in the worker queue or running.
+ */
+    private boolean scheduled = false;
+
+/**
+ * True while a worker is reading from the codec.
+ */
+    private boolean reading = false;
+
+/**
+ * True once the codec has reached the end of the stream or failed.
+ */
+    private boolean ended = false;
+
+/**
+ * Constructor: Prepares to decode ahead for the specified source.  Nothing is
+ * decoded until start() is called.
+ * @param decoder Worker threads to decode with.
+ * @param source Source to decode for.
+ * @param capacity Most stream-buffers to keep ready.
+ */
+    public DecodeAhead( StreamDecoder decoder, Source source, int capacity )
+    {
+        // grab a handle to the message logger:
+        logger = SoundSystemConfig.getLogger();
+
+        this.decoder = decoder;
+        this.source = source;
+        if( capacity < 1 )
+            capacity = 1;
+        this.capacity = capacity;
+    }
+
+/**
+ * Returns the decoder this decode-ahead uses.
+ * @return Worker threads to decode with.
+ */
+    public StreamDecoder getDecoder()
+    {
+        return decoder;
+    }
+
+/**
+ * Starts decoding ahead from the current position of the specified codec.  Any
+ * stream-buffers decoded earlier are thrown away.
+ * @param c Codec to decode.
+ */
+    public void start( ICodec c )
+    {
+        start( c, null );
+    }
+
+/**
+ * Starts decoding ahead from the current position of the specified codec, with
+ * the specified stream-buffers already read from it ready to be taken first.
+ * Any stream-buffers decoded earlier are thrown away.
+ * @param c Codec to decode.
+ * @param buffers Stream-buffers read from the codec so far, or null.
+ */
+    public void start( ICodec c, List<SoundBuffer> buffers )
+    {
+        synchronized( lock )
+        {
+            halt();
+            codec = c;
+            if( buffers != null )
+                ready.addAll( buffers );
+            schedule();
+        }
+    }
+
+/**
+ * Takes the oldest stream-buffer which is ready, and lets a worker decode
+ * another.  If the specified codec is not the one being decoded, decoding
+ * starts over from the codec's current position.
+ * @param c Codec the source is playing.
+ * @return The next stream-buffer, or null if none are ready.
+ */
+    public SoundBuffer take( ICodec c )
+    {
+        synchronized( lock )
+        {
+            if( c != codec )
+                start( c );
+            if( ready.isEmpty() )
+                return null;
+            SoundBuffer buffer = ready.removeFirst();
+            schedule();
+            return buffer;
+        }
+    }
+
+/**
+ * Returns true once everything up to the end of the codec has been taken.  The
+ * codec is then no longer used by the workers.
+ * @return True if there is nothing left to decode ahead.
+ */
+    public boolean finished()
+    {
+        synchronized( lock )
+        {
+            return ( codec == null || ended ) && ready.isEmpty();
+        }
+    }
+
+/**
+ * Returns true once a worker has read to the end of the codec, or failed to
+ * read from it.  Stream-buffers read before then may not have been taken yet.
+ * @return True if the workers are done with the codec.
+ */
+    public boolean endOfStream()
+    {
+        synchronized( lock )
+        {
+            return ended;
+        }
+    }
+
+/**
+ * Stops decoding ahead, and throws away any stream-buffers which were decoded.
+ * Unlike halt(), this method does not wait for a worker which is reading from
+ * the codec, so it may be called while holding locks.  The codec must not be
+ * used until halt() has been called as well.
+ */
+    public void cancel()
+    {
+        synchronized( lock )
+        {
+            codec = null;
+            ended = false;
+            generation++;
+            while( !ready.isEmpty() )
+            {
+                ready.removeFirst().cleanup();
+            }
+        }
+    }
+
+/**
+ * Stops decoding ahead, and throws away any stream-buffers which were decoded.
+ * If a worker is reading from the codec, this method waits for it to finish,
+ * so the codec may be used safely when this method returns.
+ */
+    public void halt()
+    {
+        boolean interrupted = false;
+        synchronized( lock )
+        {
+            cancel();
+            while( reading )
+            {
+                try
+                {
+                    lock.wait();
+                }
+                catch( InterruptedException ie )
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        if( interrupted )
+            Thread.currentThread().interrupt();
+    }
+
+/**
+ * Decodes one stream-buffer.  This method is run from a worker thread.  If
+ * there is room for more, this decode-ahead gets back in line behind the other
+ * streams' rather than decoding the next one right away.
+ */
+    @Override
+    public void run()
+    {
+        ICodec c;
+        int gen;
+        synchronized( lock )
+        {
+            scheduled = false;
+            if( codec == null || ended || ready.size() >= capacity )
+                return;
+            c = codec;
+            gen = generation;
+            reading = true;
+        }
+
+        SoundBuffer buffer = null;
+        boolean end = true;
+        try
+        {
+            buffer = source.decode( c );
+            end = ( buffer == null || c.endOfStream() );
+        }
+        catch( RuntimeException re )
+        {
+            errorMessage( "Problem decoding stream '" + source.sourcename +
+                          "': " + re );
+        }
+        finally
+        {
+            synchronized( lock )
+            {
+                reading = false;
+                if( gen != generation )
+                {
+                    // halted while reading, so nobody wants this buffer:
+                    if( buffer != null )
+                        buffer.cleanup();
+                }
+                else
+                {
+                    if( buffer != null )
+                        ready.addLast( buffer );
+                    ended = end;
+                    schedule();
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+/**
+ * Queues this decode-ahead for a worker if there is room for another
+ * stream-buffer.  Must be called while holding the lock.
+ */
+    private void schedule()
+    {
+        if( scheduled || codec == null || ended || ready.size() >= capacity )
+            return;
+        scheduled = true;
+        if( !decoder.execute( this ) )
+        {
+            scheduled = false;
+            ended = true;
+        }
+    }
+
+/**
+ * Prints an error message.
+ * @param message Message to print.
+ */
+    private void errorMessage( String message )
+    {
+        logger.errorMessage( "DecodeAhead", message, 0 );
+    }
+}
@@ -0,0 +1,103 @@
+package paulscode.sound;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The DecodeTimes class keeps track of how much time each codec spends
+ * decoding.  Sources record every stream buffer they read, and the
+ * {@link paulscode.sound.DecodedCache DecodedCache} records every sound file
+ * it decodes all at once.  The totals are kept per codec class for the whole
+ * JVM, so they are shared by every SoundSystem and sound library, and may be
+ * read from any thread.  They are shown by every
+ * {@link paulscode.sound.SoundSystemMetrics SoundSystemMetrics} MBean.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class DecodeTimes
+{
+/**
+ * Number of reads made by each codec, keyed by the codec's simple class name.
+ */
+    private static final Map<String, Long> reads = new HashMap<String, Long>();
+
+/**
+ * Nanoseconds spent reading by each codec, keyed by the codec's simple class
+ * name.
+ */
+    private static final Map<String, Long> nanos = new HashMap<String, Long>();
+
+/**
+ * Records one read made by a codec.
+ * @param codec Codec which did the decoding.
+ * @param time Nanoseconds the read took.
+ */
+    public static synchronized void record( ICodec codec, long time )
+    {
+        if( codec == null )
+            return;
+        String name = codec.getClass().getSimpleName();
+        Long count = reads.get( name );
+        reads.put( name, count == null ? 1 : count + 1 );
+        Long total = nanos.get( name );
+        nanos.put( name, total == null ? time : total + time );
+    }
+
+/**
+ * Returns the number of reads made by each codec so far.
+ * @return Copy of the counts, keyed by the codec's simple class name.
+ */
+    public static synchronized Map<String, Long> getReads()
+    {
+        return new HashMap<String, Long>( reads );
+    }
+
+/**
+ * Returns the total time each codec has spent reading so far.
+ * @return Copy of the totals in nanoseconds, keyed by the codec's simple class
+ * name.
+ */
+    public static synchronized Map<String, Long> getNanos()
+    {
+        return new HashMap<String, Long>( nanos );
+    }
+
+/**
+ * Forgets everything recorded so far.
+ */
+    public static synchronized void reset()
+    {
+        reads.clear();
+        nanos.clear();
+    }
+}
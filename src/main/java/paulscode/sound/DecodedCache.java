@@ -0,0 +1,460 @@
+package paulscode.sound;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * The DecodedCache class keeps decoded sample data on disk, so that sound files
+ * only need to be decoded the first time they are loaded.  Entries are named
+ * after a hash of the sound file's URL, the codec which decoded it, whether
+ * the data was reverse-ordered, and the settings which limit how much of a
+ * file is decoded (SoundSystemConfig.setMaxFileSize() and
+ * setStreamingBufferSize()).  Each entry also records the length and
+ * modification time of the sound file it was decoded from, and is not used if
+ * either has changed, so checking the cache never reads the sound file itself.
+ * Cached data is read back using memory-mapped I/O, and if
+ * SoundSystemConfig.setOffHeapBuffers() is on, it is left in the mapped file
+ * rather than copied onto the Java heap.  The cache is off unless a directory
+ * is set by calling SoundSystemConfig.setDecodedCacheDirectory(), and files
+ * whose length and modification time can not be found out are never cached.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class DecodedCache
+{
+/**
+ * Identifies a cache file, and the version of its layout.
+ */
+    private static final int MAGIC = 0x50434D32;  // "PCM2"
+
+/**
+ * Extension of cache files.
+ */
+    private static final String EXTENSION = ".pcm";
+
+/**
+ * Number of loads which were read from the cache, by every SoundSystem in the
+ * JVM (they all share the cache directory).
+ */
+    private static long hits = 0;
+
+/**
+ * Number of loads which had to be decoded, by every SoundSystem in the JVM.
+ */
+    private static long misses = 0;
+
+/**
+ * Reads all of the audio data from a sound file, from the cache if it has been
+ * decoded before, otherwise from the specified codec, saving the result in
+ * the cache.  The codec should already be set up to reverse-order the data if
+ * required.  The codec is initialized and cleaned up by this method.
+ * @param codec Codec for reading the sound file.
+ * @param url URL of the sound file.
+ * @param reverseByteOrder Whether the codec reverse-orders the data.
+ * @return The sample data and audio format, or null if there was a problem.
+ */
+    public static SoundBuffer readAll( ICodec codec, URL url,
+                                       boolean reverseByteOrder )
+    {
+        File directory = SoundSystemConfig.getDecodedCacheDirectory();
+        File file = null;
+        long[] source = null;
+        if( directory != null )
+        {
+            String key = key( url, codec, reverseByteOrder );
+            source = source( url );
+            if( key != null && source != null )
+            {
+                file = new File( directory, key + EXTENSION );
+                SoundBuffer buffer = read( file, source );
+                if( buffer != null )
+                {
+                    count( true );
+                    return buffer;
+                }
+                count( false );
+            }
+        }
+
+        codec.initialize( url );
+        long start = System.nanoTime();
+        SoundBuffer buffer = codec.readAll();
+        DecodeTimes.record( codec, System.nanoTime() - start );
+        codec.cleanup();
+
+        if( file != null && buffer != null && buffer.size() > 0 )
+            write( file, buffer, source );
+        return buffer;
+    }
+
+/**
+ * Returns the number of loads which were read from the cache.  The count is
+ * for every SoundSystem in the JVM, since they all share the cache.
+ * @return Cache hits.
+ */
+    public static synchronized long getHits()
+    {
+        return hits;
+    }
+
+/**
+ * Returns the number of loads which had to be decoded while the cache was on.
+ * The count is for every SoundSystem in the JVM, since they all share the
+ * cache.
+ * @return Cache misses.
+ */
+    public static synchronized long getMisses()
+    {
+        return misses;
+    }
+
+/**
+ * Deletes every file in the cache directory.
+ */
+    public static void clear()
+    {
+        File directory = SoundSystemConfig.getDecodedCacheDirectory();
+        if( directory == null )
+            return;
+        File[] files = directory.listFiles();
+        if( files == null )
+            return;
+        for( int i = 0; i < files.length; i++ )
+        {
+            if( files[i].getName().endsWith( EXTENSION ) )
+                files[i].delete();
+        }
+    }
+
+/**
+ * Counts a cache hit or miss.
+ * @param hit True for a hit.
+ */
+    private static synchronized void count( boolean hit )
+    {
+        if( hit )
+            hits++;
+        else
+            misses++;
+    }
+
+/**
+ * Works out the name of the cache entry for a sound file.
+ * @param url URL of the sound file.
+ * @param codec Codec which decodes the file.
+ * @param reverseByteOrder Whether the codec reverse-orders the data.
+ * @return Hexadecimal hash, or null if it could not be worked out.
+ */
+    private static String key( URL url, ICodec codec,
+                               boolean reverseByteOrder )
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance( "SHA-256" );
+        }
+        catch( NoSuchAlgorithmException nsae )
+        {
+            errorMessage( "SHA-256 not available, decoded cache disabled" );
+            return null;
+        }
+
+        Charset utf8 = Charset.forName( "UTF-8" );
+        digest.update( url.toExternalForm().getBytes( utf8 ) );
+        digest.update( (byte) 0 );
+        digest.update( codec.getClass().getName().getBytes( utf8 ) );
+        digest.update( (byte) (reverseByteOrder ? 1 : 0) );
+        // these limit how much of the file the codecs decode:
+        ByteBuffer settings = ByteBuffer.allocate( 8 );
+        settings.putInt( SoundSystemConfig.getMaxFileSize() );
+        settings.putInt( SoundSystemConfig.getStreamingBufferSize() );
+        digest.update( settings.array() );
+
+        byte[] hash = digest.digest();
+        StringBuilder key = new StringBuilder( hash.length * 2 );
+        for( int i = 0; i < hash.length; i++ )
+        {
+            key.append( Character.forDigit( (hash[i] >> 4) & 0xF, 16 ) );
+            key.append( Character.forDigit( hash[i] & 0xF, 16 ) );
+        }
+        return key.toString();
+    }
+
+/**
+ * Finds out the length and modification time of a sound file, without reading
+ * it.
+ * @param url URL of the sound file.
+ * @return Length in bytes and modification time, or null if neither could be
+ * found out.
+ */
+    private static long[] source( URL url )
+    {
+        long length = -1;
+        long modified = 0;
+        if( url.getProtocol().equals( "file" ) )
+        {
+            try
+            {
+                File file = new File( url.toURI() );
+                if( !file.isFile() )
+                    return null;
+                length = file.length();
+                modified = file.lastModified();
+            }
+            catch( URISyntaxException use )
+            {
+                return null;
+            }
+            catch( IllegalArgumentException iae )
+            {
+                return null;
+            }
+        }
+        else
+        {
+            URLConnection connection = null;
+            try
+            {
+                connection = url.openConnection();
+                length = connection.getContentLengthLong();
+                modified = connection.getLastModified();
+            }
+            catch( IOException ioe )
+            {
+                return null;
+            }
+            finally
+            {
+                if( connection instanceof HttpURLConnection )
+                    ( (HttpURLConnection) connection ).disconnect();
+            }
+        }
+        if( length < 0 && modified == 0 )
+            return null;
+        return new long[] { length, modified };
+    }
+
+/**
+ * Reads a cache entry.
+ * @param file Cache file.
+ * @param source Length and modification time of the sound file.
+ * @return The sample data and audio format, or null if there is no valid
+ * entry.
+ */
+    private static SoundBuffer read( File file, long[] source )
+    {
+        if( !file.isFile() )
+            return null;
+
+        RandomAccessFile raf = null;
+        try
+        {
+            raf = new RandomAccessFile( file, "r" );
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer map = channel.map( FileChannel.MapMode.READ_ONLY,
+                                                0, channel.size() );
+            if( map.getInt() != MAGIC )
+                throw new IOException( "not a decoded cache file" );
+            // the sound file changed, so the entry will be replaced:
+            if( map.getLong() != source[0] || map.getLong() != source[1] )
+                return null;
+            byte[] name = new byte[map.getInt()];
+            map.get( name );
+            AudioFormat.Encoding encoding = encoding(
+                               new String( name, Charset.forName( "UTF-8" ) ) );
+            float sampleRate = map.getFloat();
+            int sampleSizeInBits = map.getInt();
+            int channels = map.getInt();
+            int frameSize = map.getInt();
+            float frameRate = map.getFloat();
+            boolean bigEndian = map.get() != 0;
+            int length = map.getInt();
+            if( length != map.remaining() )
+                throw new IOException( "truncated decoded cache file" );
+            AudioFormat format = new AudioFormat( encoding, sampleRate,
+                                                  sampleSizeInBits, channels,
+                                                  frameSize, frameRate,
+                                                  bigEndian );
+            // leave the data in the mapped file if it may be kept off-heap:
+            if( SoundSystemConfig.getOffHeapBuffers() )
+                return new SoundBuffer( map.slice(), format );
+            byte[] audioData = new byte[length];
+            map.get( audioData );
+            return new SoundBuffer( audioData, format );
+        }
+        catch( Exception e )
+        {
+            // damaged or from an older layout, so throw it away:
+            close( raf );
+            raf = null;
+            file.delete();
+            return null;
+        }
+        finally
+        {
+            close( raf );
+        }
+    }
+
+/**
+ * Saves a cache entry.  The data is written to a temporary file first, so that
+ * other threads and programs never see a partly written entry.
+ * @param file Cache file.
+ * @param buffer The sample data and audio format to save.
+ * @param source Length and modification time of the sound file.
+ */
+    private static void write( File file, SoundBuffer buffer, long[] source )
+    {
+        File directory = file.getParentFile();
+        if( !directory.isDirectory() && !directory.mkdirs() )
+        {
+            errorMessage( "Unable to create decoded cache directory '" +
+                          directory + "'" );
+            return;
+        }
+
+        AudioFormat format = buffer.audioFormat;
+        byte[] name = format.getEncoding().toString().getBytes(
+                                                Charset.forName( "UTF-8" ) );
+        ByteBuffer header = ByteBuffer.allocate( 49 + name.length );
+        header.putInt( MAGIC );
+        header.putLong( source[0] );
+        header.putLong( source[1] );
+        header.putInt( name.length );
+        header.put( name );
+        header.putFloat( format.getSampleRate() );
+        header.putInt( format.getSampleSizeInBits() );
+        header.putInt( format.getChannels() );
+        header.putInt( format.getFrameSize() );
+        header.putFloat( format.getFrameRate() );
+        header.put( (byte) (format.isBigEndian() ? 1 : 0) );
+        header.putInt( buffer.size() );
+        header.flip();
+
+        File temp = null;
+        RandomAccessFile raf = null;
+        try
+        {
+            temp = File.createTempFile( "decode", ".tmp", directory );
+            raf = new RandomAccessFile( temp, "rw" );
+            FileChannel channel = raf.getChannel();
+            channel.write( header );
+            ByteBuffer data = buffer.isDirect() ? buffer.directData.duplicate()
+                                          : ByteBuffer.wrap( buffer.audioData );
+            while( data.hasRemaining() )
+            {
+                channel.write( data );
+            }
+            raf.close();
+            raf = null;
+            try
+            {
+                Files.move( temp.toPath(), file.toPath(),
+                            StandardCopyOption.ATOMIC_MOVE,
+                            StandardCopyOption.REPLACE_EXISTING );
+            }
+            catch( AtomicMoveNotSupportedException amnse )
+            {
+                Files.move( temp.toPath(), file.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING );
+            }
+            temp = null;
+        }
+        catch( IOException ioe )
+        {
+            errorMessage( "Unable to write decoded cache file '" + file +
+                          "': " + ioe.getMessage() );
+        }
+        finally
+        {
+            close( raf );
+            if( temp != null )
+                temp.delete();
+        }
+    }
+
+/**
+ * Returns the encoding with the specified name.
+ * @param name Name of the encoding.
+ * @return One of the standard encodings, or a new one.
+ */
+    private static AudioFormat.Encoding encoding( String name )
+    {
+        if( name.equals( AudioFormat.Encoding.PCM_SIGNED.toString() ) )
+            return AudioFormat.Encoding.PCM_SIGNED;
+        if( name.equals( AudioFormat.Encoding.PCM_UNSIGNED.toString() ) )
+            return AudioFormat.Encoding.PCM_UNSIGNED;
+        return new AudioFormat.Encoding( name );
+    }
+
+/**
+ * Closes a file, ignoring any problems.
+ * @param raf File to close, or null.
+ */
+    private static void close( RandomAccessFile raf )
+    {
+        if( raf == null )
+            return;
+        try
+        {
+            raf.close();
+        }
+        catch( IOException ioe )
+        {}
+    }
+
+/**
+ * Prints an error message.
+ * @param message Message to print.
+ */
+    private static void errorMessage( String message )
+    {
+        SoundSystemConfig.getLogger().errorMessage( "DecodedCache", message,
+                                                    0 );
+    }
+}
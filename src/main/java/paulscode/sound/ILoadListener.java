@@ -0,0 +1,16 @@
+package paulscode.sound;
+
+public interface ILoadListener
+{
+    /**
+     * Notifies implementation that one of the sounds passed to
+     * SoundSystem.loadSounds() finished loading.  Called from the command
+     * thread, so implementations should return quickly.
+     * @param filename Filename/identifier of the sound.
+     * @param success True if the sound is ready to play.
+     * @param finished Number of sounds in the set which have finished so far.
+     * @param total Number of sounds in the set.
+    */
+    public void soundLoaded( String filename, boolean success, int finished,
+                             int total );
+}
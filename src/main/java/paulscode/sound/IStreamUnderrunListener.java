@@ -0,0 +1,17 @@
+package paulscode.sound;
+
+public interface IStreamUnderrunListener extends IStreamListener
+{
+    /**
+     * Notifies implementation that a streaming source ran out of queued audio
+     * before reaching the end of its stream, so playback was interrupted.
+     * Frequent underruns mean the stream-buffers are too small or too few
+     * (see SoundSystemConfig.setStreamingBufferSize() and
+     * SoundSystemConfig.setNumberStreamingBuffers()), or that decoding can
+     * not keep up.  Listeners are added with
+     * SoundSystemConfig.addStreamListener().
+     * @param sourcename String identifier of the source which ran out.
+     * @param underruns Number of times this source has run out so far.
+    */
+    public void streamUnderrun( String sourcename, int underruns );
+}
@@ -1,9 +1,12 @@
 package paulscode.sound;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.sound.sampled.AudioFormat;
 
@@ -64,6 +67,8 @@ public class Library
 
 /**
  * Map containing sound file data for easy lookup by filename / identifier.
+ * Normally a {@link paulscode.sound.SoundBufferMap SoundBufferMap}, which keeps
+ * the loaded sample data within the memory budget.
  */
     protected HashMap<String, SoundBuffer> bufferMap = null;
 
@@ -108,9 +113,36 @@ public class Library
     private int nextNormalChannel = 0;
 
 /**
- * Handles processing for all streaming sources.
+ * Handle processing for streaming sources.  Each streaming channel is handled
+ * by one of the threads.
  */
+    protected StreamThread[] streamThreads;
+
+/**
+ * The first of the stream threads, or null when the library is not running.
+ * @deprecated Streaming sources are shared out between several threads, so
+ * use {@link #streamThreads streamThreads} instead.
+ */
+    @Deprecated
     protected StreamThread streamThread;
+
+/**
+ * The stream thread handling each streaming channel, assigned the first time a
+ * source streams on the channel.
+ */
+    private HashMap<Channel, StreamThread> channelStreamThreads =
+                                       new HashMap<Channel, StreamThread>();
+
+/**
+ * Stream thread to assign to the next channel.
+ */
+    private int nextStreamThread = 0;
+
+/**
+ * Worker threads which decode streaming sources ahead of playback, or null if
+ * they are decoded on the stream thread.
+ */
+    protected StreamDecoder streamDecoder = null;
     
 /**
  * Whether or not the library requires reversal of audio data byte order.
@@ -129,7 +161,7 @@ public class Library
         logger = SoundSystemConfig.getLogger();
         
         // instantiate the buffer map:
-        bufferMap = new HashMap<String, SoundBuffer>();
+        bufferMap = new SoundBufferMap( this );
 
         // instantiate the source map:
         sourceMap = new HashMap<String, Source>();
@@ -146,8 +178,17 @@ public class Library
         normalChannelSourceNames = new String[
                                   SoundSystemConfig.getNumberNormalChannels() ];
         
-        streamThread = new StreamThread();
-        streamThread.start();
+        if( SoundSystemConfig.getNumberDecoderThreads() > 0 )
+            streamDecoder = new StreamDecoder(
+                                  SoundSystemConfig.getNumberDecoderThreads() );
+        streamThreads = new StreamThread[
+                                   SoundSystemConfig.getNumberStreamThreads() ];
+        for( int i = 0; i < streamThreads.length; i++ )
+        {
+            streamThreads[i] = new StreamThread( streamDecoder );
+            streamThreads[i].start();
+        }
+        streamThread = streamThreads[0];
     }
 
 
@@ -163,27 +204,24 @@ public class Library
  */
     public void cleanup()
     {
-        streamThread.kill();
-        streamThread.interrupt();
-        
-        // wait up to 5 seconds for stream thread to end:
-        for( int i = 0; i < 50; i++ )
+        for( int i = 0; i < streamThreads.length; i++ )
         {
-            if( !streamThread.alive() )
-                break;
-            try
-            {
-                Thread.sleep(100);
-            }
-            catch(Exception e)
-            {}
+            streamThreads[i].kill();
+            streamThreads[i].wake();
         }
         
-        if( streamThread.alive() )
+        // wait up to 5 seconds for each stream thread to end:
+        for( int i = 0; i < streamThreads.length; i++ )
         {
-            errorMessage( "Stream thread did not die!" );
-            message( "Ignoring errors... continuing clean-up." );
+            streamThreads[i].waitForDeath( 5000 );
+        
+            if( streamThreads[i].alive() )
+            {
+                errorMessage( "Stream thread did not die!" );
+                message( "Ignoring errors... continuing clean-up." );
+            }
         }
+        channelStreamThreads.clear();
         
         if( midiChannel != null )
         {
@@ -232,8 +270,14 @@ public class Library
         }
         sourceMap.clear();
         sourceMap = null;
+
+        // sources are cleaned up, so no more streams need decoding:
+        if( streamDecoder != null )
+            streamDecoder.shutdown();
+        streamDecoder = null;
         
         listener = null;
+        streamThreads = new StreamThread[0];
         streamThread = null;
     }
     
@@ -306,6 +350,18 @@ public class Library
         return true;
     }
 
+/**
+ * Checks whether the sample data for a sound is loaded.  This method may only
+ * be called from the command thread.
+ * @param filename Filename/identifier of the sound.
+ * @return True if the sound is loaded.
+ */
+    public boolean soundLoaded( String filename )
+    {
+        return bufferMap != null && filename != null
+               && bufferMap.containsKey( filename );
+    }
+
 /**
  * Returns the filenames of all previously loaded sounds.
  * @return LinkedList of String filenames.
@@ -359,6 +415,198 @@ public class Library
         bufferMap.remove( filename );
     }
 
+/**
+ * Returns the sample data of all loaded sounds, least recently used first.
+ * The buffers are shared, not copied, so SoundSystem.switchLibrary() can hand
+ * them to the new library without decoding the files again.
+ * @return Map of filenames/identifiers to sample data.
+ */
+    public Map<String, SoundBuffer> getLoadedSounds()
+    {
+        if( bufferMap == null )
+            return new LinkedHashMap<String, SoundBuffer>();
+        return new LinkedHashMap<String, SoundBuffer>( bufferMap );
+    }
+
+/**
+ * Unloads the least recently used sounds until the loaded sample data fits
+ * within the budget set by SoundSystemConfig.setBufferMemoryBudget().  Sounds
+ * used by an existing source are never unloaded, and neither is the sound
+ * which was just loaded.  Unloaded sounds are loaded again automatically the
+ * next time a source is created for them.  Called by the SoundBufferMap each
+ * time a sound is stored.
+ * @param keep Filename/identifier of the sound which was just loaded.
+ */
+    public void evictSounds( String keep )
+    {
+        long budget = SoundSystemConfig.getBufferMemoryBudget();
+        if( budget <= 0 || !( bufferMap instanceof SoundBufferMap ) )
+            return;
+        SoundBufferMap map = (SoundBufferMap) bufferMap;
+        long bytes = map.getBytes();
+        if( bytes <= budget )
+            return;
+        bytes = map.recount();
+        if( bytes <= budget )
+            return;
+
+        // pick sounds to unload, least recently used first:
+        ArrayList<String> evict = new ArrayList<String>();
+        Iterator<Map.Entry<String, SoundBuffer>> iter =
+                                                   map.entrySet().iterator();
+        Map.Entry<String, SoundBuffer> entry;
+        while( bytes > budget && iter.hasNext() )
+        {
+            entry = iter.next();
+            // sounds attached to sources can't be unloaded:
+            if( entry.getKey().equals( keep ) || entry.getValue() == null
+                || entry.getValue().references() > 0 )
+                continue;
+            evict.add( entry.getKey() );
+            bytes -= entry.getValue().size();
+        }
+
+        for( int i = 0; i < evict.size(); i++ )
+        {
+            evictSound( evict.get( i ) );
+            map.countEviction();
+        }
+    }
+
+/**
+ * Called after sources have been removed, so that libraries which keep their
+ * own copies of sample data can free any which are no longer used (see
+ * SoundBuffer.references()).
+ */
+    protected void buffersReleased()
+    {}
+
+/**
+ * Unloads a sound to stay within the memory budget.  The sound is not used by
+ * any source.  Libraries which keep their own copy of the sample data should
+ * override this method to free it.
+ * @param filename Filename/identifier of the sound to unload.
+ */
+    protected void evictSound( String filename )
+    {
+        unloadSound( filename );
+    }
+
+/**
+ * Returns the number of bytes of sample data currently loaded.
+ * @return Size of the loaded sample data, or zero if unknown.
+ */
+    public long getLoadedBytes()
+    {
+        if( bufferMap instanceof SoundBufferMap )
+            return ( (SoundBufferMap) bufferMap ).getBytes();
+        return 0;
+    }
+
+/**
+ * Counts a source looking up its sample data, as a buffer hit if it was
+ * already loaded or a miss if it was not.  Called by libraries when they
+ * create a source, but not when they only check whether a sound is loaded.
+ * @param found True if the sample data was already loaded.
+ */
+    protected void countBufferLookup( boolean found )
+    {
+        if( bufferMap instanceof SoundBufferMap )
+            ( (SoundBufferMap) bufferMap ).countLookup( found );
+    }
+
+/**
+ * Returns the number of sources which found their sample data already loaded.
+ * @return Hit count.
+ */
+    public long getBufferHits()
+    {
+        if( bufferMap instanceof SoundBufferMap )
+            return ( (SoundBufferMap) bufferMap ).getHits();
+        return 0;
+    }
+
+/**
+ * Returns the number of sources which did not find their sample data loaded.
+ * @return Miss count.
+ */
+    public long getBufferMisses()
+    {
+        if( bufferMap instanceof SoundBufferMap )
+            return ( (SoundBufferMap) bufferMap ).getMisses();
+        return 0;
+    }
+
+/**
+ * Returns the number of sounds unloaded to stay within the memory budget.
+ * @return Eviction count.
+ */
+    public long getBufferEvictions()
+    {
+        if( bufferMap instanceof SoundBufferMap )
+            return ( (SoundBufferMap) bufferMap ).getEvictions();
+        return 0;
+    }
+
+/**
+ * Returns the number of channels of the specified type.
+ * @param type Channel type (SoundSystemConfig.TYPE_NORMAL or
+ * SoundSystemConfig.TYPE_STREAMING).
+ * @return Number of channels.
+ */
+    public int getChannels( int type )
+    {
+        List<Channel> channels = channels( type );
+        if( channels == null )
+            return 0;
+        return channels.size();
+    }
+
+/**
+ * Returns the number of channels of the specified type which are in use by a
+ * source which is playing or paused.  This may be called from any thread, so
+ * the result is only a snapshot.  Holds SoundSystemConfig.THREAD_SYNC while
+ * counting, since the command thread changes the channel lists.
+ * @param type Channel type (SoundSystemConfig.TYPE_NORMAL or
+ * SoundSystemConfig.TYPE_STREAMING).
+ * @return Number of active channels.
+ */
+    public int getActiveChannels( int type )
+    {
+        List<Channel> channels = channels( type );
+        if( channels == null )
+            return 0;
+
+        int active = 0;
+        Source source;
+        synchronized( SoundSystemConfig.THREAD_SYNC )
+        {
+            for( Channel channel : channels )
+            {
+                source = channel.attachedSource;
+                if( source != null && source.channel == channel
+                    && source.active() && !source.stopped() )
+                    active++;
+            }
+        }
+        return active;
+    }
+
+/**
+ * Returns the list of channels of the specified type.
+ * @param type Channel type (SoundSystemConfig.TYPE_NORMAL or
+ * SoundSystemConfig.TYPE_STREAMING).
+ * @return The channels, or null if there are none.
+ */
+    private List<Channel> channels( int type )
+    {
+        if( type == SoundSystemConfig.TYPE_STREAMING )
+            return streamingChannels;
+        if( type == SoundSystemConfig.TYPE_NORMAL )
+            return normalChannels;
+        return null;
+    }
+
 /**
  * Opens a direct line for streaming audio data.
  * @param audioFormat Format that the data will be in.
@@ -450,9 +698,20 @@ public class Library
  */
     public void setPosition( String sourcename, float x, float y, float z )
     {
-        Source mySource = sourceMap.get( sourcename );
-        if( mySource != null )
-            mySource.setPosition( x, y, z );
+        setPosition( sourceMap.get( sourcename ), x, y, z );
+    }
+
+/**
+ * Changes the specified source's position.
+ * @param source The source to move.
+ * @param x Destination X coordinate.
+ * @param y Destination Y coordinate.
+ * @param z Destination Z coordinate.
+ */
+    public void setPosition( Source source, float x, float y, float z )
+    {
+        if( source != null )
+            source.setPosition( x, y, z );
     }
     
 /**
@@ -514,9 +773,20 @@ public class Library
  */
     public void setVelocity( String sourcename, float x, float y, float z )
     {
-        Source mySource = sourceMap.get( sourcename );
-        if( mySource != null )
-            mySource.setVelocity( x, y, z );
+        setVelocity( sourceMap.get( sourcename ), x, y, z );
+    }
+
+/**
+ * Sets the specified source's velocity, for use in Doppler effect.
+ * @param source The source to change.
+ * @param x Velocity along world x-axis.
+ * @param y Velocity along world y-axis.
+ * @param z Velocity along world z-axis.
+ */
+    public void setVelocity( Source source, float x, float y, float z )
+    {
+        if( source != null )
+            source.setVelocity( x, y, z );
     }
 
 /**
@@ -640,8 +910,7 @@ public class Library
 
             int processed = source.feedRawAudioData( channel, buffer );
             channel.attachedSource = source;
-            streamThread.watch( source );
-            streamThread.interrupt();
+            watch( source );
             return processed;
         }
 
@@ -705,10 +974,7 @@ public class Library
                 channel.attachedSource = source;
                 source.play( channel );
                 if( source.toStream )
-                {
-                    streamThread.watch( source );
-                    streamThread.interrupt();
-                }
+                    watch( source );
             }
         }
     }
@@ -730,11 +996,19 @@ public class Library
         }
         else
         {
-            Source mySource = sourceMap.get( sourcename );
-            if( mySource != null )
-                mySource.stop();
+            stop( sourceMap.get( sourcename ) );
         }
     }
+
+/**
+ * Stops the specified source.
+ * @param source The source to stop.
+ */
+    public void stop( Source source )
+    {
+        if( source != null )
+            source.stop();
+    }
     
 /**
  * Pauses the specified source. 
@@ -753,11 +1027,19 @@ public class Library
         }
         else
         {
-            Source mySource = sourceMap.get( sourcename );
-            if( mySource != null )
-                mySource.pause();
+            pause( sourceMap.get( sourcename ) );
         }
     }
+
+/**
+ * Pauses the specified source.
+ * @param source The source to pause.
+ */
+    public void pause( Source source )
+    {
+        if( source != null )
+            source.pause();
+    }
     
 /**
  * Rewinds the specified source. 
@@ -773,7 +1055,10 @@ public class Library
         {
             Source mySource = sourceMap.get( sourcename );
             if( mySource != null )
+            {
                 mySource.rewind();
+                wakeStreamThread( mySource );
+            }
         }
     }
 
@@ -844,18 +1129,27 @@ public class Library
         }
         else
         {
-            Source mySource = sourceMap.get( sourcename );
-            if( mySource != null )
-            {
-                float newVolume = value;
-                if( newVolume < 0.0f )
-                    newVolume = 0.0f;
-                else if( newVolume > 1.0f )
-                    newVolume = 1.0f;
-
-                mySource.sourceVolume = newVolume;
-                mySource.positionChanged();
-            }
+            setVolume( sourceMap.get( sourcename ), value );
+        }
+    }
+
+/**
+ * Sets the specified source's volume.
+ * @param source The source to change.
+ * @param value A float value ( 0.0f - 1.0f ).
+ */
+    public void setVolume( Source source, float value )
+    {
+        if( source != null )
+        {
+            float newVolume = value;
+            if( newVolume < 0.0f )
+                newVolume = 0.0f;
+            else if( newVolume > 1.0f )
+                newVolume = 1.0f;
+
+            source.sourceVolume = newVolume;
+            source.positionChanged();
         }
     }
     
@@ -889,19 +1183,26 @@ public class Library
     public void setPitch( String sourcename, float value )
     {
         if( !midiSourcename( sourcename ) )
+            setPitch( sourceMap.get( sourcename ), value );
+    }
+
+/**
+ * Manually sets the specified source's pitch.
+ * @param source The source to change.
+ * @param value A float value ( 0.5f - 2.0f ).
+ */
+    public void setPitch( Source source, float value )
+    {
+        if( source != null )
         {
-            Source mySource = sourceMap.get( sourcename );
-            if( mySource != null )
-            {
-                float newPitch = value;
-                if( newPitch < 0.5f )
-                    newPitch = 0.5f;
-                else if( newPitch > 2.0f )
-                    newPitch = 2.0f;
-
-                mySource.setPitch( newPitch );
-                mySource.positionChanged();
-            }
+            float newPitch = value;
+            if( newPitch < 0.5f )
+                newPitch = 0.5f;
+            else if( newPitch > 2.0f )
+                newPitch = 2.0f;
+
+            source.setPitch( newPitch );
+            source.positionChanged();
         }
     }
 
@@ -1085,6 +1386,8 @@ public class Library
         if( mySource != null )
             mySource.cleanup(); // end the source, free memory
         sourceMap.remove( sourcename );
+        if( mySource != null )
+            buffersReleased();
     }
 
 /**
@@ -1096,6 +1399,7 @@ public class Library
         Iterator<String> iter = keys.iterator();
         String sourcename;
         Source srcData;
+        boolean removed = false;
 
         // loop through and cleanup all the sources:
         while( iter.hasNext() )
@@ -1107,14 +1411,82 @@ public class Library
             {
                 srcData.cleanup(); // end the source, free memory
                 iter.remove();
+                removed = true;
             }
         }
+        if( removed )
+            buffersReleased();
     }
 
 /* ########################################################################## */
 /*                         END OVERRIDE METHODS                               */
 /* ########################################################################## */
 
+/**
+ * Hands a streaming source to the stream thread for the channel it is playing
+ * on, and wakes that thread up.  If the source was being streamed by another
+ * stream thread (because it last played on a different channel), it is taken
+ * away from that one first.
+ * @param source Source to stream.
+ */
+    private void watch( Source source )
+    {
+        StreamThread thread = streamThread( source.channel );
+        if( errorCheck( thread == null,
+                        "No stream threads running in method 'watch'" ) )
+            return;
+        StreamThread previous = source.streamThread;
+        if( previous != null && previous != thread )
+            previous.unwatch( source );
+        thread.watch( source );
+        thread.wake();
+    }
+
+/**
+ * Returns the stream thread which handles the specified channel.  Channels are
+ * shared out between the stream threads in turn, the first time each one is
+ * used.  This method may only be called from the command thread.
+ * @param channel Streaming channel.
+ * @return Stream thread for the channel, or null if the library has been
+ * cleaned up.
+ */
+    protected StreamThread streamThread( Channel channel )
+    {
+        StreamThread thread = channelStreamThreads.get( channel );
+        if( thread == null )
+        {
+            if( streamThreads.length == 0 )
+                return null;
+            thread = streamThreads[nextStreamThread];
+            nextStreamThread = ( nextStreamThread + 1 ) % streamThreads.length;
+            channelStreamThreads.put( channel, thread );
+        }
+        return thread;
+    }
+
+/**
+ * Wakes up the stream thread which is streaming the specified source, so it
+ * notices a change right away.
+ * @param source Streaming source.
+ */
+    private void wakeStreamThread( Source source )
+    {
+        StreamThread thread = source.streamThread;
+        if( thread != null )
+            thread.wake();
+    }
+
+/**
+ * Wakes up all of the stream threads.
+ */
+    protected void wakeStreamThreads()
+    {
+        for( int i = 0; i < streamThreads.length; i++ )
+        {
+            streamThreads[i].wake();
+        }
+    }
+
 /**
  * Returns a handle to the next available channel.  If the specified
  * source is a normal source, a normal channel is returned, and if it is a
@@ -1325,7 +1697,10 @@ public class Library
         {
             Source mySource = sourceMap.get( sourcename );
             if( mySource != null )
+            {
                 mySource.fadeOut( filenameURL, milis );
+                wakeStreamThread( mySource );
+            }
         }
     }
 
@@ -1354,7 +1729,10 @@ public class Library
         {
             Source mySource = sourceMap.get( sourcename );
             if( mySource != null )
+            {
                 mySource.fadeOutIn( filenameURL, milisOut, milisIn );
+                wakeStreamThread( mySource );
+            }
         }
     }
 
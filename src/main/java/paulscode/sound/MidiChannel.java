@@ -317,7 +317,6 @@ public class MidiChannel implements MetaEventListener
             try
             {
                 fadeThread.kill();        // end the fade effects thread.
-                fadeThread.interrupt();   // wake the thread up so it can end.
             }
             catch( Exception e )
             {
@@ -327,12 +326,7 @@ public class MidiChannel implements MetaEventListener
             if( !killException )
             {
                 // wait up to 5 seconds for fade effects thread to end:
-                for( int i = 0; i < 50; i++ )
-                {
-                    if( !fadeThread.alive() )
-                        break;
-                    try{Thread.sleep( 100 );}catch(InterruptedException e){}
-                }
+                fadeThread.waitForDeath( 5000 );
             }
 
             // Let user know if there was a problem ending the fade thread
@@ -441,7 +435,7 @@ public class MidiChannel implements MetaEventListener
             fadeThread = new FadeThread();
             fadeThread.start();
         }
-        fadeThread.interrupt();
+        fadeThread.wake();
     }
 
 /**
@@ -488,7 +482,7 @@ public class MidiChannel implements MetaEventListener
             fadeThread = new FadeThread();
             fadeThread.start();
         }
-        fadeThread.interrupt();
+        fadeThread.wake();
     }
 
 /**
@@ -1587,10 +1581,10 @@ public class MidiChannel implements MetaEventListener
             {
                 // if not currently fading in or out, put the thread to sleep
                 if( fadeOutGain == -1.0f && fadeInGain == 1.0f )
-                    snooze( 3600000 );
+                    waitForWake( 3600000 );
                 checkFadeOut();
                 // only update every 50 miliseconds (no need to peg the cpu)
-                snooze( 50 );
+                waitForWake( 50 );
             }
             // Important!
             cleanup();
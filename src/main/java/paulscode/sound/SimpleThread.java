@@ -1,12 +1,15 @@
 package paulscode.sound;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * The SimpleThread class is the template used to create all thread classes 
  * used by in the SoundSystem library.  It provides methods for common actions 
- * like sleeping, killing, and checking liveness.  NOTE: super.cleanup() must 
- * be called at the bottom of overriden cleanup() methods, and cleanup()
- * must be called at the bottom of the run() method for all extended classes.  
+ * like sleeping, waking, killing, and checking liveness.  NOTE:
+ * super.cleanup() must be called at the bottom of overriden cleanup() methods,
+ * and cleanup() must be called at the bottom of the run() method for all
+ * extended classes.  
  *<br><br>
  *<b><i>    SoundSystem License:</b></i><br><b><br>
  *    You are free to use this library for any purpose, commercial or otherwise.
@@ -68,6 +71,29 @@ public class SimpleThread extends Thread
  * True when thread should end.
  */
     private boolean kill = false;
+
+/**
+ * Value of wakeRequestTime when wake() has not been called.
+ */
+    private static final long NOT_REQUESTED = Long.MIN_VALUE;
+
+/**
+ * System.nanoTime() when wake() was first called since the thread last woke
+ * up, or NOT_REQUESTED.
+ */
+    private final AtomicLong wakeRequestTime = new AtomicLong( NOT_REQUESTED );
+
+/**
+ * Nanoseconds between the most recent call to wake() and the thread actually
+ * waking up.
+ */
+    private volatile long lastWakeLatency = 0;
+
+/**
+ * Longest time in nanoseconds it has taken the thread to wake up after a call
+ * to wake().
+ */
+    private volatile long maxWakeLatency = 0;
     
 /**
  * Removes all references to instantiated objects, and changes the thread's 
@@ -123,9 +149,8 @@ public class SimpleThread extends Thread
     private void rerun()
     {
         kill( SET, true );
-        while( alive( GET, XXX ) )
+        while( !waitForDeath( 3600000 ) )
         {
-            snooze( 100 );
         }
         alive( SET, true );
         kill( SET, false );
@@ -141,6 +166,29 @@ public class SimpleThread extends Thread
     {
         return alive( GET, XXX );
     }
+
+/**
+ * Waits for the cleanup() method to finish, or for the specified number of
+ * milliseconds to pass, whichever comes first.  This method does not wake the
+ * thread or tell it to die (see kill()).
+ * @param milliseconds Longest time to wait.
+ * @return True if the thread is no longer alive.
+ */
+    public synchronized boolean waitForDeath( long milliseconds )
+    {
+        long deadline = System.currentTimeMillis() + milliseconds;
+        long remaining = milliseconds;
+        while( alive && remaining > 0 )
+        {
+            try
+            {
+                wait( remaining );
+            }
+            catch( InterruptedException e ){}
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return !alive;
+    }
     
 /**
  * Causes method dying() to return true, letting the thread know it needs to 
@@ -149,6 +197,39 @@ public class SimpleThread extends Thread
     public void kill()
     {
         kill( SET, true );
+        wake();
+    }
+
+/**
+ * Wakes the thread up if it is inside waitForWake(), or causes its next call
+ * to waitForWake() to return immediately.  Unlike interrupt(), this never
+ * disturbs the thread while it is doing something other than waiting (such as
+ * reading from a file).  This method may be called from any thread.
+ */
+    public void wake()
+    {
+        if( wakeRequestTime.compareAndSet( NOT_REQUESTED, System.nanoTime() ) )
+            LockSupport.unpark( this );
+    }
+
+/**
+ * Returns how long it took the thread to wake up after the most recent call to
+ * wake().
+ * @return Wake-up latency in nanoseconds.
+ */
+    public long getLastWakeLatency()
+    {
+        return lastWakeLatency;
+    }
+
+/**
+ * Returns the longest time it has taken the thread to wake up after a call to
+ * wake().
+ * @return Wake-up latency in nanoseconds.
+ */
+    public long getMaxWakeLatency()
+    {
+        return maxWakeLatency;
     }
     
 /**
@@ -169,7 +250,10 @@ public class SimpleThread extends Thread
     private synchronized boolean alive( boolean action, boolean value )
     {
         if( action == SET )
+        {
             alive = value;
+            notifyAll();  // let waitForDeath() know
+        }
         return alive;
     }
     
@@ -186,6 +270,37 @@ public class SimpleThread extends Thread
         return kill;
     }
     
+/**
+ * Sleeps until wake() is called, the thread is killed, or the specified number
+ * of milliseconds have passed, whichever comes first.  Must only be called from
+ * this thread.
+ * @param milliseconds Longest time to wait.
+ * @return True if woken up by wake(), false if the time ran out.
+ */
+    protected boolean waitForWake( long milliseconds )
+    {
+        long deadline = System.nanoTime() + milliseconds * 1000000L;
+        long remaining;
+        while( wakeRequestTime.get() == NOT_REQUESTED && !dying() )
+        {
+            remaining = deadline - System.nanoTime();
+            if( remaining <= 0 )
+                break;
+            LockSupport.parkNanos( this, remaining );
+        }
+
+        long requested = wakeRequestTime.getAndSet( NOT_REQUESTED );
+        if( requested != NOT_REQUESTED )
+        {
+            long latency = System.nanoTime() - requested;
+            lastWakeLatency = latency;
+            if( latency > maxWakeLatency )
+                maxWakeLatency = latency;
+            return true;
+        }
+        return false;
+    }
+
 /**
  * Sleeps for the specified number of milliseconds.
  */
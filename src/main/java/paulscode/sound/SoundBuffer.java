@@ -1,10 +1,22 @@
 package paulscode.sound;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.sound.sampled.AudioFormat;
 
 /**
  * The SoundBuffer class is used to wrap audio data along with the format in
- * which the data is stored.
+ * which the data is stored.  A loaded sound's buffer is shared by every source
+ * which plays it, and may be handed to a new library by
+ * SoundSystem.switchLibrary(), so its data should be treated as read-only once
+ * loaded.  Sources keep a count of the references to the buffer (see
+ * retain() and release()), which lets libraries free their own copies of the
+ * data once a sound has been unloaded and the last source using it is gone.
+ * The data may be held either in a byte array on the Java heap (audioData), or
+ * in a direct ByteBuffer outside of it (directData), which libraries such as
+ * OpenAL can use without copying (see
+ * SoundSystemConfig.setOffHeapBuffers()).  Only one of the two is set.
  *<br><br>
  *<b><i>    SoundSystem License:</b></i><br><b><br>
  *    You are free to use this library for any purpose, commercial or otherwise.
@@ -44,11 +56,21 @@ public class SoundBuffer
  * The actual audio data.
  */
     public byte[] audioData;
+/**
+ * The actual audio data, if it is held outside of the Java heap, otherwise
+ * null.  The data runs from position zero to the limit.
+ */
+    public ByteBuffer directData;
 /**
  * The audio format in which the data is stored.
  */
     public AudioFormat audioFormat;
 
+/**
+ * Number of sources using this buffer.
+ */
+    private final AtomicInteger references = new AtomicInteger( 0 );
+
 /**
  * Constructor: Wraps the specified data with the specified audio format.
  *
@@ -60,6 +82,19 @@ public class SoundBuffer
         this.audioData = audioData;
         this.audioFormat = audioFormat;
     }
+
+/**
+ * Constructor: Wraps the specified direct buffer with the specified audio
+ * format.
+ *
+ * @param directData The actual audio data, from position zero to the limit.
+ * @param audioFormat The audio format in which the data is stored.
+ */
+    public SoundBuffer( ByteBuffer directData, AudioFormat audioFormat )
+    {
+        this.directData = directData;
+        this.audioFormat = audioFormat;
+    }
     
 /**
  * Removes handles to all instantiated objects.
@@ -67,18 +102,140 @@ public class SoundBuffer
     public void cleanup()
     {
         audioData = null;
+        directData = null;
         audioFormat = null;
     }
 
+/**
+ * Returns the number of bytes of audio data, wherever it is held.
+ * @return Size of the audio data.
+ */
+    public int size()
+    {
+        if( audioData != null )
+            return audioData.length;
+        if( directData != null )
+            return directData.limit();
+        return 0;
+    }
+
+/**
+ * Indicates whether the audio data is held outside of the Java heap.
+ * @return True if the data is in directData.
+ */
+    public boolean isDirect()
+    {
+        return directData != null;
+    }
+
+/**
+ * Returns a buffer holding this audio data outside of the Java heap.
+ * @return This buffer if it is already direct, otherwise a direct copy.
+ */
+    public SoundBuffer toDirect()
+    {
+        if( audioData == null )
+            return this;
+        ByteBuffer data = ByteBuffer.allocateDirect( audioData.length );
+        data.put( audioData );
+        data.flip();
+        return new SoundBuffer( data, audioFormat );
+    }
+
+/**
+ * Returns a buffer holding this audio data in a byte array, for libraries
+ * which need one.
+ * @return This buffer if its data is already in a byte array, otherwise a
+ * copy.
+ */
+    public SoundBuffer toHeap()
+    {
+        if( directData == null )
+            return this;
+        byte[] data = new byte[directData.limit()];
+        directData.duplicate().get( data );
+        return new SoundBuffer( data, audioFormat );
+    }
+
+/**
+ * Adds a reference to this buffer.  Called by a source which starts using it.
+ * @return This buffer.
+ */
+    public SoundBuffer retain()
+    {
+        references.incrementAndGet();
+        return this;
+    }
+
+/**
+ * Removes a reference to this buffer.  Called by a source which stops using
+ * it.
+ * @return Number of references left.
+ */
+    public int release()
+    {
+        int count;
+        do
+        {
+            count = references.get();
+            if( count == 0 )
+                return 0;
+        } while( !references.compareAndSet( count, count - 1 ) );
+        return count - 1;
+    }
+
+/**
+ * Returns the number of sources using this buffer.
+ * @return Number of references.
+ */
+    public int references()
+    {
+        return references.get();
+    }
+
+/**
+ * Returns a buffer holding no more than the specified length of audio data.
+ * Unlike trimData(), this buffer is not changed, so it is safe to use on a
+ * buffer which is shared.
+ * @param maxLength Maximum size of the returned buffer.
+ * @return This buffer if it is small enough, otherwise a trimmed copy.
+ */
+    public SoundBuffer trimmed( int maxLength )
+    {
+        if( directData != null )
+        {
+            // no need to copy, just look at less of it:
+            if( directData.limit() <= maxLength )
+                return this;
+            ByteBuffer data = directData.duplicate();
+            data.limit( maxLength );
+            return new SoundBuffer( data.slice(), audioFormat );
+        }
+        if( audioData == null )
+            return this;
+        if( maxLength == 0 )
+            return new SoundBuffer( (byte[]) null, audioFormat );
+        if( audioData.length <= maxLength )
+            return this;
+        return new SoundBuffer( Arrays.copyOf( audioData, maxLength ),
+                                audioFormat );
+    }
+
 /**
  * Trims down the size of the audio data if it is larger than the specified
- * maximum length.
+ * maximum length.  This changes the buffer for every source sharing it, so
+ * use trimmed() for buffers which have already been loaded.
  *
  * @param maxLength Maximum size this buffer may be.
  */
     public void trimData( int maxLength )
     {
-        if( audioData == null || maxLength == 0 )
+        if( directData != null )
+        {
+            if( directData.limit() > maxLength )
+                directData.limit( maxLength );
+        }
+        else if( audioData == null || maxLength == 0 )
             audioData = null;
         else if( audioData.length > maxLength )
         {
@@ -0,0 +1,227 @@
+package paulscode.sound;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The SoundBufferMap class holds a library's loaded sample data, keyed by
+ * filename / identifier.  Entries are kept in least-recently-used order, and
+ * the map keeps count of how many bytes of sample data it holds, so that the
+ * {@link paulscode.sound.Library Library} can unload sounds nobody is using
+ * once the budget set by SoundSystemConfig.setBufferMemoryBudget() is passed.
+ * It also counts lookups which found sample data (hits), lookups which did not
+ * (misses), and sounds unloaded to stay within the budget (evictions).  The
+ * map itself is only used from the command thread, but the counters may be
+ * read from any thread.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class SoundBufferMap extends LinkedHashMap<String, SoundBuffer>
+{
+    private static final long serialVersionUID = 1175323091296706549L;
+
+/**
+ * Library which owns this map, and unloads sounds when it is over budget.
+ */
+    private final Library library;
+
+/**
+ * Bytes of sample data held by the map.
+ */
+    private final AtomicLong bytes = new AtomicLong( 0 );
+
+/**
+ * Number of sources which found their sample data already loaded.
+ */
+    private final AtomicLong hits = new AtomicLong( 0 );
+
+/**
+ * Number of sources which did not find their sample data loaded.
+ */
+    private final AtomicLong misses = new AtomicLong( 0 );
+
+/**
+ * Number of sounds unloaded to stay within the memory budget.
+ */
+    private final AtomicLong evictions = new AtomicLong( 0 );
+
+/**
+ * Constructor: Creates an empty map.
+ * @param library Library which owns this map, or null to never unload sounds.
+ */
+    public SoundBufferMap( Library library )
+    {
+        super( 16, 0.75f, true );
+        this.library = library;
+    }
+
+/**
+ * Counts a lookup made when a source resolves its sample data.  Other lookups,
+ * such as checking whether a sound is already loaded, are not counted.
+ * @param found True if the sample data was already loaded.
+ */
+    public void countLookup( boolean found )
+    {
+        if( found )
+            hits.incrementAndGet();
+        else
+            misses.incrementAndGet();
+    }
+
+/**
+ * Adds the sample data for a sound, then lets the library unload other sounds
+ * if the map is over budget.
+ * @param key Filename / identifier of the sound.
+ * @param buffer The sample data.
+ * @return Sample data previously stored under the same key, or null.
+ */
+    @Override
+    public SoundBuffer put( String key, SoundBuffer buffer )
+    {
+        SoundBuffer previous = super.put( key, buffer );
+        bytes.addAndGet( size( buffer ) - size( previous ) );
+        if( library != null )
+            library.evictSounds( key );
+        return previous;
+    }
+
+/**
+ * Removes the sample data for a sound.
+ * @param key Filename / identifier of the sound.
+ * @return The sample data which was removed, or null.
+ */
+    @Override
+    public SoundBuffer remove( Object key )
+    {
+        SoundBuffer previous = super.remove( key );
+        if( previous != null )
+            bytes.addAndGet( -size( previous ) );
+        return previous;
+    }
+
+/**
+ * Removes all sample data.
+ */
+    @Override
+    public void clear()
+    {
+        super.clear();
+        bytes.set( 0 );
+    }
+
+/**
+ * Never removes entries automatically, since sounds in use must not be
+ * unloaded.  The library decides what to unload instead.
+ * @param eldest Least recently used entry.
+ * @return False.
+ */
+    @Override
+    protected boolean removeEldestEntry( Map.Entry<String, SoundBuffer> eldest )
+    {
+        return false;
+    }
+
+/**
+ * Adds up the sample data held by the map again.  Libraries may trim sample
+ * data after storing it (see SoundBuffer.trimData()), so the running total
+ * kept by put() and remove() can drift.
+ * @return Bytes of sample data held by the map.
+ */
+    public long recount()
+    {
+        long total = 0;
+        for( SoundBuffer buffer : values() )
+        {
+            total += size( buffer );
+        }
+        bytes.set( total );
+        return total;
+    }
+
+/**
+ * Counts a sound unloaded to stay within the memory budget.
+ */
+    public void countEviction()
+    {
+        evictions.incrementAndGet();
+    }
+
+/**
+ * Returns the number of bytes of sample data held by the map.
+ * @return Size of the loaded sample data.
+ */
+    public long getBytes()
+    {
+        return bytes.get();
+    }
+
+/**
+ * Returns the number of sources which found their sample data already loaded.
+ * @return Hit count.
+ */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+/**
+ * Returns the number of sources which did not find their sample data loaded.
+ * @return Miss count.
+ */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+/**
+ * Returns the number of sounds unloaded to stay within the memory budget.
+ * @return Eviction count.
+ */
+    public long getEvictions()
+    {
+        return evictions.get();
+    }
+
+/**
+ * Returns the number of bytes of sample data in a buffer.
+ * @param buffer Sample data, or null.
+ * @return Size in bytes.
+ */
+    private static long size( SoundBuffer buffer )
+    {
+        if( buffer == null )
+            return 0;
+        return buffer.size();
+    }
+}
@@ -0,0 +1,583 @@
+package paulscode.sound;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The SoundLoader class decodes the sound files passed to SoundSystem's
+ * loadSound() methods on a small pool of worker threads, so that a large file
+ * never holds up the {@link paulscode.sound.CommandThread CommandThread}.  Once
+ * a file is decoded, an INSTALL_SOUND command is queued, and the command thread
+ * hands the sample data to the sound library.  Loads are started from the
+ * command thread too (by a START_LOAD command), so files which are already
+ * loaded are recognized there, in order with any UNLOAD_SOUND commands, and
+ * are not decoded again.  Each load returns a CompletableFuture which
+ * completes when the sound is ready to be played.
+ * Sets of files may be loaded together, with progress reported to an
+ * {@link paulscode.sound.ILoadListener ILoadListener} and an optional limit on
+ * how much sample data the set may decode.  Commands which use a file that is
+ * still being loaded wait in the command queue until it is installed, rather
+ * than holding up the command thread.  The number of worker threads may be set
+ * by calling SoundSystemConfig.setNumberLoaderThreads().
+ *
+ * NOTE: The sound loader is created automatically by the sound system, so it
+ * is unlikely that the user would ever need to use this class.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class SoundLoader
+{
+/**
+ * Processes status messages, warnings, and error messages.
+ */
+    private SoundSystemLogger logger;
+
+/**
+ * The SoundSystem to queue START_LOAD and INSTALL_SOUND commands with.
+ */
+    private final SoundSystem soundSystem;
+
+/**
+ * Worker threads which decode sound files.
+ */
+    private final ThreadPoolExecutor workers;
+
+/**
+ * Loads which have not been installed yet, mapped by filename.
+ */
+    private final HashMap<String, Load> loads = new HashMap<String, Load>();
+
+/**
+ * Sets of files queued to be started by the command thread.
+ */
+    private final ArrayList<LoadSet> queued = new ArrayList<LoadSet>();
+
+/**
+ * Constructor: Creates the pool of worker threads.  Threads are only started
+ * when there are sounds to decode, and they end after sitting idle for a few
+ * seconds.
+ * @param soundSystem SoundSystem to queue START_LOAD and INSTALL_SOUND
+ * commands with.
+ * @param threads Largest number of files to decode at the same time.
+ */
+    public SoundLoader( SoundSystem soundSystem, int threads )
+    {
+        // grab a handle to the message logger:
+        logger = SoundSystemConfig.getLogger();
+
+        this.soundSystem = soundSystem;
+        workers = WorkerThreads.newPool( threads, "SoundSystem loader" );
+    }
+
+/**
+ * Queues the specified sound file to be loaded.  When the command thread gets
+ * to it, the file is decoded on a worker thread, unless it is already loaded
+ * or being loaded.
+ * @param filenameURL Filename/URL of the sound file to load.
+ * @return Future which completes with true when the sound is ready, or false
+ * if it could not be loaded.
+ */
+    public CompletableFuture<Boolean> load( FilenameURL filenameURL )
+    {
+        LoadSet set = new LoadSet( Collections.singletonList( filenameURL ), 0,
+                                   null );
+        queue( set );
+        return set.done;
+    }
+
+/**
+ * Queues a set of sound files to be loaded.  When the command thread gets to
+ * them, files which are already loaded count as loaded right away, and the
+ * rest are decoded, as many at a time as there are worker threads.  Once the
+ * sample data decoded for the set reaches the memory limit, files which have
+ * not been started yet are skipped and count as failures.  Files which were
+ * already loaded do not count towards the limit.
+ * @param filenameURLs Filenames/URLs of the sound files to load.
+ * @param memoryLimit Most bytes of sample data to decode, or zero for no limit.
+ * @param listener Told each time a file finishes loading, or null.
+ * @return Future which completes with true when every sound is ready, or
+ * false once they are all finished if any could not be loaded.
+ */
+    public CompletableFuture<Boolean> loadAll(
+                                        Collection<FilenameURL> filenameURLs,
+                                        long memoryLimit,
+                                        ILoadListener listener )
+    {
+        LoadSet set = new LoadSet( new ArrayList<FilenameURL>( filenameURLs ),
+                                   memoryLimit, listener );
+        if( filenameURLs.isEmpty() )
+            set.done.complete( true );
+        else
+            queue( set );
+        return set.done;
+    }
+
+/**
+ * Starts decoding the specified sound file on a worker thread, as part of a
+ * set if one is specified.
+ * @param filenameURL Filename/URL of the sound file to load.
+ * @param reverseByteOrder Whether the codec should reverse-order the data.
+ * @param set Set of files this file is loaded with, or null.
+ * @return Future which completes when the sound is ready.
+ */
+    private synchronized CompletableFuture<Boolean> load(
+                                                  FilenameURL filenameURL,
+                                                  boolean reverseByteOrder,
+                                                  LoadSet set )
+    {
+        String filename = filenameURL.getFilename();
+        Load load = loads.get( filename );
+        if( load != null )
+        {
+            // already loading, so just let the set know when it finishes:
+            if( set != null )
+                load.sets.add( set );
+            return load.ready;
+        }
+
+        load = new Load( filenameURL, reverseByteOrder, set );
+        loads.put( filename, load );
+        try
+        {
+            workers.execute( load );
+        }
+        catch( RejectedExecutionException ree )
+        {
+            loads.remove( filename );
+            errorMessage( "Sound loader has been shut down in method 'load'" );
+            load.finish( false );
+        }
+        return load.ready;
+    }
+
+/**
+ * Queues a START_LOAD command for a set of files.
+ * @param set Files to load.
+ */
+    private void queue( LoadSet set )
+    {
+        synchronized( this )
+        {
+            queued.add( set );
+        }
+        soundSystem.CommandQueue( new CommandObject( CommandObject.START_LOAD,
+                                                     set ) );
+        soundSystem.wakeCommandThread();
+    }
+
+/**
+ * Starts loading a set of files queued by load() or loadAll().  Files which
+ * the library already has are counted as loaded right away, without being
+ * decoded again.  The rest are decoded on the worker threads.  This method may
+ * only be called from the command thread.
+ * @param set Files to load.
+ * @param library Library the files will be installed into.
+ */
+    void start( LoadSet set, Library library )
+    {
+        synchronized( this )
+        {
+            if( !queued.remove( set ) )
+                return;  // shut down
+        }
+        boolean reverseByteOrder = library != null
+                                   && library.reverseByteOrder();
+        FilenameURL filenameURL;
+        for( int i = 0; i < set.filenameURLs.size(); i++ )
+        {
+            filenameURL = set.filenameURLs.get( i );
+            if( library != null && !pending( filenameURL.getFilename() )
+                && library.soundLoaded( filenameURL.getFilename() ) )
+                set.finished( filenameURL.getFilename(), true );
+            else
+                load( filenameURL, reverseByteOrder, set );
+        }
+    }
+
+/**
+ * Hands the decoded sample data for the specified file to the sound library,
+ * and completes the load's future.  This method never waits for a file to be
+ * decoded: if it is still being decoded, or the library's byte order changed
+ * while it was being decoded (in which case it is handed back to a worker
+ * thread to be decoded again), the file stays pending and another
+ * INSTALL_SOUND command is queued once it is ready.  This method may only be
+ * called from the command thread.
+ * @param filename Filename/identifier of the sound file.
+ * @param library Library to install the sound into.
+ * @return False if the file was not being loaded.
+ */
+    public boolean install( String filename, Library library )
+    {
+        Load load;
+        synchronized( this )
+        {
+            load = loads.get( filename );
+            if( load == null )
+                return false;
+            if( !load.decoded )
+                return true;  // installed once the worker is done with it
+            if( library != null
+                && load.reverseByteOrder != library.reverseByteOrder() )
+            {
+                // library changed while decoding, so decode it again:
+                if( load.owner != null && load.buffer != null )
+                    load.owner.bytes.addAndGet( -load.buffer.size() );
+                load.buffer = null;
+                load.decoded = false;
+                load.reverseByteOrder = library.reverseByteOrder();
+                try
+                {
+                    workers.execute( load );
+                    return true;
+                }
+                catch( RejectedExecutionException ree )
+                {
+                    errorMessage( "Sound loader has been shut down in " +
+                                  "method 'install'" );
+                }
+            }
+            loads.remove( filename );
+        }
+
+        boolean loaded = false;
+        try
+        {
+            if( library == null )
+                errorMessage( "Library null in method 'install'" );
+            else if( load.buffer != null )
+                loaded = library.loadSound( load.buffer, filename );
+        }
+        finally
+        {
+            load.buffer = null;
+            load.finish( loaded );
+        }
+        return true;
+    }
+
+/**
+ * Returns true if the specified file is still being decoded or is waiting to
+ * be installed.
+ * @param filename Filename/identifier of the sound file.
+ * @return True if the file has an unfinished load.
+ */
+    public synchronized boolean pending( String filename )
+    {
+        return loads.containsKey( filename );
+    }
+
+/**
+ * Returns the number of files waiting to be decoded or installed.
+ * @return Number of unfinished loads.
+ */
+    public synchronized int pendingLoads()
+    {
+        return loads.size();
+    }
+
+/**
+ * Stops the worker threads and completes the futures of any unfinished or
+ * unstarted loads with false.
+ */
+    public void shutdown()
+    {
+        workers.shutdownNow();
+        ArrayList<Load> unfinished;
+        ArrayList<LoadSet> unstarted;
+        synchronized( this )
+        {
+            unfinished = new ArrayList<Load>( loads.values() );
+            loads.clear();
+            unstarted = new ArrayList<LoadSet>( queued );
+            queued.clear();
+        }
+        for( int i = 0; i < unfinished.size(); i++ )
+        {
+            unfinished.get( i ).finish( false );
+        }
+        for( int i = 0; i < unstarted.size(); i++ )
+        {
+            unstarted.get( i ).done.complete( false );
+        }
+    }
+
+/**
+ * Reads all of the audio data from the specified sound file.
+ * @param filenameURL Filename/URL of the sound file to decode.
+ * @param reverseByteOrder Whether the codec should reverse-order the data.
+ * @return The sample data and audio format, or null if there was a problem.
+ */
+    private SoundBuffer decode( FilenameURL filenameURL,
+                                boolean reverseByteOrder )
+    {
+        String filename = filenameURL.getFilename();
+        ICodec codec = SoundSystemConfig.getCodec( filename );
+        if( errorCheck( codec == null, "No codec found for file '" +
+                                       filename + "' in method 'decode'" ) )
+            return null;
+        URL url = filenameURL.getURL();
+        if( errorCheck( url == null, "Unable to open file '" + filename +
+                                     "' in method 'decode'" ) )
+            return null;
+
+        if( reverseByteOrder )
+            codec.reverseByteOrder( true );
+        SoundBuffer buffer = DecodedCache.readAll( codec, url,
+                                                   reverseByteOrder );
+        errorCheck( buffer == null, "Sound buffer null in method 'decode'" );
+        return buffer;
+    }
+
+/**
+ * Prints the specified message if error is true.
+ * @param error True or False.
+ * @param message Message to print if error is true.
+ * @return True if error is true.
+ */
+    private boolean errorCheck( boolean error, String message )
+    {
+        return logger.errorCheck( error, "SoundLoader", message, 0 );
+    }
+
+/**
+ * Prints an error message.
+ * @param message Message to print.
+ */
+    private void errorMessage( String message )
+    {
+        logger.errorMessage( "SoundLoader", message, 0 );
+    }
+
+/**
+ * The Load class keeps track of one sound file from the time it is passed to
+ * the loader until the command thread installs it.
+ */
+    private class Load implements Runnable
+    {
+/**
+ * Filename/URL of the sound file.
+ */
+        final FilenameURL filenameURL;
+/**
+ * Whether the codec should reverse-order the data.
+ */
+        volatile boolean reverseByteOrder;
+/**
+ * Set of files this file was loaded with, or null.
+ */
+        final LoadSet owner;
+/**
+ * Sets to notify when the sound is installed.
+ */
+        final ArrayList<LoadSet> sets = new ArrayList<LoadSet>( 1 );
+/**
+ * Decoded sample data, or null until decoded or if there was a problem.
+ */
+        volatile SoundBuffer buffer = null;
+/**
+ * True once the worker is done decoding.
+ */
+        volatile boolean decoded = false;
+/**
+ * Completes when the sound has been installed.
+ */
+        final CompletableFuture<Boolean> ready =
+                                               new CompletableFuture<Boolean>();
+
+/**
+ * Constructor: Remembers what to load.
+ * @param filenameURL Filename/URL of the sound file.
+ * @param reverseByteOrder Whether the codec should reverse-order the data.
+ * @param owner Set of files this file is loaded with, or null.
+ */
+        Load( FilenameURL filenameURL, boolean reverseByteOrder,
+              LoadSet owner )
+        {
+            this.filenameURL = filenameURL;
+            this.reverseByteOrder = reverseByteOrder;
+            this.owner = owner;
+            if( owner != null )
+                sets.add( owner );
+        }
+
+/**
+ * Decodes the sound file, then asks the command thread to install it.
+ */
+        @Override
+        public void run()
+        {
+            try
+            {
+                if( owner != null && owner.full() )
+                    errorMessage( "Memory limit reached, not loading file '" +
+                                  filenameURL.getFilename() + "'" );
+                else
+                    buffer = decode( filenameURL, reverseByteOrder );
+                if( owner != null && buffer != null )
+                    owner.bytes.addAndGet( buffer.size() );
+            }
+            catch( RuntimeException re )
+            {
+                errorMessage( "Problem decoding file '" +
+                              filenameURL.getFilename() + "': " + re );
+            }
+            finally
+            {
+                decoded = true;
+            }
+            soundSystem.CommandQueue( new CommandObject(
+                                            CommandObject.INSTALL_SOUND,
+                                            filenameURL.getFilename() ) );
+            soundSystem.wakeCommandThread();
+        }
+
+/**
+ * Completes the future, and lets any sets this file was loaded with know.
+ * @param loaded True if the sound is ready to play.
+ */
+        void finish( boolean loaded )
+        {
+            if( !ready.complete( loaded ) )
+                return;  // already finished
+            LoadSet[] notify;
+            synchronized( SoundLoader.this )
+            {
+                notify = sets.toArray( new LoadSet[sets.size()] );
+            }
+            for( int i = 0; i < notify.length; i++ )
+            {
+                notify[i].finished( filenameURL.getFilename(), loaded );
+            }
+        }
+    }
+
+/**
+ * The LoadSet class keeps track of a set of files passed to load() or
+ * loadAll().
+ */
+    class LoadSet
+    {
+/**
+ * Filenames/URLs of the files in the set.
+ */
+        final List<FilenameURL> filenameURLs;
+/**
+ * Number of files in the set.
+ */
+        final int total;
+/**
+ * Most bytes of sample data to decode, or zero for no limit.
+ */
+        final long memoryLimit;
+/**
+ * Told each time a file finishes loading, or null.
+ */
+        final ILoadListener listener;
+/**
+ * Bytes of sample data decoded so far.
+ */
+        final AtomicLong bytes = new AtomicLong( 0 );
+/**
+ * Number of files which have finished loading.
+ */
+        final AtomicInteger finished = new AtomicInteger( 0 );
+/**
+ * False once any file fails to load.
+ */
+        volatile boolean allLoaded = true;
+/**
+ * Completes when every file in the set has finished.
+ */
+        final CompletableFuture<Boolean> done =
+                                               new CompletableFuture<Boolean>();
+
+/**
+ * Constructor: Creates a set of files, none of which have been loaded yet.
+ * @param filenameURLs Filenames/URLs of the files in the set.
+ * @param memoryLimit Most bytes of sample data to decode, or zero.
+ * @param listener Told each time a file finishes loading, or null.
+ */
+        LoadSet( List<FilenameURL> filenameURLs, long memoryLimit,
+                 ILoadListener listener )
+        {
+            this.filenameURLs = filenameURLs;
+            this.total = filenameURLs.size();
+            this.memoryLimit = memoryLimit;
+            this.listener = listener;
+        }
+
+/**
+ * Returns true if the set has decoded as much sample data as it may.
+ * @return True if the memory limit has been reached.
+ */
+        boolean full()
+        {
+            return memoryLimit > 0 && bytes.get() >= memoryLimit;
+        }
+
+/**
+ * Counts a file as finished, reports the progress, and completes the set's
+ * future after the last file.
+ * @param filename Filename/identifier of the sound.
+ * @param loaded True if the sound is ready to play.
+ */
+        void finished( String filename, boolean loaded )
+        {
+            if( !loaded )
+                allLoaded = false;
+            int count = finished.incrementAndGet();
+            if( listener != null )
+            {
+                try
+                {
+                    listener.soundLoaded( filename, loaded, count, total );
+                }
+                catch( RuntimeException re )
+                {
+                    errorMessage( "Problem in load listener: " + re );
+                }
+            }
+            if( count == total )
+                done.complete( allLoaded );
+        }
+    }
+}
@@ -1,13 +1,20 @@
 package paulscode.sound;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.ListIterator;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.sound.sampled.AudioFormat;
 
 /**
@@ -87,9 +94,59 @@ public class SoundSystem
     protected Library soundLibrary;
     
 /**
- * List of queued commands to perform.
+ * Lock-free ring of queued commands to perform.
  */
-    protected List<CommandObject> commandQueue;
+    protected CommandRing commandQueue;
+
+/**
+ * Idle commands waiting to be reused, so that frequent calls such as
+ * setPosition() do not create garbage.
+ */
+    protected CommandPool commandPool;
+
+/**
+ * Most recent state snapshot published by the command thread, or null.
+ */
+    private volatile StateSnapshot stateSnapshot = null;
+
+/**
+ * True if commands have been executed since the last state snapshot was
+ * published.
+ */
+    private volatile boolean commandsExecuted = false;
+
+/**
+ * True if sources were playing when the last state snapshot was published, so
+ * the state may have changed since then without any commands.
+ */
+    private volatile boolean statePlaying = false;
+
+/**
+ * Integer handles for sources, as an alternative to sourcenames.
+ */
+    protected SourceHandles sourceHandles;
+
+/**
+ * Decodes sound files passed to loadSound() on worker threads.
+ */
+    protected SoundLoader soundLoader;
+
+/**
+ * Runtime statistics, also available as an MBean.
+ */
+    protected SoundSystemMetrics metrics;
+
+/**
+ * FilenameURL instances for recently used filenames, so that play and load
+ * calls for the same file do not keep creating new ones.
+ */
+    private final Map<String, FilenameURL> filenameURLs =
+                                new ConcurrentHashMap<String, FilenameURL>();
+
+/**
+ * Package the FilenameURL instances in filenameURLs were created for.
+ */
+    private volatile String filenameURLsPackage = null;
     
 /**
  * Used internally by SoundSystem to keep track of play/pause/stop/rewind
@@ -98,6 +155,76 @@ public class SoundSystem
  * methods.
  */
     private List<CommandObject> sourcePlayList;
+
+/**
+ * Commands taken from the command queue which are being executed by the
+ * command thread.  Commands which were coalesced are replaced with null.
+ */
+    private final List<CommandObject> commandBatch =
+                                              new ArrayList<CommandObject>();
+
+/**
+ * Commands waiting for each sound file which is still being loaded by the
+ * sound loader, in the order they were queued.  Only accessed by the command
+ * thread.
+ */
+    private final HashMap<String, List<CommandObject>> waitingForLoad =
+                                  new HashMap<String, List<CommandObject>>();
+
+/**
+ * Sound file each source which is waiting for a file to load is waiting for,
+ * mapped by sourcename.  Later commands for these sources wait behind them.
+ * Only accessed by the command thread.
+ */
+    private final HashMap<String, String> waitingSources =
+                                                new HashMap<String, String>();
+
+/**
+ * Sources whose position is changed later in the batch being coalesced.
+ */
+    private final Set<String> positionsSet = new HashSet<String>();
+
+/**
+ * Sources whose velocity is changed later in the batch being coalesced.
+ */
+    private final Set<String> velocitiesSet = new HashSet<String>();
+
+/**
+ * Sources whose volume is changed later in the batch being coalesced.
+ */
+    private final Set<String> volumesSet = new HashSet<String>();
+
+/**
+ * Sources whose pitch is changed later in the batch being coalesced.
+ */
+    private final Set<String> pitchesSet = new HashSet<String>();
+
+/**
+ * Number of commands which have been skipped because later commands made them
+ * redundant.
+ */
+    private volatile long coalescedCommands = 0;
+
+/**
+ * True while commandBatch is being executed.  Only accessed while holding the
+ * SoundSystemConfig.THREAD_SYNC lock.
+ */
+    private boolean executingCommands = false;
+
+/**
+ * Commands being collected by each thread between calls to beginUpdate() and
+ * commitUpdate().
+ */
+    private final ThreadLocal<CommandObject> updateBatch =
+                                            new ThreadLocal<CommandObject>();
+
+/**
+ * Each thread's spare BATCH command, handed back by the command thread once it
+ * has taken the commands out of it, so beginUpdate() can reuse it rather than
+ * creating a new one every frame.
+ */
+    private final ThreadLocal<AtomicReference<CommandObject>> spareBatch =
+                            new ThreadLocal<AtomicReference<CommandObject>>();
     
 /**
  * Processes queued commands in the background.
@@ -222,23 +349,39 @@ public class SoundSystem
  */
     protected void init( Class libraryClass ) throws SoundSystemException
     {
+        long startTime = System.nanoTime();
         message( "", 0 );
         message( "Starting up " + className + "...", 0 );
         
         // create the random number generator:
         randomNumberGenerator = new Random();
         // create the command queue:
-        commandQueue = new LinkedList<CommandObject>();
+        commandQueue = new CommandRing(
+                                SoundSystemConfig.getCommandQueueCapacity() );
+        // create the source handle table:
+        sourceHandles = new SourceHandles();
+        // create the pool of reusable commands:
+        // (a full queue's worth of commands may be waiting while another is
+        // being executed, so make room for both):
+        commandPool = new CommandPool(
+                            2 * SoundSystemConfig.getCommandQueueCapacity() );
+        // create the sound file decoder:
+        soundLoader = new SoundLoader( this,
+                                SoundSystemConfig.getNumberLoaderThreads() );
         // create the working source playlist:
         sourcePlayList = new LinkedList<CommandObject>();
+        // create the runtime statistics, and let JMX clients see them:
+        metrics = new SoundSystemMetrics( this );
+        if( SoundSystemConfig.getRegisterMBean() )
+            metrics.register();
         
         // Instantiate and start the Command Processer thread:
         commandThread = new CommandThread( this ); // Gets a SoundSystem handle
         commandThread.start();
         
-        snooze( 200 );
-        
         newLibrary( libraryClass );
+        message( className + " started in " +
+                 (System.nanoTime() - startTime) / 1000000 + " ms", 0 );
         message( "", 0 );
     }
     
@@ -256,7 +399,6 @@ public class SoundSystem
         try
         {
             commandThread.kill();        // end the command processor loop.
-            commandThread.interrupt();   // wake the thread up so it can end.
         }
         catch( Exception e )
         {
@@ -266,12 +408,7 @@ public class SoundSystem
         if( !killException )
         {
             // wait up to 5 seconds for command thread to end:
-            for( int i = 0; i < 50; i++ )
-            {
-                if( !commandThread.alive() )
-                    break;
-                snooze( 100 );
-            }
+            commandThread.waitForDeath( 5000 );
         }
         
         // Let user know if there was a problem ending the command thread
@@ -281,6 +418,14 @@ public class SoundSystem
             message( "Ignoring errors... continuing clean-up.", 0 );
         }
         
+        // Stop decoding sound files, and let anyone waiting know they failed:
+        if( soundLoader != null )
+            soundLoader.shutdown();
+
+        // Stop showing statistics for this sound system:
+        if( metrics != null )
+            metrics.unregister();
+        
         initialized( SET, false );
         currentLibrary( SET, null );
         try
@@ -323,6 +468,15 @@ public class SoundSystem
         randomNumberGenerator = null;
         soundLibrary = null;
         commandQueue = null;
+        commandPool = null;
+        soundLoader = null;
+        if( sourceHandles != null )
+            sourceHandles.clear();
+        sourceHandles = null;
+        stateSnapshot = null;
+        filenameURLs.clear();
+        waitingForLoad.clear();
+        waitingSources.clear();
         sourcePlayList = null;
         commandThread = null;
         
@@ -346,7 +500,7 @@ public class SoundSystem
             return;
         }
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        commandThread.wake();
     }
     
 /**
@@ -355,32 +509,98 @@ public class SoundSystem
  * with "http://", since that is how SoundSystem recognizes URL's.  If the file 
  * is located within the compiled JAR, the package in which sound files are 
  * located may be set by calling SoundSystemConfig.setSoundFilesPackage().
+ * The file is decoded on a worker thread, so this method returns right away.
+ * The returned future completes once the sound is ready to play, and callbacks
+ * added to it (for example with thenAccept()) run on the command thread, so
+ * they should be kept short.  Sources created for the file before it is ready
+ * wait for it to finish loading.
  * @param filename Filename of the sound file to load.
+ * @return Future which completes with true when the sound is ready, or false
+ * if it could not be loaded.
  */
-    public void loadSound( String filename )
+    public CompletableFuture<Boolean> loadSound( String filename )
     {
-        // Queue a command to load the sound file:
-        CommandQueue( new CommandObject( CommandObject.LOAD_SOUND,
-                                         new FilenameURL( filename ) ) );
-        // Wake the command thread to process commands:
-        commandThread.interrupt();
+        return loadSound( filenameURL( filename ) );
     }
     
 /**
  * Pre-loads a sound specified by the given URL into memory.  The second
  * parameter 'identifier' should look like a filename, and it must have the
  * correct extension so SoundSystem knows what codec to use for the file
- * referenced by the URL instance.
+ * referenced by the URL instance.  The file is decoded on a worker thread, as
+ * with loadSound( String ).
  * @param url URL handle to the sound file to load.
  * @param identifier Filename/identifier of the file referenced by the URL.
+ * @return Future which completes with true when the sound is ready, or false
+ * if it could not be loaded.
  */
-    public void loadSound( URL url, String identifier )
+    public CompletableFuture<Boolean> loadSound( URL url, String identifier )
     {
-        // Queue a command to load the sound file from a URL:
-        CommandQueue( new CommandObject( CommandObject.LOAD_SOUND,
-                                         new FilenameURL( url, identifier ) ) );
-        // Wake the command thread to process commands:
-        commandThread.interrupt();
+        return loadSound( new FilenameURL( url, identifier ) );
+    }
+
+/**
+ * Pre-loads a set of sounds into memory, for example when loading a level.
+ * The files are decoded in parallel, one per loader thread (see
+ * SoundSystemConfig.setNumberLoaderThreads()), and this method returns right
+ * away.  Once the sample data decoded for the set reaches the limit set by
+ * SoundSystemConfig.setLoadMemoryLimit(), the remaining files are skipped.
+ * Files which are already loaded are not decoded again, and are reported as
+ * loaded without counting towards the limit.
+ * @param filenames Filenames of the sound files to load.
+ * @return Future which completes with true when every sound is ready, or false
+ * once they have all finished if any could not be loaded.
+ */
+    public CompletableFuture<Boolean> loadSounds( Collection<String> filenames )
+    {
+        return loadSounds( filenames, null );
+    }
+
+/**
+ * Pre-loads a set of sounds into memory, as with loadSounds( Collection ), and
+ * reports progress to the specified listener each time a sound finishes.  The
+ * listener is called from the command thread, so it should return quickly.
+ * @param filenames Filenames of the sound files to load.
+ * @param listener Implementation of interface 'ILoadListener', or null.
+ * @return Future which completes with true when every sound is ready, or false
+ * once they have all finished if any could not be loaded.
+ */
+    public CompletableFuture<Boolean> loadSounds( Collection<String> filenames,
+                                                  ILoadListener listener )
+    {
+        SoundLoader loader = soundLoader;
+        if( loader == null )
+        {
+            errorMessage( "Sound loader null in method 'loadSounds'", 0 );
+            return CompletableFuture.completedFuture( false );
+        }
+        List<FilenameURL> filenameURLs =
+                               new ArrayList<FilenameURL>( filenames.size() );
+        Iterator<String> i = filenames.iterator();
+        while( i.hasNext() )
+        {
+            filenameURLs.add( filenameURL( i.next() ) );
+        }
+        return loader.loadAll( filenameURLs,
+                               SoundSystemConfig.getLoadMemoryLimit(),
+                               listener );
+    }
+
+/**
+ * Queues the specified sound file to be decoded on one of the sound loader's
+ * worker threads, unless it is already loaded.
+ * @param filenameURL Filename/URL of the sound file to load.
+ * @return Future which completes with true when the sound is ready.
+ */
+    private CompletableFuture<Boolean> loadSound( FilenameURL filenameURL )
+    {
+        SoundLoader loader = soundLoader;
+        if( loader == null )
+        {
+            errorMessage( "Sound loader null in method 'loadSound'", 0 );
+            return CompletableFuture.completedFuture( false );
+        }
+        return loader.load( filenameURL );
     }
 
 /**
@@ -398,7 +618,7 @@ public class SoundSystem
                                          identifier,
                                          new SoundBuffer( data, format ) ) );
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        wakeCommandThread();
     }
 
 
@@ -414,9 +634,10 @@ public class SoundSystem
     public void unloadSound( String filename )
     {
         // Queue a command to unload the sound file:
-        CommandQueue( new CommandObject( CommandObject.UNLOAD_SOUND, filename ) );
+        CommandQueue( newCommand().set( CommandObject.UNLOAD_SOUND,
+                                        filename ) );
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        wakeCommandThread();
     }
     
 /**
@@ -435,9 +656,9 @@ public class SoundSystem
     {
         // Queue a command to queue the sound:
         CommandQueue( new CommandObject( CommandObject.QUEUE_SOUND, sourcename,
-                                         new FilenameURL( filename ) ) );
+                                         filenameURL( filename ) ) );
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        wakeCommandThread();
     }
 
 /**
@@ -457,7 +678,7 @@ public class SoundSystem
         CommandQueue( new CommandObject( CommandObject.QUEUE_SOUND, sourcename,
                                          new FilenameURL( url, identifier ) ) );
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        wakeCommandThread();
     }
 
 /**
@@ -473,7 +694,7 @@ public class SoundSystem
         CommandQueue( new CommandObject( CommandObject.DEQUEUE_SOUND,
                                          sourcename, filename ) );
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        wakeCommandThread();
     }
 
 /**
@@ -498,12 +719,12 @@ public class SoundSystem
     {
         FilenameURL fu = null;
         if( filename != null )
-            fu = new FilenameURL( filename );
+            fu = filenameURL( filename );
         // Queue a command to fade out:
         CommandQueue( new CommandObject( CommandObject.FADE_OUT, sourcename, fu,
                                          milis ) );
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        wakeCommandThread();
     }
 
 /**
@@ -533,7 +754,7 @@ public class SoundSystem
         CommandQueue( new CommandObject( CommandObject.FADE_OUT, sourcename, fu,
                                          milis ) );
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        wakeCommandThread();
     }
 
 /**
@@ -561,10 +782,10 @@ public class SoundSystem
         // Queue a command to load the sound file:
         CommandQueue( new CommandObject( CommandObject.FADE_OUT_IN,
                                          sourcename,
-                                         new FilenameURL( filename ), milisOut,
+                                         filenameURL( filename ), milisOut,
                                          milisIn ) );
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        wakeCommandThread();
     }
 
 /**
@@ -594,7 +815,7 @@ public class SoundSystem
                                          new FilenameURL( url, identifier ),
                                          milisOut, milisIn ) );
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        wakeCommandThread();
     }
 
 /**
@@ -611,9 +832,9 @@ public class SoundSystem
     public void checkFadeVolumes()
     {
         // Queue a command to load check fading source volumes:
-        CommandQueue( new CommandObject( CommandObject.CHECK_FADE_VOLUMES ) );
+        CommandQueue( newCommand().set( CommandObject.CHECK_FADE_VOLUMES ) );
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        wakeCommandThread();
     }
 
 /**
@@ -633,11 +854,11 @@ public class SoundSystem
         // Queue a command to quick stream a new source:
         CommandQueue( new CommandObject( CommandObject.QUICK_PLAY, true,
                            true, toLoop, sourcename,
-                           new FilenameURL( filename ), 0, 0, 0,
+                           filenameURL( filename ), 0, 0, 0,
                            SoundSystemConfig.ATTENUATION_NONE, 0, false ) );
-        CommandQueue( new CommandObject( CommandObject.PLAY, sourcename) );
+        CommandQueue( newCommand().set( CommandObject.PLAY, sourcename) );
         
-        commandThread.interrupt();
+        wakeCommandThread();
     }
 
 /**
@@ -660,9 +881,9 @@ public class SoundSystem
                                           0, 0, 0,
                                           SoundSystemConfig.ATTENUATION_NONE,
                                           0, false ) );
-        CommandQueue( new CommandObject( CommandObject.PLAY, sourcename) );
+        CommandQueue( newCommand().set( CommandObject.PLAY, sourcename) );
 
-        commandThread.interrupt();
+        wakeCommandThread();
     }
     
 /**
@@ -678,16 +899,19 @@ public class SoundSystem
  * @param z Z position for this source.
  * @param attmodel Attenuation model to use.
  * @param distOrRoll Either the fading distance or rolloff factor, depending on the value of "attmodel".
+ * @return Handle for the new source (see getSourceHandle()).
  */    
-    public void newSource( boolean priority, String sourcename, String filename,
-                           boolean toLoop, float x, float y, float z,
-                           int attmodel, float distOrRoll )
+    public int newSource( boolean priority, String sourcename, String filename,
+                          boolean toLoop, float x, float y, float z,
+                          int attmodel, float distOrRoll )
     {
+        int handle = sourceHandles.assignNew( sourcename );
         CommandQueue( new CommandObject( CommandObject.NEW_SOURCE, priority,
                                           false, toLoop, sourcename,
-                                          new FilenameURL( filename ), x, y, z,
+                                          filenameURL( filename ), x, y, z,
                                           attmodel, distOrRoll ) );
-        commandThread.interrupt();
+        wakeCommandThread();
+        return handle;
     }
 
 /**
@@ -704,17 +928,20 @@ public class SoundSystem
  * @param z Z position for this source.
  * @param attmodel Attenuation model to use.
  * @param distOrRoll Either the fading distance or rolloff factor, depending on the value of "attmodel".
+ * @return Handle for the new source (see getSourceHandle()).
  */
-    public void newSource( boolean priority, String sourcename, URL url,
-                           String identifier, boolean toLoop, float x, float y,
-                           float z, int attmodel, float distOrRoll )
+    public int newSource( boolean priority, String sourcename, URL url,
+                          String identifier, boolean toLoop, float x, float y,
+                          float z, int attmodel, float distOrRoll )
     {
+        int handle = sourceHandles.assignNew( sourcename );
         CommandQueue( new CommandObject( CommandObject.NEW_SOURCE, priority,
                                           false, toLoop, sourcename,
                                           new FilenameURL( url, identifier ),
                                           x, y, z,
                                           attmodel, distOrRoll ) );
-        commandThread.interrupt();
+        wakeCommandThread();
+        return handle;
     }
 
 /**
@@ -732,17 +959,20 @@ public class SoundSystem
  * @param z Z position for this source.
  * @param attmodel Attenuation model to use.
  * @param distOrRoll Either the fading distance or rolloff factor, depending on the value of "attmodel".
+ * @return Handle for the new source (see getSourceHandle()).
  */    
-    public void newStreamingSource( boolean priority, String sourcename,
-                                    String filename, boolean toLoop, float x,
-                                    float y, float z, int attmodel,
-                                    float distOrRoll )
+    public int newStreamingSource( boolean priority, String sourcename,
+                                   String filename, boolean toLoop, float x,
+                                   float y, float z, int attmodel,
+                                   float distOrRoll )
     {
+        int handle = sourceHandles.assignNew( sourcename );
         CommandQueue( new CommandObject( CommandObject.NEW_SOURCE, priority,
                                           true, toLoop, sourcename,
-                                          new FilenameURL( filename ), x, y, z,
+                                          filenameURL( filename ), x, y, z,
                                           attmodel, distOrRoll ) );
-        commandThread.interrupt();
+        wakeCommandThread();
+        return handle;
     }
     
 /**
@@ -759,17 +989,20 @@ public class SoundSystem
  * @param z Z position for this source.
  * @param attmodel Attenuation model to use.
  * @param distOrRoll Either the fading distance or rolloff factor, depending on the value of "attmodel".
+ * @return Handle for the new source (see getSourceHandle()).
  */
-    public void newStreamingSource( boolean priority, String sourcename,
-                                    URL url, String identifier, boolean toLoop,
-                                    float x, float y, float z, int attmodel,
-                                    float distOrRoll )
+    public int newStreamingSource( boolean priority, String sourcename,
+                                   URL url, String identifier, boolean toLoop,
+                                   float x, float y, float z, int attmodel,
+                                   float distOrRoll )
     {
+        int handle = sourceHandles.assignNew( sourcename );
         CommandQueue( new CommandObject( CommandObject.NEW_SOURCE, priority,
                                           true, toLoop, sourcename,
                                           new FilenameURL( url, identifier ),
                                           x, y, z, attmodel, distOrRoll ) );
-        commandThread.interrupt();
+        wakeCommandThread();
+        return handle;
     }
 
 /**
@@ -785,15 +1018,18 @@ public class SoundSystem
  * @param z Z position for this source.
  * @param attModel Attenuation model to use.
  * @param distOrRoll Either the fading distance or rolloff factor, depending on the value of "attmodel".
+ * @return Handle for the new source (see getSourceHandle()).
  */
-    public void rawDataStream( AudioFormat audioFormat, boolean priority,
-                               String sourcename, float x, float y, float z,
-                               int attModel, float distOrRoll )
+    public int rawDataStream( AudioFormat audioFormat, boolean priority,
+                              String sourcename, float x, float y, float z,
+                              int attModel, float distOrRoll )
     {
+        int handle = sourceHandles.assignNew( sourcename );
         CommandQueue( new CommandObject( CommandObject.RAW_DATA_STREAM,
                                           audioFormat, priority, sourcename, x,
                                           y, z, attModel, distOrRoll ) );
-        commandThread.interrupt();
+        wakeCommandThread();
+        return handle;
     }
 
 /**
@@ -823,11 +1059,11 @@ public class SoundSystem
         // Queue a command to quick play this new source:
         CommandQueue( new CommandObject( CommandObject.QUICK_PLAY, priority,
                                           false, toLoop, sourcename,
-                                          new FilenameURL( filename ), x, y, z,
+                                          filenameURL( filename ), x, y, z,
                                           attmodel, distOrRoll, true ) );
-        CommandQueue( new CommandObject( CommandObject.PLAY, sourcename) );
+        CommandQueue( newCommand().set( CommandObject.PLAY, sourcename) );
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        wakeCommandThread();
         
         // return the new source name.
         return sourcename;
@@ -864,9 +1100,9 @@ public class SoundSystem
                                          new FilenameURL( url, identifier ),
                                          x, y, z, attmodel, distOrRoll,
                                          true ) );
-        CommandQueue( new CommandObject( CommandObject.PLAY, sourcename) );
+        CommandQueue( newCommand().set( CommandObject.PLAY, sourcename) );
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        wakeCommandThread();
 
         // return the new source name.
         return sourcename;
@@ -904,11 +1140,11 @@ public class SoundSystem
         // Queue a command to quick stream this new source:
         CommandQueue( new CommandObject( CommandObject.QUICK_PLAY, priority,
                            true, toLoop, sourcename,
-                           new FilenameURL( filename ), x, y, z,
+                           filenameURL( filename ), x, y, z,
                            attmodel, distOrRoll, true ) );
-        CommandQueue( new CommandObject( CommandObject.PLAY, sourcename) );
+        CommandQueue( newCommand().set( CommandObject.PLAY, sourcename) );
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        wakeCommandThread();
         
         // return the new source name.
         return sourcename;
@@ -947,9 +1183,9 @@ public class SoundSystem
                                           new FilenameURL( url, identifier ),
                                           x, y, z, attmodel, distOrRoll,
                                           true ) );
-        CommandQueue( new CommandObject( CommandObject.PLAY, sourcename) );
+        CommandQueue( newCommand().set( CommandObject.PLAY, sourcename) );
         // Wake the command thread to process commands:
-        commandThread.interrupt();
+        wakeCommandThread();
 
         // return the new source name.
         return sourcename;
@@ -964,9 +1200,26 @@ public class SoundSystem
  */    
     public void setPosition( String sourcename, float x, float y, float z )
     {
-        CommandQueue( new CommandObject( CommandObject.SET_POSITION,
-                                         sourcename, x, y, z ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.SET_POSITION,
+                                        sourcename, x, y, z ) );
+        wakeCommandThread();
+    }
+/**
+ * Move a source to the specified location.
+ * @param handle Handle for the source (see getSourceHandle()).
+ * @param x destination X coordinate.
+ * @param y destination Y coordinate.
+ * @param z destination Z coordinate.
+ */
+    public void setPosition( int handle, float x, float y, float z )
+    {
+        String sourcename = handleSourcename( handle, "setPosition" );
+        if( sourcename == null )
+            return;
+        CommandQueue( handleCommand( newCommand().set(
+                                        CommandObject.SET_POSITION,
+                                        sourcename, x, y, z ), handle ) );
+        wakeCommandThread();
     }
 /**
  * Manually sets the specified source's volume.
@@ -975,26 +1228,50 @@ public class SoundSystem
  */
     public void setVolume( String sourcename, float value )
     {
-        CommandQueue( new CommandObject( CommandObject.SET_VOLUME,
-                                         sourcename, value ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.SET_VOLUME,
+                                        sourcename, value ) );
+        wakeCommandThread();
+    }
+/**
+ * Manually sets the specified source's volume.
+ * @param handle Handle for the source (see getSourceHandle()).
+ * @param value New volume, float value ( 0.0f - 1.0f ).
+ */
+    public void setVolume( int handle, float value )
+    {
+        String sourcename = handleSourcename( handle, "setVolume" );
+        if( sourcename == null )
+            return;
+        CommandQueue( handleCommand( newCommand().set(
+                                        CommandObject.SET_VOLUME,
+                                        sourcename, value ), handle ) );
+        wakeCommandThread();
     }
 
 /**
  * Returns the current volume of the specified source, or zero if the specified 
- * source was not found.
+ * source was not found.  This method does not wait for the command thread
+ * (see getStateSnapshot()).
  * @param sourcename Source to read volume from.
  * @return Float value representing the source volume (0.0f - 1.0f).
  */
     public float getVolume( String sourcename )
     {
-        synchronized( SoundSystemConfig.THREAD_SYNC )
+        StateSnapshot snapshot = currentStateSnapshot();
+        if( snapshot == null )
         {
-            if( soundLibrary != null )
-                return soundLibrary.getVolume( sourcename );
-            else
-                return 0.0f;
+            synchronized( SoundSystemConfig.THREAD_SYNC )
+            {
+                if( soundLibrary != null )
+                    return soundLibrary.getVolume( sourcename );
+                else
+                    return 0.0f;
+            }
         }
+        SourceState state = snapshot.getSourceState( sourcename );
+        if( state == null )
+            return 0.0f;
+        return state.volume;
     }
 
 /**
@@ -1004,9 +1281,24 @@ public class SoundSystem
  */
     public void setPitch( String sourcename, float value )
     {
-        CommandQueue( new CommandObject( CommandObject.SET_PITCH,
-                                         sourcename, value ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.SET_PITCH,
+                                        sourcename, value ) );
+        wakeCommandThread();
+    }
+/**
+ * Manually sets the specified source's pitch.
+ * @param handle Handle for the source (see getSourceHandle()).
+ * @param value A float value ( 0.5f - 2.0f ).
+ */
+    public void setPitch( int handle, float value )
+    {
+        String sourcename = handleSourcename( handle, "setPitch" );
+        if( sourcename == null )
+            return;
+        CommandQueue( handleCommand( newCommand().set(
+                                        CommandObject.SET_PITCH,
+                                        sourcename, value ), handle ) );
+        wakeCommandThread();
     }
 
 /**
@@ -1016,10 +1308,18 @@ public class SoundSystem
  */
     public float getPitch( String sourcename )
     {
-        if( soundLibrary != null )
-            return soundLibrary.getPitch( sourcename );
-        else
+        StateSnapshot snapshot = currentStateSnapshot();
+        if( snapshot == null )
+        {
+            if( soundLibrary != null )
+                return soundLibrary.getPitch( sourcename );
+            else
+                return 1.0f;
+        }
+        SourceState state = snapshot.getSourceState( sourcename );
+        if( state == null )
             return 1.0f;
+        return state.pitch;
     }
 
 /**
@@ -1030,9 +1330,9 @@ public class SoundSystem
  */    
     public void setPriority( String sourcename, boolean pri )
     {
-        CommandQueue( new CommandObject( CommandObject.SET_PRIORITY,
-                                         sourcename, pri ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.SET_PRIORITY,
+                                        sourcename, pri ) );
+        wakeCommandThread();
     }
 /**
  * Changes a source to looping or non-looping.
@@ -1041,9 +1341,9 @@ public class SoundSystem
  */    
     public void setLooping( String sourcename, boolean lp )
     {
-        CommandQueue( new CommandObject( CommandObject.SET_LOOPING,
-                                          sourcename, lp ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.SET_LOOPING,
+                                         sourcename, lp ) );
+        wakeCommandThread();
     }
 /**
  * Changes a source's attenuation model.
@@ -1054,9 +1354,9 @@ public class SoundSystem
  */    
     public void setAttenuation( String sourcename, int model )
     {
-        CommandQueue( new CommandObject( CommandObject.SET_ATTENUATION,
-                                         sourcename, model ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.SET_ATTENUATION,
+                                        sourcename, model ) );
+        wakeCommandThread();
     }
 /**
  * Changes a source's fade distance or rolloff factor.
@@ -1067,9 +1367,9 @@ public class SoundSystem
  */    
     public void setDistOrRoll( String sourcename, float dr)
     {
-        CommandQueue( new CommandObject( CommandObject.SET_DIST_OR_ROLL,
-                                         sourcename, dr ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.SET_DIST_OR_ROLL,
+                                        sourcename, dr ) );
+        wakeCommandThread();
     }
 
 /**
@@ -1080,9 +1380,9 @@ public class SoundSystem
  */
     public void changeDopplerFactor( float dopplerFactor)
     {
-        CommandQueue( new CommandObject( CommandObject.CHANGE_DOPPLER_FACTOR,
-                                         dopplerFactor ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.CHANGE_DOPPLER_FACTOR,
+                                        dopplerFactor ) );
+        wakeCommandThread();
     }
 
 /**
@@ -1093,9 +1393,9 @@ public class SoundSystem
  */
     public void changeDopplerVelocity( float dopplerVelocity )
     {
-        CommandQueue( new CommandObject( CommandObject.CHANGE_DOPPLER_VELOCITY,
-                                         dopplerVelocity ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.CHANGE_DOPPLER_VELOCITY,
+                                        dopplerVelocity ) );
+        wakeCommandThread();
     }
 
 /**
@@ -1109,9 +1409,26 @@ public class SoundSystem
  */
     public void setVelocity( String sourcename, float x, float y, float z )
     {
-        CommandQueue( new CommandObject( CommandObject.SET_VELOCITY,
-                                         sourcename, x, y, z ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.SET_VELOCITY,
+                                        sourcename, x, y, z ) );
+        wakeCommandThread();
+    }
+/**
+ * Set the velocity of a source, for use in Doppler effect.
+ * @param handle Handle for the source (see getSourceHandle()).
+ * @param x Velocity along world x-axis.
+ * @param y Velocity along world y-axis.
+ * @param z Velocity along world z-axis.
+ */
+    public void setVelocity( int handle, float x, float y, float z )
+    {
+        String sourcename = handleSourcename( handle, "setVelocity" );
+        if( sourcename == null )
+            return;
+        CommandQueue( handleCommand( newCommand().set(
+                                        CommandObject.SET_VELOCITY,
+                                        sourcename, x, y, z ), handle ) );
+        wakeCommandThread();
     }
     
 /**
@@ -1124,21 +1441,30 @@ public class SoundSystem
  */
     public void setListenerVelocity( float x, float y, float z )
     {
-        CommandQueue( new CommandObject( CommandObject.SET_LISTENER_VELOCITY,
-                                         x, y, z ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.SET_LISTENER_VELOCITY,
+                                        x, y, z ) );
+        wakeCommandThread();
     }
 
 /**
  * Returns the number of miliseconds since the specified source began playing.
+ * This method does not wait for the command thread (see getStateSnapshot()).
  * @return miliseconds, or -1 if not playing or unable to calculate
  */
     public float millisecondsPlayed( String sourcename )
     {
-        synchronized( SoundSystemConfig.THREAD_SYNC )
+        StateSnapshot snapshot = currentStateSnapshot();
+        if( snapshot == null )
         {
-            return soundLibrary.millisecondsPlayed( sourcename );
+            synchronized( SoundSystemConfig.THREAD_SYNC )
+            {
+                return soundLibrary.millisecondsPlayed( sourcename );
+            }
         }
+        SourceState state = snapshot.getSourceState( sourcename );
+        if( state == null )
+            return -1;
+        return state.millisecondsPlayed;
     }
 
 /**
@@ -1158,7 +1484,7 @@ public class SoundSystem
     {
         CommandQueue( new CommandObject( CommandObject.FEED_RAW_AUDIO_DATA,
                                          sourcename, buffer ) );
-        commandThread.interrupt();
+        wakeCommandThread();
     }
 /**
  * Plays the specified source.
@@ -1166,8 +1492,21 @@ public class SoundSystem
  */    
     public void play( String sourcename )
     {
-        CommandQueue( new CommandObject( CommandObject.PLAY, sourcename) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.PLAY, sourcename) );
+        wakeCommandThread();
+    }
+/**
+ * Plays the specified source.
+ * @param handle Handle for the source (see getSourceHandle()).
+ */
+    public void play( int handle )
+    {
+        String sourcename = handleSourcename( handle, "play" );
+        if( sourcename == null )
+            return;
+        CommandQueue( handleCommand( newCommand().set( CommandObject.PLAY,
+                                                       sourcename ), handle ) );
+        wakeCommandThread();
     }
 /**
  * Pauses the specified source.
@@ -1175,8 +1514,21 @@ public class SoundSystem
  */    
     public void pause( String sourcename )
     {
-        CommandQueue( new CommandObject( CommandObject.PAUSE, sourcename) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.PAUSE, sourcename) );
+        wakeCommandThread();
+    }
+/**
+ * Pauses the specified source.
+ * @param handle Handle for the source (see getSourceHandle()).
+ */
+    public void pause( int handle )
+    {
+        String sourcename = handleSourcename( handle, "pause" );
+        if( sourcename == null )
+            return;
+        CommandQueue( handleCommand( newCommand().set( CommandObject.PAUSE,
+                                                       sourcename ), handle ) );
+        wakeCommandThread();
     }
 /**
  * Stops the specified source.
@@ -1184,8 +1536,21 @@ public class SoundSystem
  */    
     public void stop( String sourcename )
     {
-        CommandQueue( new CommandObject( CommandObject.STOP, sourcename) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.STOP, sourcename) );
+        wakeCommandThread();
+    }
+/**
+ * Stops the specified source.
+ * @param handle Handle for the source (see getSourceHandle()).
+ */
+    public void stop( int handle )
+    {
+        String sourcename = handleSourcename( handle, "stop" );
+        if( sourcename == null )
+            return;
+        CommandQueue( handleCommand( newCommand().set( CommandObject.STOP,
+                                                       sourcename ), handle ) );
+        wakeCommandThread();
     }
 /**
  * Rewinds the specified source.
@@ -1193,8 +1558,8 @@ public class SoundSystem
  */    
     public void rewind( String sourcename )
     {
-        CommandQueue( new CommandObject( CommandObject.REWIND, sourcename) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.REWIND, sourcename) );
+        wakeCommandThread();
     }
 /**
  * Flushes all previously queued audio data from a streaming source.
@@ -1202,8 +1567,8 @@ public class SoundSystem
  */
     public void flush( String sourcename )
     {
-        CommandQueue( new CommandObject( CommandObject.FLUSH, sourcename) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.FLUSH, sourcename) );
+        wakeCommandThread();
     }
 
 /**
@@ -1213,8 +1578,8 @@ public class SoundSystem
  */    
     public void cull( String sourcename )
     {
-        CommandQueue( new CommandObject( CommandObject.CULL, sourcename) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.CULL, sourcename) );
+        wakeCommandThread();
     }
     
 /**
@@ -1224,8 +1589,8 @@ public class SoundSystem
  */    
     public void activate( String sourcename )
     {
-        CommandQueue( new CommandObject( CommandObject.ACTIVATE, sourcename) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.ACTIVATE, sourcename) );
+        wakeCommandThread();
     }
     
 /**
@@ -1242,9 +1607,9 @@ public class SoundSystem
  */    
     public void setTemporary( String sourcename, boolean temporary )
     {
-        CommandQueue( new CommandObject( CommandObject.SET_TEMPORARY,
-                                         sourcename, temporary ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.SET_TEMPORARY,
+                                        sourcename, temporary ) );
+        wakeCommandThread();
     }
     
 /**
@@ -1253,9 +1618,29 @@ public class SoundSystem
  */    
     public void removeSource( String sourcename )
     {
-        CommandQueue( new CommandObject( CommandObject.REMOVE_SOURCE,
-                                         sourcename ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.REMOVE_SOURCE,
+                                        sourcename ) );
+        wakeCommandThread();
+        // the source's handle is no longer valid:
+        sourceHandles.release( sourcename );
+    }
+
+/**
+ * Returns a compact integer handle for the specified source, which may be used
+ * in place of its sourcename with methods such as setPosition(), setVelocity(),
+ * setVolume(), setPitch(), play(), pause(), and stop().  Handles avoid looking
+ * up the source by name every time it is changed.  A source keeps the same
+ * handle until it is removed (either by removeSource() or, for temporary
+ * sources, after it finishes playing).  A handle for a source which does not
+ * exist is released shortly afterwards unless the source is created.  Methods
+ * newSource(), newStreamingSource() and rawDataStream() return the new source's
+ * handle.
+ * @param sourcename Identifier for the source.
+ * @return Handle for the source.
+ */
+    public int getSourceHandle( String sourcename )
+    {
+        return sourceHandles.assign( sourcename );
     }
 /**
  * Moves the listener relative to the current location.
@@ -1265,9 +1650,9 @@ public class SoundSystem
  */    
     public void moveListener( float x, float y, float z )
     {
-        CommandQueue( new CommandObject( CommandObject.MOVE_LISTENER,
-                                         x, y, z ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.MOVE_LISTENER,
+                                        x, y, z ) );
+        wakeCommandThread();
     }
 /**
  * Moves the listener to the specified location.
@@ -1277,9 +1662,9 @@ public class SoundSystem
  */    
     public void setListenerPosition( float x, float y, float z )
     {
-        CommandQueue( new CommandObject( CommandObject.SET_LISTENER_POSITION,
-                                         x, y, z ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.SET_LISTENER_POSITION,
+                                        x, y, z ) );
+        wakeCommandThread();
     }
 /**
  * Turns the listener counterclockwise by "angle" radians around the y-axis, 
@@ -1288,9 +1673,9 @@ public class SoundSystem
  */    
     public void turnListener( float angle )
     {
-        CommandQueue( new CommandObject( CommandObject.TURN_LISTENER,
-                                         angle ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.TURN_LISTENER,
+                                        angle ) );
+        wakeCommandThread();
     }
 /**
  * Sets the listener's angle in radians around the y-axis.
@@ -1298,9 +1683,9 @@ public class SoundSystem
  */    
     public void setListenerAngle( float angle )
     {
-        CommandQueue( new CommandObject( CommandObject.SET_LISTENER_ANGLE,
-                                         angle ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.SET_LISTENER_ANGLE,
+                                        angle ) );
+        wakeCommandThread();
     }    
 /**
  * Sets the listener's orientation.
@@ -1314,9 +1699,9 @@ public class SoundSystem
     public void setListenerOrientation( float lookX, float lookY, float lookZ,
                                         float upX, float upY, float upZ )
     {
-        CommandQueue( new CommandObject( CommandObject.SET_LISTENER_ORIENTATION,
-                                         lookX, lookY, lookZ, upX, upY, upZ ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.SET_LISTENER_ORIENTATION,
+                                        lookX, lookY, lookZ, upX, upY, upZ ) );
+        wakeCommandThread();
     }
     
 /**
@@ -1325,9 +1710,9 @@ public class SoundSystem
  */
     public void setMasterVolume( float value )
     {
-        CommandQueue( new CommandObject( CommandObject.SET_MASTER_VOLUME,
-                                         value ) );
-        commandThread.interrupt();
+        CommandQueue( newCommand().set( CommandObject.SET_MASTER_VOLUME,
+                                        value ) );
+        wakeCommandThread();
     }
     
 /**
@@ -1341,16 +1726,183 @@ public class SoundSystem
     
 /**
  * Method for obtaining information about the listener's position and 
- * orientation.  
+ * orientation.  This method does not wait for the command thread (see
+ * getStateSnapshot()), and it returns a copy, so changing it has no effect on
+ * the listener.
  * @return a {@link paulscode.sound.ListenerData ListenerData} object.
  */
     public ListenerData getListenerData()
     {
+        StateSnapshot snapshot = currentStateSnapshot();
+        if( snapshot == null )
+        {
+            synchronized( SoundSystemConfig.THREAD_SYNC )
+            {
+                return soundLibrary.getListenerData();
+            }
+        }
+        return snapshot.getListenerData();
+    }
+
+/**
+ * Returns the most recent snapshot of every source's playback state and the
+ * listener's position, as published by the command thread.  The snapshot is
+ * at most SoundSystemConfig.getStateSnapshotInterval() milliseconds out of
+ * date, plus however long the command thread spends executing queued commands.
+ * A new snapshot is only published when the state changes, so while nothing
+ * is playing the same snapshot may be returned for a long time.  Commands
+ * which have been queued but not yet executed are not reflected in it.
+ * @return State snapshot, or null if none has been published yet.
+ */
+    public StateSnapshot getStateSnapshot()
+    {
+        return stateSnapshot;
+    }
+
+/**
+ * Returns the snapshot the query methods should read, or null if they should
+ * look at the sources directly.  Threads which hold the
+ * SoundSystemConfig.THREAD_SYNC lock (such as the command thread) always look
+ * at the sources directly, since they may have just changed them.
+ * @return State snapshot, or null.
+ */
+    private StateSnapshot currentStateSnapshot()
+    {
+        if( Thread.holdsLock( SoundSystemConfig.THREAD_SYNC ) )
+            return null;
+        return stateSnapshot;
+    }
+
+/**
+ * Publishes a new state snapshot for the query methods to read, if anything
+ * changed since the last one.  Only commands and playing sources change the
+ * state, so when no commands have been executed and nothing was playing, this
+ * returns right away without taking the SoundSystemConfig.THREAD_SYNC lock.
+ * Sources whose state did not change keep their previous SourceState.  This
+ * method is called by the command thread, and it is unlikely that the user
+ * would ever need to call it.
+ * @return True if sources are playing (or about to start streaming), so the
+ * state will keep changing without any commands.
+ */
+    public boolean publishState()
+    {
+        StateSnapshot previous = stateSnapshot;
+        if( previous != null && !commandsExecuted && !statePlaying )
+            return false;
+
         synchronized( SoundSystemConfig.THREAD_SYNC )
         {
-            return soundLibrary.getListenerData();
+            commandsExecuted = false;
+            previous = stateSnapshot;
+            if( soundLibrary == null )
+            {
+                stateSnapshot = null;
+                statePlaying = false;
+                return false;
+            }
+
+            Map<String, SourceState> previousStates = null;
+            if( previous != null )
+                previousStates = previous.getSourceStates();
+
+            // Copy the previous states only once something has changed:
+            HashMap<String, SourceState> sourceStates = null;
+            if( previousStates == null )
+                sourceStates = new HashMap<String, SourceState>();
+            int count = 0;
+            boolean active = false;
+            SourceState state, old;
+
+            HashMap<String, Source> sourceMap = soundLibrary.getSources();
+            if( sourceMap != null )
+            {
+                for( Source source : sourceMap.values() )
+                {
+                    if( source == null || source.sourcename == null )
+                        continue;
+                    old = previousStates == null ? null
+                                : previousStates.get( source.sourcename );
+                    state = SourceState.update( old, source );
+                    if( state != old )
+                    {
+                        if( sourceStates == null )
+                            sourceStates = new HashMap<String, SourceState>(
+                                                            previousStates );
+                        sourceStates.put( source.sourcename, state );
+                    }
+                    count++;
+                    // Streaming sources are not playing until their first
+                    // buffers have been queued:
+                    if( state.playing || ( source.toStream && source.preLoad
+                                           && !source.stopped()
+                                           && !source.paused() ) )
+                        active = true;
+                }
+            }
+            MidiChannel midiChannel = soundLibrary.getMidiChannel();
+            String midiSourcename = null;
+            if( midiChannel != null )
+                midiSourcename = midiChannel.getSourcename();
+            if( midiSourcename != null )
+            {
+                old = previousStates == null ? null
+                            : previousStates.get( midiSourcename );
+                state = SourceState.update( old, midiChannel );
+                if( state != old )
+                {
+                    if( sourceStates == null )
+                        sourceStates = new HashMap<String, SourceState>(
+                                                            previousStates );
+                    sourceStates.put( midiSourcename, state );
+                }
+                count++;
+            }
+
+            // Drop sources which have been removed:
+            if( sourceStates == null && previousStates.size() != count )
+                sourceStates = new HashMap<String, SourceState>(
+                                                            previousStates );
+            if( sourceStates != null && sourceStates.size() != count )
+            {
+                Iterator<String> keys = sourceStates.keySet().iterator();
+                String key;
+                while( keys.hasNext() )
+                {
+                    key = keys.next();
+                    if( !key.equals( midiSourcename ) && ( sourceMap == null
+                                     || sourceMap.get( key ) == null ) )
+                        keys.remove();
+                }
+            }
+
+            ListenerData listenerData;
+            ListenerData current = soundLibrary.getListenerData();
+            if( previous != null && current != null
+                && previous.listenerMatches( current ) )
+            {
+                listenerData = previous.sharedListenerData();
+            }
+            else
+            {
+                listenerData = new ListenerData();
+                if( current != null )
+                    listenerData.setData( current );
+            }
+
+            statePlaying = active;
+            if( sourceStates == null
+                && listenerData == previous.sharedListenerData() )
+                return active;  // nothing changed
+
+            if( sourceStates == null )
+                sourceStates = new HashMap<String, SourceState>(
+                                                            previousStates );
+            stateSnapshot = new StateSnapshot( System.currentTimeMillis(),
+                                               sourceStates, listenerData );
+            return active;
         }
     }
+
 /**
  * Switches to the specified library, and preserves all sources.  
  * @param libraryClass Library to use.
@@ -1367,6 +1919,8 @@ public class SoundSystem
 
             HashMap<String, Source> sourceMap = null;
             ListenerData listenerData = null;
+            Map<String, SoundBuffer> loadedSounds = null;
+            boolean loadedReversed = false;
 
             boolean wasMidiChannel = false;
             MidiChannel midiChannel = null;
@@ -1379,6 +1933,8 @@ public class SoundSystem
                 currentLibrary( SET, null );
                 sourceMap = copySources( soundLibrary.getSources() );
                 listenerData = soundLibrary.getListenerData();
+                loadedSounds = soundLibrary.getLoadedSounds();
+                loadedReversed = soundLibrary.reverseByteOrder();
                 midiChannel = soundLibrary.getMidiChannel();
                 if( midiChannel != null )
                 {
@@ -1450,6 +2006,21 @@ public class SoundSystem
                                                midiFilenameURL );
                 soundLibrary.setMidiChannel( midiChannel );
             }
+            // Hand over the loaded sample data, so the new library doesn't
+            // decode everything again.  Not possible if the libraries need the
+            // data in a different byte order:
+            if( loadedSounds != null
+                && soundLibrary.reverseByteOrder() == loadedReversed )
+            {
+                Iterator<Map.Entry<String, SoundBuffer>> iter =
+                                            loadedSounds.entrySet().iterator();
+                Map.Entry<String, SoundBuffer> entry;
+                while( iter.hasNext() )
+                {
+                    entry = iter.next();
+                    soundLibrary.loadSound( entry.getValue(), entry.getKey() );
+                }
+            }
             soundLibrary.copySources( sourceMap );
 
             message( "", 0 );
@@ -1474,15 +2045,9 @@ public class SoundSystem
         
         CommandQueue( new CommandObject( CommandObject.NEW_LIBRARY,
                                          libraryClass ) );
-        commandThread.interrupt();
+        commandThread.wake();
         
-        for( int x = 0; (!initialized( GET, XXX )) && (x < 100); x++ )
-        {
-            snooze( 400 );
-            commandThread.interrupt();
-        }
-        
-        if( !initialized( GET, XXX ) )
+        if( !waitForInitialized( 30000 ) )
         {
             SoundSystemException sse = new SoundSystemException( 
                                             className +
@@ -2344,11 +2909,213 @@ public class SoundSystem
         ********/
     }
     
+/**
+ * Starts collecting the commands queued by the calling thread, rather than
+ * handing them to the command thread one at a time.  Use this when changing
+ * many things at once (for example, moving the listener and every source at
+ * the start of each frame), followed by a call to commitUpdate().  Calls to
+ * beginUpdate() may be nested, in which case only the outermost
+ * commitUpdate() releases the commands.
+ */
+    public void beginUpdate()
+    {
+        CommandObject batch = updateBatch.get();
+        if( batch == null )
+        {
+            AtomicReference<CommandObject> spare = spareBatch.get();
+            if( spare == null )
+            {
+                spare = new AtomicReference<CommandObject>();
+                spareBatch.set( spare );
+            }
+            batch = spare.getAndSet( null );
+            if( batch == null )
+            {
+                // The last one hasn't been taken by the command thread yet:
+                batch = new CommandObject( CommandObject.BATCH );
+                batch.objectArgs = new Object[] {
+                                new ArrayList<CommandObject>(), spare };
+                batch.intArgs = new int[1];
+            }
+            updateBatch.set( batch );
+        }
+        // keep track of how many beginUpdate() calls need to be committed:
+        batch.intArgs[0]++;
+    }
+
+/**
+ * Hands all commands queued by the calling thread since beginUpdate() to the
+ * command thread at once, and wakes it up one time.  The command thread always
+ * executes the commands together, so it never sees half of an update.
+ */
+    public void commitUpdate()
+    {
+        CommandObject batch = updateBatch.get();
+        if( batch == null )
+        {
+            errorMessage( "Method 'commitUpdate' called without a matching " +
+                          "call to 'beginUpdate'", 0 );
+            return;
+        }
+        batch.intArgs[0]--;
+        if( batch.intArgs[0] > 0 )
+            return;  // still inside an outer update
+
+        updateBatch.set( null );
+        List<CommandObject> commands = batchCommands( batch );
+        int size = commands.size();
+        if( size > 1 )
+        {
+            CommandQueue( batch );
+        }
+        else
+        {
+            if( size == 1 )
+                CommandQueue( commands.get( 0 ) );
+            releaseBatch( batch );
+        }
+        if( size > 0 )
+            wakeCommandThread();
+    }
+
+/**
+ * Empties a BATCH command and hands it back to the thread which created it,
+ * for its next call to beginUpdate().
+ * @param batch Command created by beginUpdate().
+ */
+    @SuppressWarnings( "unchecked" )
+    private void releaseBatch( CommandObject batch )
+    {
+        batchCommands( batch ).clear();
+        ( (AtomicReference<CommandObject>) batch.objectArgs[1] ).set( batch );
+    }
+
+/**
+ * Holds on to a command if it uses a sound file which is still being loaded by
+ * the sound loader (creating a non-streaming source for the file, or unloading
+ * it), or if it refers to a source which is already waiting for a file.  This
+ * keeps commands which use the sound in order with the call to loadSound(),
+ * without making the command thread wait for the file to be decoded.  The
+ * command is executed after the file is installed (see
+ * installLoadedSound()).  This method may only be called from the command
+ * thread.
+ * @param commandObject Command about to be executed.
+ * @return True if the command is waiting, and should not be executed yet.
+ */
+    private boolean waitForLoad( CommandObject commandObject )
+    {
+        String sourcename = null;
+        String filename = null;
+        switch( commandObject.Command )
+        {
+            // these refer to sound files rather than sources:
+            case CommandObject.LOAD_SOUND:
+            case CommandObject.LOAD_DATA:
+            case CommandObject.INSTALL_SOUND:
+            case CommandObject.START_LOAD:
+                return false;
+            case CommandObject.UNLOAD_SOUND:
+                filename = commandObject.stringArgs[0];
+                break;
+            case CommandObject.NEW_SOURCE:
+            case CommandObject.QUICK_PLAY:
+                sourcename = commandObject.stringArgs[0];
+                // streaming sources don't use the sound loader:
+                if( !commandObject.boolArgs[1]
+                    && commandObject.objectArgs[0] != null )
+                    filename = ( (FilenameURL) commandObject.objectArgs[0] )
+                               .getFilename();
+                break;
+            default:
+                if( commandObject.stringArgs != null )
+                    sourcename = commandObject.stringArgs[0];
+                break;
+        }
+
+        String waitingFor = null;
+        if( sourcename != null && !waitingSources.isEmpty() )
+            waitingFor = waitingSources.get( sourcename );
+        if( waitingFor == null )
+        {
+            if( filename == null || soundLoader == null
+                || !soundLoader.pending( filename ) )
+                return false;
+            waitingFor = filename;
+            if( sourcename != null )
+                waitingSources.put( sourcename, filename );
+        }
+
+        List<CommandObject> waiting = waitingForLoad.get( waitingFor );
+        if( waiting == null )
+        {
+            waiting = new ArrayList<CommandObject>();
+            waitingForLoad.put( waitingFor, waiting );
+        }
+        waiting.add( commandObject );
+        return true;
+    }
+
+/**
+ * Installs a sound file which the sound loader has finished decoding, and
+ * moves any commands which were waiting for it back into commandBatch, right
+ * after the INSTALL_SOUND command, so they are executed next.  This method may
+ * only be called from the command thread.
+ * @param filename Filename/identifier of the sound file.
+ * @param index Position of the INSTALL_SOUND command in commandBatch.
+ */
+    private void installLoadedSound( String filename, int index )
+    {
+        if( soundLoader == null || filename == null )
+            return;
+        soundLoader.install( filename, soundLibrary );
+        if( soundLoader.pending( filename ) )
+            return;  // being decoded again
+
+        List<CommandObject> waiting = waitingForLoad.remove( filename );
+        if( waiting == null )
+            return;
+        Iterator<String> i = waitingSources.values().iterator();
+        while( i.hasNext() )
+        {
+            if( i.next().equals( filename ) )
+                i.remove();
+        }
+        commandBatch.addAll( index + 1, waiting );
+    }
+
+/**
+ * Wakes the command thread so it can process queued commands, unless the
+ * calling thread is in the middle of an update (see beginUpdate()).
+ */
+    protected void wakeCommandThread()
+    {
+        if( updateBatch.get() != null )
+            return;  // commitUpdate() will wake it
+        CommandThread thread = commandThread;
+        if( thread != null )
+            thread.wake();
+    }
+
+/**
+ * Returns the list of commands held by a BATCH command.
+ * @param batch Command created by beginUpdate().
+ * @return Commands in the order they were queued.
+ */
+    @SuppressWarnings( "unchecked" )
+    private List<CommandObject> batchCommands( CommandObject batch )
+    {
+        return (List<CommandObject>) batch.objectArgs[0];
+    }
+
 /**
  * Queues a command.  
  * If newCommand is null, all commands are dequeued and executed.  
  * This is automatically used by the sound system, so it is not 
  * likely that a user would ever need to use this method.  
+ * Queueing a command does not wait for the command thread, even while it is
+ * busy executing previously queued commands.  Only when the command queue is
+ * full (see SoundSystemConfig.setCommandQueueCapacity()) does the calling
+ * thread wait for the command thread to catch up.
  * See {@link paulscode.sound.CommandObject CommandObject} for more information
  * about commands.  
  * @param newCommand Command to queue, or null to execute commands.  
@@ -2356,273 +3123,661 @@ public class SoundSystem
  */
     public boolean CommandQueue( CommandObject newCommand )
     {
-        synchronized( SoundSystemConfig.THREAD_SYNC )
+        if( newCommand != null )
         {
-            if( newCommand == null )
+            // Hold on to the command if this thread is in the middle of an
+            // update (but never a library change, since that is waited on):
+            CommandObject batch = updateBatch.get();
+            if( batch != null
+                && newCommand.Command != CommandObject.NEW_LIBRARY )
             {
-                // New command is null - that means execute all queued commands.
-                boolean activations = false;
-                CommandObject commandObject;
+                batchCommands( batch ).add( newCommand );
+                return true;
+            }
+
+            CommandRing queue = commandQueue;
+            // make sure the commandQueue exists:
+            if( queue == null )
+                return false;
+            // queue a new command
+            while( !queue.offer( newCommand ) )
+            {
+                // The queue is full, so let the command thread catch up:
+                CommandThread thread = commandThread;
+                if( thread == null || commandQueue != queue )
+                    return false;  // shutting down
+                if( Thread.holdsLock( SoundSystemConfig.THREAD_SYNC )
+                    || Thread.currentThread() == thread )
+                {
+                    // The command thread can't run until we let go of the
+                    // lock (or this is the command thread itself, for
+                    // example in ManageSources()), so make room ourselves:
+                    if( executingCommands )
+                        takeCommands();  // already executing this batch
+                    else
+                        CommandQueue( null );
+                }
+                else
+                {
+                    thread.wake();
+                    Thread.yield();
+                }
+            }
+            // Of course there is something in the queue now, since we just
+            // added it:
+            return true;
+        }
+
+        synchronized( SoundSystemConfig.THREAD_SYNC )
+        {
+            // New command is null - that means execute all queued commands.
+            long drainStart = System.nanoTime();
+            int executed = 0;
+            boolean activations = false;
+            CommandObject commandObject;
+            Source source;
 
-                // Loop through the command queue:
-                while( commandQueue != null && commandQueue.size() > 0 )
+            // Grab what has been queued so far, and skip commands which are
+            // made redundant by later ones:
+            while( takeCommands() )
+            {
+                executingCommands = true;
+                for( int i = 0; i < commandBatch.size(); i++ )
                 {
-                    // Grab the oldest command in the queue:
-                    commandObject = commandQueue.remove( 0 );
+                    commandObject = commandBatch.get( i );
+                    // Skip commands which were coalesced:
+                    if( commandObject == null )
+                        continue;
+                    // Hold on to commands which need a sound file that is
+                    // still being loaded:
+                    if( waitForLoad( commandObject ) )
+                        continue;
+                    executed++;
+
                     // See what it is, and execute the proper Command method:
-                    if( commandObject != null )
+                    switch( commandObject.Command )
                     {
-                        switch( commandObject.Command )
-                        {
-                            case CommandObject.INITIALIZE:
-                                CommandInitialize();
-                                break;
-                            case CommandObject.LOAD_SOUND:
-                                CommandLoadSound(
-                                        (FilenameURL) commandObject.objectArgs[0] );
-                                break;
-                            case CommandObject.LOAD_DATA:
-                                CommandLoadSound(
-                                        (SoundBuffer) commandObject.objectArgs[0],
-                                        commandObject.stringArgs[0] );
-                                break;
-                            case CommandObject.UNLOAD_SOUND:
-                                CommandUnloadSound( commandObject.stringArgs[0] );
-                                break;
-                            case CommandObject.QUEUE_SOUND:
-                                CommandQueueSound( commandObject.stringArgs[0],
-                                        (FilenameURL) commandObject.objectArgs[0] );
-                                break;
-                            case CommandObject.DEQUEUE_SOUND:
-                                CommandDequeueSound( commandObject.stringArgs[0],
-                                                     commandObject.stringArgs[1] );
-                                break;
-                            case CommandObject.FADE_OUT:
-                                CommandFadeOut( commandObject.stringArgs[0],
-                                          (FilenameURL) commandObject.objectArgs[0],
-                                          commandObject.longArgs[0] );
-                                break;
-                            case CommandObject.FADE_OUT_IN:
-                                CommandFadeOutIn( commandObject.stringArgs[0],
-                                          (FilenameURL) commandObject.objectArgs[0],
-                                          commandObject.longArgs[0],
-                                          commandObject.longArgs[1] );
-                                break;
-                            case CommandObject.CHECK_FADE_VOLUMES:
-                                CommandCheckFadeVolumes();
-                                break;
-                            case CommandObject.NEW_SOURCE:
-                                CommandNewSource( commandObject.boolArgs[0],
-                                        commandObject.boolArgs[1],
-                                        commandObject.boolArgs[2],
-                                        commandObject.stringArgs[0],
-                                        (FilenameURL) commandObject.objectArgs[0],
+                        case CommandObject.INITIALIZE:
+                            CommandInitialize();
+                            break;
+                        case CommandObject.LOAD_SOUND:
+                            CommandLoadSound(
+                                    (FilenameURL) commandObject.objectArgs[0] );
+                            break;
+                        case CommandObject.LOAD_DATA:
+                            CommandLoadSound(
+                                    (SoundBuffer) commandObject.objectArgs[0],
+                                    commandObject.stringArgs[0] );
+                            break;
+                        case CommandObject.INSTALL_SOUND:
+                            installLoadedSound( commandObject.stringArgs[0],
+                                                i );
+                            break;
+                        case CommandObject.START_LOAD:
+                            if( soundLoader != null )
+                                soundLoader.start( (SoundLoader.LoadSet)
+                                                   commandObject.objectArgs[0],
+                                                   soundLibrary );
+                            break;
+                        case CommandObject.UNLOAD_SOUND:
+                            CommandUnloadSound( commandObject.stringArgs[0] );
+                            break;
+                        case CommandObject.QUEUE_SOUND:
+                            CommandQueueSound( commandObject.stringArgs[0],
+                                    (FilenameURL) commandObject.objectArgs[0] );
+                            break;
+                        case CommandObject.DEQUEUE_SOUND:
+                            CommandDequeueSound( commandObject.stringArgs[0],
+                                                 commandObject.stringArgs[1] );
+                            break;
+                        case CommandObject.FADE_OUT:
+                            CommandFadeOut( commandObject.stringArgs[0],
+                                      (FilenameURL) commandObject.objectArgs[0],
+                                      commandObject.longArgs[0] );
+                            break;
+                        case CommandObject.FADE_OUT_IN:
+                            CommandFadeOutIn( commandObject.stringArgs[0],
+                                      (FilenameURL) commandObject.objectArgs[0],
+                                      commandObject.longArgs[0],
+                                      commandObject.longArgs[1] );
+                            break;
+                        case CommandObject.CHECK_FADE_VOLUMES:
+                            CommandCheckFadeVolumes();
+                            break;
+                        case CommandObject.NEW_SOURCE:
+                            CommandNewSource( commandObject.boolArgs[0],
+                                    commandObject.boolArgs[1],
+                                    commandObject.boolArgs[2],
+                                    commandObject.stringArgs[0],
+                                    (FilenameURL) commandObject.objectArgs[0],
+                                    commandObject.floatArgs[0],
+                                    commandObject.floatArgs[1],
+                                    commandObject.floatArgs[2],
+                                    commandObject.intArgs[0],
+                                    commandObject.floatArgs[3] );
+                            sourceHandles.created(
+                                                 commandObject.stringArgs[0] );
+                            break;
+                        case CommandObject.RAW_DATA_STREAM:
+                            CommandRawDataStream(
+                                    (AudioFormat) commandObject.objectArgs[0],
+                                    commandObject.boolArgs[0],
+                                    commandObject.stringArgs[0],
+                                    commandObject.floatArgs[0],
+                                    commandObject.floatArgs[1],
+                                    commandObject.floatArgs[2],
+                                    commandObject.intArgs[0],
+                                    commandObject.floatArgs[3] );
+                            sourceHandles.created(
+                                                 commandObject.stringArgs[0] );
+                            break;
+                        case CommandObject.QUICK_PLAY:
+                            CommandQuickPlay( commandObject.boolArgs[0],
+                                    commandObject.boolArgs[1],
+                                    commandObject.boolArgs[2],
+                                    commandObject.stringArgs[0],
+                                    (FilenameURL) commandObject.objectArgs[0],
+                                    commandObject.floatArgs[0],
+                                    commandObject.floatArgs[1],
+                                    commandObject.floatArgs[2],
+                                    commandObject.intArgs[0],
+                                    commandObject.floatArgs[3],
+                                    commandObject.boolArgs[3] );
+                            sourceHandles.created(
+                                                 commandObject.stringArgs[0] );
+                            break;
+                        case CommandObject.SET_POSITION:
+                            source = handleSource( commandObject );
+                            if( source != null )
+                                soundLibrary.setPosition( source,
                                         commandObject.floatArgs[0],
                                         commandObject.floatArgs[1],
-                                        commandObject.floatArgs[2],
-                                        commandObject.intArgs[0],
-                                        commandObject.floatArgs[3] );
-                                break;
-                            case CommandObject.RAW_DATA_STREAM:
-                                CommandRawDataStream(
-                                        (AudioFormat) commandObject.objectArgs[0],
-                                        commandObject.boolArgs[0],
-                                        commandObject.stringArgs[0],
-                                        commandObject.floatArgs[0],
-                                        commandObject.floatArgs[1],
-                                        commandObject.floatArgs[2],
-                                        commandObject.intArgs[0],
-                                        commandObject.floatArgs[3] );
-                                break;
-                            case CommandObject.QUICK_PLAY:
-                                CommandQuickPlay( commandObject.boolArgs[0],
-                                        commandObject.boolArgs[1],
-                                        commandObject.boolArgs[2],
-                                        commandObject.stringArgs[0],
-                                        (FilenameURL) commandObject.objectArgs[0],
-                                        commandObject.floatArgs[0],
-                                        commandObject.floatArgs[1],
-                                        commandObject.floatArgs[2],
-                                        commandObject.intArgs[0],
-                                        commandObject.floatArgs[3],
-                                        commandObject.boolArgs[3] );
-                                break;
-                            case CommandObject.SET_POSITION:
+                                        commandObject.floatArgs[2] );
+                            else
                                 CommandSetPosition( commandObject.stringArgs[0],
                                         commandObject.floatArgs[0],
                                         commandObject.floatArgs[1],
                                         commandObject.floatArgs[2] );
-                                break;
-                            case CommandObject.SET_VOLUME:
+                            break;
+                        case CommandObject.SET_VOLUME:
+                            source = handleSource( commandObject );
+                            if( source != null )
+                                soundLibrary.setVolume( source,
+                                        commandObject.floatArgs[0] );
+                            else
                                 CommandSetVolume( commandObject.stringArgs[0],
                                         commandObject.floatArgs[0] );
-                                break;
-                            case CommandObject.SET_PITCH:
+                            break;
+                        case CommandObject.SET_PITCH:
+                            source = handleSource( commandObject );
+                            if( source != null )
+                                soundLibrary.setPitch( source,
+                                        commandObject.floatArgs[0] );
+                            else
                                 CommandSetPitch( commandObject.stringArgs[0],
                                         commandObject.floatArgs[0] );
-                                break;
-                            case CommandObject.SET_PRIORITY:
-                                CommandSetPriority( commandObject.stringArgs[0],
-                                                    commandObject.boolArgs[0] );
-                                break;
-                            case CommandObject.SET_LOOPING:
-                                CommandSetLooping( commandObject.stringArgs[0],
-                                                   commandObject.boolArgs[0] );
-                                break;
-                            case CommandObject.SET_ATTENUATION:
-                                CommandSetAttenuation( commandObject.stringArgs[0],
-                                                       commandObject.intArgs[0] );
-                                break;
-                            case CommandObject.SET_DIST_OR_ROLL:
-                                CommandSetDistOrRoll( commandObject.stringArgs[0],
-                                                      commandObject.floatArgs[0] );
-                                break;
-                            case CommandObject.CHANGE_DOPPLER_FACTOR:
-                                CommandChangeDopplerFactor(
-                                                    commandObject.floatArgs[0] );
-                                break;
-                            case CommandObject.CHANGE_DOPPLER_VELOCITY:
-                                CommandChangeDopplerVelocity(
-                                                    commandObject.floatArgs[0] );
-                                break;
-                            case CommandObject.SET_VELOCITY:
+                            break;
+                        case CommandObject.SET_PRIORITY:
+                            CommandSetPriority( commandObject.stringArgs[0],
+                                                commandObject.boolArgs[0] );
+                            break;
+                        case CommandObject.SET_LOOPING:
+                            CommandSetLooping( commandObject.stringArgs[0],
+                                               commandObject.boolArgs[0] );
+                            break;
+                        case CommandObject.SET_ATTENUATION:
+                            CommandSetAttenuation( commandObject.stringArgs[0],
+                                                   commandObject.intArgs[0] );
+                            break;
+                        case CommandObject.SET_DIST_OR_ROLL:
+                            CommandSetDistOrRoll( commandObject.stringArgs[0],
+                                                  commandObject.floatArgs[0] );
+                            break;
+                        case CommandObject.CHANGE_DOPPLER_FACTOR:
+                            CommandChangeDopplerFactor(
+                                                commandObject.floatArgs[0] );
+                            break;
+                        case CommandObject.CHANGE_DOPPLER_VELOCITY:
+                            CommandChangeDopplerVelocity(
+                                                commandObject.floatArgs[0] );
+                            break;
+                        case CommandObject.SET_VELOCITY:
+                            source = handleSource( commandObject );
+                            if( source != null )
+                                soundLibrary.setVelocity( source,
+                                               commandObject.floatArgs[0],
+                                               commandObject.floatArgs[1],
+                                               commandObject.floatArgs[2] );
+                            else
                                 CommandSetVelocity( commandObject.stringArgs[0],
-                                                   commandObject.floatArgs[0],
-                                                   commandObject.floatArgs[1],
-                                                   commandObject.floatArgs[2]
-                                                   );
-                                break;
-                            case CommandObject.SET_LISTENER_VELOCITY:
-                                CommandSetListenerVelocity(
-                                                     commandObject.floatArgs[0],
-                                                     commandObject.floatArgs[1],
-                                                     commandObject.floatArgs[2]
-                                                     );
-                                break;
-                            // Methods related to playing sources must be processed
-                            // after cull/activate commands in order for source
-                            // management to work properly, so save them for
-                            // later:
-                            //------------------------------------------------------
-                            case CommandObject.PLAY:
-                                sourcePlayList.add( commandObject );
-                                break;
-                            case CommandObject.FEED_RAW_AUDIO_DATA:
-                                sourcePlayList.add( commandObject );
-                                break;
-                            //------------------------------------------------------
-                            case CommandObject.PAUSE:
+                                               commandObject.floatArgs[0],
+                                               commandObject.floatArgs[1],
+                                               commandObject.floatArgs[2]
+                                               );
+                            break;
+                        case CommandObject.SET_LISTENER_VELOCITY:
+                            CommandSetListenerVelocity(
+                                                 commandObject.floatArgs[0],
+                                                 commandObject.floatArgs[1],
+                                                 commandObject.floatArgs[2]
+                                                 );
+                            break;
+                        // Methods related to playing sources must be processed
+                        // after cull/activate commands in order for source
+                        // management to work properly, so save them for
+                        // later:
+                        //------------------------------------------------------
+                        case CommandObject.PLAY:
+                            sourcePlayList.add( commandObject );
+                            continue;  // recycled after it is played
+                        case CommandObject.FEED_RAW_AUDIO_DATA:
+                            sourcePlayList.add( commandObject );
+                            continue;  // recycled after it is played
+                        //------------------------------------------------------
+                        case CommandObject.PAUSE:
+                            source = handleSource( commandObject );
+                            if( source != null )
+                                soundLibrary.pause( source );
+                            else
                                 CommandPause( commandObject.stringArgs[0] );
-                                break;
-                            case CommandObject.STOP:
+                            break;
+                        case CommandObject.STOP:
+                            source = handleSource( commandObject );
+                            if( source != null )
+                                soundLibrary.stop( source );
+                            else
                                 CommandStop( commandObject.stringArgs[0] );
-                                break;
-                            case CommandObject.REWIND:
-                                CommandRewind( commandObject.stringArgs[0] );
-                                break;
-                            case CommandObject.FLUSH:
-                                CommandFlush( commandObject.stringArgs[0] );
-                                break;
-                            case CommandObject.CULL:
-                                CommandCull( commandObject.stringArgs[0] );
-                                break;
-                            case CommandObject.ACTIVATE:
-                                activations = true;
-                                CommandActivate( commandObject.stringArgs[0] );
-                                break;
-                            case CommandObject.SET_TEMPORARY:
-                                CommandSetTemporary( commandObject.stringArgs[0],
-                                                  commandObject.boolArgs[0] );
-                                break;
-                            case CommandObject.REMOVE_SOURCE:
-                                CommandRemoveSource( commandObject.stringArgs[0] );
-                                break;
-                            case CommandObject.MOVE_LISTENER:
-                                CommandMoveListener( commandObject.floatArgs[0],
-                                        commandObject.floatArgs[1],
-                                        commandObject.floatArgs[2]);
-                                break;
-                            case CommandObject.SET_LISTENER_POSITION:
-                                CommandSetListenerPosition(
-                                        commandObject.floatArgs[0],
-                                        commandObject.floatArgs[1],
-                                        commandObject.floatArgs[2]);
-                                break;
-                            case CommandObject.TURN_LISTENER:
-                                CommandTurnListener( commandObject.floatArgs[0] );
-                                break;
-                            case CommandObject.SET_LISTENER_ANGLE:
-                                CommandSetListenerAngle(
-                                        commandObject.floatArgs[0]);
-                                break;
-                            case CommandObject.SET_LISTENER_ORIENTATION:
-                                CommandSetListenerOrientation(
-                                        commandObject.floatArgs[0],
-                                        commandObject.floatArgs[1],
-                                        commandObject.floatArgs[2],
-                                        commandObject.floatArgs[3],
-                                        commandObject.floatArgs[4],
-                                        commandObject.floatArgs[5]);
-                                break;
-                            case CommandObject.SET_MASTER_VOLUME:
-                                CommandSetMasterVolume(
-                                                       commandObject.floatArgs[0] );
-                                break;
-                            case CommandObject.NEW_LIBRARY:
-                                CommandNewLibrary( commandObject.classArgs[0] );
-                                break;
-                            // If we don't recognize the command, just skip it:
-                            default:
-                                break;
-                        }
+                            break;
+                        case CommandObject.REWIND:
+                            CommandRewind( commandObject.stringArgs[0] );
+                            break;
+                        case CommandObject.FLUSH:
+                            CommandFlush( commandObject.stringArgs[0] );
+                            break;
+                        case CommandObject.CULL:
+                            CommandCull( commandObject.stringArgs[0] );
+                            break;
+                        case CommandObject.ACTIVATE:
+                            activations = true;
+                            CommandActivate( commandObject.stringArgs[0] );
+                            break;
+                        case CommandObject.SET_TEMPORARY:
+                            CommandSetTemporary( commandObject.stringArgs[0],
+                                              commandObject.boolArgs[0] );
+                            break;
+                        case CommandObject.REMOVE_SOURCE:
+                            CommandRemoveSource( commandObject.stringArgs[0] );
+                            break;
+                        case CommandObject.MOVE_LISTENER:
+                            CommandMoveListener( commandObject.floatArgs[0],
+                                    commandObject.floatArgs[1],
+                                    commandObject.floatArgs[2]);
+                            break;
+                        case CommandObject.SET_LISTENER_POSITION:
+                            CommandSetListenerPosition(
+                                    commandObject.floatArgs[0],
+                                    commandObject.floatArgs[1],
+                                    commandObject.floatArgs[2]);
+                            break;
+                        case CommandObject.TURN_LISTENER:
+                            CommandTurnListener( commandObject.floatArgs[0] );
+                            break;
+                        case CommandObject.SET_LISTENER_ANGLE:
+                            CommandSetListenerAngle(
+                                    commandObject.floatArgs[0]);
+                            break;
+                        case CommandObject.SET_LISTENER_ORIENTATION:
+                            CommandSetListenerOrientation(
+                                    commandObject.floatArgs[0],
+                                    commandObject.floatArgs[1],
+                                    commandObject.floatArgs[2],
+                                    commandObject.floatArgs[3],
+                                    commandObject.floatArgs[4],
+                                    commandObject.floatArgs[5]);
+                            break;
+                        case CommandObject.SET_MASTER_VOLUME:
+                            CommandSetMasterVolume(
+                                                   commandObject.floatArgs[0] );
+                            break;
+                        case CommandObject.NEW_LIBRARY:
+                            CommandNewLibrary( commandObject.classArgs[0] );
+                            // the old library's sources are gone:
+                            sourceHandles.forgetSources();
+                            break;
+                        // If we don't recognize the command, just skip it:
+                        default:
+                            break;
                     }
+                    recycleCommand( commandObject );
                 }
+                commandBatch.clear();
+                executingCommands = false;
+            }
 
-                // If any sources were reactivated, check if they need to be
-                // replayed:
-                if( activations )
-                    soundLibrary.replaySources();
+            // If any sources were reactivated, check if they need to be
+            // replayed:
+            if( activations )
+                soundLibrary.replaySources();
 
-                // Now that we have the correct sources culled and activated, we
-                // can start playing sources.  Loop through the playlist and
-                // execute the commands:
-                while( sourcePlayList != null && sourcePlayList.size() > 0 )
+            // Now that we have the correct sources culled and activated, we
+            // can start playing sources.  Loop through the playlist and
+            // execute the commands:
+            while( sourcePlayList != null && sourcePlayList.size() > 0 )
+            {
+                // Grab the oldest command in the queue:
+                commandObject = sourcePlayList.remove( 0 );
+                if( commandObject != null )
                 {
-                    // Grab the oldest command in the queue:
-                    commandObject = sourcePlayList.remove( 0 );
-                    if( commandObject != null )
+                    // See what it is, and execute the proper Command method:
+                    switch( commandObject.Command )
                     {
-                        // See what it is, and execute the proper Command method:
-                        switch( commandObject.Command )
-                        {
-                            case CommandObject.PLAY:
+                        case CommandObject.PLAY:
+                            source = handleSource( commandObject );
+                            if( source != null )
+                                soundLibrary.play( source );
+                            else
                                 CommandPlay( commandObject.stringArgs[0] );
-                                break;
-                            case CommandObject.FEED_RAW_AUDIO_DATA:
-                                CommandFeedRawAudioData(
-                                                        commandObject.stringArgs[0],
-                                                        commandObject.buffer );
-                                break;
-                        }
+                            break;
+                        case CommandObject.FEED_RAW_AUDIO_DATA:
+                            CommandFeedRawAudioData(
+                                                    commandObject.stringArgs[0],
+                                                    commandObject.buffer );
+                            break;
                     }
+                    recycleCommand( commandObject );
                 }
+            }
+
+            if( executed > 0 )
+                commandsExecuted = true;
+
+            SoundSystemMetrics drainMetrics = metrics;
+            if( executed > 0 && drainMetrics != null )
+                drainMetrics.drained( executed,
+                                      System.nanoTime() - drainStart );
+
+            return( commandQueue != null && !commandQueue.isEmpty() );
+        }
+    }
+    
+/**
+ * Returns the sourcename for a handle, or prints an error message if the handle
+ * is not valid.
+ * @param handle Handle for the source.
+ * @param method Name of the calling method, for the error message.
+ * @return Identifier for the source, or null.
+ */
+    private String handleSourcename( int handle, String method )
+    {
+        String sourcename = sourceHandles.sourcename( handle );
+        if( sourcename == null )
+            errorMessage( "Invalid source handle in method '" + method + "'",
+                          0 );
+        return sourcename;
+    }
+
+/**
+ * Attaches a source handle to a recyclable command, so the command thread can
+ * find the source without looking up its name.
+ * @param commandObject Command from newCommand().
+ * @param handle Handle for the source the command refers to.
+ * @return The command.
+ */
+    private CommandObject handleCommand( CommandObject commandObject,
+                                         int handle )
+    {
+        commandObject.intArgs[0] = handle;
+        return commandObject;
+    }
+
+/**
+ * Returns the source referred to by a command's source handle.  Only commands
+ * created through a handle method (such as setPosition( int, ... )) have one.
+ * @param commandObject Command to check.
+ * @return The source, or null if the command has no handle or the source could
+ * not be found (in which case it should be looked up by name).
+ */
+    private Source handleSource( CommandObject commandObject )
+    {
+        if( !commandObject.recyclable || commandObject.intArgs[0] == 0 )
+            return null;
+        return sourceHandles.source( commandObject.intArgs[0], soundLibrary );
+    }
 
-                return( commandQueue != null && commandQueue.size() > 0  );
+/**
+ * Moves the commands currently waiting in the command queue into commandBatch,
+ * and coalesces them if SoundSystemConfig.getCoalesceCommands() is true.  At
+ * most one queue's worth of commands are taken at a time for a new batch, so
+ * the command thread can not be kept here indefinitely by other threads
+ * queueing commands.
+ * @return False if there were no commands to take.
+ */
+    private boolean takeCommands()
+    {
+        CommandRing queue = commandQueue;
+        if( queue == null )
+            return false;
+
+        // If the batch is already executing, the command queue filled up
+        // while executing it, so everything must be taken to make room:
+        int max = executingCommands ? Integer.MAX_VALUE : queue.capacity();
+        CommandObject commandObject;
+        while( commandBatch.size() < max
+               && ( commandObject = queue.poll() ) != null )
+        {
+            // Commands committed together are executed together:
+            if( commandObject.Command == CommandObject.BATCH )
+            {
+                commandBatch.addAll( batchCommands( commandObject ) );
+                releaseBatch( commandObject );
             }
             else
+                commandBatch.add( commandObject );
+        }
+
+        if( commandBatch.isEmpty() )
+            return false;
+
+        // Commands near the start of a batch which is already executing may
+        // have been run, so only coalesce new batches:
+        if( !executingCommands && SoundSystemConfig.getCoalesceCommands() )
+            coalesceCommands();
+
+        return true;
+    }
+
+/**
+ * Walks backwards through commandBatch, replacing with null any command which
+ * is overwritten by a later command before anything else could notice it.  An
+ * absolute change (position, velocity, volume, pitch) to a source makes earlier
+ * changes of the same kind to that source redundant, unless the source is
+ * created or removed in between.  The listener's absolute position, velocity,
+ * and angle are handled the same way, along with the relative moves and turns
+ * which come before them.  Coalesced commands are recycled.
+ */
+    private void coalesceCommands()
+    {
+        boolean listenerPositionSet = false;
+        boolean listenerVelocitySet = false;
+        boolean listenerAngleSet = false;
+        boolean redundant;
+        CommandObject commandObject;
+        String sourcename;
+
+        positionsSet.clear();
+        velocitiesSet.clear();
+        volumesSet.clear();
+        pitchesSet.clear();
+
+        for( int i = commandBatch.size() - 1; i >= 0; i-- )
+        {
+            commandObject = commandBatch.get( i );
+            redundant = false;
+            switch( commandObject.Command )
             {
-                // make sure the commandQueue exists:
-                if( commandQueue == null )
-                    return false;
-                // queue a new command
-                commandQueue.add( newCommand );
-                // Of course there is something in the list now, since we just
-                // added it:
-                return true;
+                case CommandObject.SET_POSITION:
+                    redundant = coalesce( positionsSet, commandObject );
+                    break;
+                case CommandObject.SET_VELOCITY:
+                    redundant = coalesce( velocitiesSet, commandObject );
+                    break;
+                case CommandObject.SET_VOLUME:
+                    redundant = coalesce( volumesSet, commandObject );
+                    break;
+                case CommandObject.SET_PITCH:
+                    redundant = coalesce( pitchesSet, commandObject );
+                    break;
+                case CommandObject.NEW_SOURCE:
+                case CommandObject.QUICK_PLAY:
+                case CommandObject.RAW_DATA_STREAM:
+                case CommandObject.REMOVE_SOURCE:
+                    // Later changes were meant for a different source than
+                    // the earlier ones:
+                    sourcename = commandObject.stringArgs[0];
+                    positionsSet.remove( sourcename );
+                    velocitiesSet.remove( sourcename );
+                    volumesSet.remove( sourcename );
+                    pitchesSet.remove( sourcename );
+                    break;
+                case CommandObject.SET_LISTENER_POSITION:
+                    redundant = listenerPositionSet;
+                    listenerPositionSet = true;
+                    break;
+                case CommandObject.MOVE_LISTENER:
+                    redundant = listenerPositionSet;
+                    break;
+                case CommandObject.SET_LISTENER_VELOCITY:
+                    redundant = listenerVelocitySet;
+                    listenerVelocitySet = true;
+                    break;
+                case CommandObject.SET_LISTENER_ANGLE:
+                    redundant = listenerAngleSet;
+                    listenerAngleSet = true;
+                    break;
+                case CommandObject.TURN_LISTENER:
+                    redundant = listenerAngleSet;
+                    break;
+                case CommandObject.INITIALIZE:
+                case CommandObject.NEW_LIBRARY:
+                    // Nothing before this can be assumed to carry over:
+                    listenerPositionSet = false;
+                    listenerVelocitySet = false;
+                    listenerAngleSet = false;
+                    positionsSet.clear();
+                    velocitiesSet.clear();
+                    volumesSet.clear();
+                    pitchesSet.clear();
+                    break;
+                default:
+                    break;
+            }
+            if( redundant )
+            {
+                commandBatch.set( i, null );
+                recycleCommand( commandObject );
+                coalescedCommands++;
             }
         }
     }
-    
+
+/**
+ * Checks if a later command already changed the same property of the source
+ * referenced by the specified command, and if not remembers that this one did.
+ * @param sourcenames Sources for which a later change was already found.
+ * @param commandObject Command to check.
+ * @return True if the command is redundant.
+ */
+    private boolean coalesce( Set<String> sourcenames,
+                              CommandObject commandObject )
+    {
+        String sourcename = commandObject.stringArgs[0];
+        if( sourcename == null )
+            return false;
+        return !sourcenames.add( sourcename );
+    }
+
+/**
+ * Returns the number of queued commands which the command thread has skipped
+ * because later commands made them redundant.  See
+ * {@link paulscode.sound.SoundSystemConfig#setCoalesceCommands(boolean)
+ * SoundSystemConfig.setCoalesceCommands()}.
+ * @return Number of commands skipped since the SoundSystem was created.
+ */
+    public long getCoalescedCommandCount()
+    {
+        return coalescedCommands;
+    }
+
+/**
+ * Returns the runtime statistics for this SoundSystem.  These can also be
+ * registered as an MBean (see
+ * {@link paulscode.sound.SoundSystemConfig#setRegisterMBean(boolean)
+ * SoundSystemConfig.setRegisterMBean()}), so they can be watched with a JMX
+ * client such as JConsole.
+ * @return Statistics, or null if the SoundSystem was not initialized.
+ */
+    public SoundSystemMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+/**
+ * Returns a recyclable command from the command pool, ready to be set().
+ * Commands obtained here are returned to the pool by CommandQueue() once they
+ * have been executed.
+ * @return Command to be queued.
+ */
+    protected CommandObject newCommand()
+    {
+        CommandPool pool = commandPool;
+        if( pool == null )
+            return new CommandObject();
+        return pool.acquire();
+    }
+
+/**
+ * Returns an executed command to the command pool so it can be reused.
+ * @param command Command which is no longer needed.
+ */
+    private void recycleCommand( CommandObject command )
+    {
+        CommandPool pool = commandPool;
+        if( pool != null )
+            pool.release( command );
+    }
+
+/**
+ * Returns a FilenameURL for the specified filename, reusing the last one
+ * created for that filename when possible.
+ * @param filename Name of the file.
+ * @return FilenameURL for the file.
+ */
+    private FilenameURL filenameURL( String filename )
+    {
+        if( filename == null )
+            return new FilenameURL( filename );
+
+        // URLs depend on the sound files package, so forget them if it changed:
+        String soundFilesPackage = SoundSystemConfig.getSoundFilesPackage();
+        if( soundFilesPackage != filenameURLsPackage )
+        {
+            filenameURLs.clear();
+            filenameURLsPackage = soundFilesPackage;
+        }
+
+        FilenameURL filenameURL = filenameURLs.get( filename );
+        if( filenameURL == null )
+        {
+            // don't let a stream of unique filenames grow the map forever:
+            if( filenameURLs.size()
+                >= SoundSystemConfig.getCommandQueueCapacity() )
+                filenameURLs.clear();
+            filenameURL = new FilenameURL( filename );
+            filenameURLs.put( filename, filenameURL );
+        }
+        return filenameURL;
+    }
+
 /**
  * Searches for and removes any temporary sources that have finished 
  * playing.  This method is used internally by SoundSystem, and it is 
@@ -2633,37 +3788,52 @@ public class SoundSystem
         synchronized( SoundSystemConfig.THREAD_SYNC )
         {
             if( soundLibrary != null )
+            {
                 soundLibrary.removeTemporarySources();
+                sourceHandles.releaseRemoved( soundLibrary.getSources() );
+            }
         }
     }
     
 /**
- * Returns true if the specified source is playing.
+ * Returns true if the specified source is playing.  This method does not wait
+ * for the command thread (see getStateSnapshot()).
  * @param sourcename Unique identifier of the source to check.
  * @return True or false.
  */    
     public boolean playing( String sourcename )
     {
-        synchronized( SoundSystemConfig.THREAD_SYNC )
+        StateSnapshot snapshot = currentStateSnapshot();
+        if( snapshot == null )
         {
-            if( soundLibrary == null )
-                return false;
+            synchronized( SoundSystemConfig.THREAD_SYNC )
+            {
+                if( soundLibrary == null )
+                    return false;
 
-            Source src = soundLibrary.getSources().get( sourcename );
+                Source src = soundLibrary.getSources().get( sourcename );
 
-            if( src == null )
-                return false;
+                if( src == null )
+                    return false;
 
-            return src.playing();
+                return src.playing();
+            }
         }
+        SourceState state = snapshot.getSourceState( sourcename );
+        return state != null && state.playing;
     }
 
 /**
- * Returns true if anything is currently playing.
+ * Returns true if anything is currently playing.  This method does not wait
+ * for the command thread (see getStateSnapshot()).
  * @return True or false.
  */    
     public boolean playing()
     {
+        StateSnapshot snapshot = currentStateSnapshot();
+        if( snapshot != null )
+            return snapshot.playing;
+
         synchronized( SoundSystemConfig.THREAD_SYNC )
         {
             if( soundLibrary == null )
@@ -2787,6 +3957,31 @@ public class SoundSystem
     {
         lastException( SET, e );
     }
+
+/**
+ * Waits for the sound library to finish initializing (see newLibrary()), or
+ * for the specified number of milliseconds to pass, whichever comes first.
+ * @param milliseconds Longest time to wait.
+ * @return True if the library is initialized.
+ */
+    private static boolean waitForInitialized( long milliseconds )
+    {
+        synchronized( SoundSystemConfig.THREAD_SYNC )
+        {
+            long deadline = System.currentTimeMillis() + milliseconds;
+            long remaining = milliseconds;
+            while( !initialized && remaining > 0 )
+            {
+                try
+                {
+                    SoundSystemConfig.THREAD_SYNC.wait( remaining );
+                }
+                catch( InterruptedException e ){}
+                remaining = deadline - System.currentTimeMillis();
+            }
+            return initialized;
+        }
+    }
     
 /**
  * Sets or returns the value of boolean 'initialized'.
@@ -2799,7 +3994,11 @@ public class SoundSystem
         synchronized( SoundSystemConfig.THREAD_SYNC )
         {
             if( action == SET )
+            {
                 initialized = value;
+                // let waitForInitialized() know:
+                SoundSystemConfig.THREAD_SYNC.notifyAll();
+            }
             return initialized;
         }
     }
@@ -1,5 +1,6 @@
 package paulscode.sound;
 
+import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.Locale;
@@ -199,6 +200,68 @@ public class SoundSystemConfig
  * Increase if loading sound files is causing significant lag.
  */
     private static int fileChunkSize = 1048576;
+/**
+ * Maximum number of commands which may be waiting to be processed by the
+ * command thread.  Rounded up to a power of two.
+ */
+    private static int commandQueueCapacity = 4096;
+/**
+ * Whether or not the command thread skips commands which are made redundant by
+ * later commands waiting in the queue (for example, all but the last of
+ * several setPosition() calls for the same source).
+ */
+    private static boolean coalesceCommands = true;
+/**
+ * Longest time in milliseconds between state snapshots published by the
+ * command thread while sources are playing, or zero to only publish them after
+ * executing commands.
+ */
+    private static int stateSnapshotInterval = 50;
+/**
+ * Number of worker threads which decode sound files passed to
+ * SoundSystem.loadSound().
+ */
+    private static int numberLoaderThreads =
+                                     Runtime.getRuntime().availableProcessors();
+/**
+ * Number of threads which refill the channels of streaming sources.
+ */
+    private static int numberStreamThreads = 1;
+/**
+ * Number of worker threads which decode streaming sources ahead of playback,
+ * or zero to decode on the stream thread.
+ */
+    private static int numberDecoderThreads = 0;
+/**
+ * Number of stream-buffers decoded ahead for each streaming source.
+ */
+    private static int numberDecodeAheadBuffers = 2;
+/**
+ * Most bytes of sample data SoundSystem.loadSounds() will decode for one set of
+ * files, or zero for no limit.
+ */
+    private static long loadMemoryLimit = 0;
+/**
+ * Directory where decoded sample data is cached, or null to not cache it.
+ */
+    private static File decodedCacheDirectory = null;
+/**
+ * Most bytes of loaded sample data to keep before unloading sounds which are
+ * not in use, or zero for no limit.
+ */
+    private static long bufferMemoryBudget = 0;
+/**
+ * Whether loaded sample data is kept in direct buffers outside of the Java
+ * heap, for libraries which can use it from there.
+ */
+    private static boolean offHeapBuffers = false;
+
+/**
+ * Whether or not each SoundSystem registers its
+ * {@link paulscode.sound.SoundSystemMetrics SoundSystemMetrics} MBean with the
+ * platform MBean server.  Off unless asked for.
+ */
+    private static boolean registerMBean = false;
 
 /**
  * Indicates whether or not there is a codec for reading from MIDI files.  If
@@ -695,6 +758,282 @@ public class SoundSystemConfig
     {
         return fileChunkSize;
     }
+/**
+ * Sets the maximum number of commands which may be waiting to be processed by
+ * the command thread.  When this many commands are queued, calling threads
+ * wait for the command thread to catch up.  This method should only be called
+ * BEFORE instantiating the SoundSystem class.
+ * @param capacity Number of commands (rounded up to a power of two).
+ */
+    public static synchronized void setCommandQueueCapacity( int capacity )
+    {
+        commandQueueCapacity = capacity;
+    }
+/**
+ * Returns the maximum number of commands which may be waiting to be processed
+ * by the command thread.
+ * @return Number of commands.
+ */
+    public static synchronized int getCommandQueueCapacity()
+    {
+        return commandQueueCapacity;
+    }
+/**
+ * Sets whether or not the command thread should skip queued commands which are
+ * made redundant by later commands.  Only absolute position, velocity, volume,
+ * and pitch changes for a source, and absolute listener position, velocity,
+ * and angle changes are ever skipped.
+ * @param value True to skip redundant commands.
+ */
+    public static synchronized void setCoalesceCommands( boolean value )
+    {
+        coalesceCommands = value;
+    }
+/**
+ * Returns whether or not the command thread skips queued commands which are
+ * made redundant by later commands.
+ * @return True if redundant commands are skipped.
+ */
+    public static synchronized boolean getCoalesceCommands()
+    {
+        return coalesceCommands;
+    }
+/**
+ * Sets the longest time between the state snapshots which the command thread
+ * publishes for SoundSystem's query methods (playing(), getVolume(),
+ * millisecondsPlayed(), etc.).  This is how out of date their results can be,
+ * apart from any commands the command thread is still executing.  Shorter
+ * intervals wake the command thread more often while sources are playing.
+ * When nothing is playing, the command thread sleeps until commands are
+ * queued, and a new snapshot is only published if they change something.  A
+ * value of zero publishes snapshots only after commands are executed, so for
+ * example playing() will not notice a source finishing until another command
+ * is queued.  This method
+ * should only be called BEFORE instantiating the SoundSystem class.
+ * @param milliseconds Snapshot interval (default 50).
+ */
+    public static synchronized void setStateSnapshotInterval( int milliseconds )
+    {
+        stateSnapshotInterval = milliseconds;
+    }
+/**
+ * Returns the longest time between the state snapshots published by the
+ * command thread.
+ * @return Snapshot interval in milliseconds, or zero if only published after
+ * commands are executed.
+ */
+    public static synchronized int getStateSnapshotInterval()
+    {
+        return stateSnapshotInterval;
+    }
+/**
+ * Sets the largest number of sound files which SoundSystem.loadSound() decodes
+ * at the same time, each on its own worker thread.  The command thread never
+ * decodes these files or waits for them (commands which need a file that is
+ * still loading are held until it is installed), so more threads only help
+ * when loading many files at once (see SoundSystem.loadSounds()).  Files which
+ * were never passed to loadSound() are still decoded by the command thread
+ * when a source first needs them.  This method should only be called BEFORE
+ * instantiating the SoundSystem class.
+ * @param number Number of loader threads (default is the number of
+ * processors).
+ */
+    public static synchronized void setNumberLoaderThreads( int number )
+    {
+        if( number < 1 )
+            number = 1;
+        numberLoaderThreads = number;
+    }
+/**
+ * Returns the largest number of sound files which SoundSystem.loadSound()
+ * decodes at the same time.
+ * @return Number of loader threads.
+ */
+    public static synchronized int getNumberLoaderThreads()
+    {
+        return numberLoaderThreads;
+    }
+/**
+ * Sets the number of threads which refill the channels of streaming sources.
+ * The streaming channels are shared out between the threads, and each source
+ * is handled by the thread for the channel it is playing on.  More threads
+ * help when dozens of streams are playing at once, such as raw data voice
+ * streams along with layers of music.  This method should only be called
+ * BEFORE instantiating the SoundSystem class.
+ * @param number Number of stream threads (default is 1).
+ */
+    public static synchronized void setNumberStreamThreads( int number )
+    {
+        if( number < 1 )
+            number = 1;
+        numberStreamThreads = number;
+    }
+/**
+ * Returns the number of threads which refill the channels of streaming
+ * sources.
+ * @return Number of stream threads.
+ */
+    public static synchronized int getNumberStreamThreads()
+    {
+        return numberStreamThreads;
+    }
+/**
+ * Sets the number of worker threads which decode streaming sources.  By
+ * default there are none, and streams are decoded on the stream thread.  With
+ * decoder threads, each streaming source keeps a few stream-buffers decoded
+ * ahead of playback (see setNumberDecodeAheadBuffers()), so the stream thread
+ * only has to hand ready buffers to the channels, and a stream which is slow
+ * to decode does not hold up the others.  This method should only be called
+ * BEFORE instantiating the SoundSystem class.
+ * @param number Number of decoder threads (default 0).
+ */
+    public static synchronized void setNumberDecoderThreads( int number )
+    {
+        if( number < 0 )
+            number = 0;
+        numberDecoderThreads = number;
+    }
+/**
+ * Returns the number of worker threads which decode streaming sources, or zero
+ * if they are decoded on the stream thread.
+ * @return Number of decoder threads.
+ */
+    public static synchronized int getNumberDecoderThreads()
+    {
+        return numberDecoderThreads;
+    }
+/**
+ * Sets the number of stream-buffers the decoder threads keep ready for each
+ * streaming source, in addition to those queued on its channel.  Each one
+ * holds getStreamingBufferSize() bytes.  This method should only be called
+ * BEFORE instantiating the SoundSystem class.
+ * @param number Number of buffers to decode ahead (default is 2).
+ */
+    public static synchronized void setNumberDecodeAheadBuffers( int number )
+    {
+        if( number < 1 )
+            number = 1;
+        numberDecodeAheadBuffers = number;
+    }
+/**
+ * Returns the number of stream-buffers the decoder threads keep ready for each
+ * streaming source.
+ * @return Number of buffers decoded ahead.
+ */
+    public static synchronized int getNumberDecodeAheadBuffers()
+    {
+        return numberDecodeAheadBuffers;
+    }
+/**
+ * Sets the most bytes of sample data which one call to SoundSystem.loadSounds()
+ * may decode.  Once a set of files reaches the limit, files which have not
+ * started decoding yet are skipped.  Files already decoding are allowed to
+ * finish, so the limit may be passed by up to one file per loader thread.
+ * Files in the set which are already loaded are not decoded again, and do not
+ * count towards the limit.
+ * @param bytes Memory limit, or zero for no limit (default).
+ */
+    public static synchronized void setLoadMemoryLimit( long bytes )
+    {
+        if( bytes < 0 )
+            bytes = 0;
+        loadMemoryLimit = bytes;
+    }
+/**
+ * Returns the most bytes of sample data which one call to
+ * SoundSystem.loadSounds() may decode.
+ * @return Memory limit, or zero for no limit.
+ */
+    public static synchronized long getLoadMemoryLimit()
+    {
+        return loadMemoryLimit;
+    }
+/**
+ * Sets the directory where decoded sample data is saved, so that sound files
+ * only have to be decoded the first time they are loaded.  Later loads of the
+ * same file read the saved data instead (see
+ * {@link paulscode.sound.DecodedCache DecodedCache}).  The directory is created
+ * if it does not exist.  Streaming sources are not cached.
+ * @param directory Cache directory, or null to turn the cache off (default).
+ */
+    public static synchronized void setDecodedCacheDirectory( File directory )
+    {
+        decodedCacheDirectory = directory;
+    }
+/**
+ * Returns the directory where decoded sample data is saved.
+ * @return Cache directory, or null if the cache is off.
+ */
+    public static synchronized File getDecodedCacheDirectory()
+    {
+        return decodedCacheDirectory;
+    }
+/**
+ * Sets the most bytes of loaded sample data to keep in memory.  When loading a
+ * sound takes the total over this budget, the least recently used sounds which
+ * are not attached to any source are unloaded.  An unloaded sound is loaded
+ * again automatically the next time a source is created for it.  Streaming
+ * sources do not count towards the budget.
+ * @param bytes Memory budget, or zero for no limit (default).
+ */
+    public static synchronized void setBufferMemoryBudget( long bytes )
+    {
+        if( bytes < 0 )
+            bytes = 0;
+        bufferMemoryBudget = bytes;
+    }
+/**
+ * Returns the most bytes of loaded sample data to keep in memory.
+ * @return Memory budget, or zero for no limit.
+ */
+    public static synchronized long getBufferMemoryBudget()
+    {
+        return bufferMemoryBudget;
+    }
+/**
+ * Sets whether loaded sample data is kept outside of the Java heap, in direct
+ * ByteBuffers.  LibraryLWJGLOpenAL then hands the data to OpenAL without
+ * copying it, and sounds read from the decoded cache (see
+ * setDecodedCacheDirectory()) stay in the memory-mapped cache file instead of
+ * being copied.  Libraries which need the data in a byte array, such as
+ * LibraryJavaSound, copy it back onto the heap.  Direct memory is freed once
+ * a sound is unloaded and nothing refers to its SoundBuffer any more, so it
+ * may be worth raising the JVM's -XX:MaxDirectMemorySize limit.
+ * @param value True to keep sample data off the heap (default false).
+ */
+    public static synchronized void setOffHeapBuffers( boolean value )
+    {
+        offHeapBuffers = value;
+    }
+/**
+ * Returns whether loaded sample data is kept outside of the Java heap.
+ * @return True if sample data is kept in direct ByteBuffers.
+ */
+    public static synchronized boolean getOffHeapBuffers()
+    {
+        return offHeapBuffers;
+    }
+/**
+ * Sets whether or not the SoundSystem registers its
+ * {@link paulscode.sound.SoundSystemMetrics SoundSystemMetrics} MBean with the
+ * platform MBean server when it starts up, so that command queue, streaming,
+ * decoding, and memory statistics can be watched with JConsole or any other
+ * JMX client.  The metrics are kept either way, and can also be read through
+ * SoundSystem.getMetrics().
+ * @param value True to register the MBean (default false).
+ */
+    public static synchronized void setRegisterMBean( boolean value )
+    {
+        registerMBean = value;
+    }
+/**
+ * Returns whether or not the SoundSystem registers its metrics MBean.
+ * @return True if the MBean is registered at start up.
+ */
+    public static synchronized boolean getRegisterMBean()
+    {
+        return registerMBean;
+    }
 /**
  * Returns the name of the MIDI synthesizer to use instead of the default, or
  * empty string if none was specified.
@@ -792,7 +1131,8 @@ public class SoundSystemConfig
 
 /**
  * Adds an entry to the list of stream listeners.  If the instance is already
- * in the list, the command is ignored.
+ * in the list, the command is ignored.  Listeners which also implement
+ * IStreamUnderrunListener are told when a stream runs out of queued audio.
  * @param streamListener Implementation of interface 'IStreamListener'.
 */
     public static void addStreamListener( IStreamListener streamListener )
@@ -864,6 +1204,50 @@ public class SoundSystemConfig
         }.start();
     }
 
+/**
+ * Notifies all stream listeners which implement IStreamUnderrunListener that
+ * a stream ran out of queued audio.  If there are no listeners, the command is
+ * ignored.
+ * @param sourcename String identifier of the source which ran out.
+ * @param underruns Number of times the source has run out so far.
+*/
+    public static void notifyUnderrun( String sourcename, int underruns )
+    {
+        synchronized( streamListenersLock )
+        {
+            if( streamListeners == null )
+                return;
+        }
+        final String srcName = sourcename;
+        final int count = underruns;
+
+        new Thread()
+        {
+            @Override
+            public void run()
+            {
+                synchronized( streamListenersLock )
+                {
+                    if( streamListeners == null )
+                        return;
+                    ListIterator<IStreamListener> i =
+                                                streamListeners.listIterator();
+                    IStreamListener streamListener;
+                    while( i.hasNext() )
+                    {
+                        streamListener = i.next();
+                        if( streamListener == null )
+                            i.remove();
+                        else if( streamListener
+                                 instanceof IStreamUnderrunListener )
+                            ( (IStreamUnderrunListener) streamListener )
+                                           .streamUnderrun( srcName, count );
+                    }
+                }
+            }
+        }.start();
+    }
+
 //  END STATIC SYNCHRONIZED INTERFACE METHODS
 
 
@@ -0,0 +1,580 @@
+package paulscode.sound;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The SoundSystemMetrics class keeps the runtime statistics of one SoundSystem
+ * and makes them available as an MXBean, so that a game which stutters can be
+ * watched with JConsole or any other JMX client instead of through log
+ * messages.  It counts how often the command thread drains the command queue,
+ * how many commands each drain executes and how long it takes; everything else
+ * (queue depth, stream thread pass times, stream-buffer fill levels,
+ * underruns, decode times, loaded sample data, and active channels) is read
+ * from the parts of the sound system which keep it whenever it is asked for.
+ *
+ * Each SoundSystem creates one of these, available through
+ * SoundSystem.getMetrics().  If SoundSystemConfig.setRegisterMBean( true )
+ * was called, it is also registered with the platform MBean server as
+ * "paulscode.sound:type=SoundSystem,id=N".
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class SoundSystemMetrics implements SoundSystemMetricsMXBean
+{
+/**
+ * Used to give each registered MBean a different name.
+ */
+    private static final AtomicInteger instances = new AtomicInteger();
+
+/**
+ * Processes status messages, warnings, and error messages.
+ */
+    private SoundSystemLogger logger;
+
+/**
+ * The SoundSystem these statistics belong to.
+ */
+    private final SoundSystem soundSystem;
+
+/**
+ * Name the MBean was registered under, or null if it is not registered.
+ */
+    private ObjectName objectName = null;
+
+/**
+ * Number of drains which executed at least one command.  Only written while
+ * holding the SoundSystemConfig.THREAD_SYNC lock.
+ */
+    private volatile long drains = 0;
+
+/**
+ * Number of commands executed.
+ */
+    private volatile long commandsExecuted = 0;
+
+/**
+ * Number of commands executed by the most recent drain.
+ */
+    private volatile int lastDrainCommands = 0;
+
+/**
+ * Largest number of commands executed by one drain.
+ */
+    private volatile int maxDrainCommands = 0;
+
+/**
+ * Total nanoseconds spent draining.
+ */
+    private volatile long drainNanos = 0;
+
+/**
+ * Nanoseconds taken by the most recent drain.
+ */
+    private volatile long lastDrainNanos = 0;
+
+/**
+ * Nanoseconds taken by the longest drain.
+ */
+    private volatile long maxDrainNanos = 0;
+
+/**
+ * Constructor:  Creates the statistics for the specified SoundSystem.
+ * @param soundSystem SoundSystem to keep statistics for.
+ */
+    public SoundSystemMetrics( SoundSystem soundSystem )
+    {
+        // grab a handle to the message logger:
+        logger = SoundSystemConfig.getLogger();
+
+        this.soundSystem = soundSystem;
+    }
+
+/**
+ * Registers this MBean with the platform MBean server, if it is not already.
+ * @return False if the MBean could not be registered.
+ */
+    public synchronized boolean register()
+    {
+        if( objectName != null )
+            return true;
+        try
+        {
+            ObjectName name = new ObjectName(
+                                        "paulscode.sound:type=SoundSystem,id="
+                                        + instances.incrementAndGet() );
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean( this, name );
+            objectName = name;
+            return true;
+        }
+        catch( Exception e )
+        {
+            errorMessage( "Unable to register the metrics MBean: "
+                          + e.getMessage() );
+        }
+        catch( LinkageError le )
+        {
+            // JMX is not available on this platform:
+            errorMessage( "Unable to register the metrics MBean: "
+                          + le.getMessage() );
+        }
+        return false;
+    }
+
+/**
+ * Removes this MBean from the platform MBean server, if it was registered.
+ */
+    public synchronized void unregister()
+    {
+        if( objectName == null )
+            return;
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+                                                                objectName );
+        }
+        catch( Exception e )
+        {
+            errorMessage( "Unable to unregister the metrics MBean: "
+                          + e.getMessage() );
+        }
+        objectName = null;
+    }
+
+/**
+ * Returns the name this MBean was registered under.
+ * @return Object name, or null if not registered.
+ */
+    public synchronized ObjectName getObjectName()
+    {
+        return objectName;
+    }
+
+/**
+ * Records a drain of the command queue.  Called by the command thread while
+ * holding the SoundSystemConfig.THREAD_SYNC lock.
+ * @param commands Number of commands executed.
+ * @param nanos Nanoseconds the drain took.
+ */
+    void drained( int commands, long nanos )
+    {
+        drains++;
+        commandsExecuted += commands;
+        lastDrainCommands = commands;
+        if( commands > maxDrainCommands )
+            maxDrainCommands = commands;
+        drainNanos += nanos;
+        lastDrainNanos = nanos;
+        if( nanos > maxDrainNanos )
+            maxDrainNanos = nanos;
+    }
+
+/**
+ * Returns the title of the sound library in use.
+ * @return Library title, or null if none.
+ */
+    public String getLibrary()
+    {
+        Library library = soundSystem.soundLibrary;
+        if( library == null )
+            return null;
+        return SoundSystemConfig.getLibraryTitle( library.getClass() );
+    }
+
+/**
+ * Returns the number of commands waiting in the command queue.
+ * @return Command queue depth.
+ */
+    public int getCommandQueueDepth()
+    {
+        CommandRing queue = soundSystem.commandQueue;
+        return queue == null ? 0 : queue.size();
+    }
+
+/**
+ * Returns the number of commands the command queue is able to hold.
+ * @return Command queue capacity.
+ */
+    public int getCommandQueueCapacity()
+    {
+        CommandRing queue = soundSystem.commandQueue;
+        return queue == null ? 0 : queue.capacity();
+    }
+
+/**
+ * Returns the number of times the command thread has drained the command
+ * queue and found commands to execute.
+ * @return Drain count.
+ */
+    public long getDrains()
+    {
+        return drains;
+    }
+
+/**
+ * Returns the number of commands the command thread has executed.
+ * @return Executed command count.
+ */
+    public long getCommandsExecuted()
+    {
+        return commandsExecuted;
+    }
+
+/**
+ * Returns the number of queued commands which were skipped because later
+ * commands made them redundant.
+ * @return Coalesced command count.
+ */
+    public long getCommandsCoalesced()
+    {
+        return soundSystem.getCoalescedCommandCount();
+    }
+
+/**
+ * Returns the number of commands executed by the most recent drain.
+ * @return Command count.
+ */
+    public int getLastDrainCommands()
+    {
+        return lastDrainCommands;
+    }
+
+/**
+ * Returns the largest number of commands executed by one drain.
+ * @return Command count.
+ */
+    public int getMaxDrainCommands()
+    {
+        return maxDrainCommands;
+    }
+
+/**
+ * Returns the average number of commands executed per drain.
+ * @return Command count.
+ */
+    public double getAverageDrainCommands()
+    {
+        long count = drains;
+        return count == 0 ? 0 : (double) commandsExecuted / count;
+    }
+
+/**
+ * Returns how long the most recent drain took.
+ * @return Milliseconds.
+ */
+    public double getLastDrainMillis()
+    {
+        return millis( lastDrainNanos );
+    }
+
+/**
+ * Returns how long the longest drain took.
+ * @return Milliseconds.
+ */
+    public double getMaxDrainMillis()
+    {
+        return millis( maxDrainNanos );
+    }
+
+/**
+ * Returns how long drains take on average.
+ * @return Milliseconds.
+ */
+    public double getAverageDrainMillis()
+    {
+        long count = drains;
+        return count == 0 ? 0 : millis( drainNanos ) / count;
+    }
+
+/**
+ * Returns the number of passes the stream threads have made through their
+ * streaming sources.
+ * @return Pass count.
+ */
+    public long getStreamLoops()
+    {
+        StreamThread[] threads = streamThreads();
+        long loops = 0;
+        for( int i = 0; i < threads.length; i++ )
+        {
+            loops += threads[i].getLoops();
+        }
+        return loops;
+    }
+
+/**
+ * Returns how long the stream threads' most recent passes took.  With more
+ * than one stream thread, the longest of them is returned.
+ * @return Milliseconds.
+ */
+    public double getLastStreamLoopMillis()
+    {
+        StreamThread[] threads = streamThreads();
+        long nanos = 0;
+        for( int i = 0; i < threads.length; i++ )
+        {
+            nanos = Math.max( nanos, threads[i].getLastLoopNanos() );
+        }
+        return millis( nanos );
+    }
+
+/**
+ * Returns how long the stream threads' longest pass took.
+ * @return Milliseconds.
+ */
+    public double getMaxStreamLoopMillis()
+    {
+        StreamThread[] threads = streamThreads();
+        long nanos = 0;
+        for( int i = 0; i < threads.length; i++ )
+        {
+            nanos = Math.max( nanos, threads[i].getMaxLoopNanos() );
+        }
+        return millis( nanos );
+    }
+
+/**
+ * Returns how long the stream threads' passes take on average.
+ * @return Milliseconds.
+ */
+    public double getAverageStreamLoopMillis()
+    {
+        StreamThread[] threads = streamThreads();
+        long loops = 0;
+        long nanos = 0;
+        for( int i = 0; i < threads.length; i++ )
+        {
+            loops += threads[i].getLoops();
+            nanos += threads[i].getLoopNanos();
+        }
+        return loops == 0 ? 0 : millis( nanos ) / loops;
+    }
+
+/**
+ * Returns the number of stream-buffers queued on each streaming source's
+ * channel which had not finished playing.
+ * @return Buffer counts (or -1 if unknown), keyed by sourcename.
+ */
+    public Map<String, Integer> getStreamQueuedBuffers()
+    {
+        StreamThread[] threads = streamThreads();
+        Map<String, Integer> queued = new HashMap<String, Integer>();
+        for( int i = 0; i < threads.length; i++ )
+        {
+            queued.putAll( threads[i].getQueuedBuffers() );
+        }
+        return queued;
+    }
+
+/**
+ * Returns the number of times a stream ran out of queued audio before it was
+ * finished.
+ * @return Underrun count.
+ */
+    public long getStreamUnderruns()
+    {
+        StreamThread[] threads = streamThreads();
+        long underruns = 0;
+        for( int i = 0; i < threads.length; i++ )
+        {
+            underruns += threads[i].getUnderruns();
+        }
+        return underruns;
+    }
+
+/**
+ * Returns the number of times each streaming source ran out of queued audio
+ * before it was finished.
+ * @return Underrun counts, keyed by sourcename.
+ */
+    public Map<String, Integer> getSourceUnderruns()
+    {
+        StreamThread[] threads = streamThreads();
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for( int i = 0; i < threads.length; i++ )
+        {
+            counts.putAll( threads[i].getSourceUnderruns() );
+        }
+        return counts;
+    }
+
+/**
+ * Returns the number of reads made by each codec.  Decode times are kept for
+ * the whole JVM, so this includes reads made for any other SoundSystem.
+ * @return Read counts, keyed by codec class name.
+ */
+    public Map<String, Long> getDecodeReads()
+    {
+        return DecodeTimes.getReads();
+    }
+
+/**
+ * Returns the total time each codec has spent decoding.  Decode times are
+ * kept for the whole JVM, so this includes any other SoundSystem's decoding.
+ * @return Milliseconds, keyed by codec class name.
+ */
+    public Map<String, Double> getDecodeMillis()
+    {
+        Map<String, Double> decodeMillis = new HashMap<String, Double>();
+        for( Map.Entry<String, Long> entry : DecodeTimes.getNanos().entrySet() )
+        {
+            decodeMillis.put( entry.getKey(), millis( entry.getValue() ) );
+        }
+        return decodeMillis;
+    }
+
+/**
+ * Returns the number of bytes of sample data the library has loaded.
+ * @return Loaded bytes.
+ */
+    public long getLoadedBytes()
+    {
+        Library library = soundSystem.soundLibrary;
+        return library == null ? 0 : library.getLoadedBytes();
+    }
+
+/**
+ * Returns the number of sources which found their sample data already loaded.
+ * @return Hit count.
+ */
+    public long getBufferHits()
+    {
+        Library library = soundSystem.soundLibrary;
+        return library == null ? 0 : library.getBufferHits();
+    }
+
+/**
+ * Returns the number of sources which did not find their sample data loaded.
+ * @return Miss count.
+ */
+    public long getBufferMisses()
+    {
+        Library library = soundSystem.soundLibrary;
+        return library == null ? 0 : library.getBufferMisses();
+    }
+
+/**
+ * Returns the number of sounds unloaded to stay within the memory budget.
+ * @return Eviction count.
+ */
+    public long getBufferEvictions()
+    {
+        Library library = soundSystem.soundLibrary;
+        return library == null ? 0 : library.getBufferEvictions();
+    }
+
+/**
+ * Returns the number of normal (non-streaming) channels.
+ * @return Channel count.
+ */
+    public int getNormalChannels()
+    {
+        Library library = soundSystem.soundLibrary;
+        if( library == null )
+            return 0;
+        return library.getChannels( SoundSystemConfig.TYPE_NORMAL );
+    }
+
+/**
+ * Returns the number of normal channels in use by a playing or paused source.
+ * @return Channel count.
+ */
+    public int getActiveNormalChannels()
+    {
+        Library library = soundSystem.soundLibrary;
+        if( library == null )
+            return 0;
+        return library.getActiveChannels( SoundSystemConfig.TYPE_NORMAL );
+    }
+
+/**
+ * Returns the number of streaming channels.
+ * @return Channel count.
+ */
+    public int getStreamingChannels()
+    {
+        Library library = soundSystem.soundLibrary;
+        if( library == null )
+            return 0;
+        return library.getChannels( SoundSystemConfig.TYPE_STREAMING );
+    }
+
+/**
+ * Returns the number of streaming channels in use by a playing or paused
+ * source.
+ * @return Channel count.
+ */
+    public int getActiveStreamingChannels()
+    {
+        Library library = soundSystem.soundLibrary;
+        if( library == null )
+            return 0;
+        return library.getActiveChannels( SoundSystemConfig.TYPE_STREAMING );
+    }
+
+/**
+ * Returns the stream threads of the library in use.
+ * @return Stream threads, or none if there is no library.
+ */
+    private StreamThread[] streamThreads()
+    {
+        Library library = soundSystem.soundLibrary;
+        if( library == null || library.streamThreads == null )
+            return new StreamThread[0];
+        return library.streamThreads;
+    }
+
+/**
+ * Converts nanoseconds to milliseconds.
+ * @param nanos Nanoseconds.
+ * @return Milliseconds.
+ */
+    private static double millis( long nanos )
+    {
+        return nanos / 1000000.0;
+    }
+
+/**
+ * Prints an error message.
+ * @param message Message to print.
+ */
+    private void errorMessage( String message )
+    {
+        logger.errorMessage( "SoundSystemMetrics", message, 0 );
+    }
+}
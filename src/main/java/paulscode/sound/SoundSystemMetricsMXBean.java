@@ -0,0 +1,229 @@
+package paulscode.sound;
+
+import java.util.Map;
+
+/**
+ * The SoundSystemMetricsMXBean interface lists the statistics which a
+ * SoundSystem makes available over JMX.  Times are in milliseconds.  Counters
+ * start at zero when the SoundSystem is created, and counters which belong to
+ * the sound library start over when the library is switched.  See
+ * {@link paulscode.sound.SoundSystemMetrics SoundSystemMetrics}.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public interface SoundSystemMetricsMXBean
+{
+/**
+ * Returns the title of the sound library in use.
+ * @return Library title, or null if none.
+ */
+    public String getLibrary();
+
+/**
+ * Returns the number of commands waiting in the command queue.
+ * @return Command queue depth.
+ */
+    public int getCommandQueueDepth();
+
+/**
+ * Returns the number of commands the command queue is able to hold.
+ * @return Command queue capacity.
+ */
+    public int getCommandQueueCapacity();
+
+/**
+ * Returns the number of times the command thread has drained the command
+ * queue and found commands to execute.
+ * @return Drain count.
+ */
+    public long getDrains();
+
+/**
+ * Returns the number of commands the command thread has executed.
+ * @return Executed command count.
+ */
+    public long getCommandsExecuted();
+
+/**
+ * Returns the number of queued commands which were skipped because later
+ * commands made them redundant.
+ * @return Coalesced command count.
+ */
+    public long getCommandsCoalesced();
+
+/**
+ * Returns the number of commands executed by the most recent drain.
+ * @return Command count.
+ */
+    public int getLastDrainCommands();
+
+/**
+ * Returns the largest number of commands executed by one drain.
+ * @return Command count.
+ */
+    public int getMaxDrainCommands();
+
+/**
+ * Returns the average number of commands executed per drain.
+ * @return Command count.
+ */
+    public double getAverageDrainCommands();
+
+/**
+ * Returns how long the most recent drain took.
+ * @return Milliseconds.
+ */
+    public double getLastDrainMillis();
+
+/**
+ * Returns how long the longest drain took.
+ * @return Milliseconds.
+ */
+    public double getMaxDrainMillis();
+
+/**
+ * Returns how long drains take on average.
+ * @return Milliseconds.
+ */
+    public double getAverageDrainMillis();
+
+/**
+ * Returns the number of passes the stream threads have made through their
+ * streaming sources.
+ * @return Pass count.
+ */
+    public long getStreamLoops();
+
+/**
+ * Returns how long the stream threads' most recent passes took.  With more
+ * than one stream thread, the longest of them is returned.
+ * @return Milliseconds.
+ */
+    public double getLastStreamLoopMillis();
+
+/**
+ * Returns how long the stream threads' longest pass took.
+ * @return Milliseconds.
+ */
+    public double getMaxStreamLoopMillis();
+
+/**
+ * Returns how long the stream threads' passes take on average.
+ * @return Milliseconds.
+ */
+    public double getAverageStreamLoopMillis();
+
+/**
+ * Returns the number of stream-buffers queued on each streaming source's
+ * channel which had not finished playing.
+ * @return Buffer counts (or -1 if unknown), keyed by sourcename.
+ */
+    public Map<String, Integer> getStreamQueuedBuffers();
+
+/**
+ * Returns the number of times a stream ran out of queued audio before it was
+ * finished.
+ * @return Underrun count.
+ */
+    public long getStreamUnderruns();
+
+/**
+ * Returns the number of times each streaming source ran out of queued audio
+ * before it was finished.
+ * @return Underrun counts, keyed by sourcename.
+ */
+    public Map<String, Integer> getSourceUnderruns();
+
+/**
+ * Returns the number of reads made by each codec.  Decode times are kept for
+ * the whole JVM, so this includes reads made for any other SoundSystem.
+ * @return Read counts, keyed by codec class name.
+ */
+    public Map<String, Long> getDecodeReads();
+
+/**
+ * Returns the total time each codec has spent decoding.  Decode times are
+ * kept for the whole JVM, so this includes any other SoundSystem's decoding.
+ * @return Milliseconds, keyed by codec class name.
+ */
+    public Map<String, Double> getDecodeMillis();
+
+/**
+ * Returns the number of bytes of sample data the library has loaded.
+ * @return Loaded bytes.
+ */
+    public long getLoadedBytes();
+
+/**
+ * Returns the number of sources which found their sample data already loaded.
+ * @return Hit count.
+ */
+    public long getBufferHits();
+
+/**
+ * Returns the number of sources which did not find their sample data loaded.
+ * @return Miss count.
+ */
+    public long getBufferMisses();
+
+/**
+ * Returns the number of sounds unloaded to stay within the memory budget.
+ * @return Eviction count.
+ */
+    public long getBufferEvictions();
+
+/**
+ * Returns the number of normal (non-streaming) channels.
+ * @return Channel count.
+ */
+    public int getNormalChannels();
+
+/**
+ * Returns the number of normal channels in use by a playing or paused source.
+ * @return Channel count.
+ */
+    public int getActiveNormalChannels();
+
+/**
+ * Returns the number of streaming channels.
+ * @return Channel count.
+ */
+    public int getStreamingChannels();
+
+/**
+ * Returns the number of streaming channels in use by a playing or paused
+ * source.
+ * @return Channel count.
+ */
+    public int getActiveStreamingChannels();
+}
@@ -199,11 +199,40 @@ public class Source
  */
     protected ICodec nextCodec = null;
 
+/**
+ * Keeps stream-buffers decoded ahead of playback on worker threads, or null to
+ * decode on the stream thread.
+ */
+    private volatile DecodeAhead decodeAhead = null;
+
+/**
+ * Decode-ahead which was replaced while a worker may still have been reading
+ * from the codec, or null.  It is halted before the codec is used again.
+ */
+    private volatile DecodeAhead retiredDecodeAhead = null;
+
+/**
+ * The {@link paulscode.sound.StreamThread StreamThread} streaming this source,
+ * or null if none.
+ */
+    volatile StreamThread streamThread = null;
+
 /**
  * List of buffers to hold some initial data from the next sound in the queue.
  */
     protected LinkedList<SoundBuffer> nextBuffers = null;
 
+/**
+ * The sound which nextCodec and nextBuffers were read from (or are being read
+ * from), or null if none.
+ */
+    protected FilenameURL nextFilenameURL = null;
+
+/**
+ * Job reading the next sound in the queue on a worker thread, or null if none.
+ */
+    private Prefetch prefetch = null;
+
 
 /**
  * The list of files to stream when the current stream finishes.
@@ -221,6 +250,19 @@ public class Source
  */
     public boolean preLoad = false;
 
+/**
+ * Number of stream-buffers queued on the channel which had not finished
+ * playing after the {@link paulscode.sound.StreamThread StreamThread} last
+ * refilled it, or -1 if unknown.
+ */
+    public volatile int queuedBuffers = -1;
+
+/**
+ * Number of times this source's stream ran out of queued audio before it was
+ * finished.
+ */
+    private volatile int underruns = 0;
+
 /**
  * Specifies the gain factor used for the fade-out effect, or -1 when
  * source is not currently fading out.
@@ -277,6 +319,8 @@ public class Source
         this.sourcename = sourcename;
         this.filenameURL = filenameURL;
         this.soundBuffer = soundBuffer;
+        if( soundBuffer != null )
+            soundBuffer.retain();
         position = new Vector3D( x, y, z );
         this.attModel = attModel;
         this.distOrRoll = distOrRoll;
@@ -314,6 +358,8 @@ public class Source
         rawDataFormat = old.rawDataFormat;
         
         this.soundBuffer = soundBuffer;
+        if( soundBuffer != null )
+            soundBuffer.retain();
 
         if( toStream && filenameURL != null )
             codec = SoundSystemConfig.getCodec( filenameURL.getFilename() );
@@ -359,11 +405,14 @@ public class Source
  */
     public void cleanup()
     {
+        haltDecodeAhead();
+        decodeAhead = null;
         if( codec != null )
             codec.cleanup();
 
         synchronized( soundSequenceLock )
         {
+            discardNextSound();
             if( soundSequenceQueue != null )
                 soundSequenceQueue.clear();
             soundSequenceQueue = null;
@@ -372,6 +421,9 @@ public class Source
         sourcename = null;
         filenameURL = null;
         position = null;
+        // let the library know once nobody is using the sound data:
+        if( soundBuffer != null )
+            soundBuffer.release();
         soundBuffer = null;
         codec = null;
     }
@@ -631,6 +683,7 @@ public class Source
             if( soundSequenceQueue != null && soundSequenceQueue.size() > 0 )
             {
                 filenameURL = soundSequenceQueue.remove( 0 );
+                haltDecodeAhead();
                 if( codec != null )
                     codec.cleanup();
                 codec = SoundSystemConfig.getCodec( filenameURL.getFilename() );
@@ -642,9 +695,12 @@ public class Source
 
 /**
  * Reads in initial buffers of data from the next sound in the sound sequence
- * queue, to reduce lag when the transition occurrs.  This method has no effect
- * on non-streaming sources.  This method is used internally by SoundSystem, and
- * it is unlikely that the user will ever need to use it.
+ * queue, to reduce lag when the transition occurrs.  If this source's stream
+ * is decoded on worker threads (see SoundSystemConfig.setNumberDecoderThreads),
+ * the sound is read on a worker thread and this method returns right away.
+ * Calling it again before the transition does nothing.  This method has no
+ * effect on non-streaming sources.  This method is used internally by
+ * SoundSystem, and it is unlikely that the user will ever need to use it.
  * @return False if there is nothing in the queue to read from.
  */
     public boolean readBuffersFromNextSoundInSequence()
@@ -660,11 +716,26 @@ public class Source
         {
             if( soundSequenceQueue != null && soundSequenceQueue.size() > 0 )
             {
-                if( nextCodec != null )
-                    nextCodec.cleanup();
-                nextCodec = SoundSystemConfig.getCodec(
-                                    soundSequenceQueue.get( 0 ).getFilename() );
-                nextCodec.initialize( soundSequenceQueue.get( 0 ).getURL() );
+                FilenameURL next = soundSequenceQueue.get( 0 );
+
+                // Already read, or being read on a worker thread:
+                if( nextFilenameURL == next )
+                    return true;
+
+                discardNextSound();
+                nextFilenameURL = next;
+
+                DecodeAhead ahead = decodeAhead;
+                if( ahead != null )
+                {
+                    prefetch = new Prefetch( next );
+                    if( ahead.getDecoder().execute( prefetch ) )
+                        return true;
+                    prefetch = null;  // read it here instead
+                }
+
+                nextCodec = SoundSystemConfig.getCodec( next.getFilename() );
+                nextCodec.initialize( next.getURL() );
                 
                 SoundBuffer buffer = null;
                 for( int i = 0;
@@ -672,7 +743,7 @@ public class Source
                          && !nextCodec.endOfStream();
                      i++ )
                 {
-                    buffer = nextCodec.read();
+                    buffer = decode( nextCodec );
                     if( buffer != null )
                     {
                         if( nextBuffers == null )
@@ -687,6 +758,85 @@ public class Source
     }
 
 
+/**
+ * If the sound this source just switched to is the one which was read by
+ * readBuffersFromNextSoundInSequence(), switches to the codec which read it.
+ * @return Stream-buffers read from the sound, or null if it was not read (or
+ * is still being read, in which case that is abandoned).
+ */
+    protected LinkedList<SoundBuffer> takeNextBuffers()
+    {
+        synchronized( soundSequenceLock )
+        {
+            if( nextFilenameURL == null || nextFilenameURL != filenameURL )
+                return null;
+            if( nextCodec == null || nextBuffers == null
+                || nextBuffers.isEmpty() )
+            {
+                discardNextSound();
+                return null;
+            }
+
+            if( codec != null && codec != nextCodec )
+                codec.cleanup();
+            codec = nextCodec;
+            LinkedList<SoundBuffer> buffers = nextBuffers;
+            nextCodec = null;
+            nextBuffers = null;
+            nextFilenameURL = null;
+            return buffers;
+        }
+    }
+
+/**
+ * Throws away whatever was read from the next sound in the queue, and abandons
+ * reading it if a worker thread is still busy with it.  Must be called while
+ * holding the sound sequence lock.
+ */
+    private void discardNextSound()
+    {
+        prefetch = null;
+        nextFilenameURL = null;
+        if( nextCodec != null )
+            nextCodec.cleanup();
+        nextCodec = null;
+        if( nextBuffers != null )
+        {
+            while( !nextBuffers.isEmpty() )
+            {
+                SoundBuffer buffer = nextBuffers.remove( 0 );
+                if( buffer != null )
+                    buffer.cleanup();
+            }
+        }
+        nextBuffers = null;
+    }
+
+/**
+ * Starts reading the next sound in the queue on a worker thread while the
+ * current one is still playing, so it is ready well before the transition.
+ * This is checked each time the stream is refilled, in case sounds were
+ * queued after the current one started.
+ */
+    private void prefetchNextSound()
+    {
+        if( decodeAhead != null && getSoundSequenceQueueSize() > 0 )
+            readBuffersFromNextSoundInSequence();
+    }
+
+/**
+ * Checks whether the sound this source just switched to is still being read by
+ * a worker thread.
+ * @return True if the stream should wait for it before preloading.
+ */
+    private boolean awaitingNextSound()
+    {
+        synchronized( soundSequenceLock )
+        {
+            return prefetch != null && nextFilenameURL == filenameURL;
+        }
+    }
+
 /**
  * Returns the size of the sound sequence queue (if this is a streaming source).
  * @return Number of sounds left in the queue, or zero if none.
@@ -851,6 +1001,13 @@ public class Source
         this.toLoop = toLoop;
         this.sourcename = sourcename;
         this.filenameURL = filenameURL;
+        if( this.soundBuffer != soundBuffer )
+        {
+            if( this.soundBuffer != null )
+                this.soundBuffer.release();
+            if( soundBuffer != null )
+                soundBuffer.retain();
+        }
         this.soundBuffer = soundBuffer;
         position.x = x;
         position.y = y;
@@ -923,9 +1080,19 @@ public class Source
         if( preLoad )
         {
             if( rawDataStream )
+            {
                 preLoad = false;
+            }
             else
-                return preLoad();
+            {
+                // If a worker is still reading the next sound, come back later
+                // rather than holding up the other streams:
+                if( awaitingNextSound() )
+                    return true;
+                boolean loaded = preLoad();
+                startDecodeAhead();
+                return loaded;
+            }
         }
 
         if( rawDataStream )
@@ -950,13 +1117,20 @@ public class Source
             SoundBuffer buffer = null;
             for( int i = 0; i < processed; i++ )
             {
-                buffer = codec.read();
+                buffer = nextBuffer();
                 if( buffer != null )
                 {
                     if( buffer.audioData != null )
-                        channel.queueBuffer( buffer.audioData );
+                        refill( buffer.audioData );
                     buffer.cleanup();
                     buffer = null;
+                    prefetchNextSound();
+                    return true;
+                }
+                else if( decodingAhead() )
+                {
+                    // The workers have not caught up yet, so try again later
+                    // rather than holding up the other streams:
                     return true;
                 }
                 else if( codec.endOfStream() )
@@ -968,32 +1142,43 @@ public class Source
                             if( soundSequenceQueue != null &&
                                 soundSequenceQueue.size() > 0 )
                             {
+                                // If a worker is still reading the next sound,
+                                // wait for it rather than reading it here:
+                                if( prefetch != null && nextFilenameURL ==
+                                                   soundSequenceQueue.get( 0 ) )
+                                    return true;
+                                haltDecodeAhead();
+                                filenameURL = soundSequenceQueue.remove( 0 );
+                                if( switchToNextBuffers() )
+                                    return true;
                                 if( codec != null )
                                     codec.cleanup();
-                                filenameURL = soundSequenceQueue.remove( 0 );
                                 codec = SoundSystemConfig.getCodec(
                                                         filenameURL.getFilename() );
                                 codec.initialize( filenameURL.getURL() );
-                                buffer = codec.read();
+                                buffer = decode( codec );
                                 if( buffer != null )
                                 {
                                     if( buffer.audioData != null )
-                                        channel.queueBuffer( buffer.audioData );
+                                        refill( buffer.audioData );
                                     buffer.cleanup();
                                     buffer = null;
+                                    startDecodeAhead();
                                     return true;
                                 }
                             }
                             else if( toLoop )
                             {
+                                haltDecodeAhead();
                                 codec.initialize( filenameURL.getURL() );
-                                buffer = codec.read();
+                                buffer = decode( codec );
                                 if( buffer != null )
                                 {
                                     if( buffer.audioData != null )
-                                        channel.queueBuffer( buffer.audioData );
+                                        refill( buffer.audioData );
                                     buffer.cleanup();
                                     buffer = null;
+                                    startDecodeAhead();
                                     return true;
                                 }
                             }
@@ -1021,11 +1206,11 @@ public class Source
                             else if( toLoop )
                             {
                                 codec.initialize( filenameURL.getURL() );
-                                buffer = codec.read();
+                                buffer = decode( codec );
                                 if( buffer != null )
                                 {
                                     if( buffer.audioData != null )
-                                        channel.queueBuffer( buffer.audioData );
+                                        refill( buffer.audioData );
                                     buffer.cleanup();
                                     buffer = null;
                                 }
@@ -1039,6 +1224,224 @@ public class Source
         }
         return false;
     }
+
+/**
+ * Continues the stream with the sound which was read by
+ * readBuffersFromNextSoundInSequence(), if it is the one just switched to.  The
+ * first stream-buffer read from it is queued, and the rest are handed to the
+ * worker threads to be queued before anything they decode.  This is only done
+ * when the stream is decoded on worker threads, since otherwise there is no
+ * room on the channel for the rest.
+ * @return True if a stream-buffer was queued.
+ */
+    private boolean switchToNextBuffers()
+    {
+        haltRetiredDecodeAhead();
+        DecodeAhead ahead = decodeAhead;
+        if( ahead == null )
+            return false;
+        LinkedList<SoundBuffer> buffers = takeNextBuffers();
+        if( buffers == null )
+            return false;
+
+        SoundBuffer buffer = buffers.removeFirst();
+        if( buffer != null )
+        {
+            if( buffer.audioData != null )
+                refill( buffer.audioData );
+            buffer.cleanup();
+        }
+        ahead.start( codec, buffers );
+        prefetchNextSound();
+        return true;
+    }
+
+/**
+ * Queues a stream-buffer on the channel.  If the channel ran out of audio
+ * since it was last refilled, this is counted as an underrun first.
+ * @param data Audio data to queue.
+ */
+    private void refill( byte[] data )
+    {
+        // If nothing was left after the last refill, it was already counted:
+        if( queuedBuffers > 0 && buffersQueued() == 0 )
+        {
+            queuedBuffers = 0;
+            underruns++;
+        }
+        channel.queueBuffer( data );
+    }
+
+/**
+ * Remembers how many stream-buffers are queued on the channel.  This method is
+ * run from the {@link paulscode.sound.StreamThread StreamThread} after
+ * stream().  If the channel ran out while the worker threads are still
+ * decoding the stream, this is counted as an underrun.
+ */
+    public void countQueuedBuffers()
+    {
+        int queued = buffersQueued();
+        if( queued == 0 && queuedBuffers > 0 && decodingAhead() )
+            underruns++;
+        queuedBuffers = queued;
+    }
+
+/**
+ * Returns the number of stream-buffers queued on the channel which have not
+ * finished playing.
+ * @return Number of buffers, or -1 if unknown.
+ */
+    private int buffersQueued()
+    {
+        if( channel == null || channel.attachedSource != this )
+            return -1;
+        return channel.buffersQueued();
+    }
+
+/**
+ * Estimates how long until the stream will need to be refilled.  This method
+ * is run from the {@link paulscode.sound.StreamThread StreamThread} after
+ * stream().
+ * @return Milliseconds, or -1 if unknown or if the stream needs to be checked
+ * at the usual rate (raw data streams, fades, and streams which are starting
+ * or finishing).
+ */
+    public float millisecondsUntilRefill()
+    {
+        if( rawDataStream || preLoad || fadeOutGain >= 0.0f
+            || fadeInGain < 1.0f )
+            return -1;
+        if( codec == null )
+            return -1;
+        // A worker may be reading from the codec, so ask the decode-ahead:
+        DecodeAhead ahead = decodeAhead;
+        if( ahead == null ? codec.endOfStream() : ahead.endOfStream() )
+            return -1;
+        if( channel == null || channel.attachedSource != this )
+            return -1;
+        return channel.millisecondsUntilRefill();
+    }
+
+/**
+ * Returns the number of times this source's stream ran out of queued audio
+ * before it was finished.
+ * @return Underrun count.
+ */
+    public int getUnderruns()
+    {
+        return underruns;
+    }
+
+/**
+ * Sets the worker threads which decode this source's stream ahead of playback.
+ * This method is run when a {@link paulscode.sound.StreamThread StreamThread}
+ * starts watching this source, while holding its locks, so it does not wait
+ * for a worker which is reading from the codec.  That happens the next time
+ * the codec is used.
+ * @param decoder Worker threads to decode with, or null to decode on the
+ * stream thread.
+ */
+    public void setStreamDecoder( StreamDecoder decoder )
+    {
+        DecodeAhead ahead = decodeAhead;
+        if( ahead == null ? decoder == null : ahead.getDecoder() == decoder )
+            return;
+        if( ahead != null )
+        {
+            ahead.cancel();
+            // Nothing reads from the codec until the retired decode-ahead has
+            // been halted, so only the first one replaced can have a reader:
+            if( retiredDecodeAhead == null )
+                retiredDecodeAhead = ahead;
+        }
+        if( decoder == null || rawDataStream )
+            decodeAhead = null;
+        else
+            decodeAhead = new DecodeAhead( decoder, this,
+                              SoundSystemConfig.getNumberDecodeAheadBuffers() );
+    }
+
+/**
+ * Stops decoding ahead, and throws away anything decoded ahead.  This must be
+ * called before the codec is used by anything other than stream(), since the
+ * worker threads may be reading from it.
+ */
+    protected void haltDecodeAhead()
+    {
+        haltRetiredDecodeAhead();
+        DecodeAhead ahead = decodeAhead;
+        if( ahead != null )
+            ahead.halt();
+    }
+
+/**
+ * Waits for a worker which may still be reading from the codec for a
+ * decode-ahead that setStreamDecoder() replaced.
+ */
+    private void haltRetiredDecodeAhead()
+    {
+        DecodeAhead retired = retiredDecodeAhead;
+        if( retired != null )
+        {
+            retired.halt();
+            retiredDecodeAhead = null;
+        }
+    }
+
+/**
+ * Starts decoding ahead from the codec's current position, if this source's
+ * stream is decoded on worker threads.  The next sound in the queue is read
+ * ahead as well.
+ */
+    private void startDecodeAhead()
+    {
+        haltRetiredDecodeAhead();
+        DecodeAhead ahead = decodeAhead;
+        if( ahead != null && codec != null )
+        {
+            ahead.start( codec );
+            prefetchNextSound();
+        }
+    }
+
+/**
+ * Returns the next stream-buffer, taking it from the buffers decoded ahead if
+ * this source's stream is decoded on worker threads.
+ * @return Decoded audio data, or null if there was none.
+ */
+    private SoundBuffer nextBuffer()
+    {
+        haltRetiredDecodeAhead();
+        DecodeAhead ahead = decodeAhead;
+        if( ahead == null )
+            return decode( codec );
+        return ahead.take( codec );
+    }
+
+/**
+ * Checks whether the worker threads are still decoding this source's stream.
+ * Until they are finished, they own the codec.
+ * @return True if more stream-buffers are on the way.
+ */
+    private boolean decodingAhead()
+    {
+        DecodeAhead ahead = decodeAhead;
+        return ahead != null && !ahead.finished();
+    }
+
+/**
+ * Reads the next stream-buffer from the specified codec, and records how long
+ * the codec took (see {@link paulscode.sound.DecodeTimes DecodeTimes}).
+ * @param c Codec to read from.
+ * @return Decoded audio data, or null if there was an error.
+ */
+    protected SoundBuffer decode( ICodec c )
+    {
+        long start = System.nanoTime();
+        SoundBuffer buffer = c.read();
+        DecodeTimes.record( c, System.nanoTime() - start );
+        return buffer;
+    }
     
 /**
  * Queues up the initial stream-buffers for the stream.
@@ -1052,44 +1455,33 @@ public class Source
         if( codec == null )
             return false;
 
+        haltDecodeAhead();
         SoundBuffer buffer = null;
 
-        boolean noNextBuffers = false;
-        synchronized( soundSequenceLock )
+        LinkedList<SoundBuffer> buffers = takeNextBuffers();
+        if( buffers != null )
         {
-            if( nextBuffers == null || nextBuffers.isEmpty() )
-                noNextBuffers = true;
-        }
-
-        if( nextCodec != null && !noNextBuffers )
-        {
-            codec = nextCodec;
-            nextCodec = null;
-            synchronized( soundSequenceLock )
+            while( !buffers.isEmpty() )
             {
-                while( !nextBuffers.isEmpty() )
+                buffer = buffers.remove( 0 );
+                if( buffer != null )
                 {
-                    buffer = nextBuffers.remove( 0 );
-                    if( buffer != null )
-                    {
-                        if( buffer.audioData != null )
-                            channel.queueBuffer( buffer.audioData );
-                        buffer.cleanup();
-                        buffer = null;
-                    }
+                    if( buffer.audioData != null )
+                        channel.queueBuffer( buffer.audioData );
+                    buffer.cleanup();
+                    buffer = null;
                 }
             }
         }
         else
         {
-            nextCodec = null;
             URL url = filenameURL.getURL();
 
             codec.initialize( url );
             for( int i = 0; i < SoundSystemConfig.getNumberStreamingBuffers();
                  i++ )
             {
-                buffer = codec.read();
+                buffer = decode( codec );
                 if( buffer != null )
                 {
                     if( buffer.audioData != null )
@@ -1335,4 +1727,83 @@ public class Source
     {
         logger.printStackTrace( e, 1 );
     }
+
+/**
+ * The Prefetch class reads initial buffers of data from the next sound in the
+ * sound sequence queue on a worker thread.
+ */
+    private class Prefetch implements Runnable
+    {
+/**
+ * The sound to read.
+ */
+        final FilenameURL filenameURL;
+
+/**
+ * Constructor: Remembers which sound to read.
+ * @param filenameURL The sound to read.
+ */
+        Prefetch( FilenameURL filenameURL )
+        {
+            this.filenameURL = filenameURL;
+        }
+
+/**
+ * Opens the sound and reads the initial buffers, then hands them to the source
+ * unless it no longer wants them.
+ */
+        @Override
+        public void run()
+        {
+            ICodec c = SoundSystemConfig.getCodec( filenameURL.getFilename() );
+            LinkedList<SoundBuffer> buffers = new LinkedList<SoundBuffer>();
+            if( c == null )
+            {
+                errorMessage( "No codec found for file '" +
+                              filenameURL.getFilename() + "' in method " +
+                              "'readBuffersFromNextSoundInSequence'" );
+            }
+            else
+            {
+                try
+                {
+                    c.initialize( filenameURL.getURL() );
+                    SoundBuffer buffer;
+                    for( int i = 0;
+                         i < SoundSystemConfig.getNumberStreamingBuffers()
+                             && !c.endOfStream();
+                         i++ )
+                    {
+                        buffer = decode( c );
+                        if( buffer != null )
+                            buffers.add( buffer );
+                    }
+                }
+                catch( RuntimeException re )
+                {
+                    errorMessage( "Problem reading file '" +
+                                  filenameURL.getFilename() + "': " + re );
+                }
+            }
+
+            synchronized( soundSequenceLock )
+            {
+                if( prefetch == this )
+                {
+                    prefetch = null;
+                    nextCodec = c;
+                    nextBuffers = buffers;
+                    return;
+                }
+            }
+
+            // abandoned while reading:
+            if( c != null )
+                c.cleanup();
+            while( !buffers.isEmpty() )
+            {
+                buffers.remove( 0 ).cleanup();
+            }
+        }
+    }
 }
@@ -0,0 +1,375 @@
+package paulscode.sound;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The SourceHandles class assigns compact integer handles to sourcenames, so
+ * that frequently changed sources can be referred to without hashing and
+ * comparing Strings.  Each handle indexes a slot which holds the sourcename and,
+ * for use by the {@link paulscode.sound.CommandThread CommandThread}, the
+ * {@link paulscode.sound.Source Source} it was last resolved to.  The upper
+ * bits of a handle hold the slot's generation, which changes every time the
+ * slot is released, so a handle kept after its source was removed will not
+ * refer to a different source which later reuses the slot.  A handle is never
+ * zero.  All methods are thread-safe.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class SourceHandles
+{
+/**
+ * Number of low bits of a handle which hold the slot index.
+ */
+    private static final int SLOT_BITS = 20;
+
+/**
+ * Mask for the slot index of a handle.
+ */
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+
+/**
+ * Largest generation, before wrapping back to one.
+ */
+    private static final int MAX_GENERATION = (1 << (31 - SLOT_BITS)) - 1;
+
+/**
+ * Slot index for each sourcename which has a handle.
+ */
+    private final HashMap<String, Integer> slotMap =
+                                                new HashMap<String, Integer>();
+
+/**
+ * Sourcename for each slot, or null if the slot is free.
+ */
+    private String[] sourcenames = new String[16];
+
+/**
+ * Current generation of each slot.
+ */
+    private int[] generations = new int[16];
+
+/**
+ * Source each slot was last resolved to by the command thread, or null.
+ */
+    private Source[] sources = new Source[16];
+
+/**
+ * True for each slot whose source has been created by the command thread.
+ */
+    private boolean[] created = new boolean[16];
+
+/**
+ * True for each slot whose source is about to be created (see assignNew()).
+ */
+    private boolean[] pending = new boolean[16];
+
+/**
+ * True for each slot with no created source which was not in the library the
+ * last time releaseRemoved() looked.
+ */
+    private boolean[] missing = new boolean[16];
+
+/**
+ * Slots which have been released and may be reused.
+ */
+    private int[] freeSlots = new int[16];
+
+/**
+ * Number of entries in freeSlots.
+ */
+    private int freeCount = 0;
+
+/**
+ * Number of slots which have ever been used.
+ */
+    private int slotCount = 0;
+
+/**
+ * Returns the handle for the specified sourcename, assigning a new one if
+ * necessary.
+ * @param sourcename Identifier for the source.
+ * @return Handle for the source, or zero if sourcename is null.
+ */
+    public synchronized int assign( String sourcename )
+    {
+        if( sourcename == null )
+            return 0;
+
+        Integer existing = slotMap.get( sourcename );
+        if( existing != null )
+            return handle( existing );
+
+        int slot;
+        if( freeCount > 0 )
+        {
+            slot = freeSlots[--freeCount];
+        }
+        else
+        {
+            if( slotCount > SLOT_MASK )
+                return 0;  // out of handles
+            if( slotCount == sourcenames.length )
+                grow();
+            slot = slotCount++;
+            generations[slot] = 1;
+        }
+
+        sourcenames[slot] = sourcename;
+        sources[slot] = null;
+        created[slot] = false;
+        pending[slot] = false;
+        missing[slot] = false;
+        slotMap.put( sourcename, slot );
+        return handle( slot );
+    }
+
+/**
+ * Returns the handle for a source which is about to be created, assigning a new
+ * one if necessary.  The handle is kept at least until the command thread
+ * calls created() for it.
+ * @param sourcename Identifier for the source.
+ * @return Handle for the source, or zero if sourcename is null.
+ */
+    public synchronized int assignNew( String sourcename )
+    {
+        int handle = assign( sourcename );
+        if( handle != 0 )
+            pending[handle & SLOT_MASK] = true;
+        return handle;
+    }
+
+/**
+ * Returns the handle for the specified sourcename, without assigning one.
+ * @param sourcename Identifier for the source.
+ * @return Handle for the source, or zero if it does not have one.
+ */
+    public synchronized int get( String sourcename )
+    {
+        if( sourcename == null )
+            return 0;
+        Integer slot = slotMap.get( sourcename );
+        if( slot == null )
+            return 0;
+        return handle( slot );
+    }
+
+/**
+ * Returns the sourcename referred to by the specified handle.
+ * @param handle Handle returned by assign().
+ * @return Identifier for the source, or null if the handle is no longer valid.
+ */
+    public synchronized String sourcename( int handle )
+    {
+        int slot = slot( handle );
+        if( slot < 0 )
+            return null;
+        return sourcenames[slot];
+    }
+
+/**
+ * Returns the source referred to by the specified handle, looking it up in the
+ * library the first time and remembering it after that.  This method should
+ * only be called from the command thread.
+ * @param handle Handle returned by assign().
+ * @param library Library containing the source.
+ * @return The source, or null if it does not exist (or the handle is invalid).
+ */
+    public synchronized Source source( int handle, Library library )
+    {
+        int slot = slot( handle );
+        if( slot < 0 || library == null )
+            return null;
+        Source source = sources[slot];
+        if( source == null )
+        {
+            source = library.getSource( sourcenames[slot] );
+            sources[slot] = source;
+            // the source may have been created without this handle:
+            if( source != null )
+                created[slot] = true;
+        }
+        return source;
+    }
+
+/**
+ * Lets the handle table know that the command thread has just (re)created the
+ * specified source, so any source remembered for its handle is out of date.
+ * @param sourcename Identifier for the source.
+ */
+    public synchronized void created( String sourcename )
+    {
+        if( sourcename == null )
+            return;
+        Integer slot = slotMap.get( sourcename );
+        if( slot == null )
+            return;
+        sources[slot] = null;
+        created[slot] = true;
+        pending[slot] = false;
+    }
+
+/**
+ * Forgets every source remembered for a handle (for example, after switching
+ * libraries).  The handles themselves remain valid.
+ */
+    public synchronized void forgetSources()
+    {
+        Arrays.fill( sources, null );
+    }
+
+/**
+ * Releases the handle for the specified sourcename, if it has one.
+ * @param sourcename Identifier for the source.
+ */
+    public synchronized void release( String sourcename )
+    {
+        if( sourcename == null )
+            return;
+        Integer slot = slotMap.remove( sourcename );
+        if( slot != null )
+            free( slot );
+    }
+
+/**
+ * Releases the handles of all created sources which are no longer in the
+ * specified source map (such as temporary sources which finished playing).
+ * Handles which were assigned to a source that already existed are treated as
+ * created.  Handles for sources which do not exist and are not about to be
+ * created are released once they have been missing from the source map two
+ * times in a row, so the command thread has had a chance to run any commands
+ * queued in between.  This method should only be called from the command
+ * thread.
+ * @param sourceMap The library's sources.
+ */
+    public synchronized void releaseRemoved( HashMap<String, Source> sourceMap )
+    {
+        if( sourceMap == null )
+            return;
+        boolean exists;
+        for( int slot = 0; slot < slotCount; slot++ )
+        {
+            if( sourcenames[slot] == null || pending[slot] )
+                continue;
+            exists = sourceMap.containsKey( sourcenames[slot] );
+            if( !created[slot] )
+            {
+                if( exists )
+                {
+                    created[slot] = true;
+                    missing[slot] = false;
+                    continue;
+                }
+                if( !missing[slot] )
+                {
+                    missing[slot] = true;
+                    continue;
+                }
+            }
+            if( !exists )
+            {
+                slotMap.remove( sourcenames[slot] );
+                free( slot );
+            }
+        }
+    }
+
+/**
+ * Releases all handles.
+ */
+    public synchronized void clear()
+    {
+        for( int slot = 0; slot < slotCount; slot++ )
+        {
+            if( sourcenames[slot] != null )
+                free( slot );
+        }
+        slotMap.clear();
+    }
+
+/**
+ * Returns the slot referred to by the specified handle.
+ * @param handle Handle returned by assign().
+ * @return Slot index, or -1 if the handle is no longer valid.
+ */
+    private int slot( int handle )
+    {
+        int slot = handle & SLOT_MASK;
+        if( handle <= 0 || slot >= slotCount || sourcenames[slot] == null
+            || generations[slot] != (handle >>> SLOT_BITS) )
+            return -1;
+        return slot;
+    }
+
+/**
+ * Returns the current handle for the specified slot.
+ * @param slot Slot index.
+ * @return Handle.
+ */
+    private int handle( int slot )
+    {
+        return (generations[slot] << SLOT_BITS) | slot;
+    }
+
+/**
+ * Empties a slot and puts it on the free list.
+ * @param slot Slot index.
+ */
+    private void free( int slot )
+    {
+        sourcenames[slot] = null;
+        sources[slot] = null;
+        created[slot] = false;
+        pending[slot] = false;
+        missing[slot] = false;
+        generations[slot]++;
+        if( generations[slot] > MAX_GENERATION )
+            generations[slot] = 1;
+        freeSlots[freeCount++] = slot;
+    }
+
+/**
+ * Doubles the size of the slot arrays.
+ */
+    private void grow()
+    {
+        int size = sourcenames.length * 2;
+        sourcenames = Arrays.copyOf( sourcenames, size );
+        generations = Arrays.copyOf( generations, size );
+        sources = Arrays.copyOf( sources, size );
+        created = Arrays.copyOf( created, size );
+        pending = Arrays.copyOf( pending, size );
+        missing = Arrays.copyOf( missing, size );
+        freeSlots = Arrays.copyOf( freeSlots, size );
+    }
+}
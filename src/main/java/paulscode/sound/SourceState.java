@@ -0,0 +1,208 @@
+package paulscode.sound;
+
+/**
+ * The SourceState class is an unchangeable record of a source's playback state
+ * at one moment, published by the command thread as part of a
+ * {@link paulscode.sound.StateSnapshot StateSnapshot}.  Reading it requires no
+ * locking.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class SourceState
+{
+/**
+ * Unique identifier of the source.
+ */
+    public final String sourcename;
+
+/**
+ * True if the source was playing.
+ */
+    public final boolean playing;
+
+/**
+ * True if the source was paused.
+ */
+    public final boolean paused;
+
+/**
+ * Volume of the source (0.0f - 1.0f).
+ */
+    public final float volume;
+
+/**
+ * Pitch of the source (0.5f - 2.0f).
+ */
+    public final float pitch;
+
+/**
+ * Miliseconds since the source began playing, or -1 if not playing.
+ */
+    public final float millisecondsPlayed;
+
+/**
+ * X coordinate of the source's position.
+ */
+    public final float x;
+
+/**
+ * Y coordinate of the source's position.
+ */
+    public final float y;
+
+/**
+ * Z coordinate of the source's position.
+ */
+    public final float z;
+
+/**
+ * Constructor:  Records the state of the specified source.  Must be called
+ * while holding the SoundSystemConfig.THREAD_SYNC lock.
+ * @param source Source to record.
+ */
+    public SourceState( Source source )
+    {
+        sourcename = source.sourcename;
+        playing = source.playing();
+        paused = source.paused();
+        volume = source.sourceVolume;
+        pitch = source.getPitch();
+        millisecondsPlayed = source.millisecondsPlayed();
+        if( source.position != null )
+        {
+            x = source.position.x;
+            y = source.position.y;
+            z = source.position.z;
+        }
+        else
+        {
+            x = 0.0f;
+            y = 0.0f;
+            z = 0.0f;
+        }
+    }
+
+/**
+ * Constructor:  Records the specified state.
+ */
+    private SourceState( String sourcename, boolean playing, boolean paused,
+                         float volume, float pitch, float millisecondsPlayed,
+                         float x, float y, float z )
+    {
+        this.sourcename = sourcename;
+        this.playing = playing;
+        this.paused = paused;
+        this.volume = volume;
+        this.pitch = pitch;
+        this.millisecondsPlayed = millisecondsPlayed;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+/**
+ * Records the state of the specified source, or returns the previous record if
+ * the source is still in that state, so unchanged sources do not need a new
+ * record each time a snapshot is published.  Must be called while holding the
+ * SoundSystemConfig.THREAD_SYNC lock.
+ * @param previous Previous record of the source, or null.
+ * @param source Source to record.
+ * @return The previous record, or a new one if anything changed.
+ */
+    static SourceState update( SourceState previous, Source source )
+    {
+        boolean playing = source.playing();
+        boolean paused = source.paused();
+        float volume = source.sourceVolume;
+        float pitch = source.getPitch();
+        float millisecondsPlayed = source.millisecondsPlayed();
+        float x = 0.0f;
+        float y = 0.0f;
+        float z = 0.0f;
+        if( source.position != null )
+        {
+            x = source.position.x;
+            y = source.position.y;
+            z = source.position.z;
+        }
+
+        if( previous != null && previous.sourcename.equals( source.sourcename )
+            && previous.playing == playing && previous.paused == paused
+            && previous.volume == volume && previous.pitch == pitch
+            && previous.millisecondsPlayed == millisecondsPlayed
+            && previous.x == x && previous.y == y && previous.z == z )
+            return previous;
+
+        return new SourceState( source.sourcename, playing, paused, volume,
+                                pitch, millisecondsPlayed, x, y, z );
+    }
+
+/**
+ * Records the state of the MIDI channel, or returns the previous record if the
+ * channel is still in that state.  Must be called while holding the
+ * SoundSystemConfig.THREAD_SYNC lock.
+ * @param previous Previous record of the MIDI channel, or null.
+ * @param midiChannel MIDI channel to record.
+ * @return The previous record, or a new one if anything changed.
+ */
+    static SourceState update( SourceState previous, MidiChannel midiChannel )
+    {
+        if( previous != null
+            && previous.sourcename.equals( midiChannel.getSourcename() )
+            && previous.volume == midiChannel.getVolume()
+            && !previous.playing && !previous.paused && previous.pitch == 1.0f
+            && previous.millisecondsPlayed == -1 && previous.x == 0.0f
+            && previous.y == 0.0f && previous.z == 0.0f )
+            return previous;
+
+        return new SourceState( midiChannel );
+    }
+
+/**
+ * Constructor:  Records the state of the MIDI channel.  Must be called while
+ * holding the SoundSystemConfig.THREAD_SYNC lock.
+ * @param midiChannel MIDI channel to record.
+ */
+    public SourceState( MidiChannel midiChannel )
+    {
+        sourcename = midiChannel.getSourcename();
+        playing = false;  // not tracked for MIDI
+        paused = false;
+        volume = midiChannel.getVolume();
+        pitch = 1.0f;
+        millisecondsPlayed = -1;
+        x = 0.0f;
+        y = 0.0f;
+        z = 0.0f;
+    }
+}
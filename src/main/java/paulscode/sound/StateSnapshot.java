@@ -0,0 +1,170 @@
+package paulscode.sound;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The StateSnapshot class is an unchangeable record of every source's playback
+ * state and the listener's position and orientation, published by the
+ * {@link paulscode.sound.CommandThread CommandThread} when executing commands
+ * changes the state, and at regular intervals while sources are playing (see
+ * {@link paulscode.sound.SoundSystemConfig#setStateSnapshotInterval(int)
+ * SoundSystemConfig.setStateSnapshotInterval()}).  Query methods such as
+ * SoundSystem.playing() and SoundSystem.getVolume() read the most recent
+ * snapshot, so they never wait for the command thread.  A snapshot is at most
+ * one interval out of date, plus however long the command thread spends
+ * executing commands.  Sources whose state did not change keep the same
+ * {@link paulscode.sound.SourceState SourceState} from one snapshot to the
+ * next.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class StateSnapshot
+{
+/**
+ * System.currentTimeMillis() when the snapshot was taken.
+ */
+    public final long time;
+
+/**
+ * True if any source was playing.
+ */
+    public final boolean playing;
+
+/**
+ * Copy of the listener's position and orientation.
+ */
+    private final ListenerData listenerData;
+
+/**
+ * State of each source, keyed by sourcename.
+ */
+    private final Map<String, SourceState> sourceStates;
+
+/**
+ * Constructor:  Takes ownership of the specified states.
+ * @param time System.currentTimeMillis() when the snapshot was taken.
+ * @param sourceStates State of each source (must not be changed afterwards).
+ * @param listenerData Copy of the listener data (must not be changed
+ * afterwards).
+ */
+    public StateSnapshot( long time, HashMap<String, SourceState> sourceStates,
+                          ListenerData listenerData )
+    {
+        this.time = time;
+        this.sourceStates = Collections.unmodifiableMap( sourceStates );
+        this.listenerData = listenerData;
+
+        boolean anyPlaying = false;
+        for( SourceState state : sourceStates.values() )
+        {
+            if( state.playing )
+            {
+                anyPlaying = true;
+                break;
+            }
+        }
+        playing = anyPlaying;
+    }
+
+/**
+ * Returns the recorded state of the specified source.
+ * @param sourcename Unique identifier of the source.
+ * @return The source's state, or null if it did not exist.
+ */
+    public SourceState getSourceState( String sourcename )
+    {
+        if( sourcename == null )
+            return null;
+        return sourceStates.get( sourcename );
+    }
+
+/**
+ * Returns the recorded state of every source.
+ * @return Unmodifiable map of source states, keyed by sourcename.
+ */
+    public Map<String, SourceState> getSourceStates()
+    {
+        return sourceStates;
+    }
+
+/**
+ * Checks whether the recorded listener data matches the specified listener
+ * data, so it can be carried over to the next snapshot.
+ * @param l Listener data to compare with.
+ * @return True if the position, orientation, velocity and angle are the same.
+ */
+    boolean listenerMatches( ListenerData l )
+    {
+        return sameVector( listenerData.position, l.position )
+               && sameVector( listenerData.lookAt, l.lookAt )
+               && sameVector( listenerData.up, l.up )
+               && sameVector( listenerData.velocity, l.velocity )
+               && listenerData.angle == l.angle;
+    }
+
+/**
+ * Returns the recorded listener data itself rather than a copy, for carrying
+ * it over to the next snapshot.
+ * @return The recorded listener data (must not be changed).
+ */
+    ListenerData sharedListenerData()
+    {
+        return listenerData;
+    }
+
+/**
+ * Compares two vectors which may be null.
+ * @param a First vector.
+ * @param b Second vector.
+ * @return True if both are null or they have the same coordinates.
+ */
+    private static boolean sameVector( Vector3D a, Vector3D b )
+    {
+        if( a == null || b == null )
+            return a == b;
+        return a.x == b.x && a.y == b.y && a.z == b.z;
+    }
+
+/**
+ * Returns a copy of the listener's recorded position and orientation.
+ * @return New ListenerData object.
+ */
+    public ListenerData getListenerData()
+    {
+        ListenerData copy = new ListenerData();
+        copy.setData( listenerData );
+        return copy;
+    }
+}
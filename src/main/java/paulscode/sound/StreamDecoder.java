@@ -0,0 +1,113 @@
+package paulscode.sound;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * The StreamDecoder class is a pool of worker threads which decode streaming
+ * sources ahead of playback.  Each streaming source has a
+ * {@link paulscode.sound.DecodeAhead DecodeAhead} which keeps a few decoded
+ * stream-buffers ready, and the {@link paulscode.sound.StreamThread
+ * StreamThread} only moves ready buffers into the channels.  Workers decode one
+ * stream-buffer at a time, so streams take turns and one which is slow to
+ * decode can not hold up the others.  The number of worker threads may be set
+ * by calling SoundSystemConfig.setNumberDecoderThreads().
+ *
+ * NOTE: The stream decoder is created automatically by the sound library, so
+ * it is unlikely that the user would ever need to use this class.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class StreamDecoder
+{
+/**
+ * Processes status messages, warnings, and error messages.
+ */
+    private SoundSystemLogger logger;
+
+/**
+ * Worker threads which decode stream-buffers.
+ */
+    private final ThreadPoolExecutor workers;
+
+/**
+ * Constructor: Creates the pool of worker threads.  Threads are only started
+ * when there are streams to decode, and they end after sitting idle for a few
+ * seconds.
+ * @param threads Largest number of stream-buffers to decode at the same time.
+ */
+    public StreamDecoder( int threads )
+    {
+        // grab a handle to the message logger:
+        logger = SoundSystemConfig.getLogger();
+
+        workers = WorkerThreads.newPool( threads, "SoundSystem decoder" );
+    }
+
+/**
+ * Queues a job for the worker threads.
+ * @param job What to run.
+ * @return False if the decoder has been shut down.
+ */
+    public boolean execute( Runnable job )
+    {
+        try
+        {
+            workers.execute( job );
+        }
+        catch( RejectedExecutionException ree )
+        {
+            errorMessage( "Stream decoder has been shut down in method " +
+                          "'execute'" );
+            return false;
+        }
+        return true;
+    }
+
+/**
+ * Stops the worker threads.  Jobs which have not started yet are dropped.
+ */
+    public void shutdown()
+    {
+        workers.shutdownNow();
+    }
+
+/**
+ * Prints an error message.
+ * @param message Message to print.
+ */
+    private void errorMessage( String message )
+    {
+        logger.errorMessage( "StreamDecoder", message, 0 );
+    }
+}
@@ -1,14 +1,18 @@
 package paulscode.sound;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.ListIterator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
- * The StreamThread class is used to process all streaming sources.  This 
+ * The StreamThread class is used to process streaming sources.  This 
  * thread starts out asleep, and it sleeps when all streaming sources are 
- * finished playing, so it is necessary to call interrupt() after adding new 
- * streaming sources to the list.
+ * finished playing, so it is necessary to call wake() after adding new 
+ * streaming sources to the list.  The {@link paulscode.sound.Library Library}
+ * may run several stream threads (see
+ * SoundSystemConfig.setNumberStreamThreads()), each handling the sources
+ * played on its own share of the streaming channels.
  *<br><br>
  *<b><i>    SoundSystem License:</b></i><br><b><br>
  *    You are free to use this library for any purpose, commercial or otherwise.
@@ -45,31 +49,98 @@ import java.util.ListIterator;
  */
 public class StreamThread extends SimpleThread
 {
+/**
+ * Milliseconds between checks on streams whose next refill time is not known
+ * (raw data streams, fades, and streams which are starting or finishing).
+ */
+    private static final long POLL_INTERVAL = 20;
+
+/**
+ * Least number of milliseconds to sleep between passes while a refill is not
+ * yet due, so a slightly early estimate does not peg the cpu.
+ */
+    private static final long MIN_SLEEP = 5;
+
+/**
+ * Most milliseconds to sleep between passes while sources are streaming.
+ */
+    private static final long MAX_SLEEP = 250;
+
 /**
  * Processes status messages, warnings, and error messages.
  */
     private SoundSystemLogger logger;
     
 /**
- * List of sources that are currently streaming.
+ * Sources that are currently streaming, mapped to the channel each was playing
+ * on when it was added.
  */
-    private List<Source> streamingSources;
+    private LinkedHashMap<Source, Channel> streamingSources;
+
+/**
+ * The source currently streaming on each channel.
+ */
+    private HashMap<Channel, Source> channelSources;
     
 /**
  * Used to synchronize access to the streaming sources list.
  */
     private final Object listLock = new Object();
+
+/**
+ * Worker threads which decode the streams ahead of playback, or null to decode
+ * on this thread.
+ */
+    private final StreamDecoder decoder;
+
+/**
+ * Number of passes made through the list of streaming sources.
+ */
+    private volatile long loops = 0;
+
+/**
+ * Total nanoseconds spent on passes through the list of streaming sources.
+ */
+    private volatile long loopNanos = 0;
+
+/**
+ * Nanoseconds spent on the most recent pass through the list.
+ */
+    private volatile long lastLoopNanos = 0;
+
+/**
+ * Nanoseconds spent on the longest pass through the list.
+ */
+    private volatile long maxLoopNanos = 0;
+
+/**
+ * Number of times a stream ran out of queued audio before it was finished.
+ */
+    private volatile long underruns = 0;
     
 /**
  * Constructor:  Grabs a handle to the message logger and instantiates the 
- * streaming sources list.
+ * streaming sources list.  Streams are decoded on this thread.
  */
     public StreamThread()
+    {
+        this( null );
+    }
+
+/**
+ * Constructor:  Grabs a handle to the message logger and instantiates the
+ * streaming sources list.
+ * @param decoder Worker threads which decode the streams ahead of playback, or
+ * null to decode on this thread.
+ */
+    public StreamThread( StreamDecoder decoder )
     {
         // grab a handle to the message logger:
         logger = SoundSystemConfig.getLogger();
-        
-        streamingSources = new LinkedList<Source>();
+
+        this.decoder = decoder;
+        streamingSources = new LinkedHashMap<Source, Channel>();
+        channelSources = new HashMap<Channel, Source>();
     }
     
 /**
@@ -86,55 +157,60 @@ public class StreamThread extends SimpleThread
     
 /**
  * The main loop for processing commands.  The thread sleeps when it finishes 
- * processing commands, and it must be interrupted to process more.
+ * processing commands, and it must be woken up with wake() to process more.
  */
     @Override
     public void run()
     {
-        ListIterator<Source> iter;
+        Iterator<Map.Entry<Source, Channel>> iter;
+        Map.Entry<Source, Channel> entry;
         Source src;
+        long loopStart;
+        long sleep;
+        int sourceUnderruns;
         
         // Start out asleep:
-        snooze( 3600000 );
+        waitForWake( 3600000 );
         
         while( !dying() )
         {
             while( !dying() && !streamingSources.isEmpty() )
             {
+                loopStart = System.nanoTime();
+                sleep = MAX_SLEEP;
                 // Make sure noone else is accessing the list of sources:
                 synchronized( listLock )
                 {
-                    iter = streamingSources.listIterator();
+                    iter = streamingSources.entrySet().iterator();
                     while( !dying() && iter.hasNext() )
                     {
-                        src = iter.next();
-                        if( src == null )
-                        {
-                            iter.remove();
-                        }
-                        else if( src.stopped() )
+                        entry = iter.next();
+                        src = entry.getKey();
+                        if( src.stopped() )
                         {
                             if( !src.rawDataStream )
-                                iter.remove();
+                                remove( iter, entry );
                         }
                         else if( !src.active() )
                         {
                             if( src.toLoop || src.rawDataStream )
                                 src.toPlay = true;
-                            iter.remove();
+                            remove( iter, entry );
+                        }
+                        else if( src.paused() )
+                        {
+                            sleep = Math.min( sleep, POLL_INTERVAL );
                         }
-                        else if( !src.paused() )
+                        else
                         {
                             src.checkFadeOut();
+                            sourceUnderruns = src.getUnderruns();
                             if( (!src.stream()) && (!src.rawDataStream) )
                             {
                                 if( src.channel == null
                                                || !src.channel.processBuffer() )
                                 {
-                                    if( src.nextCodec == null )
-                                    {
-                                        src.readBuffersFromNextSoundInSequence();
-                                    }
+                                    src.readBuffersFromNextSoundInSequence();
 /*
                                     if( src.getSoundSequenceQueueSize() > 0 )
                                     {
@@ -192,21 +268,26 @@ public class StreamThread extends SimpleThread
                                                 if(
                                                   src.incrementSoundSequence() )
                                                     src.preLoad = true;
-                                                else
-                                                    iter.remove();  // finished
+                                                else  // finished
+                                                    remove( iter, entry );
                                             }
                                         }
                                     }
                                 }
                             }
+                            src.countQueuedBuffers();
+                            if( src.getUnderruns() != sourceUnderruns )
+                                underrun( src );
+                            sleep = Math.min( sleep, refillDelay( src ) );
                         }
                     }
                 }
+                loopFinished( System.nanoTime() - loopStart );
                 if( !dying() && !streamingSources.isEmpty() )
-                    snooze( 20 );  // sleep a bit so we don't peg the cpu
+                    waitForWake( sleep );  // sleep until a refill is due
             }
             if( !dying() && streamingSources.isEmpty() )
-                snooze( 3600000 );  // sleep until there is more to do.
+                waitForWake( 3600000 );  // sleep until there is more to do.
         }
         
         cleanup();  // Important!!
@@ -224,39 +305,213 @@ public class StreamThread extends SimpleThread
         if( source == null )
             return;
         
-        // make sure we aren't already watching this source:
-        if( streamingSources.contains( source ) )
-            return;
-        
-        ListIterator<Source> iter;
-        Source src;
-        
         // Make sure noone else is accessing the list of sources:
         synchronized( listLock )
         {
-            // Any currently watched source which is null or playing on the 
-            // same channel as the new source should be stopped and removed 
-            // from the list.
-            iter = streamingSources.listIterator();
-            while( iter.hasNext() )
+            // make sure we aren't already watching this source:
+            Channel channel = streamingSources.get( source );
+            if( channel != null && channel == source.channel )
+                return;
+            if( streamingSources.containsKey( source ) )
+                forget( source, streamingSources.remove( source ) );
+
+            // A source already playing on the same channel as the new source
+            // should be stopped and removed from the list.
+            Source src = channelSources.get( source.channel );
+            if( src != null )
             {
-                src = iter.next();
-                if( src == null )
-                {
-                    iter.remove();
-                }
-                else if( source.channel == src.channel )
-                {
-                    src.stop();
-                    iter.remove();
-                }
+                src.stop();
+                forget( src, streamingSources.remove( src ) );
             }
             
             // Add the new source to the list:
-            streamingSources.add( source );
+            source.queuedBuffers = -1;
+            source.setStreamDecoder( decoder );
+            streamingSources.put( source, source.channel );
+            channelSources.put( source.channel, source );
+            source.streamThread = this;
         }
     }
+
+/**
+ * Removes a source from the list, if it is there.  This is used when the
+ * source starts playing on a channel handled by a different stream thread.
+ * @param source Source to stop streaming.
+ */
+    public void unwatch( Source source )
+    {
+        if( source == null )
+            return;
+
+        // Make sure noone else is accessing the list of sources:
+        synchronized( listLock )
+        {
+            if( streamingSources.containsKey( source ) )
+                forget( source, streamingSources.remove( source ) );
+        }
+    }
+
+/**
+ * Removes the current entry from the list of sources.  Must be called while
+ * holding the list lock.
+ * @param iter Iterator positioned on the entry.
+ * @param entry The entry to remove.
+ */
+    private void remove( Iterator<Map.Entry<Source, Channel>> iter,
+                         Map.Entry<Source, Channel> entry )
+    {
+        Source source = entry.getKey();
+        Channel channel = entry.getValue();
+        iter.remove();
+        forget( source, channel );
+    }
+
+/**
+ * Forgets which channel a source removed from the list was playing on.  Must be
+ * called while holding the list lock.
+ * @param source Source which was removed.
+ * @param channel Channel it was playing on when it was added.
+ */
+    private void forget( Source source, Channel channel )
+    {
+        if( channelSources.get( channel ) == source )
+            channelSources.remove( channel );
+        if( source.streamThread == this )
+            source.streamThread = null;
+    }
     
+/**
+ * Returns how long the thread may sleep before the specified source needs to
+ * be refilled.
+ * @param source Source which was just streamed.
+ * @return Milliseconds to sleep.
+ */
+    private long refillDelay( Source source )
+    {
+        float millis = source.millisecondsUntilRefill();
+        if( millis < 0 )
+            return POLL_INTERVAL;
+        if( millis < MIN_SLEEP )
+        {
+            // A refill is due now (stream() refills one buffer per pass, so
+            // more may be waiting).  Come back soon, but don't spin:
+            return MIN_SLEEP;
+        }
+        return (long) millis;
+    }
+
+/**
+ * Counts a stream which ran out of queued audio, and lets the stream listeners
+ * know.
+ * @param source Source whose stream ran out.
+ */
+    private void underrun( Source source )
+    {
+        underruns++;
+        message( "Stream '" + source.sourcename + "' ran out of audio" );
+        SoundSystemConfig.notifyUnderrun( source.sourcename,
+                                          source.getUnderruns() );
+    }
+
+/**
+ * Adds the time taken by a pass through the list of streaming sources to the
+ * totals.
+ * @param nanos Nanoseconds the pass took.
+ */
+    private void loopFinished( long nanos )
+    {
+        loops++;
+        loopNanos += nanos;
+        lastLoopNanos = nanos;
+        if( nanos > maxLoopNanos )
+            maxLoopNanos = nanos;
+    }
+
+/**
+ * Returns the number of passes made through the list of streaming sources.
+ * @return Pass count.
+ */
+    public long getLoops()
+    {
+        return loops;
+    }
+
+/**
+ * Returns the total time spent on passes through the list of streaming
+ * sources, not counting the time spent asleep in between.
+ * @return Nanoseconds.
+ */
+    public long getLoopNanos()
+    {
+        return loopNanos;
+    }
+
+/**
+ * Returns the time spent on the most recent pass through the list of
+ * streaming sources.
+ * @return Nanoseconds.
+ */
+    public long getLastLoopNanos()
+    {
+        return lastLoopNanos;
+    }
+
+/**
+ * Returns the time spent on the longest pass through the list of streaming
+ * sources.
+ * @return Nanoseconds.
+ */
+    public long getMaxLoopNanos()
+    {
+        return maxLoopNanos;
+    }
+
+/**
+ * Returns the number of times a stream ran out of queued audio before it was
+ * finished.
+ * @return Underrun count.
+ */
+    public long getUnderruns()
+    {
+        return underruns;
+    }
+
+/**
+ * Returns the number of stream-buffers each watched source had queued the
+ * last time it was streamed.
+ * @return Queued buffer counts (or -1 if unknown), keyed by sourcename.
+ */
+    public Map<String, Integer> getQueuedBuffers()
+    {
+        Map<String, Integer> queued = new HashMap<String, Integer>();
+        synchronized( listLock )
+        {
+            for( Source source : streamingSources.keySet() )
+            {
+                queued.put( source.sourcename, source.queuedBuffers );
+            }
+        }
+        return queued;
+    }
+
+/**
+ * Returns the number of times each watched source's stream has run out of
+ * queued audio.
+ * @return Underrun counts, keyed by sourcename.
+ */
+    public Map<String, Integer> getSourceUnderruns()
+    {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        synchronized( listLock )
+        {
+            for( Source source : streamingSources.keySet() )
+            {
+                counts.put( source.sourcename, source.getUnderruns() );
+            }
+        }
+        return counts;
+    }
+
 /**
  * Prints a message.
  * @param message Message to print.
@@ -0,0 +1,106 @@
+package paulscode.sound;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The WorkerThreads class creates the pools of daemon worker threads used by
+ * the {@link paulscode.sound.SoundLoader SoundLoader} and the
+ * {@link paulscode.sound.StreamDecoder StreamDecoder}.  Worker threads are
+ * numbered as they are created, so they are easy to pick out in a debugger.
+ *<br><br>
+ *<b><i>    SoundSystem License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class WorkerThreads implements ThreadFactory
+{
+/**
+ * Seconds an idle worker thread waits for more work before it ends.
+ */
+    private static final long KEEP_ALIVE = 5;
+
+/**
+ * What the threads are named, followed by their number.
+ */
+    private final String name;
+
+/**
+ * Number of worker threads created so far, used to name them.
+ */
+    private final AtomicInteger threadCount = new AtomicInteger( 0 );
+
+/**
+ * Constructor: Prepares to create threads with the specified name.
+ * @param name What to name the threads, for example "SoundSystem loader".
+ */
+    public WorkerThreads( String name )
+    {
+        this.name = name;
+    }
+
+/**
+ * Creates a pool of worker threads.  Threads are only started when there is
+ * work queued, and they end after sitting idle for a few seconds.
+ * @param threads Largest number of jobs to run at the same time.
+ * @param name What to name the threads.
+ * @return New thread pool.
+ */
+    public static ThreadPoolExecutor newPool( int threads, String name )
+    {
+        if( threads < 1 )
+            threads = 1;
+        ThreadPoolExecutor pool = new ThreadPoolExecutor( threads, threads,
+                                           KEEP_ALIVE, TimeUnit.SECONDS,
+                                           new LinkedBlockingQueue<Runnable>(),
+                                           new WorkerThreads( name ) );
+        pool.allowCoreThreadTimeOut( true );
+        return pool;
+    }
+
+/**
+ * Creates a worker thread.  Worker threads are daemons, so they never keep the
+ * program running.
+ * @param runnable What the thread runs.
+ * @return New worker thread.
+ */
+    @Override
+    public Thread newThread( Runnable runnable )
+    {
+        Thread thread = new Thread( runnable, name + " " +
+                                              threadCount.incrementAndGet() );
+        thread.setDaemon( true );
+        return thread;
+    }
+}
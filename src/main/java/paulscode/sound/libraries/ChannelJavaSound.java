@@ -78,6 +78,11 @@ public class ChannelJavaSound extends Channel
  * of sound data to be streamed.
  */
     private List<SoundBuffer> streamBuffers;
+
+/**
+ * Size in bytes of the last stream-buffer written to the SourceDataLine.
+ */
+    private int lastWriteSize = 0;
 /**
  * Number of queued stream-buffers that have finished being processed.
  */    
@@ -713,6 +718,7 @@ public class ChannelJavaSound extends Channel
 
         sourceDataLine.write( nextBuffer.audioData, 0,
                               nextBuffer.audioData.length );
+        lastWriteSize = nextBuffer.audioData.length;
         if( !sourceDataLine.isActive() )
             sourceDataLine.start();
         nextBuffer.cleanup();
@@ -776,6 +782,83 @@ public class ChannelJavaSound extends Channel
         
         return processed;
     }
+
+/**
+ * Returns the number of queued byte[] buffers that have not been written to
+ * the SourceDataLine yet, plus one if the line is still playing data.
+ * @return Number of buffers queued.
+ */
+    @Override
+    public int buffersQueued()
+    {
+        // Only streaming sources queue buffers:
+        if( channelType != SoundSystemConfig.TYPE_STREAMING
+            || streamBuffers == null || sourceDataLine == null )
+            return 0;
+
+        int queued = streamBuffers.size();
+        if( sourceDataLine.available() < sourceDataLine.getBufferSize() )
+            queued++;
+        return queued;
+    }
+
+/**
+ * Returns how much audio is waiting to be written to the SourceDataLine or is
+ * still in the line's buffer.
+ * @return Milliseconds of audio left, or -1 if unknown.
+ */
+    @Override
+    public float millisecondsQueued()
+    {
+        // Only streaming sources queue buffers:
+        if( channelType != SoundSystemConfig.TYPE_STREAMING
+            || streamBuffers == null || sourceDataLine == null
+            || myFormat == null )
+            return -1;
+
+        float bytesPerMilli = myFormat.getFrameSize()
+                              * myFormat.getFrameRate() / 1000;
+        if( bytesPerMilli <= 0 )
+            return -1;
+
+        long bytes = sourceDataLine.getBufferSize()
+                     - sourceDataLine.available();
+        for( SoundBuffer buffer : streamBuffers )
+        {
+            bytes += buffer.size();
+        }
+        return bytes / bytesPerMilli;
+    }
+
+/**
+ * Estimates how long until the SourceDataLine has room for another whole
+ * stream-buffer, so that writing it will not block.
+ * @return Milliseconds, or -1 if unknown.
+ */
+    @Override
+    public float millisecondsUntilRefill()
+    {
+        // Only streaming sources queue buffers:
+        if( channelType != SoundSystemConfig.TYPE_STREAMING
+            || streamBuffers == null || sourceDataLine == null
+            || myFormat == null || lastWriteSize <= 0 )
+            return -1;
+
+        // Buffers are still waiting to be written:
+        if( !streamBuffers.isEmpty() )
+            return 0;
+
+        float bytesPerMilli = myFormat.getFrameSize()
+                              * myFormat.getFrameRate() / 1000;
+        if( bytesPerMilli <= 0 )
+            return -1;
+
+        int needed = Math.min( lastWriteSize, sourceDataLine.getBufferSize() );
+        int available = sourceDataLine.available();
+        if( available >= needed )
+            return 0;
+        return ( needed - available ) / bytesPerMilli;
+    }
     
 /**
  * Dequeues all previously queued data.
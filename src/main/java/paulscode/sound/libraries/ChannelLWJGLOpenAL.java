@@ -111,6 +111,51 @@ public class ChannelLWJGLOpenAL extends Channel
  */
     public float millisPreviouslyPlayed = 0;
 
+/**
+ * OpenAL calls made by this channel.
+ */
+    ALCalls al = ALCalls.NATIVE;
+
+/**
+ * Direct buffer used to hand stream data to OpenAL.  alBufferData() copies the
+ * data, so the same staging buffer is reused for every chunk, and only
+ * replaced when a larger chunk comes along.  This and the other stream-buffer
+ * fields below are used by both the command thread and the stream thread, so
+ * methods which touch them are synchronized on the channel.
+ */
+    private ByteBuffer stagingBuffer = null;
+
+/**
+ * Reusable buffer for passing OpenAL buffer names.
+ */
+    private IntBuffer bufferNames = null;
+
+/**
+ * OpenAL buffer names which have been unqueued and may be filled again.
+ */
+    private int[] freeBufferNames = new int[8];
+
+/**
+ * Number of names in freeBufferNames.
+ */
+    private int freeBufferCount = 0;
+
+/**
+ * Number of direct buffers and OpenAL buffer names created for streaming.
+ */
+    private int nativeAllocations = 0;
+
+/**
+ * Length of the most recently queued stream-buffer, in milliseconds.
+ */
+    private float lastQueuedMillis = 0;
+
+/**
+ * Number of buffers refilled since the stream ran dry and OpenAL stopped the
+ * source.
+ */
+    private int refilledWhileStopped = 0;
+
 /**
  * Constructor:  takes channelType identifier and a handle to the OpenAL 
  * IntBuffer identifier to use for this channel.  Possible values for channel 
@@ -131,29 +176,46 @@ public class ChannelLWJGLOpenAL extends Channel
  * channel down, and removes references to all instantiated objects.
  */
     @Override
-    public void cleanup()
+    public synchronized void cleanup()
     {
         if( ALSource != null )
         {
             try
             {
                 // Stop playing the source:
-                AL10.alSourceStop( ALSource );
-                AL10.alGetError();
+                al.alSourceStop( ALSource );
+                al.alGetError();
             }
             catch( Exception e )
             {}
             try
             {
                 // Delete the source:
-                AL10.alDeleteSources( ALSource );
-                AL10.alGetError();
+                al.alDeleteSources( ALSource );
+                al.alGetError();
             }
             catch( Exception e )
             {}
             ALSource.clear();
         }
         ALSource = null;
+
+        // Delete the stream buffers kept for reuse:
+        if( freeBufferCount > 0 )
+        {
+            IntBuffer names = bufferNames( freeBufferCount );
+            names.put( freeBufferNames, 0, freeBufferCount ).flip();
+            try
+            {
+                al.alDeleteBuffers( names );
+                al.alGetError();
+            }
+            catch( Exception e )
+            {}
+            freeBufferCount = 0;
+        }
+        stagingBuffer = null;
+        bufferNames = null;
         
         super.cleanup();
     }
@@ -173,8 +235,8 @@ public class ChannelLWJGLOpenAL extends Channel
             return false;
         
         // send the sound buffer to the channel:
-        AL10.alSourcei( ALSource.get( 0 ), AL10.AL_BUFFER,
-                        buf.get(0) );
+        al.alSourcei( ALSource.get( 0 ), AL10.AL_BUFFER,
+                      buf.get(0) );
 
 
         // save the format for later, for determining milliseconds played
@@ -254,7 +316,7 @@ public class ChannelLWJGLOpenAL extends Channel
  * @return False if problem occurred or if end of stream was reached.
  */
     @Override
-    public boolean preLoadBuffers( LinkedList<byte[]> bufferList )
+    public synchronized boolean preLoadBuffers( LinkedList<byte[]> bufferList )
     {
         // Stream buffers can only be queued for streaming sources:
         if( errorCheck( channelType != SoundSystemConfig.TYPE_STREAMING,
@@ -265,28 +327,20 @@ public class ChannelLWJGLOpenAL extends Channel
                         "Buffer List null in method 'preLoadBuffers'" ) )
             return false;
         
-        IntBuffer streamBuffers;
-        
         // Remember if the channel was playing:
         boolean playing = playing();
         // stop the channel if it is playing:
         if( playing )
         {
-            AL10.alSourceStop( ALSource.get( 0 ) );
+            al.alSourceStop( ALSource.get( 0 ) );
             checkALError();
         }
         // Clear out any previously queued buffers:
-        int processed = AL10.alGetSourcei( ALSource.get( 0 ),
-                                           AL10.AL_BUFFERS_PROCESSED );
+        int processed = al.alGetSourcei( ALSource.get( 0 ),
+                                         AL10.AL_BUFFERS_PROCESSED );
         if( processed > 0 )
         {
-            streamBuffers = BufferUtils.createIntBuffer( processed );
-            AL10.alGenBuffers( streamBuffers );
-            if( errorCheck( checkALError(),
-                 "Error clearing stream buffers in method 'preLoadBuffers'" ) )
-                return false;
-            AL10.alSourceUnqueueBuffers( ALSource.get( 0 ), streamBuffers );
-            if( errorCheck( checkALError(),
+            if( errorCheck( !unqueueBuffers( processed, false ),
                  "Error unqueuing stream buffers in method 'preLoadBuffers'" ) )
                 return false;
         }
@@ -294,57 +348,63 @@ public class ChannelLWJGLOpenAL extends Channel
         // restart the channel if it was previously playing:
         if( playing )
         {
-            AL10.alSourcePlay( ALSource.get( 0 ) );
+            al.alSourcePlay( ALSource.get( 0 ) );
             checkALError();
         }
         
-        streamBuffers = BufferUtils.createIntBuffer( bufferList.size() );
-        AL10.alGenBuffers( streamBuffers );
-        if( errorCheck( checkALError(),
-             "Error generating stream buffers in method 'preLoadBuffers'" ) )
-            return false;
-        
-        ByteBuffer byteBuffer = null;
+        int name;
         for( int i = 0; i < bufferList.size(); i++ )
         {
-            //byteBuffer = ByteBuffer.wrap( bufferList.get(i), 0,
-            //                              bufferList.get(i).length );
-            byteBuffer = (ByteBuffer) BufferUtils.createByteBuffer(
-                   bufferList.get(i).length ).put( bufferList.get( i ) ).flip();
+            name = takeBufferName();
+            if( errorCheck( name == 0,
+             "Error generating stream buffers in method 'preLoadBuffers'" ) )
+                return false;
 
             try
             {
-                AL10.alBufferData( streamBuffers.get(i), ALformat, byteBuffer,
-                                   sampleRate );
+                al.alBufferData( name, ALformat, stage( bufferList.get( i ) ),
+                                 sampleRate );
             }
             catch( Exception e )
             {
+                recycleBufferName( name );
                 errorMessage( "Error creating buffers in method " +
                               "'preLoadBuffers'" );
                 printStackTrace( e );
                 return false;
             }
-            if( errorCheck( checkALError(),
-                         "Error creating buffers in method 'preLoadBuffers'" ) )
+            if( checkALError() )
+            {
+                recycleBufferName( name );
+                errorMessage( "Error creating buffers in method " +
+                              "'preLoadBuffers'" );
                 return false;
+            }
 
+            try
+            {
+                al.alSourceQueueBuffers( ALSource.get( 0 ),
+                                         bufferName( name ) );
+            }
+            catch( Exception e )
+            {
+                recycleBufferName( name );
+                errorMessage( "Error queuing buffers in method " +
+                              "'preLoadBuffers'" );
+                printStackTrace( e );
+                return false;
+            }
+            if( checkALError() )
+            {
+                recycleBufferName( name );
+                errorMessage( "Error queuing buffers in method " +
+                              "'preLoadBuffers'" );
+                return false;
+            }
+            lastQueuedMillis = millis( bufferList.get( i ).length );
         }
-        
-        try
-        {
-            AL10.alSourceQueueBuffers( ALSource.get( 0 ), streamBuffers );
-        }
-        catch( Exception e )
-        {
-            errorMessage( "Error queuing buffers in method 'preLoadBuffers'" );
-            printStackTrace( e );
-            return false;
-        }
-        if( errorCheck( checkALError(),
-                        "Error queuing buffers in method 'preLoadBuffers'" ) )
-            return false;
 
-        AL10.alSourcePlay( ALSource.get( 0 ) );
+        al.alSourcePlay( ALSource.get( 0 ) );
         if( errorCheck( checkALError(),
                         "Error playing source in method 'preLoadBuffers'" ) )
             return false;
@@ -359,98 +419,112 @@ public class ChannelLWJGLOpenAL extends Channel
  * @return False if an error occurred or if the channel is shutting down.
  */
     @Override
-    public boolean queueBuffer( byte[] buffer )
+    public synchronized boolean queueBuffer( byte[] buffer )
     {
         // Stream buffers can only be queued for streaming sources:
         if( errorCheck( channelType != SoundSystemConfig.TYPE_STREAMING,
                         "Buffers may only be queued for streaming sources." ) )
             return false;
         
-        //ByteBuffer byteBuffer = ByteBuffer.wrap( buffer, 0, buffer.length );
-        ByteBuffer byteBuffer = (ByteBuffer) BufferUtils.createByteBuffer(
-                                           buffer.length ).put( buffer ).flip();
-
-        IntBuffer intBuffer = BufferUtils.createIntBuffer( 1 );
-
-        AL10.alSourceUnqueueBuffers( ALSource.get( 0 ), intBuffer );
+        // Refill the oldest buffer, which has finished playing:
+        IntBuffer intBuffer = bufferNames( 1 );
+        al.alSourceUnqueueBuffers( ALSource.get( 0 ), intBuffer );
         if( checkALError() )
             return false;
+        int name = intBuffer.get( 0 );
 
-        if( AL10.alIsBuffer( intBuffer.get( 0 ) ) )
-            millisPreviouslyPlayed += millisInBuffer( intBuffer.get( 0 ) );
+        if( al.alIsBuffer( name ) )
+            millisPreviouslyPlayed += millisInBuffer( name );
         checkALError();
 
-        AL10.alBufferData( intBuffer.get(0), ALformat, byteBuffer, sampleRate );
+        al.alBufferData( name, ALformat, stage( buffer ), sampleRate );
         if( checkALError() )
+        {
+            recycleBufferName( name );
             return false;
+        }
 
-        AL10.alSourceQueueBuffers( ALSource.get( 0 ), intBuffer );
+        al.alSourceQueueBuffers( ALSource.get( 0 ), bufferName( name ) );
         if( checkALError() )
+        {
+            recycleBufferName( name );
             return false;
+        }
+        lastQueuedMillis = millis( buffer.length );
 
+        restartIfStarved();
         return true;
     }
 
+/**
+ * OpenAL stops a streaming source when it runs out of queued buffers, and
+ * reports every buffer as processed from then on, so refilling them does not
+ * make it play again.  Once each of the queued buffers has been refilled with
+ * new data (so nothing old gets replayed), this starts the source back up.
+ */
+    private void restartIfStarved()
+    {
+        int state = al.alGetSourcei( ALSource.get( 0 ),
+                                     AL10.AL_SOURCE_STATE );
+        if( checkALError() || state != AL10.AL_STOPPED )
+        {
+            refilledWhileStopped = 0;
+            return;
+        }
+
+        int queued = al.alGetSourcei( ALSource.get( 0 ),
+                                      AL10.AL_BUFFERS_QUEUED );
+        if( checkALError() )
+            return;
+
+        refilledWhileStopped++;
+        if( refilledWhileStopped >= queued )
+        {
+            refilledWhileStopped = 0;
+            play();
+        }
+    }
+
 /**
  * Feeds raw data to the stream.
  * @param buffer Buffer containing raw audio data to stream.
  * @return Number of prior buffers that have been processed., or -1 if error.
  */
     @Override
-    public int feedRawAudioData( byte[] buffer )
+    public synchronized int feedRawAudioData( byte[] buffer )
     {
         // Stream buffers can only be queued for streaming sources:
         if( errorCheck( channelType != SoundSystemConfig.TYPE_STREAMING,
                       "Raw audio data can only be fed to streaming sources." ) )
             return -1;
 
-        //ByteBuffer byteBuffer = ByteBuffer.wrap( buffer, 0, buffer.length );
-        ByteBuffer byteBuffer = (ByteBuffer) BufferUtils.createByteBuffer(
-                                           buffer.length ).put( buffer ).flip();
-
-        IntBuffer intBuffer;
-
-        // Clear out any previously queued buffers:
-        int processed = AL10.alGetSourcei( ALSource.get( 0 ),
-                                           AL10.AL_BUFFERS_PROCESSED );
+        // Take back any buffers which have finished playing, for reuse:
+        int processed = al.alGetSourcei( ALSource.get( 0 ),
+                                         AL10.AL_BUFFERS_PROCESSED );
         if( processed > 0 )
         {
-            intBuffer = BufferUtils.createIntBuffer( processed );
-            AL10.alGenBuffers( intBuffer );
-            if( errorCheck( checkALError(),
-                "Error clearing stream buffers in method 'feedRawAudioData'" ) )
-                return -1;
-            AL10.alSourceUnqueueBuffers( ALSource.get( 0 ), intBuffer );
-            if( errorCheck( checkALError(),
+            if( errorCheck( !unqueueBuffers( processed, true ),
                "Error unqueuing stream buffers in method 'feedRawAudioData'" ) )
                 return -1;
-            int i;
-            intBuffer.rewind();
-            while( intBuffer.hasRemaining() )
-            {
-                i = intBuffer.get();
-                if( AL10.alIsBuffer( i ) )
-                {
-                    millisPreviouslyPlayed += millisInBuffer( i );
-                }
-                checkALError();
-            }
-            AL10.alDeleteBuffers( intBuffer );
-            checkALError();
         }
-        intBuffer = BufferUtils.createIntBuffer( 1 );
-        AL10.alGenBuffers( intBuffer );
-        if( errorCheck( checkALError(),
-                        "Error generating stream buffers in method 'preLoadBuffers'" ) )
+        int name = takeBufferName();
+        if( errorCheck( name == 0,
+             "Error generating stream buffers in method 'feedRawAudioData'" ) )
             return -1;
 
-        AL10.alBufferData( intBuffer.get(0), ALformat, byteBuffer, sampleRate );
+        al.alBufferData( name, ALformat, stage( buffer ), sampleRate );
         if( checkALError() )
+        {
+            recycleBufferName( name );
             return -1;
+        }
 
-        AL10.alSourceQueueBuffers( ALSource.get( 0 ), intBuffer );
+        al.alSourceQueueBuffers( ALSource.get( 0 ), bufferName( name ) );
         if( checkALError() )
+        {
+            recycleBufferName( name );
             return -1;
+        }
         
         if( attachedSource != null && attachedSource.channel == this &&
             attachedSource.active() )
@@ -458,7 +532,7 @@ public class ChannelLWJGLOpenAL extends Channel
             // restart the channel if it was previously playing:
             if( !playing() )
             {
-                AL10.alSourcePlay( ALSource.get( 0 ) );
+                al.alSourcePlay( ALSource.get( 0 ) );
                 checkALError();
             }
         }
@@ -466,15 +540,133 @@ public class ChannelLWJGLOpenAL extends Channel
         return processed;
     }
     
+/**
+ * Returns the number of direct buffers and OpenAL buffer names this channel
+ * has created for streaming.  Once streaming has warmed up, this stops going
+ * up, since buffers and names are reused.
+ * @return Number of native allocations.
+ */
+    public synchronized int getNativeAllocations()
+    {
+        return nativeAllocations;
+    }
+
+/**
+ * Copies stream data into the staging buffer, creating a larger one if
+ * necessary.
+ * @param data Audio data.
+ * @return Staging buffer, ready to be passed to alBufferData().
+ */
+    private ByteBuffer stage( byte[] data )
+    {
+        if( stagingBuffer == null || stagingBuffer.capacity() < data.length )
+        {
+            stagingBuffer = BufferUtils.createByteBuffer( data.length );
+            nativeAllocations++;
+        }
+        stagingBuffer.clear();
+        stagingBuffer.put( data ).flip();
+        return stagingBuffer;
+    }
+
+/**
+ * Returns the reusable buffer for OpenAL buffer names, cleared and limited to
+ * the specified number of names.
+ * @param count Number of names.
+ * @return Buffer of names.
+ */
+    private IntBuffer bufferNames( int count )
+    {
+        if( bufferNames == null || bufferNames.capacity() < count )
+        {
+            bufferNames = BufferUtils.createIntBuffer( Math.max( count, 4 ) );
+            nativeAllocations++;
+        }
+        bufferNames.clear();
+        bufferNames.limit( count );
+        return bufferNames;
+    }
+
+/**
+ * Returns the reusable buffer for OpenAL buffer names, holding only the
+ * specified name.
+ * @param name OpenAL buffer name.
+ * @return Buffer of names.
+ */
+    private IntBuffer bufferName( int name )
+    {
+        IntBuffer names = bufferNames( 1 );
+        names.put( 0, name );
+        return names;
+    }
+
+/**
+ * Returns an OpenAL buffer name to fill with stream data, reusing one which
+ * was unqueued earlier if possible.
+ * @return Buffer name, or zero if one could not be generated.
+ */
+    private int takeBufferName()
+    {
+        if( freeBufferCount > 0 )
+            return freeBufferNames[--freeBufferCount];
+
+        IntBuffer names = bufferNames( 1 );
+        al.alGenBuffers( names );
+        if( checkALError() )
+            return 0;
+        nativeAllocations++;
+        return names.get( 0 );
+    }
+
+/**
+ * Keeps an unqueued OpenAL buffer name for reuse.
+ * @param name Buffer name.
+ */
+    private void recycleBufferName( int name )
+    {
+        if( freeBufferCount == freeBufferNames.length )
+        {
+            int[] names = new int[freeBufferNames.length * 2];
+            System.arraycopy( freeBufferNames, 0, names, 0, freeBufferCount );
+            freeBufferNames = names;
+        }
+        freeBufferNames[freeBufferCount++] = name;
+    }
+
+/**
+ * Unqueues buffers which have finished playing, and keeps their names for
+ * reuse.
+ * @param count Number of processed buffers to unqueue.
+ * @param countPlayed Whether to add the buffers to millisPreviouslyPlayed.
+ * @return False if an error occurred.
+ */
+    private boolean unqueueBuffers( int count, boolean countPlayed )
+    {
+        IntBuffer names = bufferNames( count );
+        al.alSourceUnqueueBuffers( ALSource.get( 0 ), names );
+        if( checkALError() )
+            return false;
+        int name;
+        for( int i = 0; i < count; i++ )
+        {
+            name = names.get( i );
+            if( countPlayed && al.alIsBuffer( name ) )
+                millisPreviouslyPlayed += millisInBuffer( name );
+            checkALError();
+            recycleBufferName( name );
+        }
+        return true;
+    }
+
 /**
  * Returns the number of milliseconds of audio contained in specified buffer.
  * @return milliseconds, or 0 if unable to calculate.
  */
     public float millisInBuffer( int alBufferi )
     {
-        return( ( (float) AL10.alGetBufferi( alBufferi, AL10.AL_SIZE ) /
-                (float) AL10.alGetBufferi( alBufferi, AL10.AL_CHANNELS ) /
-                ( (float) AL10.alGetBufferi( alBufferi, AL10.AL_BITS ) / 8.0f ) /
+        return( ( (float) al.alGetBufferi( alBufferi, AL10.AL_SIZE ) /
+                (float) al.alGetBufferi( alBufferi, AL10.AL_CHANNELS ) /
+                ( (float) al.alGetBufferi( alBufferi, AL10.AL_BITS ) / 8.0f ) /
                 (float) sampleRate ) * 1000 );
     }
 
@@ -486,8 +678,8 @@ public class ChannelLWJGLOpenAL extends Channel
     public float millisecondsPlayed()
     {
         // get number of samples played in current buffer
-        float offset = (float)AL10.alGetSourcei( ALSource.get( 0 ),
-                                               AL11.AL_BYTE_OFFSET );
+        float offset = (float)al.alGetSourcei( ALSource.get( 0 ),
+                                             AL11.AL_BYTE_OFFSET );
 
         float bytesPerFrame = 1f;
         switch( ALformat )
@@ -531,8 +723,8 @@ public class ChannelLWJGLOpenAL extends Channel
             return 0;
         
         // determine how many have been processed:
-        int processed = AL10.alGetSourcei( ALSource.get( 0 ),
-                                           AL10.AL_BUFFERS_PROCESSED );
+        int processed = al.alGetSourcei( ALSource.get( 0 ),
+                                         AL10.AL_BUFFERS_PROCESSED );
         
         // Check for errors:
         if( checkALError() )
@@ -541,12 +733,76 @@ public class ChannelLWJGLOpenAL extends Channel
         // Return how many were processed:
         return processed;
     }
+
+/**
+ * Estimates how much of the queued audio has not finished playing, assuming
+ * the buffers are all the length of the most recently queued one, and not
+ * counting how far into its buffer the source is.
+ * @return Milliseconds of audio left, or -1 if unknown.
+ */
+    @Override
+    public float millisecondsQueued()
+    {
+        int queued = buffersQueued();
+        if( queued < 0 || lastQueuedMillis <= 0 )
+            return -1;
+        return queued * lastQueuedMillis;
+    }
+
+/**
+ * Converts a length of audio data in the channel's format to milliseconds.
+ * @param bytes Number of bytes.
+ * @return Milliseconds, or zero if the format is unknown.
+ */
+    private float millis( int bytes )
+    {
+        int bytesPerFrame;
+        switch( ALformat )
+        {
+            case AL10.AL_FORMAT_MONO8 :
+                bytesPerFrame = 1;
+                break;
+            case AL10.AL_FORMAT_MONO16 :
+            case AL10.AL_FORMAT_STEREO8 :
+                bytesPerFrame = 2;
+                break;
+            case AL10.AL_FORMAT_STEREO16 :
+                bytesPerFrame = 4;
+                break;
+            default :
+                return 0;
+        }
+        if( sampleRate <= 0 )
+            return 0;
+        return 1000f * bytes / bytesPerFrame / sampleRate;
+    }
+
+/**
+ * Returns the number of queued AL buffers that have not finished playing.
+ * @return Number of buffers queued.
+ */
+    @Override
+    public int buffersQueued()
+    {
+        // Only streaming sources queue buffers:
+        if( channelType != SoundSystemConfig.TYPE_STREAMING )
+            return 0;
+
+        int queued = al.alGetSourcei( ALSource.get( 0 ),
+                                      AL10.AL_BUFFERS_QUEUED );
+        int processed = al.alGetSourcei( ALSource.get( 0 ),
+                                         AL10.AL_BUFFERS_PROCESSED );
+        if( checkALError() )
+            return -1;
+
+        return queued - processed;
+    }
     
 /**
  * Dequeues all previously queued data.
  */
     @Override
-    public void flush()
+    public synchronized void flush()
     {
         // Only a streaming source can be flushed, because only streaming
         // sources have queued buffers:
@@ -554,18 +810,18 @@ public class ChannelLWJGLOpenAL extends Channel
             return;
         
         // determine how many buffers have been queued:
-        int queued = AL10.alGetSourcei( ALSource.get( 0 ),
-                                        AL10.AL_BUFFERS_QUEUED );
+        int queued = al.alGetSourcei( ALSource.get( 0 ),
+                                      AL10.AL_BUFFERS_QUEUED );
         // Check for errors:
         if( checkALError() )
             return;
         
-        IntBuffer intBuffer = BufferUtils.createIntBuffer( 1 );
+        IntBuffer intBuffer = bufferNames( 1 );
         while( queued > 0 )
         {
             try
             {
-                AL10.alSourceUnqueueBuffers( ALSource.get( 0 ), intBuffer );
+                al.alSourceUnqueueBuffers( ALSource.get( 0 ), intBuffer );
             }
             catch( Exception e )
             {
@@ -573,6 +829,8 @@ public class ChannelLWJGLOpenAL extends Channel
             }
             if( checkALError() )
                 return;
+            // keep the buffer for the next stream played on this channel:
+            recycleBufferName( intBuffer.get( 0 ) );
             queued--;
         }
        	millisPreviouslyPlayed = 0;
@@ -586,8 +844,8 @@ public class ChannelLWJGLOpenAL extends Channel
     {
         try
         {
-            AL10.alSourceStop( ALSource.get( 0 ) );
-            AL10.alGetError();
+            al.alSourceStop( ALSource.get( 0 ) );
+            al.alGetError();
         }
         catch( Exception e )
         {}
@@ -603,7 +861,7 @@ public class ChannelLWJGLOpenAL extends Channel
     @Override
     public void play()
     {
-        AL10.alSourcePlay( ALSource.get( 0 ) );
+        al.alSourcePlay( ALSource.get( 0 ) );
         checkALError();
     }
     
@@ -613,7 +871,7 @@ public class ChannelLWJGLOpenAL extends Channel
     @Override
     public void pause()
     {
-        AL10.alSourcePause( ALSource.get( 0 ) );
+        al.alSourcePause( ALSource.get( 0 ) );
         checkALError();
     }
     
@@ -624,7 +882,7 @@ public class ChannelLWJGLOpenAL extends Channel
     @Override
     public void stop()
     {
-        AL10.alSourceStop( ALSource.get( 0 ) );
+        al.alSourceStop( ALSource.get( 0 ) );
         if( !checkALError() )
             millisPreviouslyPlayed = 0;
     }
@@ -640,7 +898,7 @@ public class ChannelLWJGLOpenAL extends Channel
         if( channelType == SoundSystemConfig.TYPE_STREAMING )
             return;
         
-        AL10.alSourceRewind( ALSource.get( 0 ) );
+        al.alSourceRewind( ALSource.get( 0 ) );
         if( !checkALError() )
             millisPreviouslyPlayed = 0;
     }
@@ -655,8 +913,8 @@ public class ChannelLWJGLOpenAL extends Channel
     @Override
     public boolean playing()
     {
-        int state = AL10.alGetSourcei( ALSource.get( 0 ),
-                                       AL10.AL_SOURCE_STATE );
+        int state = al.alGetSourcei( ALSource.get( 0 ),
+                                     AL10.AL_SOURCE_STATE );
         if( checkALError() )
             return false;
         
@@ -669,7 +927,7 @@ public class ChannelLWJGLOpenAL extends Channel
  */
     private boolean checkALError()
     {
-        switch( AL10.alGetError() )
+        switch( al.alGetError() )
         {
             case AL10.AL_NO_ERROR:
                 return false;
@@ -693,4 +951,96 @@ public class ChannelLWJGLOpenAL extends Channel
                 return true;
         }
     }
+
+/**
+ * The ALCalls class makes the OpenAL calls used by a channel.  Tests replace
+ * it to run a channel without the native library.
+ */
+    static class ALCalls
+    {
+/**
+ * Passes each call straight through to OpenAL.
+ */
+        static final ALCalls NATIVE = new ALCalls();
+
+        int alGetError()
+        {
+            return AL10.alGetError();
+        }
+
+        void alGenBuffers( IntBuffer buffers )
+        {
+            AL10.alGenBuffers( buffers );
+        }
+
+        void alDeleteBuffers( IntBuffer buffers )
+        {
+            AL10.alDeleteBuffers( buffers );
+        }
+
+        boolean alIsBuffer( int buffer )
+        {
+            return AL10.alIsBuffer( buffer );
+        }
+
+        void alBufferData( int buffer, int format, ByteBuffer data, int freq )
+        {
+            AL10.alBufferData( buffer, format, data, freq );
+        }
+
+        int alGetBufferi( int buffer, int pname )
+        {
+            return AL10.alGetBufferi( buffer, pname );
+        }
+
+        void alDeleteSources( IntBuffer sources )
+        {
+            AL10.alDeleteSources( sources );
+        }
+
+        void alSourcei( int source, int pname, int value )
+        {
+            AL10.alSourcei( source, pname, value );
+        }
+
+        int alGetSourcei( int source, int pname )
+        {
+            return AL10.alGetSourcei( source, pname );
+        }
+
+        void alSourceQueueBuffers( int source, IntBuffer buffers )
+        {
+            AL10.alSourceQueueBuffers( source, buffers );
+        }
+
+        void alSourceUnqueueBuffers( int source, IntBuffer buffers )
+        {
+            AL10.alSourceUnqueueBuffers( source, buffers );
+        }
+
+        void alSourcePlay( int source )
+        {
+            AL10.alSourcePlay( source );
+        }
+
+        void alSourcePause( int source )
+        {
+            AL10.alSourcePause( source );
+        }
+
+        void alSourceStop( int source )
+        {
+            AL10.alSourceStop( source );
+        }
+
+        void alSourceStop( IntBuffer sources )
+        {
+            AL10.alSourceStop( sources );
+        }
+
+        void alSourceRewind( int source )
+        {
+            AL10.alSourceRewind( source );
+        }
+    }
 }
@@ -0,0 +1,838 @@
+package paulscode.sound.libraries;
+
+import java.util.LinkedList;
+
+import javax.sound.sampled.AudioFormat;
+
+import paulscode.sound.SoundBuffer;
+import paulscode.sound.SoundSystemConfig;
+
+/**
+ * The ChannelSoftware class is a voice of the
+ * {@link paulscode.sound.libraries.LibrarySoftware LibrarySoftware} mixer.
+ * Rather than opening a line of its own, the channel keeps track of what it is
+ * playing and where it is, and adds its samples to the shared mix whenever the
+ * mixing thread asks for them.  Gain, pan and pitch are applied as the samples
+ * are mixed, so they work the same no matter what the sound card supports.
+ *<br><br>
+ *<b><i>    SoundSystem LibrarySoftware License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class ChannelSoftware extends ChannelJavaSound
+{
+/**
+ * Lock shared with the mixing thread.  Held while the channel is changed and
+ * while it is being mixed.
+ */
+    private final Object mixLock;
+
+/**
+ * Sample data being played.  For a streaming channel, this is the chunk which
+ * is currently playing.
+ */
+    private byte[] data = null;
+
+/**
+ * Chunks of stream data waiting to be played.
+ */
+    private LinkedList<byte[]> streamQueue = new LinkedList<byte[]>();
+
+/**
+ * Number of stream chunks which have finished playing and have not been
+ * replaced yet.
+ */
+    private int processed = 0;
+
+/**
+ * True once the source has run out of stream data, until more is queued.
+ */
+    private boolean drained = false;
+
+/**
+ * Frames of stream data played before the current chunk.
+ */
+    private long framesPlayed = 0;
+
+/**
+ * Position in the sample data, in frames.  Fractional when resampling.
+ */
+    private double position = 0;
+
+/**
+ * True while the channel is playing (not paused or stopped).
+ */
+    private boolean active = false;
+
+/**
+ * When toLoop is true, the sample data starts over when the end is reached.
+ */
+    private boolean toLoop = false;
+
+/**
+ * Linear gain (0.0f - 1.0f).
+ */
+    private float gain = 1.0f;
+
+/**
+ * Panning between left and right speaker (-1.0f - 1.0f).
+ */
+    private float pan = 0.0f;
+
+/**
+ * Playback speed (0.5f - 2.0f).
+ */
+    private float pitch = 1.0f;
+
+/**
+ * Sample rate of the data being played.
+ */
+    private float sampleRate = 0;
+
+/**
+ * Number of bytes in one frame of the data being played.
+ */
+    private int frameSize = 0;
+
+/**
+ * Number of bytes in one sample (1 or 2).
+ */
+    private int sampleSize = 0;
+
+/**
+ * True if the data being played has two channels.
+ */
+    private boolean stereo = false;
+
+/**
+ * True if 16-bit samples are stored most significant byte first.
+ */
+    private boolean bigEndian = false;
+
+/**
+ * True if 8-bit samples are unsigned.
+ */
+    private boolean unsigned = false;
+
+/**
+ * Constructor:  takes channelType identifier and the lock shared with the
+ * mixing thread as paramaters.  Possible values for channel type can be found
+ * in the {@link paulscode.sound.SoundSystemConfig SoundSystemConfig} class.
+ * @param type Type of channel (normal or streaming).
+ * @param mixLock Lock held by the mixing thread while it mixes.
+ */
+    public ChannelSoftware( int type, Object mixLock )
+    {
+        super( type, null );
+        libraryType = LibrarySoftware.class;
+
+        this.mixLock = mixLock;
+    }
+
+/**
+ * Empties the stream queue, shuts the channel down and removes references to
+ * all instantiated objects.
+ */
+    @Override
+    public void cleanup()
+    {
+        synchronized( mixLock )
+        {
+            active = false;
+            data = null;
+            streamQueue.clear();
+        }
+        super.cleanup();
+    }
+
+/**
+ * Attaches the SoundBuffer to be played back for a normal source.
+ * @param buffer SoundBuffer containing the wave data and format to attach
+ * @return False if an error occurred.
+ */
+    @Override
+    public boolean attachBuffer( SoundBuffer buffer )
+    {
+        // Can only attach a buffer to a normal source:
+        if( errorCheck( channelType != SoundSystemConfig.TYPE_NORMAL,
+                        "Buffers may only be attached to non-streaming " +
+                        "sources" ) )
+            return false;
+
+        // make sure the buffer exists:
+        if( errorCheck( buffer == null,
+                        "Buffer null in method 'attachBuffer'" ) )
+            return false;
+
+        // make sure the buffer exists:
+        if( errorCheck( buffer.audioData == null,
+                        "Buffer missing audio data in method " +
+                        "'attachBuffer'" ) )
+            return false;
+
+        synchronized( mixLock )
+        {
+            active = false;
+            data = null;
+            position = 0;
+            if( !setFormat( buffer.audioFormat, "attachBuffer" ) )
+                return false;
+            if( errorCheck( buffer.audioData.length < frameSize,
+                            "Buffer contains no samples in method " +
+                            "'attachBuffer'" ) )
+                return false;
+            data = buffer.audioData;
+        }
+
+        // Success:
+        return true;
+    }
+
+/**
+ * Sets the channel up to receive the specified audio format.
+ * @param audioFormat Format to use when playing the stream data.
+ */
+    @Override
+    public void setAudioFormat( AudioFormat audioFormat )
+    {
+        resetStream( audioFormat );
+        if( attachedSource != null && attachedSource.rawDataStream &&
+            attachedSource.active() )
+            play();
+    }
+
+/**
+ * Sets the channel up to be streamed using the specified AudioFormat.
+ * @param format Format to use when playing the stream data.
+ * @return False if an error occurred.
+ */
+    @Override
+    public boolean resetStream( AudioFormat format )
+    {
+        synchronized( mixLock )
+        {
+            active = false;
+            data = null;
+            streamQueue.clear();
+            processed = 0;
+            framesPlayed = 0;
+            position = 0;
+            drained = false;
+            return setFormat( format, "resetStream" );
+        }
+    }
+
+/**
+ * Defines whether playback should loop or just play once.
+ * @param value Loop or not.
+ */
+    @Override
+    public void setLooping( boolean value )
+    {
+        synchronized( mixLock )
+        {
+            toLoop = value;
+        }
+    }
+
+/**
+ * Changes the pan between left and right speaker to the specified value.
+ * -1 = left speaker only.  0 = middle, both speakers.  1 = right speaker only.
+ * @param p Pan value to use.
+ */
+    @Override
+    public void setPan( float p )
+    {
+        // make sure the value is valid (between -1 and 1)
+        if( p < -1.0f )
+            p = -1.0f;
+        if( p > 1.0f )
+            p = 1.0f;
+        synchronized( mixLock )
+        {
+            pan = p;
+        }
+    }
+
+/**
+ * Changes the volume.
+ * 0 = no volume.  1 = maximum volume.
+ * @param g Gain value to use.
+ */
+    @Override
+    public void setGain( float g )
+    {
+        // make sure the value is valid (between 0 and 1)
+        if( g < 0.0f )
+            g = 0.0f;
+        if( g > 1.0f )
+            g = 1.0f;
+        synchronized( mixLock )
+        {
+            gain = g;
+        }
+    }
+
+/**
+ * Changes the pitch to the specified value.
+ * @param p Float value between 0.5f and 2.0f.
+ */
+    @Override
+    public void setPitch( float p )
+    {
+        // make sure the value is valid (between 0.5f and 2.0f)
+        if( p < 0.5f )
+            p = 0.5f;
+        if( p > 2.0f )
+            p = 2.0f;
+        synchronized( mixLock )
+        {
+            pitch = p;
+        }
+    }
+
+/**
+ * Queues up the initial byte[] buffers of data to be streamed.
+ * @param bufferList List of the first buffers to be played for a streaming source.
+ * @return False if problem occurred or end of stream was reached.
+ */
+    @Override
+    public boolean preLoadBuffers( LinkedList<byte[]> bufferList )
+    {
+        // Stream buffers can only be queued for streaming sources:
+        if( errorCheck( channelType != SoundSystemConfig.TYPE_STREAMING,
+                        "Buffers may only be queued for streaming sources." ) )
+            return false;
+
+        synchronized( mixLock )
+        {
+            // make sure a format was specified:
+            if( errorCheck( frameSize == 0,
+                            "AudioFormat null in method 'preLoadBuffers'" ) )
+                return false;
+
+            data = null;
+            position = 0;
+            streamQueue.clear();
+            streamQueue.addAll( bufferList );
+            bufferList.clear();
+            processed = 0;
+            drained = false;
+            active = true;
+        }
+
+        return true;
+    }
+
+/**
+ * Queues up a byte[] buffer of data to be streamed.
+ * @param buffer The next buffer to be played for a streaming source.
+ * @return False if an error occurred or if the channel is shutting down.
+ */
+    @Override
+    public boolean queueBuffer( byte[] buffer )
+    {
+        // Stream buffers can only be queued for streaming sources:
+        if( errorCheck( channelType != SoundSystemConfig.TYPE_STREAMING,
+                        "Buffers may only be queued for streaming sources." ) )
+            return false;
+
+        synchronized( mixLock )
+        {
+            // make sure a format was specified:
+            if( errorCheck( frameSize == 0,
+                            "AudioFormat null in method 'queueBuffer'" ) )
+                return false;
+
+            // the new buffer takes the place of one which finished playing:
+            streamQueue.add( buffer );
+            if( processed > 0 )
+                processed--;
+            drained = false;
+        }
+        return true;
+    }
+
+/**
+ * Checks whether there is queued stream data which has not started playing
+ * yet.  The mixing thread takes queued data on its own, so nothing needs to be
+ * done here.
+ * @return False when no more buffers are left to process.
+ */
+    @Override
+    public boolean processBuffer()
+    {
+        // Only streaming sources process buffers:
+        if( channelType != SoundSystemConfig.TYPE_STREAMING )
+            return false;
+
+        synchronized( mixLock )
+        {
+            // This is called when the source has nothing to replace the
+            // buffers which finished playing, so it has run out of data:
+            if( processed > 0 )
+                drained = true;
+            return !streamQueue.isEmpty();
+        }
+    }
+
+/**
+ * Feeds raw data to the stream.
+ * @param buffer Buffer containing raw audio data to stream.
+ * @return Number of prior buffers that have been processed, or -1 if error.
+ */
+    @Override
+    public int feedRawAudioData( byte[] buffer )
+    {
+        // Stream buffers can only be queued for streaming sources:
+        if( errorCheck( channelType != SoundSystemConfig.TYPE_STREAMING,
+                "Raw audio data can only be processed by streaming sources." ) )
+            return -1;
+
+        synchronized( mixLock )
+        {
+            streamQueue.add( buffer );
+            int p = processed;
+            processed = 0;
+            return p;
+        }
+    }
+
+/**
+ * Returns the number of queued byte[] buffers that have finished playing.
+ * @return Number of buffers processed.
+ */
+    @Override
+    public int buffersProcessed()
+    {
+        // Only streaming sources process buffers:
+        if( channelType != SoundSystemConfig.TYPE_STREAMING )
+            return 0;
+
+        synchronized( mixLock )
+        {
+            return processed;
+        }
+    }
+
+/**
+ * Returns the number of queued byte[] buffers that have not finished playing,
+ * including the one being mixed.
+ * @return Number of buffers queued.
+ */
+    @Override
+    public int buffersQueued()
+    {
+        // Only streaming sources queue buffers:
+        if( channelType != SoundSystemConfig.TYPE_STREAMING )
+            return 0;
+
+        synchronized( mixLock )
+        {
+            return streamQueue.size() + ( data == null ? 0 : 1 );
+        }
+    }
+
+/**
+ * Returns how much of the queued audio has not been mixed yet, at the current
+ * pitch.
+ * @return Milliseconds of audio left, or -1 if unknown.
+ */
+    @Override
+    public float millisecondsQueued()
+    {
+        // Only streaming sources queue buffers:
+        if( channelType != SoundSystemConfig.TYPE_STREAMING )
+            return -1;
+
+        synchronized( mixLock )
+        {
+            if( frameSize <= 0 || sampleRate <= 0 || pitch <= 0 )
+                return -1;
+
+            double frames = 0;
+            if( data != null )
+                frames = data.length / frameSize - position;
+            for( byte[] chunk : streamQueue )
+            {
+                frames += chunk.length / frameSize;
+            }
+            return (float) ( frames * 1000 / ( sampleRate * pitch ) );
+        }
+    }
+
+/**
+ * Calculates how long until the stream-buffer which is currently being mixed
+ * finishes playing, at which point it may be replaced.
+ * @return Milliseconds, or -1 if unknown.
+ */
+    @Override
+    public float millisecondsUntilRefill()
+    {
+        // Only streaming sources queue buffers:
+        if( channelType != SoundSystemConfig.TYPE_STREAMING )
+            return -1;
+
+        synchronized( mixLock )
+        {
+            if( processed > 0 )
+                return 0;
+            if( data == null || frameSize <= 0 || sampleRate <= 0
+                || pitch <= 0 )
+                return -1;
+
+            double frames = data.length / frameSize - position;
+            return (float) ( frames * 1000 / ( sampleRate * pitch ) );
+        }
+    }
+
+/**
+ * Dequeues all previously queued data.
+ */
+    @Override
+    public void flush()
+    {
+        // Only streaming sources process buffers:
+        if( channelType != SoundSystemConfig.TYPE_STREAMING )
+            return;
+
+        synchronized( mixLock )
+        {
+            active = false;
+            data = null;
+            position = 0;
+            streamQueue.clear();
+            processed = 0;
+        }
+    }
+
+/**
+ * Stops the channel, dequeues any queued data, and closes the channel.
+ */
+    @Override
+    public void close()
+    {
+        synchronized( mixLock )
+        {
+            active = false;
+            position = 0;
+            if( channelType == SoundSystemConfig.TYPE_STREAMING )
+            {
+                data = null;
+                streamQueue.clear();
+                processed = 0;
+            }
+        }
+    }
+
+/**
+ * Plays the currently attached normal source, opens this channel up for
+ * streaming, or resumes playback if this channel was paused.
+ */
+    @Override
+    public void play()
+    {
+        synchronized( mixLock )
+        {
+            // start over if the sample data finished playing:
+            if( channelType == SoundSystemConfig.TYPE_NORMAL && data != null
+                && position >= data.length / frameSize )
+                position = 0;
+            active = true;
+        }
+    }
+
+/**
+ * Temporarily stops playback for this channel.
+ */
+    @Override
+    public void pause()
+    {
+        synchronized( mixLock )
+        {
+            active = false;
+        }
+    }
+
+/**
+ * Stops playback for this channel and rewinds the attached source to the
+ * beginning.
+ */
+    @Override
+    public void stop()
+    {
+        synchronized( mixLock )
+        {
+            active = false;
+            // rewinding for streaming sources is handled elsewhere
+            if( channelType == SoundSystemConfig.TYPE_NORMAL )
+                position = 0;
+        }
+    }
+
+/**
+ * Rewinds the attached source to the beginning.  Stops the source if it was
+ * paused.
+ */
+    @Override
+    public void rewind()
+    {
+        synchronized( mixLock )
+        {
+            // rewinding for streaming sources is handled elsewhere
+            if( channelType == SoundSystemConfig.TYPE_NORMAL )
+                position = 0;
+        }
+    }
+
+/**
+ * Calculates the number of milliseconds since the channel began playing.
+ * @return Milliseconds, or -1 if unable to calculate.
+ */
+    @Override
+    public float millisecondsPlayed()
+    {
+        synchronized( mixLock )
+        {
+            if( sampleRate <= 0 )
+                return -1;
+            return (float) ( ( framesPlayed + position ) * 1000 / sampleRate );
+        }
+    }
+
+/**
+ * Used to determine if a channel is actively playing a source.  This method
+ * will return false if the channel is paused or stopped and when no data is
+ * queued to be streamed.
+ * @return True if this channel is playing a source.
+ */
+    @Override
+    public boolean playing()
+    {
+        synchronized( mixLock )
+        {
+            if( !active )
+                return false;
+            if( channelType == SoundSystemConfig.TYPE_STREAMING )
+                return data != null || !streamQueue.isEmpty();
+            return data != null;
+        }
+    }
+
+/**
+ * Checks whether this channel has nothing to mix: it is stopped or paused, or
+ * it has played everything and is not waiting for more stream data.  Must only
+ * be called while holding the mix lock.
+ * @return True if the channel has nothing to mix.
+ */
+    boolean idle()
+    {
+        if( !active )
+            return true;
+        return data == null && streamQueue.isEmpty() && !starved();
+    }
+
+/**
+ * Checks whether this channel is playing a stream which is about to run out of
+ * queued data before its source reached the end: nothing is queued after the
+ * current chunk, and a chunk which finished playing has not been replaced yet.
+ * Must only be called while holding the mix lock.
+ * @return True if the channel is waiting for more stream data.
+ */
+    boolean starved()
+    {
+        return channelType == SoundSystemConfig.TYPE_STREAMING && active
+               && !drained && streamQueue.isEmpty()
+               && ( data == null || processed > 0 )
+               && attachedSource != null && !attachedSource.rawDataStream;
+    }
+
+/**
+ * Adds this channel's output to the mix.  Must only be called by the mixing
+ * thread, while holding the mix lock.  The samples are converted to float,
+ * resampled for pitch and to the output rate with linear interpolation, and
+ * scaled by the gain and pan.
+ * @param mix Interleaved stereo mix to add to.
+ * @param frames Number of frames to mix.
+ * @param outputRate Sample rate of the mix.
+ */
+    void mix( float[] mix, int frames, float outputRate )
+    {
+        if( !active )
+            return;
+        if( data == null && !nextData() )
+            return;
+
+        float left = gain;
+        float right = gain;
+        if( pan > 0 )
+            left *= 1.0f - pan;
+        else
+            right *= 1.0f + pan;
+
+        double step = sampleRate * pitch / outputRate;
+        int frameCount = data.length / frameSize;
+        int frame;
+        int offset;
+        float frac;
+        float l;
+        float r;
+        for( int i = 0; i < frames; i++ )
+        {
+            while( position >= frameCount )
+            {
+                if( !nextData() )
+                    return;
+                frameCount = data.length / frameSize;
+            }
+
+            frame = (int) position;
+            frac = (float) ( position - frame );
+            offset = frame * frameSize;
+            l = sample( offset );
+            r = stereo ? sample( offset + sampleSize ) : l;
+            if( frac > 0 && frame + 1 < frameCount )
+            {
+                offset += frameSize;
+                if( stereo )
+                {
+                    l += ( sample( offset ) - l ) * frac;
+                    r += ( sample( offset + sampleSize ) - r ) * frac;
+                }
+                else
+                {
+                    l += ( sample( offset ) - l ) * frac;
+                    r = l;
+                }
+            }
+
+            mix[2 * i] += l * left;
+            mix[2 * i + 1] += r * right;
+            position += step;
+        }
+    }
+
+/**
+ * Moves on once the end of the current data is reached.  Normal channels start
+ * over if looping, and stream channels move on to the next queued chunk.
+ * Must only be called while holding the mix lock.
+ * @return False if there is nothing more to play right now.
+ */
+    private boolean nextData()
+    {
+        if( channelType == SoundSystemConfig.TYPE_NORMAL )
+        {
+            if( data == null )
+                return false;
+            if( toLoop )
+            {
+                position -= data.length / frameSize;
+                return true;
+            }
+            // finished playing:
+            active = false;
+            position = data.length / frameSize;
+            return false;
+        }
+
+        if( data != null )
+        {
+            int frameCount = data.length / frameSize;
+            framesPlayed += frameCount;
+            position -= frameCount;
+            processed++;
+        }
+        data = streamQueue.poll();
+        if( data == null )
+        {
+            position = 0;
+            return false;
+        }
+        return true;
+    }
+
+/**
+ * Returns the sample at the specified byte offset into the current data, as a
+ * float between -1.0f and 1.0f.
+ * @param offset Byte offset of the sample.
+ * @return Sample value.
+ */
+    private float sample( int offset )
+    {
+        if( sampleSize == 2 )
+        {
+            if( bigEndian )
+                return (short) ( ( data[offset] << 8 )
+                                 | ( data[offset + 1] & 0xff ) ) / 32768.0f;
+            return (short) ( ( data[offset + 1] << 8 )
+                             | ( data[offset] & 0xff ) ) / 32768.0f;
+        }
+        if( unsigned )
+            return ( ( data[offset] & 0xff ) - 128 ) / 128.0f;
+        return data[offset] / 128.0f;
+    }
+
+/**
+ * Reads the layout of the samples out of the specified format.  Must only be
+ * called while holding the mix lock.
+ * @param format Format of the data to be played.
+ * @param method Name of the calling method, for error messages.
+ * @return False if the format is not supported.
+ */
+    private boolean setFormat( AudioFormat format, String method )
+    {
+        frameSize = 0;
+
+        // make sure a format was specified:
+        if( errorCheck( format == null,
+                        "AudioFormat null in method '" + method + "'" ) )
+            return false;
+
+        int bits = format.getSampleSizeInBits();
+        int channels = format.getChannels();
+        AudioFormat.Encoding encoding = format.getEncoding();
+        if( errorCheck( ( bits != 8 && bits != 16 )
+                        || ( channels != 1 && channels != 2 )
+                        || ( encoding != AudioFormat.Encoding.PCM_SIGNED
+                          && encoding != AudioFormat.Encoding.PCM_UNSIGNED ),
+                        "Unsupported audio format '" + format +
+                        "' in method '" + method + "'" ) )
+            return false;
+
+        sampleSize = bits / 8;
+        stereo = ( channels == 2 );
+        frameSize = sampleSize * channels;
+        bigEndian = format.isBigEndian();
+        unsigned = ( encoding == AudioFormat.Encoding.PCM_UNSIGNED );
+        sampleRate = format.getSampleRate();
+        return true;
+    }
+}
@@ -15,11 +15,13 @@ import java.util.ListIterator;
 import java.util.Set;
 
 import paulscode.sound.Channel;
+import paulscode.sound.DecodedCache;
 import paulscode.sound.FilenameURL;
 import paulscode.sound.ICodec;
 import paulscode.sound.Library;
 import paulscode.sound.Source;
 import paulscode.sound.SoundBuffer;
+import paulscode.sound.SoundBufferMap;
 import paulscode.sound.SoundSystem;
 import paulscode.sound.SoundSystemConfig;
 import paulscode.sound.SoundSystemException;
@@ -273,7 +275,7 @@ public class LibraryJavaSound extends Library
         // Make sure the buffer map exists:
         if( bufferMap == null )
         {
-            bufferMap = new HashMap<String, SoundBuffer>();
+            bufferMap = new SoundBufferMap( this );
             importantMessage( "Buffer Map was null in method 'loadSound'" );
         }
         
@@ -283,7 +285,7 @@ public class LibraryJavaSound extends Library
             return false;
         
         // check if it is already loaded:        
-        if( bufferMap.get( filenameURL.getFilename() ) != null )
+        if( bufferMap.containsKey( filenameURL.getFilename() ) )
             return true;
         
         ICodec codec = SoundSystemConfig.getCodec( filenameURL.getFilename() );
@@ -298,12 +300,12 @@ public class LibraryJavaSound extends Library
                                      "' in method 'loadSound'" ) )
             return false;
 
-        codec.initialize( url );
-        SoundBuffer buffer = codec.readAll();
-        codec.cleanup();
+        SoundBuffer buffer = DecodedCache.readAll( codec, url, false );
         codec = null;
+        // trim it once here, so every source can share the same data:
         if( buffer != null )
-            bufferMap.put( filenameURL.getFilename(), buffer );
+            bufferMap.put( filenameURL.getFilename(),
+                           buffer.toHeap().trimmed( maxClipSize ) );
         else
             errorMessage( "Sound buffer null in method 'loadSound'" );
         
@@ -324,7 +326,7 @@ public class LibraryJavaSound extends Library
         // Make sure the buffer map exists:
         if( bufferMap == null )
         {
-            bufferMap = new HashMap<String, SoundBuffer>();
+            bufferMap = new SoundBufferMap( this );
             importantMessage( "Buffer Map was null in method 'loadSound'" );
         }
 
@@ -334,12 +336,13 @@ public class LibraryJavaSound extends Library
             return false;
 
         // check if it is already loaded:
-        if( bufferMap.get( identifier ) != null )
+        if( bufferMap.containsKey( identifier ) )
             return true;
 
-        // save it for later:
+        // save it for later, trimmed once so every source can share it:
         if( buffer != null )
-            bufferMap.put( identifier, buffer );
+            bufferMap.put( identifier,
+                           buffer.toHeap().trimmed( maxClipSize ) );
         else
             errorMessage( "Sound buffer null in method 'loadSound'" );
 
@@ -394,6 +397,7 @@ public class LibraryJavaSound extends Library
         {
             // Grab the audio data for this file:
             buffer = bufferMap.get( filenameURL.getFilename() );
+            countBufferLookup( buffer != null );
             // if not found, try loading it:
             if( buffer == null )
             {
@@ -417,9 +421,6 @@ public class LibraryJavaSound extends Library
             }
         }
         
-        if( !toStream && buffer != null )
-            buffer.trimData( maxClipSize );
-        
         sourceMap.put( sourcename,
                        new SourceJavaSound( listener, priority, toStream,
                                             toLoop, sourcename, filenameURL,
@@ -475,6 +476,7 @@ public class LibraryJavaSound extends Library
         {
             // Grab the audio data for this file:
             buffer = bufferMap.get( filenameURL.getFilename() );
+            countBufferLookup( buffer != null );
             // if not found, try loading it:
             if( buffer == null )
             {
@@ -498,9 +500,6 @@ public class LibraryJavaSound extends Library
             }
         }
         
-        if( !toStream && buffer != null)
-            buffer.trimData( maxClipSize );
-        
         sourceMap.put( sourcename,
                        new SourceJavaSound( listener, priority, toStream,
                                             toLoop, sourcename, filenameURL,
@@ -525,7 +524,7 @@ public class LibraryJavaSound extends Library
         // Make sure the buffer map exists:
         if( bufferMap == null )
         {
-            bufferMap = new HashMap<String, SoundBuffer>();
+            bufferMap = new SoundBufferMap( this );
             importantMessage( "Buffer Map was null in method 'copySources'" );
         }
         
@@ -546,10 +545,6 @@ public class LibraryJavaSound extends Library
                     loadSound( source.filenameURL );
                     buffer = bufferMap.get( source.filenameURL.getFilename() );
                 }
-                if( !source.toStream && buffer != null )
-                {
-                    buffer.trimData( maxClipSize );
-                }
                 if( source.toStream || buffer != null )
                 {
                     sourceMap.put( sourcename, new SourceJavaSound( listener,
@@ -16,11 +16,13 @@ import org.lwjgl.openal.AL;
 import org.lwjgl.openal.AL10;
 
 import paulscode.sound.Channel;
+import paulscode.sound.DecodedCache;
 import paulscode.sound.FilenameURL;
 import paulscode.sound.ICodec;
 import paulscode.sound.Library;
 import paulscode.sound.ListenerData;
 import paulscode.sound.SoundBuffer;
+import paulscode.sound.SoundBufferMap;
 import paulscode.sound.SoundSystemConfig;
 import paulscode.sound.SoundSystemException;
 import paulscode.sound.Source;
@@ -132,6 +134,12 @@ public class LibraryLWJGLOpenAL extends Library
  * Map containing OpenAL identifiers for sound buffers.
  */
     private HashMap<String, IntBuffer> ALBufferMap = null;
+/**
+ * OpenAL buffers of sounds which were unloaded while sources were still using
+ * them.  They are deleted once the last of those sources is removed.
+ */
+    private HashMap<SoundBuffer, IntBuffer> unloadedALBuffers =
+                                          new HashMap<SoundBuffer, IntBuffer>();
 
 /**
  * Whether or not the AL_PITCH control is supported.
@@ -336,6 +344,15 @@ public class LibraryLWJGLOpenAL extends Library
             }
         }
         
+        // and those of sounds which were unloaded while still in use:
+        Iterator<IntBuffer> unloaded = unloadedALBuffers.values().iterator();
+        while( unloaded.hasNext() )
+        {
+            AL10.alDeleteBuffers( unloaded.next() );
+            checkALError();
+        }
+        unloadedALBuffers.clear();
+        
         bufferMap.clear();
         AL.destroy();
         
@@ -356,7 +373,7 @@ public class LibraryLWJGLOpenAL extends Library
         // Make sure the buffer map exists:
         if( bufferMap == null )
         {
-            bufferMap = new HashMap<String, SoundBuffer>();
+            bufferMap = new SoundBufferMap( this );
             importantMessage( "Buffer Map was null in method 'loadSound'" );
         }
         // Make sure the OpenAL buffer map exists:
@@ -373,7 +390,7 @@ public class LibraryLWJGLOpenAL extends Library
             return false;
         
         // check if it is already loaded:        
-        if( bufferMap.get( filenameURL.getFilename() ) != null )
+        if( bufferMap.containsKey( filenameURL.getFilename() ) )
             return true;
         
         ICodec codec = SoundSystemConfig.getCodec( filenameURL.getFilename() );
@@ -389,14 +406,15 @@ public class LibraryLWJGLOpenAL extends Library
                                      "' in method 'loadSound'" ) )
             return false;
 
-        codec.initialize( url );
-        SoundBuffer buffer = codec.readAll();
-        codec.cleanup();
+        SoundBuffer buffer = DecodedCache.readAll( codec, url, true );
         codec = null;
         if( errorCheck( buffer == null,
                                    "Sound buffer null in method 'loadSound'" ) )
             return false;
 
+        // keep it off the Java heap if requested:
+        if( SoundSystemConfig.getOffHeapBuffers() )
+            buffer = buffer.toDirect();
         bufferMap.put( filenameURL.getFilename(), buffer );
 
         AudioFormat audioFormat = buffer.audioFormat;
@@ -451,9 +469,7 @@ public class LibraryLWJGLOpenAL extends Library
 //                           ByteBuffer.wrap( buffer.audioData ),
 //                           (int) audioFormat.getSampleRate() );
         AL10.alBufferData( intBuffer.get( 0 ), soundFormat,
-                           (ByteBuffer) BufferUtils.createByteBuffer(
-                                buffer.audioData.length ).put(
-                                    buffer.audioData ).flip(),
+                           directData( buffer ),
                            (int) audioFormat.getSampleRate() );
 
         if( errorCheck( AL10.alGetError() != AL10.AL_NO_ERROR, 
@@ -485,7 +501,7 @@ public class LibraryLWJGLOpenAL extends Library
         // Make sure the buffer map exists:
         if( bufferMap == null )
         {
-            bufferMap = new HashMap<String, SoundBuffer>();
+            bufferMap = new SoundBufferMap( this );
             importantMessage( "Buffer Map was null in method 'loadSound'" );
         }
         // Make sure the OpenAL buffer map exists:
@@ -502,13 +518,16 @@ public class LibraryLWJGLOpenAL extends Library
             return false;
 
         // check if it is already loaded:
-        if( bufferMap.get( identifier ) != null )
+        if( bufferMap.containsKey( identifier ) )
             return true;
 
         if( errorCheck( buffer == null,
                                    "Sound buffer null in method 'loadSound'" ) )
             return false;
 
+        // keep it off the Java heap if requested:
+        if( SoundSystemConfig.getOffHeapBuffers() )
+            buffer = buffer.toDirect();
         bufferMap.put( identifier, buffer );
 
         AudioFormat audioFormat = buffer.audioFormat;
@@ -563,9 +582,7 @@ public class LibraryLWJGLOpenAL extends Library
 //                           ByteBuffer.wrap( buffer.audioData ),
 //                           (int) audioFormat.getSampleRate() );
         AL10.alBufferData( intBuffer.get( 0 ), soundFormat,
-                           (ByteBuffer) BufferUtils.createByteBuffer(
-                                buffer.audioData.length ).put(
-                                    buffer.audioData ).flip(),
+                           directData( buffer ),
                            (int) audioFormat.getSampleRate() );
 
         if( errorCheck( AL10.alGetError() != AL10.AL_NO_ERROR,
@@ -593,8 +610,82 @@ public class LibraryLWJGLOpenAL extends Library
     @Override
     public void unloadSound( String filename )
     {
-        ALBufferMap.remove( filename );
-        super.unloadSound( filename );
+        IntBuffer ALBuffer = ALBufferMap.remove( filename );
+        SoundBuffer buffer = bufferMap.remove( filename );
+        if( ALBuffer == null )
+            return;
+
+        // Free the OpenAL buffer now, or once the last source using it is gone:
+        if( buffer != null && buffer.references() > 0 )
+            unloadedALBuffers.put( buffer, ALBuffer );
+        else
+            deleteALBuffer( ALBuffer );
+    }
+
+/**
+ * Returns the audio data of a sound buffer in a direct ByteBuffer, as required
+ * by alBufferData().  Data which is already held off the Java heap is used as
+ * it is, and data in a byte array is copied.
+ * @param buffer Sample data.
+ * @return Direct buffer holding the audio data.
+ */
+    private static ByteBuffer directData( SoundBuffer buffer )
+    {
+        if( buffer.isDirect() )
+            return buffer.directData.duplicate();
+        return (ByteBuffer) BufferUtils.createByteBuffer(
+                                    buffer.audioData.length ).put(
+                                        buffer.audioData ).flip();
+    }
+
+/**
+ * Deletes the OpenAL buffers of unloaded sounds which are no longer used by
+ * any source.
+ */
+    @Override
+    protected void buffersReleased()
+    {
+        if( unloadedALBuffers.isEmpty() )
+            return;
+        Iterator<SoundBuffer> iter = unloadedALBuffers.keySet().iterator();
+        SoundBuffer buffer;
+        while( iter.hasNext() )
+        {
+            buffer = iter.next();
+            if( buffer.references() == 0 )
+            {
+                deleteALBuffer( unloadedALBuffers.get( buffer ) );
+                iter.remove();
+            }
+        }
+    }
+
+/**
+ * Deletes an OpenAL buffer which no source is using.  Channels keep their last
+ * buffer attached after their source is gone, and OpenAL refuses to delete an
+ * attached buffer, so it is detached from any such channels first.
+ * @param ALBuffer OpenAL identifier of the buffer.
+ */
+    private void deleteALBuffer( IntBuffer ALBuffer )
+    {
+        if( normalChannels != null )
+        {
+            ChannelLWJGLOpenAL channel;
+            for( int i = 0; i < normalChannels.size(); i++ )
+            {
+                channel = (ChannelLWJGLOpenAL) normalChannels.get( i );
+                if( channel.ALSource != null
+                    && AL10.alGetSourcei( channel.ALSource.get( 0 ),
+                                     AL10.AL_BUFFER ) == ALBuffer.get( 0 ) )
+                {
+                    AL10.alSourceStop( channel.ALSource.get( 0 ) );
+                    AL10.alSourcei( channel.ALSource.get( 0 ),
+                                    AL10.AL_BUFFER, AL10.AL_NONE );
+                }
+            }
+        }
+        AL10.alDeleteBuffers( ALBuffer );
+        checkALError();
     }
     
  /**
@@ -663,6 +754,7 @@ public class LibraryLWJGLOpenAL extends Library
         {
             // Grab the audio data for this file:
             buffer = bufferMap.get( filenameURL.getFilename() );
+            countBufferLookup( buffer != null );
             // if not found, try loading it:
             if( buffer == null )
             {
@@ -761,6 +853,7 @@ public class LibraryLWJGLOpenAL extends Library
         {
             // Grab the sound buffer for this file:
             buffer = bufferMap.get( filenameURL.getFilename() );
+            countBufferLookup( buffer != null );
             // if not found, try loading it:
             if( buffer == null )
             {
@@ -814,7 +907,7 @@ public class LibraryLWJGLOpenAL extends Library
         // Make sure the buffer map exists:
         if( bufferMap == null )
         {
-            bufferMap = new HashMap<String, SoundBuffer>();
+            bufferMap = new SoundBufferMap( this );
             importantMessage( "Buffer Map was null in method 'copySources'" );
         }
         // Make sure the OpenAL buffer map exists:
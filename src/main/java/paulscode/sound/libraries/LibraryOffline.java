@@ -0,0 +1,414 @@
+package paulscode.sound.libraries;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import javax.sound.sampled.AudioFormat;
+
+import paulscode.sound.SoundSystemException;
+
+/**
+ * The LibraryOffline class renders the mix without an audio device.  It is a
+ * {@link paulscode.sound.libraries.LibrarySoftware LibrarySoftware} whose
+ * mixed output is counted and, optionally, written to a WAV file instead of
+ * being played, so the whole SoundSystem can be run on a headless machine.
+ * Rendering either keeps pace with the clock (real time), or goes as fast as
+ * the CPU allows.  When going as fast as it can, the mixer waits for streams
+ * to be refilled instead of letting them run dry, so the output is the same
+ * as it would be in real time, and it skips over any time when nothing is
+ * playing.
+ *<br><br>
+ *<b><i>    SoundSystem LibraryOffline License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class LibraryOffline extends LibrarySoftware
+{
+/**
+ * Longest time in milliseconds to wait for a stream to be refilled before
+ * mixing the next block anyway.
+ */
+    private static final long MAX_STREAM_WAIT = 250;
+
+/**
+ * Size of a canonical WAV header, in bytes.
+ */
+    private static final int WAV_HEADER_SIZE = 44;
+
+/**
+ * File to write the mixed output to, or null.
+ */
+    private static File outputFile = null;
+
+/**
+ * Whether rendering should keep pace with the clock.
+ */
+    private static boolean realTime = false;
+
+/**
+ * WAV file being written.
+ */
+    private RandomAccessFile wavFile = null;
+
+/**
+ * Number of frames rendered so far.
+ */
+    private volatile long renderedFrames = 0;
+
+/**
+ * Loudest sample rendered so far (0 - 32767).
+ */
+    private volatile int peak = 0;
+
+/**
+ * System.nanoTime() when rendering started.
+ */
+    private long startTime = 0;
+
+/**
+ * Constructor: Instantiates the source map, buffer map and listener
+ * information.
+ */
+    public LibraryOffline() throws SoundSystemException
+    {
+        super();
+    }
+
+/**
+ * Checks if the offline library type is compatible.
+ * @return True, no audio device is needed.
+ */
+    public static boolean libraryCompatible()
+    {
+        return true;
+    }
+
+/**
+ * Opens the WAV file, if one was specified.
+ * @param format Format of the mixed output.
+ * @param bufferSize Ignored, there is no line to buffer.
+ */
+    @Override
+    protected void openOutput( AudioFormat format, int bufferSize )
+        throws SoundSystemException
+    {
+        renderedFrames = 0;
+        peak = 0;
+        startTime = System.nanoTime();
+
+        File file = getOutputFile();
+        if( file == null )
+            return;
+        try
+        {
+            wavFile = new RandomAccessFile( file, "rw" );
+            wavFile.setLength( 0 );
+            // sizes are filled in when the file is closed:
+            writeWavHeader( format, 0 );
+        }
+        catch( IOException ioe )
+        {
+            wavFile = null;
+            throw new LibrarySoftware.Exception( "Unable to open file '" +
+                         file + "': " + ioe.getMessage(),
+                         LibrarySoftware.Exception.LINE_UNAVAILABLE );
+        }
+        message( "Rendering to file '" + file + "'" );
+    }
+
+/**
+ * Counts a block of mixed output and writes it to the WAV file.  Then waits
+ * until the block would have finished playing (real time), or until no stream
+ * is waiting to be refilled (as fast as possible).
+ * @param data Mixed output, in the output format.
+ * @param length Number of bytes to write.
+ */
+    @Override
+    protected void writeOutput( byte[] data, int length )
+    {
+        int p = peak;
+        int sample;
+        for( int i = 0; i + 1 < length; i += 2 )
+        {
+            sample = Math.abs( (short) ( ( data[i + 1] << 8 )
+                                         | ( data[i] & 0xff ) ) );
+            if( sample > p )
+                p = sample;
+        }
+        peak = p;
+        renderedFrames += length / 4;
+
+        if( wavFile != null )
+        {
+            try
+            {
+                wavFile.write( data, 0, length );
+            }
+            catch( IOException ioe )
+            {
+                errorMessage( "Unable to write to file in method " +
+                              "'writeOutput'" );
+                printStackTrace( ioe );
+                closeWavFile();
+            }
+        }
+
+        if( isRealTime() )
+        {
+            long due = startTime + (long) ( renderedFrames * 1000000000.0
+                                            / outputFormat.getSampleRate() );
+            long wait = due - System.nanoTime();
+            if( wait > 0 )
+            {
+                try
+                {
+                    Thread.sleep( wait / 1000000, (int) ( wait % 1000000 ) );
+                }
+                catch( InterruptedException e ){}
+            }
+        }
+        else
+        {
+            // let the stream thread catch up:
+            long deadline = System.currentTimeMillis() + MAX_STREAM_WAIT;
+            while( streamsStarved()
+                   && System.currentTimeMillis() < deadline )
+            {
+                wakeStreamThreads();
+                try
+                {
+                    Thread.sleep( 1 );
+                }
+                catch( InterruptedException e ){}
+            }
+        }
+    }
+
+/**
+ * Finishes the WAV file, if one was being written.
+ */
+    @Override
+    protected void closeOutput()
+    {
+        closeWavFile();
+    }
+
+/**
+ * Returns whether blocks of silence should be rendered while every channel is
+ * idle.  Only in real time, otherwise idle time is skipped.
+ * @return True to keep mixing while idle.
+ */
+    @Override
+    protected boolean mixWhenIdle()
+    {
+        return isRealTime();
+    }
+
+/**
+ * Fills in the sizes in the WAV header and closes the file.
+ */
+    private void closeWavFile()
+    {
+        if( wavFile == null )
+            return;
+        try
+        {
+            long dataSize = wavFile.length() - WAV_HEADER_SIZE;
+            wavFile.seek( 0 );
+            writeWavHeader( outputFormat, dataSize );
+            wavFile.close();
+        }
+        catch( IOException ioe )
+        {
+            errorMessage( "Unable to finish WAV file in method " +
+                          "'closeWavFile'" );
+            printStackTrace( ioe );
+        }
+        wavFile = null;
+    }
+
+/**
+ * Writes a canonical PCM WAV header at the current file position.
+ * @param format Format of the sample data.
+ * @param dataSize Number of bytes of sample data following the header.
+ */
+    private void writeWavHeader( AudioFormat format, long dataSize )
+        throws IOException
+    {
+        int channels = format.getChannels();
+        int bits = format.getSampleSizeInBits();
+        int rate = (int) format.getSampleRate();
+        int blockAlign = channels * bits / 8;
+
+        byte[] header = new byte[WAV_HEADER_SIZE];
+        putString( header, 0, "RIFF" );
+        putInt( header, 4, (int) ( dataSize + WAV_HEADER_SIZE - 8 ), 4 );
+        putString( header, 8, "WAVE" );
+        putString( header, 12, "fmt " );
+        putInt( header, 16, 16, 4 );  // size of the fmt chunk
+        putInt( header, 20, 1, 2 );   // PCM
+        putInt( header, 22, channels, 2 );
+        putInt( header, 24, rate, 4 );
+        putInt( header, 28, rate * blockAlign, 4 );
+        putInt( header, 32, blockAlign, 2 );
+        putInt( header, 34, bits, 2 );
+        putString( header, 36, "data" );
+        putInt( header, 40, (int) dataSize, 4 );
+        wavFile.write( header );
+    }
+
+/**
+ * Copies the characters of a String into a byte array.
+ * @param b Array to copy into.
+ * @param offset Where to start.
+ * @param s Characters to copy (ASCII).
+ */
+    private static void putString( byte[] b, int offset, String s )
+    {
+        for( int i = 0; i < s.length(); i++ )
+        {
+            b[offset + i] = (byte) s.charAt( i );
+        }
+    }
+
+/**
+ * Stores an integer in a byte array, least significant byte first.
+ * @param b Array to store into.
+ * @param offset Where to start.
+ * @param value Integer to store.
+ * @param size Number of bytes to use.
+ */
+    private static void putInt( byte[] b, int offset, int value, int size )
+    {
+        for( int i = 0; i < size; i++ )
+        {
+            b[offset + i] = (byte) ( value >> ( 8 * i ) );
+        }
+    }
+
+/**
+ * Returns the number of frames rendered so far.
+ * @return Number of frames.
+ */
+    public long getRenderedFrames()
+    {
+        return renderedFrames;
+    }
+
+/**
+ * Returns the number of milliseconds of output rendered so far.
+ * @return Milliseconds rendered.
+ */
+    public float getRenderedMillis()
+    {
+        AudioFormat format = outputFormat;
+        if( format == null )
+            return 0;
+        return renderedFrames * 1000.0f / format.getSampleRate();
+    }
+
+/**
+ * Returns the loudest sample rendered so far.
+ * @return Peak sample value (0 - 32767).
+ */
+    public int getPeak()
+    {
+        return peak;
+    }
+
+/**
+ * Sets the WAV file to write the mixed output to.  Takes effect the next time
+ * the library is initialized.
+ * @param file File to write, or null to not write the output anywhere.
+ */
+    public static synchronized void setOutputFile( File file )
+    {
+        outputFile = file;
+    }
+
+/**
+ * Returns the WAV file the mixed output is written to.
+ * @return File, or null if the output is not written anywhere.
+ */
+    public static synchronized File getOutputFile()
+    {
+        return outputFile;
+    }
+
+/**
+ * Sets whether rendering should keep pace with the clock.  When false (the
+ * default), output is rendered as fast as the CPU allows.
+ * @param value True to render in real time.
+ */
+    public static synchronized void setRealTime( boolean value )
+    {
+        realTime = value;
+    }
+
+/**
+ * Returns whether rendering keeps pace with the clock.
+ * @return True if rendering in real time.
+ */
+    public static synchronized boolean isRealTime()
+    {
+        return realTime;
+    }
+
+/**
+ * Returns the short title of this library type.
+ * @return A short title.
+ */
+    public static String getTitle()
+    {
+        return "Offline Renderer";
+    }
+
+/**
+ * Returns a longer description of this library type.
+ * @return A longer description.
+ */
+    public static String getDescription()
+    {
+        return "Mixes all sources in software without an audio device, " +
+               "optionally writing the result to a WAV file.";
+    }
+
+/**
+ * Returns the name of the class.
+ * @return "Library" + library title.
+ */
+    @Override
+    public String getClassName()
+    {
+        return "LibraryOffline";
+    }
+}
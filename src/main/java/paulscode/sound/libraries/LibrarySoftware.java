@@ -0,0 +1,894 @@
+package paulscode.sound.libraries;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.SourceDataLine;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import paulscode.sound.Channel;
+import paulscode.sound.DecodedCache;
+import paulscode.sound.FilenameURL;
+import paulscode.sound.ICodec;
+import paulscode.sound.Library;
+import paulscode.sound.SimpleThread;
+import paulscode.sound.Source;
+import paulscode.sound.SoundBuffer;
+import paulscode.sound.SoundBufferMap;
+import paulscode.sound.SoundSystemConfig;
+import paulscode.sound.SoundSystemException;
+
+/**
+ * The LibrarySoftware class mixes every playing source itself, and writes the
+ * result to a single JavaSound SourceDataLine.  Unlike
+ * {@link paulscode.sound.libraries.LibraryJavaSound LibraryJavaSound}, it does
+ * not need a line per source or any gain, pan or sample rate controls from the
+ * mixer, so it behaves the same on every sound card, and the number of sources
+ * which can play at once is only limited by
+ * SoundSystemConfig.setNumberNormalChannels() and
+ * SoundSystemConfig.setNumberStreamingChannels().  Samples are mixed as floats
+ * in blocks of a fixed size on a dedicated thread, and the cost of each block
+ * only depends on the number of sources playing.
+ *<br><br>
+ *<b><i>    SoundSystem LibrarySoftware License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class LibrarySoftware extends Library
+{
+/**
+ * Used to return a current value from one of the synchronized interface
+ * methods.
+ */
+    private static final boolean GET = false;
+
+/**
+ * Used to set the value in one of the synchronized interface methods.
+ */
+    private static final boolean SET = true;
+
+/**
+ * Null parameter for one the synchronized interface methods.
+ */
+    private static final int XXX = 0;
+
+/**
+ * Sample rate of the output, in Hz.
+ */
+    private static int sampleRate = 44100;
+
+/**
+ * Number of frames mixed at a time.
+ */
+    private static int blockSize = 512;
+
+/**
+ * Number of blocks the output line is able to buffer.
+ */
+    private static int lineBlocks = 4;
+
+/**
+ * Held while channels are changed and while they are being mixed.
+ */
+    protected final Object mixLock = new Object();
+
+/**
+ * Format of the mixed output (16-bit signed stereo, little-endian).
+ */
+    protected AudioFormat outputFormat = null;
+
+/**
+ * Every channel, in the order they are mixed.
+ */
+    private ChannelSoftware[] voices = new ChannelSoftware[0];
+
+/**
+ * Interleaved stereo mix of the current block.
+ */
+    private float[] mixBuffer = null;
+
+/**
+ * Current block converted to the output format.
+ */
+    private byte[] outputBuffer = null;
+
+/**
+ * Line the mixed output is written to.
+ */
+    private SourceDataLine outputLine = null;
+
+/**
+ * Thread which mixes the blocks and writes them to the output.
+ */
+    private MixThread mixThread = null;
+
+/**
+ * Nanoseconds it took to mix the most recent block.
+ */
+    private volatile long lastMixTime = 0;
+
+/**
+ * Constructor: Instantiates the source map, buffer map and listener
+ * information.
+ */
+    public LibrarySoftware() throws SoundSystemException
+    {
+        super();
+    }
+
+/**
+ * Opens the output and starts mixing.
+ */
+    @Override
+    public void init() throws SoundSystemException
+    {
+        outputFormat = new AudioFormat( sampleRate( GET, XXX ), 16, 2, true,
+                                        false );
+        int frames = blockSize( GET, XXX );
+        mixBuffer = new float[frames * 2];
+        outputBuffer = new byte[frames * 4];
+
+        openOutput( outputFormat, frames * 4 * lineBlocks( GET, XXX ) );
+
+        // Start out at full volume:
+        setMasterVolume( 1.0f );
+
+        super.init();
+
+        List<ChannelSoftware> channels = new LinkedList<ChannelSoftware>();
+        for( Channel c : streamingChannels )
+        {
+            channels.add( (ChannelSoftware) c );
+        }
+        for( Channel c : normalChannels )
+        {
+            channels.add( (ChannelSoftware) c );
+        }
+        synchronized( mixLock )
+        {
+            voices = channels.toArray( new ChannelSoftware[channels.size()] );
+        }
+
+        startMixing();
+
+        // Let the user know if everything is ok:
+        message( "Software mixer initialized (" + voices.length + " voices, "
+                 + outputFormat.getSampleRate() + " Hz)." );
+    }
+
+/**
+ * Checks if the software mixer library type is compatible.
+ * @return True or false.
+ */
+    public static boolean libraryCompatible()
+    {
+        AudioFormat format = new AudioFormat( sampleRate( GET, XXX ), 16, 2,
+                                              true, false );
+        return AudioSystem.isLineSupported(
+                         new DataLine.Info( SourceDataLine.class, format ) );
+    }
+
+/**
+ * Creates a new channel of the specified type (normal or streaming).  Possible
+ * values for channel type can be found in the
+ * {@link paulscode.sound.SoundSystemConfig SoundSystemConfig} class.
+ * @param type Type of channel.
+ */
+    @Override
+    protected Channel createChannel( int type )
+    {
+        return new ChannelSoftware( type, mixLock );
+    }
+
+/**
+ * Stops mixing, closes the output, stops all sources, and removes references
+ * to all instantiated objects.
+ */
+    @Override
+    public void cleanup()
+    {
+        stopMixing();
+        closeOutput();
+        synchronized( mixLock )
+        {
+            voices = new ChannelSoftware[0];
+        }
+
+        super.cleanup();
+    }
+
+/**
+ * Opens the line the mixed output is written to.  Extended classes may
+ * override this method along with writeOutput() and closeOutput() to send the
+ * mix somewhere else.
+ * @param format Format of the mixed output.
+ * @param bufferSize Size in bytes the output should be able to buffer.
+ */
+    protected void openOutput( AudioFormat format, int bufferSize )
+        throws SoundSystemException
+    {
+        try
+        {
+            outputLine = AudioSystem.getSourceDataLine( format );
+            outputLine.open( format, bufferSize );
+        }
+        catch( java.lang.Exception e )
+        {
+            outputLine = null;
+            throw new LibrarySoftware.Exception( "Unable to open an output "
+                        + "line: " + e.getMessage(),
+                        LibrarySoftware.Exception.LINE_UNAVAILABLE );
+        }
+        outputLine.start();
+    }
+
+/**
+ * Writes a block of mixed output.  This method is called from the mixing
+ * thread, and it should block until there is room for more output.
+ * @param data Mixed output, in the output format.
+ * @param length Number of bytes to write.
+ */
+    protected void writeOutput( byte[] data, int length )
+    {
+        SourceDataLine line = outputLine;
+        if( line != null )
+            line.write( data, 0, length );
+    }
+
+/**
+ * Closes the line the mixed output was written to.
+ */
+    protected void closeOutput()
+    {
+        if( outputLine != null )
+        {
+            outputLine.stop();
+            outputLine.flush();
+            outputLine.close();
+            outputLine = null;
+        }
+    }
+
+/**
+ * Starts the thread which mixes blocks and writes them to the output.
+ */
+    protected void startMixing()
+    {
+        mixThread = new MixThread();
+        mixThread.start();
+    }
+
+/**
+ * Stops the mixing thread, and waits for it to end.
+ */
+    protected void stopMixing()
+    {
+        if( mixThread == null )
+            return;
+        mixThread.kill();
+
+        // wait up to 5 seconds for mix thread to end:
+        mixThread.waitForDeath( 5000 );
+        if( mixThread.alive() )
+            errorMessage( "Mix thread did not die!" );
+        mixThread = null;
+    }
+
+/**
+ * Mixes the next block of output from all playing channels.  The block is
+ * blockSize frames long.
+ * @return The block, in the output format.
+ */
+    protected byte[] mixBlock()
+    {
+        long start = System.nanoTime();
+        float[] mix = mixBuffer;
+        byte[] out = outputBuffer;
+        int frames = mix.length / 2;
+        float rate = outputFormat.getSampleRate();
+
+        Arrays.fill( mix, 0.0f );
+        synchronized( mixLock )
+        {
+            ChannelSoftware[] v = voices;
+            for( int i = 0; i < v.length; i++ )
+            {
+                v[i].mix( mix, frames, rate );
+            }
+        }
+
+        // convert to 16-bit little-endian, clipping anything too loud:
+        float s;
+        int sample;
+        for( int i = 0; i < mix.length; i++ )
+        {
+            s = mix[i];
+            if( s > 1.0f )
+                s = 1.0f;
+            else if( s < -1.0f )
+                s = -1.0f;
+            sample = (int) ( s * 32767.0f );
+            out[2 * i] = (byte) sample;
+            out[2 * i + 1] = (byte) ( sample >> 8 );
+        }
+
+        lastMixTime = System.nanoTime() - start;
+        return out;
+    }
+
+/**
+ * Checks whether every channel has nothing to mix.
+ * @return True if there is nothing to mix.
+ */
+    protected boolean voicesIdle()
+    {
+        synchronized( mixLock )
+        {
+            ChannelSoftware[] v = voices;
+            for( int i = 0; i < v.length; i++ )
+            {
+                if( !v[i].idle() )
+                    return false;
+            }
+        }
+        return true;
+    }
+
+/**
+ * Returns whether blocks of silence should be mixed while every channel is
+ * idle.  The output line needs to be kept fed, so this returns true.
+ * @return True to keep mixing while idle.
+ */
+    protected boolean mixWhenIdle()
+    {
+        return true;
+    }
+
+/**
+ * Checks whether any streaming channel is about to run out of queued data
+ * before its source reaches the end.
+ * @return True if a stream is waiting for more data.
+ */
+    protected boolean streamsStarved()
+    {
+        synchronized( mixLock )
+        {
+            ChannelSoftware[] v = voices;
+            for( int i = 0; i < v.length; i++ )
+            {
+                if( v[i].starved() )
+                    return true;
+            }
+        }
+        return false;
+    }
+
+/**
+ * Returns how long it took to mix the most recent block.
+ * @return Mixing time in nanoseconds.
+ */
+    public long getLastMixTime()
+    {
+        return lastMixTime;
+    }
+
+/**
+ * Pre-loads a sound into memory.
+ * @param filenameURL Filename/URL of a sound file to load.
+ * @return True if the sound loaded properly.
+ */
+    @Override
+    public boolean loadSound( FilenameURL filenameURL )
+    {
+        // Make sure the buffer map exists:
+        if( bufferMap == null )
+        {
+            bufferMap = new SoundBufferMap( this );
+            importantMessage( "Buffer Map was null in method 'loadSound'" );
+        }
+
+        // make sure they gave us a filename:
+        if( errorCheck( filenameURL == null,
+                          "Filename/URL not specified in method 'loadSound'" ) )
+            return false;
+
+        // check if it is already loaded:
+        if( bufferMap.containsKey( filenameURL.getFilename() ) )
+            return true;
+
+        ICodec codec = SoundSystemConfig.getCodec( filenameURL.getFilename() );
+        if( errorCheck( codec == null, "No codec found for file '" +
+                                       filenameURL.getFilename() +
+                                       "' in method 'loadSound'" ) )
+            return false;
+        URL url = filenameURL.getURL();
+
+        if( errorCheck( url == null, "Unable to open file '" +
+                                     filenameURL.getFilename() +
+                                     "' in method 'loadSound'" ) )
+            return false;
+
+        SoundBuffer buffer = DecodedCache.readAll( codec, url, false );
+        codec = null;
+        // the mixer reads samples straight out of the array:
+        if( buffer != null )
+            bufferMap.put( filenameURL.getFilename(), buffer.toHeap() );
+        else
+            errorMessage( "Sound buffer null in method 'loadSound'" );
+
+        return true;
+    }
+
+/**
+ * Saves the specified sample data, under the specified identifier.  This
+ * identifier can be later used in place of 'filename' parameters to reference
+ * the sample data.
+ * @param buffer the sample data and audio format to save.
+ * @param identifier What to call the sample.
+ * @return True if there weren't any problems.
+ */
+    @Override
+    public boolean loadSound( SoundBuffer buffer, String identifier )
+    {
+        // Make sure the buffer map exists:
+        if( bufferMap == null )
+        {
+            bufferMap = new SoundBufferMap( this );
+            importantMessage( "Buffer Map was null in method 'loadSound'" );
+        }
+
+        // make sure they gave us an identifier:
+        if( errorCheck(identifier == null,
+                          "Identifier not specified in method 'loadSound'" ) )
+            return false;
+
+        // check if it is already loaded:
+        if( bufferMap.containsKey( identifier ) )
+            return true;
+
+        // save it for later:
+        if( buffer != null )
+            bufferMap.put( identifier, buffer.toHeap() );
+        else
+            errorMessage( "Sound buffer null in method 'loadSound'" );
+
+        return true;
+    }
+
+ /**
+ * Sets the overall volume to the specified value, affecting all sources.
+ * @param value New volume, float value ( 0.0f - 1.0f ).
+ */
+    @Override
+    public void setMasterVolume( float value )
+    {
+        super.setMasterVolume( value );
+
+        Set<String> keys = sourceMap.keySet();
+        Iterator<String> iter = keys.iterator();
+        String sourcename;
+        Source source;
+
+        // loop through and update the volume of all sources:
+        while( iter.hasNext() )
+        {
+            sourcename = iter.next();
+            source = sourceMap.get( sourcename );
+            if( source != null )
+                source.positionChanged();
+        }
+    }
+
+/**
+ * Creates a new source and places it into the source map.
+ * @param priority Setting this to true will prevent other sounds from overriding this one.
+ * @param toStream Setting this to true will load the sound in pieces rather than all at once.
+ * @param toLoop Should this source loop, or play only once.
+ * @param sourcename A unique identifier for this source.  Two sources may not use the same sourcename.
+ * @param filenameURL Filename/URL of the sound file to play at this source.
+ * @param x X position for this source.
+ * @param y Y position for this source.
+ * @param z Z position for this source.
+ * @param attModel Attenuation model to use.
+ * @param distOrRoll Either the fading distance or rolloff factor, depending on the value of "attmodel".
+ */
+    @Override
+    public void newSource( boolean priority, boolean toStream, boolean toLoop,
+                           String sourcename, FilenameURL filenameURL, float x,
+                           float y, float z, int attModel, float distOrRoll )
+    {
+        SoundBuffer buffer = null;
+
+        if( !toStream )
+        {
+            buffer = getSoundBuffer( sourcename, filenameURL );
+            if( buffer == null )
+                return;
+        }
+
+        sourceMap.put( sourcename,
+                       new SourceSoftware( listener, priority, toStream,
+                                           toLoop, sourcename, filenameURL,
+                                           buffer, x, y, z, attModel,
+                                           distOrRoll, false ) );
+    }
+
+/**
+ * Opens a direct line for streaming audio data.
+ * @param audioFormat Format that the data will be in.
+ * @param priority Setting this to true will prevent other sounds from overriding this one.
+ * @param sourcename A unique identifier for this source.  Two sources may not use the same sourcename.
+ * @param x X position for this source.
+ * @param y Y position for this source.
+ * @param z Z position for this source.
+ * @param attModel Attenuation model to use.
+ * @param distOrRoll Either the fading distance or rolloff factor, depending on the value of "attmodel".
+ */
+    @Override
+    public void rawDataStream( AudioFormat audioFormat, boolean priority,
+                               String sourcename, float x, float y,
+                               float z, int attModel, float distOrRoll )
+    {
+        sourceMap.put( sourcename,
+                       new SourceSoftware( listener, audioFormat, priority,
+                                           sourcename, x, y, z, attModel,
+                                           distOrRoll ) );
+    }
+
+/**
+ * Creates and immediately plays a new source.
+ * @param priority Setting this to true will prevent other sounds from overriding this one.
+ * @param toStream Setting this to true will load the sound in pieces rather than all at once.
+ * @param toLoop Should this source loop, or play only once.
+ * @param sourcename A unique identifier for this source.  Two sources may not use the same sourcename.
+ * @param filenameURL Filename/URL of the sound file to play at this source.
+ * @param x X position for this source.
+ * @param y Y position for this source.
+ * @param z Z position for this source.
+ * @param attModel Attenuation model to use.
+ * @param distOrRoll Either the fading distance or rolloff factor, depending on the value of "attmodel".
+ * @param temporary Whether or not this source should be removed after it finishes playing.
+ */
+    @Override
+    public void quickPlay( boolean priority, boolean toStream, boolean toLoop,
+                           String sourcename, FilenameURL filenameURL, float x,
+                           float y, float z, int attModel, float distOrRoll,
+                           boolean temporary )
+    {
+        SoundBuffer buffer = null;
+
+        if( !toStream )
+        {
+            buffer = getSoundBuffer( sourcename, filenameURL );
+            if( buffer == null )
+                return;
+        }
+
+        sourceMap.put( sourcename,
+                       new SourceSoftware( listener, priority, toStream,
+                                           toLoop, sourcename, filenameURL,
+                                           buffer, x, y, z, attModel,
+                                           distOrRoll, temporary ) );
+    }
+
+/**
+ * Looks up the sample data for a new source, loading it if necessary.
+ * @param sourcename Name of the source being created, for error messages.
+ * @param filenameURL Filename/URL of the sound file.
+ * @return The sample data, or null if it could not be loaded.
+ */
+    private SoundBuffer getSoundBuffer( String sourcename,
+                                        FilenameURL filenameURL )
+    {
+        // Grab the audio data for this file:
+        SoundBuffer buffer = bufferMap.get( filenameURL.getFilename() );
+        countBufferLookup( buffer != null );
+        // if not found, try loading it:
+        if( buffer == null )
+        {
+            if( !loadSound( filenameURL ) )
+            {
+                errorMessage( "Source '" + sourcename + "' was not created "
+                              + "because an error occurred while loading "
+                              + filenameURL.getFilename() );
+                return null;
+            }
+            // try and grab the sound buffer again:
+            buffer = bufferMap.get( filenameURL.getFilename() );
+        }
+        // see if it was there this time:
+        if( buffer == null )
+        {
+            errorMessage( "Source '" + sourcename + "' was not created "
+                          + "because audio data was not found for "
+                          + filenameURL.getFilename() );
+        }
+        return buffer;
+    }
+
+/**
+ * Creates sources based on the source map provided.
+ * @param srcMap Sources to copy.
+ */
+    @Override
+    public void copySources( HashMap<String, Source> srcMap )
+    {
+        if( srcMap == null )
+            return;
+        Set<String> keys = srcMap.keySet();
+        Iterator<String> iter = keys.iterator();
+        String sourcename;
+        Source source;
+
+        // Make sure the buffer map exists:
+        if( bufferMap == null )
+        {
+            bufferMap = new SoundBufferMap( this );
+            importantMessage( "Buffer Map was null in method 'copySources'" );
+        }
+
+        // remove any existing sources before starting:
+        sourceMap.clear();
+
+        SoundBuffer buffer;
+        // loop through and copy all the sources:
+        while( iter.hasNext() )
+        {
+            sourcename = iter.next();
+            source = srcMap.get( sourcename );
+            if( source != null )
+            {
+                buffer = null;
+                if( !source.toStream )
+                {
+                    loadSound( source.filenameURL );
+                    buffer = bufferMap.get( source.filenameURL.getFilename() );
+                }
+                if( source.toStream || buffer != null )
+                {
+                    sourceMap.put( sourcename, new SourceSoftware( listener,
+                                                             source, buffer ) );
+                }
+            }
+        }
+    }
+
+/**
+ * Sets the listener's velocity, for use in Doppler effect.
+ * @param x Velocity along world x-axis.
+ * @param y Velocity along world y-axis.
+ * @param z Velocity along world z-axis.
+ */
+    @Override
+    public void setListenerVelocity( float x, float y, float z )
+    {
+        super.setListenerVelocity( x, y, z );
+
+        listenerMoved();
+    }
+
+/**
+ * The Doppler parameters have changed.
+ */
+    @Override
+    public void dopplerChanged()
+    {
+        super.dopplerChanged();
+
+        listenerMoved();
+    }
+
+/**
+ * Sets the sample rate of the mixed output.  Takes effect the next time the
+ * library is initialized.
+ * @param value Sample rate in Hz (default 44100).
+ */
+    public static void setSampleRate( int value )
+    {
+        sampleRate( SET, value );
+    }
+
+/**
+ * Returns the sample rate of the mixed output.
+ * @return Sample rate in Hz.
+ */
+    public static int getSampleRate()
+    {
+        return sampleRate( GET, XXX );
+    }
+
+    private static synchronized int sampleRate( boolean action, int value )
+    {
+        if( action == SET && value > 0 )
+            sampleRate = value;
+        return sampleRate;
+    }
+
+/**
+ * Sets the number of frames mixed at a time.  Smaller blocks lower the
+ * latency, and larger blocks lower the overhead.  Takes effect the next time
+ * the library is initialized.
+ * @param value Frames per block (default 512).
+ */
+    public static void setBlockSize( int value )
+    {
+        blockSize( SET, value );
+    }
+
+/**
+ * Returns the number of frames mixed at a time.
+ * @return Frames per block.
+ */
+    public static int getBlockSize()
+    {
+        return blockSize( GET, XXX );
+    }
+
+    private static synchronized int blockSize( boolean action, int value )
+    {
+        if( action == SET && value > 0 )
+            blockSize = value;
+        return blockSize;
+    }
+
+/**
+ * Sets how many blocks the output line is able to buffer.  Takes effect the
+ * next time the library is initialized.
+ * @param value Number of blocks (default 4).
+ */
+    public static void setLineBlocks( int value )
+    {
+        lineBlocks( SET, value );
+    }
+
+/**
+ * Returns how many blocks the output line is able to buffer.
+ * @return Number of blocks.
+ */
+    public static int getLineBlocks()
+    {
+        return lineBlocks( GET, XXX );
+    }
+
+    private static synchronized int lineBlocks( boolean action, int value )
+    {
+        if( action == SET && value > 0 )
+            lineBlocks = value;
+        return lineBlocks;
+    }
+
+/**
+ * Returns the short title of this library type.
+ * @return A short title.
+ */
+    public static String getTitle()
+    {
+        return "Software Mixer";
+    }
+
+/**
+ * Returns a longer description of this library type.
+ * @return A longer description.
+ */
+    public static String getDescription()
+    {
+        return "Mixes all sources in software, and plays the result on a " +
+               "single Java Sound line.";
+    }
+
+/**
+ * Returns the name of the class.
+ * @return "Library" + library title.
+ */
+    @Override
+    public String getClassName()
+    {
+        return "LibrarySoftware";
+    }
+
+/**
+ * The MixThread class mixes blocks of output one after another, and writes
+ * them out.  Writing to the output blocks until there is room for more, which
+ * keeps the thread in step with playback.
+ */
+    private class MixThread extends SimpleThread
+    {
+        /**
+         * Constructor: Names the thread.
+         */
+        public MixThread()
+        {
+            setName( "LibrarySoftware mixer" );
+        }
+
+        /**
+         * Mixes and writes blocks until the thread is killed.
+         */
+        @Override
+        public void run()
+        {
+            byte[] block;
+            while( !dying() )
+            {
+                if( !mixWhenIdle() && voicesIdle() )
+                {
+                    // nothing to mix, check again shortly:
+                    snooze( 1 );
+                    continue;
+                }
+                block = mixBlock();
+                writeOutput( block, block.length );
+            }
+            cleanup();  // Important!!
+        }
+    }
+
+/**
+ * The LibrarySoftware.Exception class provides library-specific error
+ * information.
+ */
+    public static class Exception extends SoundSystemException
+    {
+        private static final long serialVersionUID = -8583436284930899416L;
+        /**
+         * Global identifier for a problem opening the output line.
+         */
+        public static final int LINE_UNAVAILABLE               = 101;
+
+        /**
+         * Constructor: Generates a standard "unknown error" exception with the
+         * specified message.
+         * @param message A brief description of the problem that occurred.
+         */
+        public Exception( String message )
+        {
+            super( message );
+        }
+
+        /**
+         * Constructor: Generates an exception of the specified type, with the
+         * specified message.
+         * @param message A brief description of the problem that occurred.
+         * @param type Identifier indicating they type of error.
+         */
+        public Exception( String message, int type )
+        {
+            super( message, type );
+        }
+    }
+}
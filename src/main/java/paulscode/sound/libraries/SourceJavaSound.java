@@ -336,26 +336,17 @@ public class SourceJavaSound extends Source
             return false;
         }
 
-        boolean noNextBuffers = false;
-        synchronized( soundSequenceLock )
-        {
-            if( nextBuffers == null || nextBuffers.isEmpty() )
-                noNextBuffers = true;
-        }
+        haltDecodeAhead();
+        LinkedList<SoundBuffer> buffers = takeNextBuffers();
 
         LinkedList<byte[]> preLoadBuffers = new LinkedList<byte[]>();
-        if( nextCodec != null && !noNextBuffers )
+        if( buffers != null )
         {
-            codec = nextCodec;
-            nextCodec = null;
-            synchronized( soundSequenceLock )
+            while( !buffers.isEmpty() )
             {
-                while( !nextBuffers.isEmpty() )
-                {
-                    soundBuffer = nextBuffers.remove( 0 );
-                    if( soundBuffer != null && soundBuffer.audioData != null )
-                        preLoadBuffers.add( soundBuffer.audioData );
-                }
+                soundBuffer = buffers.remove( 0 );
+                if( soundBuffer != null && soundBuffer.audioData != null )
+                    preLoadBuffers.add( soundBuffer.audioData );
             }
         }
         else
@@ -364,7 +355,7 @@ public class SourceJavaSound extends Source
 
             for( int i = 0; i < SoundSystemConfig.getNumberStreamingBuffers(); i++ )
             {
-                soundBuffer = codec.read();
+                soundBuffer = decode( codec );
 
                 if( soundBuffer == null || soundBuffer.audioData == null )
                     break;
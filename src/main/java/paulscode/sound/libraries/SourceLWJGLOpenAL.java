@@ -263,6 +263,7 @@ public class SourceLWJGLOpenAL extends Source
             if( soundSequenceQueue != null && soundSequenceQueue.size() > 0 )
             {
                 filenameURL = soundSequenceQueue.remove( 0 );
+                haltDecodeAhead();
                 if( codec != null )
                     codec.cleanup();
                 codec = SoundSystemConfig.getCodec( filenameURL.getFilename() );
@@ -684,11 +685,12 @@ public class SourceLWJGLOpenAL extends Source
         if( codec == null )
             return false;
         
+        haltDecodeAhead();
         codec.initialize( filenameURL.getURL() );
         LinkedList<byte[]> preLoadBuffers = new LinkedList<byte[]>();
         for( int i = 0; i < SoundSystemConfig.getNumberStreamingBuffers(); i++ )
         {
-            soundBuffer = codec.read();
+            soundBuffer = decode( codec );
 
             if( soundBuffer == null || soundBuffer.audioData == null )
                 break;
@@ -0,0 +1,113 @@
+package paulscode.sound.libraries;
+
+import javax.sound.sampled.AudioFormat;
+
+import paulscode.sound.FilenameURL;
+import paulscode.sound.ListenerData;
+import paulscode.sound.SoundBuffer;
+import paulscode.sound.Source;
+
+/**
+ * The SourceSoftware class is a source played by the
+ * {@link paulscode.sound.libraries.LibrarySoftware LibrarySoftware} mixer.
+ * It works out gain, pan and pitch (including the Doppler effect) exactly like
+ * {@link paulscode.sound.libraries.SourceJavaSound SourceJavaSound}, and hands
+ * the results to its {@link paulscode.sound.libraries.ChannelSoftware
+ * ChannelSoftware}, which applies them while mixing.
+ *<br><br>
+ *<b><i>    SoundSystem LibrarySoftware License:</b></i><br><b><br>
+ *    You are free to use this library for any purpose, commercial or otherwise.
+ *    You may modify this library or source code, and distribute it any way you
+ *    like, provided the following conditions are met:
+ *<br>
+ *    1) You may not falsely claim to be the author of this library or any
+ *    unmodified portion of it.
+ *<br>
+ *    2) You may not copyright this library or a modified version of it and then
+ *    sue me for copyright infringement.
+ *<br>
+ *    3) If you modify the source code, you must clearly document the changes
+ *    made before redistributing the modified source code, so other users know
+ *    it is not the original code.
+ *<br>
+ *    4) You are not required to give me credit for this library in any derived
+ *    work, but if you do, you must also mention my website:
+ *    http://www.paulscode.com
+ *<br>
+ *    5) I the author will not be responsible for any damages (physical,
+ *    financial, or otherwise) caused by the use if this library or any part
+ *    of it.
+ *<br>
+ *    6) I the author do not guarantee, warrant, or make any representations,
+ *    either expressed or implied, regarding the use of this library or any
+ *    part of it.
+ * <br><br>
+ *    Author: Paul Lamb
+ * <br>
+ *    http://www.paulscode.com
+ * </b>
+ */
+public class SourceSoftware extends SourceJavaSound
+{
+/**
+ * Constructor:  Creates a new source using the specified parameters.
+ * @param listener Handle to information about the listener.
+ * @param priority Setting this to true will prevent other sounds from overriding this one.
+ * @param toStream Setting this to true will create a streaming source.
+ * @param toLoop Should this source loop, or play only once.
+ * @param sourcename A unique identifier for this source.  Two sources may not use the same sourcename.
+ * @param filenameURL Filename/URL of the sound file to play at this source.
+ * @param soundBuffer Sound buffer to use if creating a new normal source.
+ * @param x X position for this source.
+ * @param y Y position for this source.
+ * @param z Z position for this source.
+ * @param attModel Attenuation model to use.
+ * @param distOrRoll Either the fading distance or rolloff factor, depending on the value of 'att'.
+ * @param temporary Whether or not to remove this source after it finishes playing.
+ */
+    public SourceSoftware( ListenerData listener, boolean priority,
+                           boolean toStream, boolean toLoop, String sourcename,
+                           FilenameURL filenameURL, SoundBuffer soundBuffer,
+                           float x, float y, float z, int attModel,
+                           float distOrRoll, boolean temporary )
+    {
+        super( listener, priority, toStream, toLoop, sourcename, filenameURL,
+               soundBuffer, x, y, z, attModel, distOrRoll, temporary );
+        libraryType = LibrarySoftware.class;
+    }
+
+/**
+ * Constructor:  Creates a new source matching the specified source.
+ * @param listener Handle to information about the listener.
+ * @param old Source to copy information from.
+ * @param soundBuffer Sound buffer to use if creating a new normal source.
+ */
+    public SourceSoftware( ListenerData listener, Source old,
+                           SoundBuffer soundBuffer )
+    {
+        super( listener, old, soundBuffer );
+        libraryType = LibrarySoftware.class;
+    }
+
+/**
+ * Constructor:  Creates a new streaming source that will be directly fed with
+ * raw audio data.
+ * @param listener Handle to information about the listener.
+ * @param audioFormat Format that the data will be in.
+ * @param priority Setting this to true will prevent other sounds from overriding this one.
+ * @param sourcename A unique identifier for this source.  Two sources may not use the same sourcename.
+ * @param x X position for this source.
+ * @param y Y position for this source.
+ * @param z Z position for this source.
+ * @param attModel Attenuation model to use.
+ * @param distOrRoll Either the fading distance or rolloff factor, depending on the value of 'att'.
+ */
+    public SourceSoftware( ListenerData listener, AudioFormat audioFormat,
+                           boolean priority, String sourcename, float x,
+                           float y, float z, int attModel, float distOrRoll )
+    {
+        super( listener, audioFormat, priority, sourcename, x, y, z, attModel,
+               distOrRoll );
+        libraryType = LibrarySoftware.class;
+    }
+}
@@ -0,0 +1,138 @@
+package paulscode.sound;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that queueing the frequent per-frame commands does not allocate on the
+ * calling thread once the command pool has warmed up, both one command at a
+ * time and between beginUpdate() and commitUpdate().
+ */
+public class CommandAllocationTest
+{
+/**
+ * Number of commands queued while measuring.
+ */
+    private static final int COMMANDS = 20000;
+
+/**
+ * Bytes the calling thread may allocate while queueing all of the commands.
+ * A single new CommandObject per call would be several megabytes.
+ */
+    private static final long ALLOWANCE = COMMANDS;
+
+/**
+ * Command queue capacity while testing, small enough that the command pool
+ * fills up during the warm-up.
+ */
+    private static final int QUEUE_CAPACITY = 256;
+
+    private int queueCapacity;
+
+    private SoundSystem soundSystem;
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() throws SoundSystemException
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue( bean instanceof com.sun.management.ThreadMXBean );
+        threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue( threads.isThreadAllocatedMemorySupported() );
+        threads.setThreadAllocatedMemoryEnabled( true );
+
+        queueCapacity = SoundSystemConfig.getCommandQueueCapacity();
+        SoundSystemConfig.setCommandQueueCapacity( QUEUE_CAPACITY );
+        soundSystem = new SoundSystem( Library.class );
+        soundSystem.rawDataStream( new AudioFormat( 44100, 16, 1, true,
+                                                    false ),
+                                   false, "source", 0, 0, 0,
+                                   SoundSystemConfig.ATTENUATION_NONE, 0 );
+    }
+
+    @After
+    public void tearDown()
+    {
+        if( soundSystem != null )
+            soundSystem.cleanup();
+        if( queueCapacity > 0 )
+            SoundSystemConfig.setCommandQueueCapacity( queueCapacity );
+    }
+
+    @Test
+    public void setPositionDoesNotAllocate()
+    {
+        for( int i = 0; i < COMMANDS; i++ )
+        {
+            soundSystem.setPosition( "source", i, 0, 0 );
+        }
+
+        long before = allocatedBytes();
+        for( int i = 0; i < COMMANDS; i++ )
+        {
+            soundSystem.setPosition( "source", i, 0, 0 );
+        }
+        long allocated = allocatedBytes() - before;
+
+        assertTrue( "setPosition allocated " + allocated + " bytes",
+                    allocated < ALLOWANCE );
+    }
+
+    @Test
+    public void updateBatchDoesNotAllocate() throws InterruptedException
+    {
+        for( int i = 0; i < COMMANDS / 10; i++ )
+        {
+            frame( i );
+        }
+        // let the command thread hand back the last batch:
+        Thread.sleep( 100 );
+
+        long allocated = 0;
+        for( int i = 0; i < COMMANDS / 10; i++ )
+        {
+            long before = allocatedBytes();
+            frame( i );
+            allocated += allocatedBytes() - before;
+            // give the command thread a chance to take the batch, as it would
+            // between frames:
+            Thread.sleep( 0, 100000 );
+        }
+
+        assertTrue( "beginUpdate/commitUpdate allocated " + allocated
+                    + " bytes", allocated < ALLOWANCE );
+    }
+
+/**
+ * Queues one frame's worth of updates.
+ * @param i Frame number.
+ */
+    private void frame( int i )
+    {
+        soundSystem.beginUpdate();
+        soundSystem.setListenerPosition( i, 0, 0 );
+        for( int j = 0; j < 9; j++ )
+        {
+            soundSystem.setPosition( "source", i, j, 0 );
+        }
+        soundSystem.commitUpdate();
+    }
+
+/**
+ * Returns the number of bytes the calling thread has allocated so far.
+ * @return Allocated bytes.
+ */
+    private long allocatedBytes()
+    {
+        return threads.getThreadAllocatedBytes(
+                                        Thread.currentThread().getId() );
+    }
+}
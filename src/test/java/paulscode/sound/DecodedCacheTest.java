@@ -0,0 +1,92 @@
+package paulscode.sound;
+
+import java.io.File;
+import java.net.URL;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import paulscode.sound.codecs.CodecWav;
+
+/**
+ * Checks when DecodedCache reuses an entry and when it decodes the file again.
+ */
+public class DecodedCacheTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private int maxFileSize;
+
+    private File wav;
+
+    private URL url;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        maxFileSize = SoundSystemConfig.getMaxFileSize();
+        SoundSystemConfig.setDecodedCacheDirectory( folder.newFolder() );
+        wav = folder.newFile( "tone.wav" );
+        TestWav.sine( wav, 4000, 10000 );
+        url = wav.toURI().toURL();
+    }
+
+    @After
+    public void tearDown()
+    {
+        SoundSystemConfig.setDecodedCacheDirectory( null );
+        SoundSystemConfig.setMaxFileSize( maxFileSize );
+    }
+
+    @Test
+    public void secondLoadIsAHit()
+    {
+        assertEquals( 8000, load() );
+        long hits = DecodedCache.getHits();
+        assertEquals( 8000, load() );
+        assertEquals( hits + 1, DecodedCache.getHits() );
+    }
+
+    @Test
+    public void maxFileSizeChangesTheEntry()
+    {
+        // (codecs which truncate files would decode something different)
+        assertEquals( 8000, load() );
+        SoundSystemConfig.setMaxFileSize( 2000 );
+        long misses = DecodedCache.getMisses();
+        load();
+        assertEquals( misses + 1, DecodedCache.getMisses() );
+    }
+
+    @Test
+    public void changedFileIsDecodedAgain() throws Exception
+    {
+        assertEquals( 8000, load() );
+        TestWav.sine( wav, 6000, 10000 );
+        long misses = DecodedCache.getMisses();
+        assertEquals( 12000, load() );
+        assertEquals( misses + 1, DecodedCache.getMisses() );
+
+        long hits = DecodedCache.getHits();
+        assertEquals( 12000, load() );
+        assertEquals( hits + 1, DecodedCache.getHits() );
+    }
+
+/**
+ * Loads the test file through the cache.
+ * @return Number of bytes of sample data.
+ */
+    private int load()
+    {
+        SoundBuffer buffer = DecodedCache.readAll( new CodecWav(), url,
+                                                   false );
+        assertNotNull( buffer );
+        return buffer.size();
+    }
+}
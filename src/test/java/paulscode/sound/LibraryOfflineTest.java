@@ -0,0 +1,167 @@
+package paulscode.sound;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import paulscode.sound.codecs.CodecWav;
+import paulscode.sound.libraries.LibraryOffline;
+import paulscode.sound.libraries.LibrarySoftware;
+
+/**
+ * Renders a wave file through the offline library as fast as possible, and
+ * checks what was mixed and the WAV file written.
+ */
+public class LibraryOfflineTest
+{
+/**
+ * Length of the rendered tone, in seconds.  Much longer than rendering it
+ * should take.
+ */
+    private static final int SECONDS = 10;
+
+/**
+ * Peak sample value of the rendered tone.
+ */
+    private static final int AMPLITUDE = 10000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File output;
+
+    private SoundSystem soundSystem;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        SoundSystemConfig.setCodec( "wav", CodecWav.class );
+        output = folder.newFile( "out.wav" );
+        LibraryOffline.setOutputFile( output );
+        LibraryOffline.setRealTime( false );
+        soundSystem = new SoundSystem( LibraryOffline.class );
+    }
+
+    @After
+    public void tearDown()
+    {
+        if( soundSystem != null )
+            soundSystem.cleanup();
+        LibraryOffline.setOutputFile( null );
+    }
+
+    @Test
+    public void rendersFasterThanRealTime() throws Exception
+    {
+        File file = folder.newFile( "tone.wav" );
+        TestWav.sine( file, TestWav.SAMPLE_RATE * SECONDS, AMPLITUDE );
+        URL url = file.toURI().toURL();
+
+        long start = System.currentTimeMillis();
+        soundSystem.newSource( false, "tone", url, "tone.wav", false, 0, 0, 0,
+                               SoundSystemConfig.ATTENUATION_NONE, 0 );
+        soundSystem.play( "tone" );
+
+        LibraryOffline library = (LibraryOffline) soundSystem.soundLibrary;
+        long frames = (long) LibrarySoftware.getSampleRate() * SECONDS;
+        long deadline = start + SECONDS * 1000 / 2;
+        while( library.getRenderedFrames() < frames
+               && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+        assertTrue( "Rendered " + library.getRenderedFrames() + " of "
+                    + frames + " frames in real time",
+                    library.getRenderedFrames() >= frames );
+
+        int peak = library.getPeak();
+        assertTrue( "Peak " + peak, peak > AMPLITUDE / 2 );
+        assertTrue( "Peak " + peak, peak <= AMPLITUDE + 1 );
+
+        soundSystem.cleanup();
+        soundSystem = null;
+        long rendered = library.getRenderedFrames();
+
+        RandomAccessFile wav = new RandomAccessFile( output, "r" );
+        try
+        {
+            byte[] header = new byte[44];
+            wav.readFully( header );
+            assertEquals( "RIFF", string( header, 0 ) );
+            assertEquals( wav.length() - 8, integer( header, 4, 4 ) );
+            assertEquals( "WAVE", string( header, 8 ) );
+            assertEquals( "fmt ", string( header, 12 ) );
+            assertEquals( 16, integer( header, 16, 4 ) );
+            assertEquals( 1, integer( header, 20, 2 ) );
+            assertEquals( 2, integer( header, 22, 2 ) );
+            assertEquals( LibrarySoftware.getSampleRate(),
+                          integer( header, 24, 4 ) );
+            assertEquals( LibrarySoftware.getSampleRate() * 4,
+                          integer( header, 28, 4 ) );
+            assertEquals( 4, integer( header, 32, 2 ) );
+            assertEquals( 16, integer( header, 34, 2 ) );
+            assertEquals( "data", string( header, 36 ) );
+            assertEquals( rendered * 4, integer( header, 40, 4 ) );
+            assertEquals( wav.length() - 44, integer( header, 40, 4 ) );
+        }
+        finally
+        {
+            wav.close();
+        }
+    }
+
+    @Test
+    public void onlySourcesCountBufferLookups() throws Exception
+    {
+        File file = folder.newFile( "click.wav" );
+        TestWav.sine( file, TestWav.SAMPLE_RATE / 10, AMPLITUDE );
+        URL url = file.toURI().toURL();
+        Library library = soundSystem.soundLibrary;
+
+        // Loading the same sound twice only checks whether it is loaded:
+        assertTrue( soundSystem.loadSound( url, "click.wav" )
+                               .get( 10, TimeUnit.SECONDS ) );
+        assertTrue( soundSystem.loadSound( url, "click.wav" )
+                               .get( 10, TimeUnit.SECONDS ) );
+        assertEquals( 0, library.getBufferHits() );
+        assertEquals( 0, library.getBufferMisses() );
+
+        soundSystem.newSource( false, "a", url, "click.wav", false, 0, 0, 0,
+                               SoundSystemConfig.ATTENUATION_NONE, 0 );
+        soundSystem.newSource( false, "b", url, "click.wav", false, 0, 0, 0,
+                               SoundSystemConfig.ATTENUATION_NONE, 0 );
+        long deadline = System.currentTimeMillis() + 5000;
+        while( library.getBufferHits() < 2
+               && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+        assertEquals( 2, library.getBufferHits() );
+        assertEquals( 0, library.getBufferMisses() );
+    }
+
+    private static String string( byte[] b, int offset )
+    {
+        return new String( b, offset, 4, StandardCharsets.US_ASCII );
+    }
+
+    private static long integer( byte[] b, int offset, int size )
+    {
+        long value = 0;
+        for( int i = size - 1; i >= 0; i-- )
+        {
+            value = ( value << 8 ) | ( b[offset + i] & 0xff );
+        }
+        return value;
+    }
+}
@@ -0,0 +1,232 @@
+package paulscode.sound;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import paulscode.sound.codecs.CodecWav;
+import paulscode.sound.libraries.LibraryOffline;
+
+/**
+ * Checks that commands which use a sound file which is still being loaded wait
+ * for it without holding up the command thread.
+ */
+public class SoundLoaderTest
+{
+/**
+ * Released by the test to let SlowCodec finish decoding.
+ */
+    private static volatile CountDownLatch decodeGate;
+
+/**
+ * Number of files SlowCodec has decoded.
+ */
+    private static final AtomicInteger decodes = new AtomicInteger( 0 );
+
+/**
+ * The SlowCodec class decodes wave files, but not until the test lets it.
+ */
+    public static class SlowCodec extends CodecWav
+    {
+        @Override
+        public SoundBuffer readAll()
+        {
+            try
+            {
+                decodeGate.await( 10, TimeUnit.SECONDS );
+            }
+            catch( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+            }
+            decodes.incrementAndGet();
+            return super.readAll();
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SoundSystem soundSystem;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        decodeGate = new CountDownLatch( 1 );
+        decodes.set( 0 );
+        SoundSystemConfig.setCodec( "slow", SlowCodec.class );
+    }
+
+    @After
+    public void tearDown()
+    {
+        decodeGate.countDown();
+        if( soundSystem != null )
+            soundSystem.cleanup();
+    }
+
+    @Test
+    public void sourceWaitsForLoadWithoutBlocking() throws Exception
+    {
+        soundSystem = new SoundSystem( Library.class );
+        File file = folder.newFile( "tone.slow" );
+        TestWav.sine( file, TestWav.SAMPLE_RATE / 10, 10000 );
+        URL url = file.toURI().toURL();
+
+        CompletableFuture<Boolean> loaded = soundSystem.loadSound( url,
+                                                              "tone.slow" );
+        soundSystem.newSource( false, "tone", url, "tone.slow", false, 0, 0,
+                               0, SoundSystemConfig.ATTENUATION_NONE, 0 );
+        soundSystem.setPosition( "tone", 1, 2, 3 );
+        soundSystem.rawDataStream( new AudioFormat( 22050, 16, 1, true,
+                                                    false ),
+                                   false, "other", 0, 0, 0,
+                                   SoundSystemConfig.ATTENUATION_NONE, 0 );
+
+        // The command thread keeps going while the file is decoded:
+        assertTrue( "command thread blocked by the load",
+                    waitForSource( "other" ) );
+        assertNull( soundSystem.getStateSnapshot().getSourceState( "tone" ) );
+
+        decodeGate.countDown();
+        assertTrue( loaded.get( 10, TimeUnit.SECONDS ) );
+        assertTrue( "source never created", waitForSource( "tone" ) );
+
+        // Commands queued after the source was created wait along with it:
+        SourceState tone = null;
+        long deadline = System.currentTimeMillis() + 5000;
+        while( System.currentTimeMillis() < deadline )
+        {
+            tone = soundSystem.getStateSnapshot().getSourceState( "tone" );
+            if( tone != null && tone.z == 3 )
+                break;
+            Thread.sleep( 10 );
+        }
+        assertEquals( 1, tone.x, 0 );
+        assertEquals( 2, tone.y, 0 );
+        assertEquals( 3, tone.z, 0 );
+    }
+
+    @Test
+    public void loadedSoundIsNotDecodedAgain() throws Exception
+    {
+        soundSystem = new SoundSystem( LibraryOffline.class );
+        File file = folder.newFile( "tone.slow" );
+        TestWav.sine( file, TestWav.SAMPLE_RATE / 10, 10000 );
+        URL url = file.toURI().toURL();
+        decodeGate.countDown();
+        assertTrue( soundSystem.loadSound( url, "tone.slow" )
+                               .get( 10, TimeUnit.SECONDS ) );
+        assertEquals( 1, decodes.get() );
+
+        // Loading it again finds it, and sources don't wait for anything:
+        decodeGate = new CountDownLatch( 1 );
+        CompletableFuture<Boolean> loaded = soundSystem.loadSound( url,
+                                                              "tone.slow" );
+        soundSystem.newSource( false, "tone", url, "tone.slow", false, 0, 0,
+                               0, SoundSystemConfig.ATTENUATION_NONE, 0 );
+        assertTrue( loaded.get( 10, TimeUnit.SECONDS ) );
+        assertTrue( "source held up by the load", waitForSource( "tone" ) );
+        assertEquals( 1, decodes.get() );
+    }
+
+    @Test
+    public void loadedSoundsDoNotCountTowardsLimit() throws Exception
+    {
+        soundSystem = new SoundSystem( LibraryOffline.class );
+        File loaded = soundFile( "loaded.slow" );
+        File missing = soundFile( "missing.slow" );
+        try
+        {
+            decodeGate.countDown();
+            assertTrue( soundSystem.loadSound( "loaded.slow" )
+                                   .get( 10, TimeUnit.SECONDS ) );
+
+            // Had the loaded sound counted, the missing one would be skipped:
+            final List<String> reported = new ArrayList<String>();
+            long limit = SoundSystemConfig.getLoadMemoryLimit();
+            SoundSystemConfig.setLoadMemoryLimit( 1 );
+            try
+            {
+                CompletableFuture<Boolean> done = soundSystem.loadSounds(
+                    Arrays.asList( "loaded.slow", "missing.slow" ),
+                    new ILoadListener()
+                    {
+                        @Override
+                        public void soundLoaded( String filename,
+                                                 boolean success, int finished,
+                                                 int total )
+                        {
+                            if( success )
+                                reported.add( filename );
+                        }
+                    } );
+                assertTrue( done.get( 10, TimeUnit.SECONDS ) );
+            }
+            finally
+            {
+                SoundSystemConfig.setLoadMemoryLimit( limit );
+            }
+            assertEquals( Arrays.asList( "loaded.slow", "missing.slow" ),
+                          reported );
+            assertEquals( 2, decodes.get() );
+        }
+        finally
+        {
+            loaded.delete();
+            missing.delete();
+        }
+    }
+
+/**
+ * Writes a short tone where SoundSystem looks for sound files by name, in the
+ * sound files package on the class path.
+ * @param filename Name of the file.
+ * @return File written.
+ */
+    private File soundFile( String filename ) throws Exception
+    {
+        File root = new File( getClass().getClassLoader().getResource( "" )
+                                                         .toURI() );
+        File file = new File( root, SoundSystemConfig.getSoundFilesPackage()
+                                    + filename );
+        file.getParentFile().mkdirs();
+        TestWav.sine( file, TestWav.SAMPLE_RATE / 10, 10000 );
+        return file;
+    }
+
+/**
+ * Waits for a source to show up in the state snapshot.
+ * @param sourcename Source to wait for.
+ * @return False if it did not show up within a few seconds.
+ */
+    private boolean waitForSource( String sourcename )
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while( System.currentTimeMillis() < deadline )
+        {
+            if( soundSystem.getStateSnapshot().getSourceState( sourcename )
+                != null )
+                return true;
+            Thread.sleep( 10 );
+        }
+        return false;
+    }
+}
@@ -0,0 +1,79 @@
+package paulscode.sound;
+
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks when SourceHandles releases the handles it has assigned.
+ */
+public class SourceHandlesTest
+{
+    private SourceHandles handles;
+
+    private HashMap<String, Source> sourceMap;
+
+    @Before
+    public void setUp()
+    {
+        handles = new SourceHandles();
+        sourceMap = new HashMap<String, Source>();
+    }
+
+    @Test
+    public void createdSourceIsReleasedWhenRemoved()
+    {
+        int handle = handles.assignNew( "a" );
+        sourceMap.put( "a", null );
+        handles.created( "a" );
+        handles.releaseRemoved( sourceMap );
+        assertEquals( "a", handles.sourcename( handle ) );
+
+        sourceMap.remove( "a" );
+        handles.releaseRemoved( sourceMap );
+        assertNull( handles.sourcename( handle ) );
+    }
+
+    @Test
+    public void pendingSourceIsKept()
+    {
+        int handle = handles.assignNew( "a" );
+        handles.releaseRemoved( sourceMap );
+        handles.releaseRemoved( sourceMap );
+        handles.releaseRemoved( sourceMap );
+        assertEquals( "a", handles.sourcename( handle ) );
+    }
+
+    @Test
+    public void handleForExistingSourceIsReleasedWhenRemoved()
+    {
+        // for example, a temporary source created by quickPlay:
+        sourceMap.put( "temp", null );
+        int handle = handles.assign( "temp" );
+        handles.releaseRemoved( sourceMap );
+        assertEquals( "temp", handles.sourcename( handle ) );
+
+        sourceMap.remove( "temp" );
+        handles.releaseRemoved( sourceMap );
+        assertNull( handles.sourcename( handle ) );
+    }
+
+    @Test
+    public void handleForMissingSourceIsReleased()
+    {
+        int handle = handles.assign( "nothing" );
+        handles.releaseRemoved( sourceMap );
+        assertEquals( "nothing", handles.sourcename( handle ) );
+        handles.releaseRemoved( sourceMap );
+        assertNull( handles.sourcename( handle ) );
+
+        // the slot is reused with a new generation:
+        int reused = handles.assign( "other" );
+        assertNotEquals( handle, reused );
+        assertNull( handles.sourcename( handle ) );
+    }
+}
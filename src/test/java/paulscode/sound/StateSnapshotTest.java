@@ -0,0 +1,101 @@
+package paulscode.sound;
+
+import javax.sound.sampled.AudioFormat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the command thread only publishes a new state snapshot when the
+ * state changes, and keeps the records of sources which did not change.
+ */
+public class StateSnapshotTest
+{
+    private SoundSystem soundSystem;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        soundSystem = new SoundSystem( Library.class );
+    }
+
+    @After
+    public void tearDown()
+    {
+        if( soundSystem != null )
+            soundSystem.cleanup();
+    }
+
+    @Test
+    public void unchangedStateIsNotPublishedAgain() throws Exception
+    {
+        newSource( "a" );
+        newSource( "b" );
+        assertTrue( "source never created", waitForSource( "b" ) );
+
+        StateSnapshot snapshot = soundSystem.getStateSnapshot();
+        assertFalse( soundSystem.publishState() );
+        assertSame( snapshot, soundSystem.getStateSnapshot() );
+
+        soundSystem.setVolume( "b", 0.5f );
+        long deadline = System.currentTimeMillis() + 5000;
+        while( soundSystem.getStateSnapshot() == snapshot
+               && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+        StateSnapshot changed = soundSystem.getStateSnapshot();
+        assertNotSame( snapshot, changed );
+        assertSame( snapshot.getSourceState( "a" ),
+                    changed.getSourceState( "a" ) );
+        assertNotSame( snapshot.getSourceState( "b" ),
+                       changed.getSourceState( "b" ) );
+
+        soundSystem.removeSource( "a" );
+        deadline = System.currentTimeMillis() + 5000;
+        while( soundSystem.getStateSnapshot().getSourceState( "a" ) != null
+               && System.currentTimeMillis() < deadline )
+        {
+            Thread.sleep( 10 );
+        }
+        assertNotNull( soundSystem.getStateSnapshot().getSourceState( "b" ) );
+        assertSame( changed.getSourceState( "b" ),
+                    soundSystem.getStateSnapshot().getSourceState( "b" ) );
+        assertNull( soundSystem.getStateSnapshot().getSourceState( "a" ) );
+    }
+
+    private void newSource( String sourcename )
+    {
+        soundSystem.rawDataStream( new AudioFormat( 22050, 16, 1, true,
+                                                    false ),
+                                   false, sourcename, 0, 0, 0,
+                                   SoundSystemConfig.ATTENUATION_NONE, 0 );
+    }
+
+/**
+ * Waits for a source to show up in the state snapshot.
+ * @param sourcename Source to wait for.
+ * @return False if it did not show up within a few seconds.
+ */
+    private boolean waitForSource( String sourcename )
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+        while( System.currentTimeMillis() < deadline )
+        {
+            StateSnapshot snapshot = soundSystem.getStateSnapshot();
+            if( snapshot != null
+                && snapshot.getSourceState( sourcename ) != null )
+                return true;
+            Thread.sleep( 10 );
+        }
+        return false;
+    }
+}
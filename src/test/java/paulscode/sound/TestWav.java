@@ -0,0 +1,59 @@
+package paulscode.sound;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes small PCM wave files for the tests to load and play.
+ */
+public class TestWav
+{
+/**
+ * Sample rate of the files written.
+ */
+    public static final int SAMPLE_RATE = 22050;
+
+/**
+ * Writes a 16-bit mono sine wave.
+ * @param file File to write.
+ * @param frames Number of sample frames.
+ * @param amplitude Peak sample value (at most 32767).
+ * @throws IOException If the file could not be written.
+ */
+    public static void sine( File file, int frames, int amplitude )
+        throws IOException
+    {
+        DataOutputStream out = new DataOutputStream( new FileOutputStream(
+                                                                     file ) );
+        try
+        {
+            int dataSize = frames * 2;
+            out.writeBytes( "RIFF" );
+            out.writeInt( Integer.reverseBytes( 36 + dataSize ) );
+            out.writeBytes( "WAVE" );
+            out.writeBytes( "fmt " );
+            out.writeInt( Integer.reverseBytes( 16 ) );
+            out.writeShort( Short.reverseBytes( (short) 1 ) );  // PCM
+            out.writeShort( Short.reverseBytes( (short) 1 ) );  // mono
+            out.writeInt( Integer.reverseBytes( SAMPLE_RATE ) );
+            out.writeInt( Integer.reverseBytes( SAMPLE_RATE * 2 ) );
+            out.writeShort( Short.reverseBytes( (short) 2 ) );
+            out.writeShort( Short.reverseBytes( (short) 16 ) );
+            out.writeBytes( "data" );
+            out.writeInt( Integer.reverseBytes( dataSize ) );
+            for( int i = 0; i < frames; i++ )
+            {
+                short sample = (short) Math.round( amplitude
+                               * Math.sin( 2 * Math.PI * 440 * i
+                                           / SAMPLE_RATE ) );
+                out.writeShort( Short.reverseBytes( sample ) );
+            }
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package paulscode.sound.libraries;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.LinkedList;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.openal.AL10;
+
+import paulscode.sound.SoundSystemConfig;
+
+/**
+ * Streams through a ChannelLWJGLOpenAL with OpenAL replaced by a fake source
+ * queue, and checks that once the stream has warmed up, neither OpenAL buffer
+ * names, direct buffers, nor heap memory are allocated per buffer.
+ */
+public class ChannelLWJGLOpenALTest
+{
+/**
+ * Number of stream buffers queued while measuring.
+ */
+    private static final int BUFFERS = 10000;
+
+/**
+ * Number of stream buffers kept queued.
+ */
+    private static final int QUEUED = 3;
+
+/**
+ * Bytes the streaming thread may allocate while queueing all of the buffers.
+ * A new direct buffer per call would be tens of megabytes.
+ */
+    private static final long ALLOWANCE = BUFFERS;
+
+    private final byte[] data = new byte[4096];
+
+    private FakeAL al;
+
+    private ChannelLWJGLOpenAL channel;
+
+    @Before
+    public void setUp()
+    {
+        IntBuffer source = BufferUtils.createIntBuffer( 1 );
+        source.put( 0, 1 );
+        al = new FakeAL();
+        channel = new ChannelLWJGLOpenAL( SoundSystemConfig.TYPE_STREAMING,
+                                          source );
+        channel.al = al;
+        channel.setFormat( AL10.AL_FORMAT_MONO16, 22050 );
+    }
+
+    @Test
+    public void queueBufferReusesBuffers()
+    {
+        assertTrue( channel.preLoadBuffers( preLoad() ) );
+        int allocations = channel.getNativeAllocations();
+
+        for( int i = 0; i < BUFFERS; i++ )
+        {
+            al.processed = 1;
+            assertTrue( channel.queueBuffer( data ) );
+        }
+
+        long before = allocatedBytes();
+        for( int i = 0; i < BUFFERS; i++ )
+        {
+            al.processed = 1;
+            channel.queueBuffer( data );
+        }
+        long allocated = allocatedBytes() - before;
+
+        assertEquals( QUEUED, al.generated );
+        assertEquals( allocations, channel.getNativeAllocations() );
+        assertTrue( "Allocated " + allocated + " bytes",
+                    allocated < ALLOWANCE );
+    }
+
+    @Test
+    public void feedRawAudioDataReusesBuffers()
+    {
+        for( int i = 0; i < BUFFERS; i++ )
+        {
+            feed();
+        }
+        int allocations = channel.getNativeAllocations();
+
+        long before = allocatedBytes();
+        for( int i = 0; i < BUFFERS; i++ )
+        {
+            feed();
+        }
+        long allocated = allocatedBytes() - before;
+
+        assertTrue( al.generated <= QUEUED + 1 );
+        assertEquals( allocations, channel.getNativeAllocations() );
+        assertTrue( "Allocated " + allocated + " bytes",
+                    allocated < ALLOWANCE );
+    }
+
+    @Test
+    public void flushKeepsBufferNames()
+    {
+        assertTrue( channel.preLoadBuffers( preLoad() ) );
+        channel.close();
+        assertEquals( 0, al.queued );
+
+        assertTrue( channel.preLoadBuffers( preLoad() ) );
+        assertEquals( QUEUED, al.generated );
+    }
+
+/**
+ * Feeds one buffer of raw data, once the earliest queued buffer has played.
+ */
+    private void feed()
+    {
+        if( al.queued >= QUEUED )
+            al.processed = 1;
+        assertTrue( channel.feedRawAudioData( data ) >= 0 );
+    }
+
+    private LinkedList<byte[]> preLoad()
+    {
+        LinkedList<byte[]> buffers = new LinkedList<byte[]>();
+        for( int i = 0; i < QUEUED; i++ )
+        {
+            buffers.add( data );
+        }
+        return buffers;
+    }
+
+    private long allocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue( bean instanceof com.sun.management.ThreadMXBean );
+        com.sun.management.ThreadMXBean threads =
+                                       (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue( threads.isThreadAllocatedMemorySupported() );
+        threads.setThreadAllocatedMemoryEnabled( true );
+        return threads.getThreadAllocatedBytes(
+                                           Thread.currentThread().getId() );
+    }
+
+/**
+ * Stands in for OpenAL with a single source, which plays whatever it is told
+ * has been processed.
+ */
+    private static class FakeAL extends ChannelLWJGLOpenAL.ALCalls
+    {
+        private final int[] queue = new int[64];
+
+        int queued = 0;
+
+        int processed = 0;
+
+        int generated = 0;
+
+        @Override
+        int alGetError()
+        {
+            return AL10.AL_NO_ERROR;
+        }
+
+        @Override
+        void alGenBuffers( IntBuffer buffers )
+        {
+            for( int i = buffers.position(); i < buffers.limit(); i++ )
+            {
+                buffers.put( i, ++generated );
+            }
+        }
+
+        @Override
+        void alDeleteBuffers( IntBuffer buffers )
+        {}
+
+        @Override
+        boolean alIsBuffer( int buffer )
+        {
+            return buffer > 0 && buffer <= generated;
+        }
+
+        @Override
+        void alBufferData( int buffer, int format, ByteBuffer data, int freq )
+        {
+            assertTrue( alIsBuffer( buffer ) );
+        }
+
+        @Override
+        int alGetBufferi( int buffer, int pname )
+        {
+            switch( pname )
+            {
+                case AL10.AL_SIZE:
+                    return 4096;
+                case AL10.AL_CHANNELS:
+                    return 1;
+                case AL10.AL_BITS:
+                    return 16;
+                default:
+                    return 0;
+            }
+        }
+
+        @Override
+        void alDeleteSources( IntBuffer sources )
+        {}
+
+        @Override
+        void alSourcei( int source, int pname, int value )
+        {}
+
+        @Override
+        int alGetSourcei( int source, int pname )
+        {
+            switch( pname )
+            {
+                case AL10.AL_BUFFERS_QUEUED:
+                    return queued;
+                case AL10.AL_BUFFERS_PROCESSED:
+                    return processed;
+                case AL10.AL_SOURCE_STATE:
+                    return AL10.AL_PLAYING;
+                default:
+                    return 0;
+            }
+        }
+
+        @Override
+        void alSourceQueueBuffers( int source, IntBuffer buffers )
+        {
+            for( int i = buffers.position(); i < buffers.limit(); i++ )
+            {
+                queue[queued++] = buffers.get( i );
+            }
+        }
+
+        @Override
+        void alSourceUnqueueBuffers( int source, IntBuffer buffers )
+        {
+            int count = buffers.remaining();
+            assertTrue( count <= queued );
+            for( int i = 0; i < count; i++ )
+            {
+                buffers.put( buffers.position() + i, queue[i] );
+            }
+            System.arraycopy( queue, count, queue, 0, queued - count );
+            queued -= count;
+            processed = Math.max( 0, processed - count );
+        }
+
+        @Override
+        void alSourcePlay( int source )
+        {}
+
+        @Override
+        void alSourcePause( int source )
+        {}
+
+        @Override
+        void alSourceStop( int source )
+        {}
+
+        @Override
+        void alSourceStop( IntBuffer sources )
+        {}
+
+        @Override
+        void alSourceRewind( int source )
+        {}
+    }
+}